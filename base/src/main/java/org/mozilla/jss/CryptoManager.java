@@ -11,6 +11,7 @@ import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.Iterator;
 import java.util.Vector;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.mozilla.jss.asn1.ANY;
 import org.mozilla.jss.asn1.ASN1Util;
@@ -26,12 +27,16 @@ import org.mozilla.jss.crypto.TokenException;
 import org.mozilla.jss.crypto.TokenSupplier;
 import org.mozilla.jss.crypto.TokenSupplierManager;
 import org.mozilla.jss.crypto.X509Certificate;
+import org.mozilla.jss.nss.Buffer;
 import org.mozilla.jss.pkcs11.KeyType;
 import org.mozilla.jss.pkcs11.PK11Cert;
 import org.mozilla.jss.pkcs11.PK11Module;
 import org.mozilla.jss.pkcs11.PK11SecureRandom;
 import org.mozilla.jss.pkcs11.PK11Token;
 import org.mozilla.jss.provider.java.security.JSSMessageDigestSpi;
+import org.mozilla.jss.ssl.javax.JSSEngine;
+import org.mozilla.jss.ssl.javax.JSSSocketChannel;
+import org.mozilla.jss.ssl.javax.TLSMetrics;
 import org.mozilla.jss.util.InvalidNicknameException;
 import org.mozilla.jss.util.NativeProxy;
 import org.mozilla.jss.util.PasswordCallback;
@@ -353,6 +358,31 @@ public final class CryptoManager implements TokenSupplier
         }
     }
 
+    /**
+     * Generation of the certificate and trust database, bumped whenever
+     * JSS imports, deletes, or changes the trust of a certificate, or
+     * imports a CRL.
+     */
+    private static final AtomicLong trustGeneration = new AtomicLong();
+
+    /**
+     * Get the current generation of the certificate and trust database.
+     * Results derived from the database (e.g., cached certificate chain
+     * validations) are only valid while the generation is unchanged.
+     */
+    public static long getTrustGeneration() {
+        return trustGeneration.get();
+    }
+
+    /**
+     * Signal that the certificate or trust database has changed. JSS calls
+     * this itself; applications only need to call it after modifying the
+     * NSS database by other means, e.g., via certutil.
+     */
+    public static void trustChanged() {
+        trustGeneration.incrementAndGet();
+    }
+
     /**
      * Retrieve the single instance of CryptoManager.
      * This cannot be called before initialization.
@@ -622,6 +652,19 @@ public final class CryptoManager implements TokenSupplier
 
         instance = new CryptoManager();
         instance.setPasswordCallback(values.passwordCallback);
+        PK11SecureRandom.setBlockSize(values.randomBlockSize);
+        NativeProxy.setLeakReport(values.proxyLeakReport);
+        Buffer.SetPoolLimit(values.bufferPoolLimit);
+        JSSEngine.setDefaultReleaseIdleBuffers(values.releaseIdleBuffers);
+        if (values.tlsMetrics) {
+            TLSMetrics.setMetricsEnabled(true);
+            try {
+                TLSMetrics.registerMBean();
+            } catch (Exception e) {
+                logger.warn("Unable to register TLSMetrics MXBean: " + e.getMessage(), e);
+            }
+        }
+        JSSSocketChannel.setDefaultPooledBuffers(values.pooledSocketBuffers);
         if( values.fipsMode != InitializationValues.FIPSMode.UNCHANGED) {
             if( enableFIPS(values.fipsMode ==
                     InitializationValues.FIPSMode.ENABLED) )
@@ -793,7 +836,11 @@ public final class CryptoManager implements TokenSupplier
             NoSuchItemOnTokenException,
             TokenException
     {
-        return importCertPackageNative(certPackage, nickname, false, false);
+        try {
+            return importCertPackageNative(certPackage, nickname, false, false);
+        } finally {
+            trustChanged();
+        }
     }
 
     /**
@@ -830,7 +877,11 @@ public final class CryptoManager implements TokenSupplier
             NoSuchItemOnTokenException,
             TokenException
     {
-        return importCertPackageNative(certPackage, nickname, false, true);
+        try {
+            return importCertPackageNative(certPackage, nickname, false, true);
+        } finally {
+            trustChanged();
+        }
     }
 
 
@@ -868,6 +919,8 @@ public final class CryptoManager implements TokenSupplier
             logger.error("importing CA certs caused NoSuchItemOnTokenException", e);
             throw new RuntimeException("Importing CA certs caused NoSuchItemOnToken"+
                 "Exception: " + e.getMessage(), e);
+        } finally {
+            trustChanged();
         }
     }
 
@@ -890,7 +943,11 @@ public final class CryptoManager implements TokenSupplier
         if (nickname == null) {
             throw new InvalidNicknameException("Nickname must be non-null");
         }
-        return importCertToPermNative(cert,nickname);
+        try {
+            return importCertToPermNative(cert,nickname);
+        } finally {
+            trustChanged();
+        }
     }
 
     /**
@@ -899,7 +956,11 @@ public final class CryptoManager implements TokenSupplier
      */
     public X509Certificate importDERCert(byte[] cert, CertificateUsage usage,
                                          boolean permanent, String nickname) {
-        return importDERCertNative(cert, usage.getEnumValue(), permanent, nickname);
+        try {
+            return importDERCertNative(cert, usage.getEnumValue(), permanent, nickname);
+        } finally {
+            trustChanged();
+        }
     }
 
     private native X509Certificate importDERCertNative(byte[] cert, int usage, boolean permanent, String nickname);
@@ -943,7 +1004,11 @@ public final class CryptoManager implements TokenSupplier
         throws CRLImportException,
             TokenException
     {
-        importCRLNative(crl,url,TYPE_CRL);
+        try {
+            importCRLNative(crl,url,TYPE_CRL);
+        } finally {
+            trustChanged();
+        }
     }
 
 
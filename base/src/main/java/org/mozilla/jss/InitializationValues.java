@@ -3,6 +3,8 @@
  * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
 package org.mozilla.jss;
 
+import org.mozilla.jss.nss.Buffer;
+import org.mozilla.jss.pkcs11.PK11SecureRandom;
 import org.mozilla.jss.util.ConsolePasswordCallback;
 import org.mozilla.jss.util.PasswordCallback;
 
@@ -432,6 +434,49 @@ public final class InitializationValues {
     public String ocspResponderCertNickname = null;
 
 
+    /**
+     * Size of the blocks PK11SecureRandom draws from the token to serve
+     * small requests from. 0 disables buffering, so that every request is
+     * a direct token draw, as some FIPS deployments require. Default is
+     * PK11SecureRandom.DEFAULT_BLOCK_SIZE.
+     */
+    public int randomBlockSize = PK11SecureRandom.DEFAULT_BLOCK_SIZE;
+
+    /**
+     * Log every NativeProxy (certificate, key, context, ...) which is
+     * freed by the garbage collector instead of being closed, with the
+     * code which created it. Default is false.
+     */
+    public boolean proxyLeakReport = false;
+
+    /**
+     * Maximum number of bytes of freed JSSEngine buffers kept for reuse
+     * by new connections; 0 disables pooling. Default is
+     * Buffer.DEFAULT_POOL_LIMIT.
+     */
+    public long bufferPoolLimit = Buffer.DEFAULT_POOL_LIMIT;
+
+    /**
+     * Have JSSEngine instances return their native network buffers to the
+     * buffer pool while they're empty after the handshake, instead of
+     * holding them for the life of the connection. Default is false.
+     */
+    public boolean releaseIdleBuffers = false;
+
+    /**
+     * Report TLS handshake and record-layer metrics from JSSEngine and
+     * JSSSocketChannel, and register the TLSMetrics MXBean. Default is
+     * false.
+     */
+    public boolean tlsMetrics = false;
+
+    /**
+     * Back the network buffers of JSSSocketChannel instances with direct
+     * buffers from the shared DirectBufferPool, held only while they hold
+     * data. Default is false.
+     */
+    public boolean pooledSocketBuffers = false;
+
     /**
      * Install the JSS crypto provider. Default is true.
      */
@@ -112,6 +112,11 @@ public class JSSLoader {
         parseReadOnly(config, ivs);
 
         parseOCSPSettings(config, ivs);
+        parseRandomSettings(config, ivs);
+        parseProxySettings(config, ivs);
+        parseBufferSettings(config, ivs);
+        parseMetricsSettings(config, ivs);
+        parseSocketSettings(config, ivs);
         parseProviderSettings(config, ivs);
         parseNSSSettings(config, ivs);
 
@@ -208,6 +213,78 @@ public class JSSLoader {
         ivs.ocspResponderCertNickname = nickname;
     }
 
+    /**
+     * Update the specified InitializationValues with the value of the
+     * jss.random.block_size property; 0 disables buffering in
+     * PK11SecureRandom.
+     */
+    private static void parseRandomSettings(Properties config, InitializationValues ivs) {
+        Integer blockSize = parseInteger(config, "jss.random.block_size");
+        if (blockSize != null) {
+            if (blockSize < 0) {
+                String msg = "Unknown value for jss.random.block_size: " + blockSize;
+                msg += ". Expecting 0 or a positive number of bytes.";
+                throw new RuntimeException(msg);
+            }
+            ivs.randomBlockSize = blockSize;
+        }
+    }
+
+    /**
+     * Update the specified InitializationValues with the value of the
+     * jss.proxy.leak_report property.
+     */
+    private static void parseProxySettings(Properties config, InitializationValues ivs) {
+        Boolean leakReport = parseBoolean(config, "jss.proxy.leak_report");
+        if (leakReport != null) {
+            ivs.proxyLeakReport = leakReport;
+        }
+    }
+
+    /**
+     * Update the specified InitializationValues with the values of the
+     * jss.buffer.pool_limit property (0 disables buffer pooling) and the
+     * jss.buffer.release_idle property.
+     */
+    private static void parseBufferSettings(Properties config, InitializationValues ivs) {
+        Integer poolLimit = parseInteger(config, "jss.buffer.pool_limit");
+        if (poolLimit != null) {
+            if (poolLimit < 0) {
+                String msg = "Unknown value for jss.buffer.pool_limit: " + poolLimit;
+                msg += ". Expecting 0 or a positive number of bytes.";
+                throw new RuntimeException(msg);
+            }
+            ivs.bufferPoolLimit = poolLimit;
+        }
+
+        Boolean releaseIdle = parseBoolean(config, "jss.buffer.release_idle");
+        if (releaseIdle != null) {
+            ivs.releaseIdleBuffers = releaseIdle;
+        }
+    }
+
+    /**
+     * Update the specified InitializationValues with the value of the
+     * jss.metrics.enabled property.
+     */
+    private static void parseMetricsSettings(Properties config, InitializationValues ivs) {
+        Boolean metrics = parseBoolean(config, "jss.metrics.enabled");
+        if (metrics != null) {
+            ivs.tlsMetrics = metrics;
+        }
+    }
+
+    /**
+     * Update the specified InitializationValues with the value of the
+     * jss.socket.pooled_buffers property.
+     */
+    private static void parseSocketSettings(Properties config, InitializationValues ivs) {
+        Boolean pooled = parseBoolean(config, "jss.socket.pooled_buffers");
+        if (pooled != null) {
+            ivs.pooledSocketBuffers = pooled;
+        }
+    }
+
     /**
      * Configure the specified InitializationValues with the correct
      * provider-related properties.
@@ -339,6 +416,26 @@ public class JSSLoader {
         }
     }
 
+    /**
+     * Helper function to parse an integer value at the given key name.
+     *
+     * Returns null if the value is empty or not present. Throws an
+     * exception for a malformed value.
+     */
+    private static Integer parseInteger(Properties config, String key_name) {
+        String value = config.getProperty(key_name);
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+
+        try {
+            return Integer.valueOf(value.trim());
+        } catch (NumberFormatException e) {
+            String msg = "Unknown value for integer " + key_name + ": " + value;
+            throw new RuntimeException(msg, e);
+        }
+    }
+
     /**
      * Helper function to parse a boolean value at the given key name.
      *
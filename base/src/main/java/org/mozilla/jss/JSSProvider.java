@@ -254,6 +254,8 @@ public final class JSSProvider extends java.security.Provider {
         /////////////////////////////////////////////////////////////
         put("SecureRandom.pkcs11prng",
             "org.mozilla.jss.provider.java.security.JSSSecureRandomSpi");
+        // PK11SecureRandom needs no external synchronization
+        put("SecureRandom.pkcs11prng ThreadSafe", "true");
 
         /////////////////////////////////////////////////////////////
         // KeyPairGenerator
@@ -341,6 +343,10 @@ public final class JSSProvider extends java.security.Provider {
             "org.mozilla.jss.provider.javax.crypto.JSSCipherSpi$RSA");
         put("Cipher.RC2",
             "org.mozilla.jss.provider.javax.crypto.JSSCipherSpi$RC2");
+        put("Cipher.AES/GCM/NoPadding",
+            "org.mozilla.jss.provider.javax.crypto.JSSAEADCipherSpi$AES_GCM");
+        put("Cipher.ChaCha20-Poly1305",
+            "org.mozilla.jss.provider.javax.crypto.JSSAEADCipherSpi$ChaCha20_Poly1305");
 
         /////////////////////////////////////////////////////////////
         // KeyGenerator
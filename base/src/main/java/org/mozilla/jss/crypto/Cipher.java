@@ -4,11 +4,13 @@
 
 package org.mozilla.jss.crypto;
 
+import java.nio.ByteBuffer;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.spec.AlgorithmParameterSpec;
 
 import javax.crypto.BadPaddingException;
+import javax.crypto.ShortBufferException;
 
 /**
  * A context for performing symmetric encryption and decryption.
@@ -110,6 +112,114 @@ public abstract class Cipher {
         throws IllegalStateException, IllegalBlockSizeException,
         BadPaddingException, TokenException;
 
+    /**
+     * Updates the encryption context with additional input, writing the
+     * output into the given array.
+     * @param input Bytes of plaintext (if encrypting) or ciphertext (if
+     *      decrypting).
+     * @param inputOffset The index in <code>input</code> at which to begin
+     *      reading.
+     * @param inputLength The number of bytes from <code>input</code> to read.
+     * @param output The array receiving the ciphertext (if encrypting) or
+     *      plaintext (if decrypting). It may be the same array as
+     *      <code>input</code>.
+     * @param outputOffset The index in <code>output</code> at which to
+     *      begin writing.
+     * @return The number of bytes written to <code>output</code>.
+     * @exception ShortBufferException If <code>output</code> is too small to
+     *      hold the result.
+     */
+    public int update(byte[] input, int inputOffset, int inputLength,
+            byte[] output, int outputOffset)
+        throws IllegalStateException, ShortBufferException, TokenException
+    {
+        return copy(update(input, inputOffset, inputLength), output, outputOffset);
+    }
+
+    /**
+     * Updates the encryption context with the remaining bytes of
+     * <code>input</code>, writing the output into <code>output</code>.
+     * The positions of both buffers are advanced.
+     * @return The number of bytes written to <code>output</code>.
+     * @exception ShortBufferException If <code>output</code> is too small to
+     *      hold the result.
+     */
+    public int update(ByteBuffer input, ByteBuffer output)
+        throws IllegalStateException, ShortBufferException, TokenException
+    {
+        byte[] bytes = new byte[input.remaining()];
+        input.duplicate().get(bytes);
+
+        byte[] result = update(bytes);
+        return copy(result, input, output);
+    }
+
+    /**
+     * Completes a cipher operation, writing the last of the output into
+     * the given array.
+     * @param input Bytes of plaintext (if encrypting) or ciphertext (if
+     *      decrypting).
+     * @param inputOffset The index in <code>input</code> at which to begin
+     *      reading.
+     * @param inputLength The number of bytes from <code>input</code> to read.
+     * @param output The array receiving the last of the output. It may be
+     *      the same array as <code>input</code>.
+     * @param outputOffset The index in <code>output</code> at which to
+     *      begin writing.
+     * @return The number of bytes written to <code>output</code>.
+     * @exception ShortBufferException If <code>output</code> is too small to
+     *      hold the result.
+     */
+    public int doFinal(byte[] input, int inputOffset, int inputLength,
+            byte[] output, int outputOffset)
+        throws IllegalStateException, IllegalBlockSizeException,
+        BadPaddingException, ShortBufferException, TokenException
+    {
+        return copy(doFinal(input, inputOffset, inputLength), output, outputOffset);
+    }
+
+    /**
+     * Completes a cipher operation with the remaining bytes of
+     * <code>input</code>, writing the last of the output into
+     * <code>output</code>. The positions of both buffers are advanced.
+     * @return The number of bytes written to <code>output</code>.
+     * @exception ShortBufferException If <code>output</code> is too small to
+     *      hold the result.
+     */
+    public int doFinal(ByteBuffer input, ByteBuffer output)
+        throws IllegalStateException, IllegalBlockSizeException,
+        BadPaddingException, ShortBufferException, TokenException
+    {
+        byte[] bytes = new byte[input.remaining()];
+        input.duplicate().get(bytes);
+
+        byte[] result = doFinal(bytes);
+        return copy(result, input, output);
+    }
+
+    private static int copy(byte[] result, byte[] output, int outputOffset)
+        throws ShortBufferException
+    {
+        if (result.length > output.length - outputOffset) {
+            throw new ShortBufferException(result.length + " needed, " +
+                (output.length - outputOffset) + " supplied");
+        }
+        System.arraycopy(result, 0, output, outputOffset, result.length);
+        return result.length;
+    }
+
+    private static int copy(byte[] result, ByteBuffer input, ByteBuffer output)
+        throws ShortBufferException
+    {
+        if (result.length > output.remaining()) {
+            throw new ShortBufferException(result.length + " needed, " +
+                output.remaining() + " supplied");
+        }
+        input.position(input.limit());
+        output.put(result);
+        return result.length;
+    }
+
     /**
      * Pads a byte array so that its length is a multiple of the given
      *  blocksize.  The method of padding is the one defined in the RSA
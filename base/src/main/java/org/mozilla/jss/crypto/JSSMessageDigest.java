@@ -4,6 +4,7 @@
 
 package org.mozilla.jss.crypto;
 
+import java.nio.ByteBuffer;
 import java.security.DigestException;
 import java.security.InvalidKeyException;
 
@@ -54,6 +55,29 @@ public abstract class JSSMessageDigest {
         update(input, 0, input.length);
     }
 
+    /**
+     * Updates the digest with the remaining bytes of a buffer, advancing
+     * its position to its limit.
+     *
+     * @param input A buffer to feed to the digest.
+     * @exception DigestException If an error occurs while digesting.
+     */
+    public void update(ByteBuffer input) throws DigestException {
+        if (input.hasArray()) {
+            update(input.array(), input.arrayOffset() + input.position(),
+                    input.remaining());
+            input.position(input.limit());
+            return;
+        }
+
+        byte[] chunk = new byte[Math.min(input.remaining(), 4096)];
+        while (input.hasRemaining()) {
+            int len = Math.min(input.remaining(), chunk.length);
+            input.get(chunk, 0, len);
+            update(chunk, 0, len);
+        }
+    }
+
     /**
      * Completes digestion.
      *
@@ -89,6 +113,42 @@ public abstract class JSSMessageDigest {
      * @exception DigestException If an error occurs while digesting.
      */
     public byte[] digest(byte[] input) throws DigestException {
+        byte[] output = new byte[getOutputSize()];
+        digest(input, 0, input.length, output, 0, output.length);
+        return output;
+    }
+
+    /**
+     * Provides final data from a portion of an array, then completes the
+     * digest, storing the result into the provided array. Implementations
+     * may do this in a single operation.
+     *
+     * @param input An array containing the final data.
+     * @param inOffset The index in the array at which the data starts.
+     * @param inLen The number of bytes of data.
+     * @param buf The buffer in which to place the digest output.
+     * @param offset The offset in the buffer at which to store the output.
+     * @param len The amount of space available in the buffer for the
+     *      digest output.
+     * @return The number of bytes actually stored into buf.
+     * @exception DigestException If the provided space is too small for
+     *      the digest, or an error occurs with the digest.
+     */
+    public int digest(byte[] input, int inOffset, int inLen,
+            byte[] buf, int offset, int len) throws DigestException {
+        update(input, inOffset, inLen);
+        return digest(buf, offset, len);
+    }
+
+    /**
+     * Provides the remaining bytes of a buffer as final data, then
+     * completes the digest and returns the output.
+     *
+     * @param input A buffer containing the final data.
+     * @return The completed digest.
+     * @exception DigestException If an error occurs while digesting.
+     */
+    public byte[] digest(ByteBuffer input) throws DigestException {
         update(input);
         return digest();
     }
@@ -9,6 +9,7 @@ import java.security.Provider;
 import java.security.PublicKey;
 import java.security.SignatureException;
 import java.security.spec.AlgorithmParameterSpec;
+import java.util.concurrent.Executor;
 
 /**
  * A class for producing and verifying digital signatures.
@@ -112,6 +113,59 @@ public class Signature {
         return engine.engineSign(outbuf, offset, len);
     }
 
+    /**
+     * Signs the given data in one operation. Data passed to update()
+     * before this call is signed along with it.
+     *
+     * @param data The data to be signed.
+     * @return The signature.
+     * @exception SignatureException If an error occurs with the signing
+     *                operation.
+     * @exception TokenException If an error occurs on the token.
+     */
+    public byte[] sign(byte[] data) throws SignatureException, TokenException {
+        return engine.engineSign(data);
+    }
+
+    /**
+     * Signs each of the given messages separately with the key this
+     * context was initialized with, and returns the signatures in the
+     * same order. Data passed to update() and not yet signed is discarded.
+     *
+     * @param messages The messages to be signed.
+     * @return One signature per message.
+     * @exception SignatureException If an error occurs with the signing
+     *                operation.
+     * @exception TokenException If an error occurs on the token.
+     */
+    public byte[][] signAll(byte[][] messages)
+            throws SignatureException, TokenException {
+        return engine.engineSignAll(messages);
+    }
+
+    /**
+     * Like signAll(byte[][]), but signs up to the given number of parts of
+     * the batch concurrently, each with a separate context. The calling
+     * thread signs the first part; the others run on the given executor,
+     * or on the calling thread if the executor rejects them. Signing
+     * blocks on the token, so the executor should have threads to spare
+     * for it rather than be shared with CPU-bound work. This only helps
+     * with tokens which can run operations in several sessions at once,
+     * such as the internal token.
+     *
+     * @param messages The messages to be signed.
+     * @param executor The executor to sign the other parts on.
+     * @param parallelism The maximum number of concurrent signers.
+     * @return One signature per message.
+     * @exception SignatureException If an error occurs with the signing
+     *                operation.
+     * @exception TokenException If an error occurs on the token.
+     */
+    public byte[][] signAll(byte[][] messages, Executor executor, int parallelism)
+            throws SignatureException, TokenException {
+        return engine.engineSignAll(messages, executor, parallelism);
+    }
+
     /**
      * Finish a verification operation.
      *
@@ -126,6 +180,39 @@ public class Signature {
         return engine.engineVerify(signature);
     }
 
+    /**
+     * Verifies the signature of the given data in one operation. Data
+     * passed to update() before this call is verified along with it.
+     *
+     * @param data The signed data.
+     * @param signature The signature to be verified.
+     * @return true if the signature is valid, false if it is invalid.
+     * @exception SignatureException If an error occurred with the verification
+     *                operation
+     * @exception TokenException If an error occurred on the token.
+     */
+    public boolean verify(byte[] data, byte[] signature)
+            throws SignatureException, TokenException {
+        return engine.engineVerify(data, signature);
+    }
+
+    /**
+     * Verifies each of the given signatures against the message at the
+     * same index. Data passed to update() and not yet verified is
+     * discarded.
+     *
+     * @param messages The signed messages.
+     * @param signatures One signature per message.
+     * @return For each message, whether its signature is valid.
+     * @exception SignatureException If an error occurred with the verification
+     *                operation
+     * @exception TokenException If an error occurred on the token.
+     */
+    public boolean[] verifyAll(byte[][] messages, byte[][] signatures)
+            throws SignatureException, TokenException {
+        return engine.engineVerifyAll(messages, signatures);
+    }
+
     /**
      * Provide more data for a signature or verification operation.
      *
@@ -6,6 +6,7 @@ package org.mozilla.jss.crypto;
 import java.security.*;
 import java.security.SecureRandom;
 import java.security.spec.AlgorithmParameterSpec;
+import java.util.concurrent.Executor;
 
 /**
  * You don't need to use this unless you are hacking JSS.
@@ -39,4 +40,47 @@ public abstract class SignatureSpi {
 
 	public abstract void engineSetParameter(AlgorithmParameterSpec params)
 		throws InvalidAlgorithmParameterException, TokenException;
+
+	public byte[] engineSign(byte[] data)
+		throws SignatureException, TokenException
+	{
+		engineUpdate(data, 0, data.length);
+		return engineSign();
+	}
+
+	public boolean engineVerify(byte[] data, byte[] sigBytes)
+		throws SignatureException, TokenException
+	{
+		engineUpdate(data, 0, data.length);
+		return engineVerify(sigBytes);
+	}
+
+	public byte[][] engineSignAll(byte[][] messages)
+		throws SignatureException, TokenException
+	{
+		byte[][] signatures = new byte[messages.length][];
+		for (int i = 0; i < messages.length; i++) {
+			signatures[i] = engineSign(messages[i]);
+		}
+		return signatures;
+	}
+
+	public byte[][] engineSignAll(byte[][] messages, Executor executor, int parallelism)
+		throws SignatureException, TokenException
+	{
+		return engineSignAll(messages);
+	}
+
+	public boolean[] engineVerifyAll(byte[][] messages, byte[][] signatures)
+		throws SignatureException, TokenException
+	{
+		if (messages.length != signatures.length) {
+			throw new SignatureException("Expected one signature per message");
+		}
+		boolean[] results = new boolean[messages.length];
+		for (int i = 0; i < messages.length; i++) {
+			results[i] = engineVerify(messages[i], signatures[i]);
+		}
+		return results;
+	}
 }
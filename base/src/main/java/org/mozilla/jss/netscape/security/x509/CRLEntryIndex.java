@@ -0,0 +1,323 @@
+// --- BEGIN COPYRIGHT BLOCK ---
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; version 2 of the License.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+// (C) 2007 Red Hat, Inc.
+// All rights reserved.
+// --- END COPYRIGHT BLOCK ---
+package org.mozilla.jss.netscape.security.x509;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.cert.CRLException;
+import java.util.Arrays;
+
+import org.mozilla.jss.netscape.security.util.DerValue;
+
+/**
+ * Compact index of the revokedCertificates of an encoded CRL.
+ * <p>
+ * The index walks the encoded entries once without decoding them, and
+ * keeps only the offset of each entry in the encoded CRL, sorted by
+ * serial number: four bytes per entry on top of the encoded CRL itself.
+ * Lookups by serial number are a binary search over the encoded serial
+ * numbers; entries are only decoded into RevokedCertImpl (with their
+ * revocation date, reason code and other extensions) when asked for.
+ * <p>
+ * The encoded CRL must not be modified while the index is in use.
+ */
+public class CRLEntryIndex {
+
+    private final byte[] data;
+    private final int[] offsets;
+    private final boolean entryExtensions;
+
+    /**
+     * Index the entries in the revokedCertificates SEQUENCE OF whose
+     * contents (without the tag and length) are at the given location.
+     *
+     * @exception IOException on encoding errors.
+     */
+    public CRLEntryIndex(byte[] data, int offset, int length) throws IOException {
+
+        this.data = data;
+
+        int end = offset + length;
+        if (offset < 0 || end > data.length) {
+            throw new IOException("Invalid revoked certificates location");
+        }
+
+        int[] offsets = new int[16];
+        int count = 0;
+        boolean entryExtensions = false;
+
+        int pos = offset;
+        while (pos < end) {
+
+            // revokedCertificate SEQUENCE
+            if (data[pos] != DerValue.tag_Sequence) {
+                throw new IOException("Invalid revoked certificate tag: " + data[pos]);
+            }
+
+            int contentStart = DerScanner.getContentOffset(data, pos, end);
+            int entryEnd = DerScanner.getEnd(data, pos, end);
+
+            // userCertificate INTEGER
+            if (contentStart >= entryEnd || data[contentStart] != DerValue.tag_Integer) {
+                throw new IOException("Invalid revoked certificate serial number");
+            }
+
+            int serialStart = DerScanner.getContentOffset(data, contentStart, entryEnd);
+            int next = DerScanner.getEnd(data, contentStart, entryEnd);
+            if (serialStart == next) {
+                throw new IOException("Empty revoked certificate serial number");
+            }
+
+            // revocationDate
+            if (next >= entryEnd) {
+                throw new IOException("Missing revocation date");
+            }
+            next = DerScanner.getEnd(data, next, entryEnd);
+
+            // crlEntryExtensions (optional)
+            if (next < entryEnd) {
+                entryExtensions = true;
+            }
+
+            if (count == offsets.length) {
+                int[] tmp = new int[count * 2];
+                System.arraycopy(offsets, 0, tmp, 0, count);
+                offsets = tmp;
+            }
+            offsets[count++] = pos;
+
+            pos = entryEnd;
+        }
+
+        if (count != offsets.length) {
+            int[] tmp = new int[count];
+            System.arraycopy(offsets, 0, tmp, 0, count);
+            offsets = tmp;
+        }
+
+        sort(offsets);
+
+        this.offsets = offsets;
+        this.entryExtensions = entryExtensions;
+    }
+
+    /**
+     * Index the revokedCertificates of the given encoded CRL.
+     *
+     * @return the index, or null if the CRL has no revokedCertificates.
+     * @exception IOException on encoding errors.
+     */
+    public static CRLEntryIndex fromCRL(byte[] crl) throws IOException {
+
+        // CertificateList SEQUENCE
+        if (crl.length == 0 || crl[0] != DerValue.tag_Sequence) {
+            throw new IOException("Invalid CRL tag");
+        }
+        int pos = DerScanner.getContentOffset(crl, 0, crl.length);
+        DerScanner.getLength(crl, 0, crl.length);
+
+        // tbsCertList SEQUENCE
+        if (pos >= crl.length || crl[pos] != DerValue.tag_Sequence) {
+            throw new IOException("Invalid TBSCertList tag");
+        }
+        int end = DerScanner.getEnd(crl, pos, crl.length);
+        pos = DerScanner.getContentOffset(crl, pos, end);
+
+        // version (optional), signature, issuer, thisUpdate
+        int fields = pos < end && crl[pos] == DerValue.tag_Integer ? 4 : 3;
+        for (int i = 0; i < fields; i++) {
+            pos = DerScanner.getEnd(crl, pos, end);
+        }
+
+        // nextUpdate (optional)
+        if (pos < end && (crl[pos] == DerValue.tag_UtcTime || crl[pos] == DerValue.tag_GeneralizedTime)) {
+            pos = DerScanner.getEnd(crl, pos, end);
+        }
+
+        // revokedCertificates (optional)
+        if (pos >= end || crl[pos] != DerValue.tag_SequenceOf) {
+            return null;
+        }
+
+        int start = DerScanner.getContentOffset(crl, pos, end);
+        return new CRLEntryIndex(crl, start, DerScanner.getLength(crl, pos, end));
+    }
+
+    /**
+     * Compares the minimal encodings of two serial numbers.
+     */
+    private static int compare(byte[] a, int aStart, int aEnd, byte[] b, int bStart, int bEnd) {
+
+        aStart = trim(a, aStart, aEnd);
+        bStart = trim(b, bStart, bEnd);
+
+        int aLen = aEnd - aStart;
+        int bLen = bEnd - bStart;
+        if (aLen != bLen) {
+            return aLen - bLen;
+        }
+
+        return Arrays.compareUnsigned(a, aStart, aEnd, b, bStart, bEnd);
+    }
+
+    /**
+     * Skips redundant sign bytes, in case the CA didn't use the minimal
+     * encoding.
+     */
+    private static int trim(byte[] data, int start, int end) {
+        while (end - start > 1
+                && (data[start] == 0 && data[start + 1] >= 0
+                    || data[start] == -1 && data[start + 1] < 0)) {
+            start++;
+        }
+        return start;
+    }
+
+    private int serialStart(int entry) throws IOException {
+        int pos = DerScanner.getContentOffset(data, entry, data.length);
+        return DerScanner.getContentOffset(data, pos, data.length);
+    }
+
+    private int serialEnd(int entry) throws IOException {
+        int pos = DerScanner.getContentOffset(data, entry, data.length);
+        return DerScanner.getEnd(data, pos, data.length);
+    }
+
+    private int compareEntries(int a, int b) throws IOException {
+        return compare(data, serialStart(a), serialEnd(a), data, serialStart(b), serialEnd(b));
+    }
+
+    /**
+     * Bottom-up merge sort of the entry offsets by serial number.
+     */
+    private void sort(int[] offsets) throws IOException {
+
+        int n = offsets.length;
+        int[] src = offsets;
+        int[] dst = new int[n];
+
+        for (int width = 1; width < n; width *= 2) {
+            for (int lo = 0; lo < n; lo += 2 * width) {
+                int mid = Math.min(lo + width, n);
+                int hi = Math.min(lo + 2 * width, n);
+                int i = lo, j = mid, k = lo;
+                while (i < mid && j < hi) {
+                    dst[k++] = compareEntries(src[i], src[j]) <= 0 ? src[i++] : src[j++];
+                }
+                while (i < mid) dst[k++] = src[i++];
+                while (j < hi) dst[k++] = src[j++];
+            }
+            int[] tmp = src;
+            src = dst;
+            dst = tmp;
+        }
+
+        if (src != offsets) {
+            System.arraycopy(src, 0, offsets, 0, n);
+        }
+    }
+
+    /**
+     * Returns the position in the index of the entry with the given
+     * serial number, or -1.
+     */
+    private int find(BigInteger serialNumber) throws IOException {
+
+        byte[] key = serialNumber.toByteArray();
+        int lo = 0;
+        int hi = offsets.length - 1;
+
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int entry = offsets[mid];
+            int c = compare(data, serialStart(entry), serialEnd(entry), key, 0, key.length);
+            if (c < 0) {
+                lo = mid + 1;
+            } else if (c > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Returns the number of indexed entries.
+     */
+    public int size() {
+        return offsets.length;
+    }
+
+    /**
+     * Returns true if any entry has crlEntryExtensions.
+     */
+    public boolean hasEntryExtensions() {
+        return entryExtensions;
+    }
+
+    /**
+     * Checks whether the given serial number is in the index.
+     */
+    public boolean contains(BigInteger serialNumber) {
+        try {
+            return find(serialNumber) >= 0;
+        } catch (IOException e) {
+            // already validated while building the index
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Decodes the entry with the given serial number.
+     *
+     * @return the entry, or null if the serial number is not indexed.
+     * @exception CRLException on parsing errors.
+     */
+    public RevokedCertImpl getEntry(BigInteger serialNumber)
+            throws CRLException, X509ExtensionException {
+        try {
+            int i = find(serialNumber);
+            return i < 0 ? null : decode(offsets[i]);
+        } catch (IOException e) {
+            throw new CRLException("Parsing error: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Decodes the entry at the given position in the index, in serial
+     * number order.
+     *
+     * @exception CRLException on parsing errors.
+     */
+    public RevokedCertImpl getEntry(int index)
+            throws CRLException, X509ExtensionException {
+        try {
+            return decode(offsets[index]);
+        } catch (IOException e) {
+            throw new CRLException("Parsing error: " + e.getMessage(), e);
+        }
+    }
+
+    private RevokedCertImpl decode(int entry)
+            throws IOException, CRLException, X509ExtensionException {
+        int end = DerScanner.getEnd(data, entry, data.length);
+        return new RevokedCertImpl(new DerValue(data, entry, end - entry));
+    }
+}
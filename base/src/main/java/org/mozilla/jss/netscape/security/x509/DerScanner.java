@@ -0,0 +1,94 @@
+// --- BEGIN COPYRIGHT BLOCK ---
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; version 2 of the License.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+// (C) 2007 Red Hat, Inc.
+// All rights reserved.
+// --- END COPYRIGHT BLOCK ---
+package org.mozilla.jss.netscape.security.x509;
+
+import java.io.IOException;
+
+/**
+ * Helpers for locating DER values in an encoded buffer without decoding
+ * them. Each method takes the position of a value's tag and the end of
+ * the enclosing value, which the value must not overrun.
+ */
+final class DerScanner {
+
+    private DerScanner() {
+    }
+
+    /**
+     * Returns the offset of the contents of the value at pos.
+     */
+    static int getContentOffset(byte[] data, int pos, int end) throws IOException {
+        if (pos + 1 >= end) {
+            throw new IOException("Truncated DER value");
+        }
+
+        int b = data[pos + 1] & 0xff;
+        if (b < 0x80) {
+            return pos + 2;
+        }
+
+        return pos + 2 + (b & 0x7f);
+    }
+
+    /**
+     * Returns the length of the contents of the value at pos.
+     */
+    static int getLength(byte[] data, int pos, int end) throws IOException {
+        if (pos + 1 >= end) {
+            throw new IOException("Truncated DER value");
+        }
+
+        int b = data[pos + 1] & 0xff;
+        int start;
+        long length;
+
+        if (b < 0x80) {
+            start = pos + 2;
+            length = b;
+
+        } else {
+            int n = b & 0x7f;
+            if (n == 0 || n > 4) {
+                throw new IOException("Unsupported DER length: " + b);
+            }
+
+            start = pos + 2 + n;
+            if (start > end) {
+                throw new IOException("Truncated DER length");
+            }
+
+            length = 0;
+            for (int i = pos + 2; i < start; i++) {
+                length = (length << 8) | (data[i] & 0xff);
+            }
+        }
+
+        if (start + length > end) {
+            throw new IOException("DER value overrun");
+        }
+
+        return (int) length;
+    }
+
+    /**
+     * Returns the offset following the value at pos.
+     */
+    static int getEnd(byte[] data, int pos, int end) throws IOException {
+        return getContentOffset(data, pos, end) + getLength(data, pos, end);
+    }
+}
@@ -107,6 +107,7 @@ public class X509CRLImpl extends X509CRL {
     private Date thisUpdate = null;
     private Date nextUpdate = null;
     private Hashtable<BigInteger, RevokedCertificate> revokedCerts = new Hashtable<>();
+    private volatile CRLEntryIndex entryIndex = null; // entries not yet decoded into revokedCerts
     private CRLExtensions extensions = null;
     private boolean entriesIncluded = true;
     private static final boolean IS_EXPLICIT = true;
@@ -149,6 +150,48 @@ public class X509CRLImpl extends X509CRL {
         }
     }
 
+    /**
+     * Unmarshals an X.509 CRL from its encoded form.
+     * <p>
+     * If indexEntries is true (and includeEntries is true), the revoked
+     * certificates are not decoded up front. Instead a compact
+     * CRLEntryIndex of the encoded entries is built, which isRevoked()
+     * and getRevokedCertificate() search directly, decoding only the
+     * entry asked for. This keeps the memory needed for very large CRLs
+     * close to the size of the encoded CRL. Methods returning all the
+     * entries decode them on first use.
+     *
+     * @param crlData the encoded bytes, with no trailing padding.
+     * @param includeEntries whether to include the revoked certificates.
+     * @param indexEntries whether to index the revoked certificates
+     *            instead of decoding them.
+     * @exception CRLException on parsing errors.
+     * @exception X509ExtensionException on extension handling errors.
+     */
+    public X509CRLImpl(byte[] crlData, boolean includeEntries, boolean indexEntries)
+            throws CRLException, X509ExtensionException {
+        try {
+            entriesIncluded = includeEntries;
+            DerValue in = new DerValue(crlData);
+
+            boolean index = includeEntries && indexEntries;
+            parse(in, includeEntries && !index);
+            signedCRL = crlData;
+
+            if (index) {
+                entryIndex = CRLEntryIndex.fromCRL(crlData);
+                logger.info("X509CRLImpl: Indexed " + (entryIndex == null ? 0 : entryIndex.size())
+                        + " revoked certificates");
+
+                if (entryIndex != null && entryIndex.hasEntryExtensions() && version == 0)
+                    throw new CRLException("Invalid encoding, extensions" +
+                            " not supported in CRL v1 entries.");
+            }
+        } catch (IOException e) {
+            throw new CRLException("Parsing error: " + e.getMessage(), e);
+        }
+    }
+
     /**
      * Unmarshals an X.509 CRL from an input stream. Only one CRL
      * is expected at the end of the input stream.
@@ -347,6 +390,7 @@ public class X509CRLImpl extends X509CRL {
             if (nextUpdate != null)
                 tmp.putUTCTime(nextUpdate);
 
+            Hashtable<BigInteger, RevokedCertificate> revokedCerts = getEntries();
             if (!revokedCerts.isEmpty()) {
                 for (Enumeration<RevokedCertificate> e = revokedCerts.elements(); e.hasMoreElements();)
                     ((RevokedCertImpl) e.nextElement()).encode(rCerts);
@@ -541,6 +585,7 @@ public class X509CRLImpl extends X509CRL {
                 + "\n");
         if (nextUpdate != null)
             sb.append("Next Update: " + nextUpdate + "\n");
+        Hashtable<BigInteger, RevokedCertificate> revokedCerts = getEntries();
         if (revokedCerts.isEmpty())
             sb.append("\nNO certificates have been revoked\n");
         else {
@@ -569,6 +614,9 @@ public class X509CRLImpl extends X509CRL {
      *         false otherwise.
      */
     public boolean isRevoked(BigInteger serialNumber) {
+        CRLEntryIndex entryIndex = this.entryIndex;
+        if (entryIndex != null)
+            return entryIndex.contains(serialNumber);
         if (revokedCerts == null || revokedCerts.isEmpty())
             return false;
         return revokedCerts.containsKey(serialNumber);
@@ -671,6 +719,14 @@ public class X509CRLImpl extends X509CRL {
      */
     @Override
     public X509CRLEntry getRevokedCertificate(BigInteger serialNumber) {
+        CRLEntryIndex entryIndex = this.entryIndex;
+        if (entryIndex != null) {
+            try {
+                return entryIndex.getEntry(serialNumber);
+            } catch (CRLException | X509ExtensionException e) {
+                throw new RuntimeException("Unable to decode revoked certificate: " + e.getMessage(), e);
+            }
+        }
         if (revokedCerts == null || revokedCerts.isEmpty())
             return null;
         return revokedCerts.get(serialNumber);
@@ -686,6 +742,7 @@ public class X509CRLImpl extends X509CRL {
      */
     @Override
     public Set<RevokedCertificate> getRevokedCertificates() {
+        Hashtable<BigInteger, RevokedCertificate> revokedCerts = getEntries();
         if (revokedCerts == null || revokedCerts.isEmpty())
             return null;
         Set<RevokedCertificate> certSet = new LinkedHashSet<>(revokedCerts.values());
@@ -694,10 +751,14 @@ public class X509CRLImpl extends X509CRL {
 
     @SuppressWarnings("unchecked")
     public Hashtable<BigInteger, RevokedCertificate> getListOfRevokedCertificates() {
+        Hashtable<BigInteger, RevokedCertificate> revokedCerts = getEntries();
         return revokedCerts == null ? null : (Hashtable<BigInteger, RevokedCertificate>) revokedCerts.clone();
     }
 
     public int getNumberOfRevokedCertificates() {
+        CRLEntryIndex entryIndex = this.entryIndex;
+        if (entryIndex != null)
+            return entryIndex.size();
         return revokedCerts == null ? -1 : revokedCerts.size();
     }
 
@@ -959,6 +1020,33 @@ public class X509CRLImpl extends X509CRL {
         return entriesIncluded;
     }
 
+    /**
+     * Returns the entry index, or null if the entries were decoded.
+     */
+    public CRLEntryIndex getEntryIndex() {
+        return entryIndex;
+    }
+
+    /**
+     * Returns the revoked certificates, decoding any indexed entries.
+     */
+    private synchronized Hashtable<BigInteger, RevokedCertificate> getEntries() {
+        if (entryIndex == null)
+            return revokedCerts;
+
+        try {
+            for (int i = 0; i < entryIndex.size(); i++) {
+                RevokedCertImpl entry = entryIndex.getEntry(i);
+                revokedCerts.put(entry.getSerialNumber(), entry);
+            }
+        } catch (CRLException | X509ExtensionException e) {
+            throw new RuntimeException("Unable to decode revoked certificates: " + e.getMessage(), e);
+        }
+
+        entryIndex = null;
+        return revokedCerts;
+    }
+
     /*********************************************************************/
     /*
      * Parses an X.509 CRL, should be used only by constructors.
@@ -47,6 +47,7 @@ import java.util.Set;
 import java.util.Vector;
 
 import org.mozilla.jss.netscape.security.util.DerEncoder;
+import org.mozilla.jss.netscape.security.util.DerInputStream;
 import org.mozilla.jss.netscape.security.util.DerOutputStream;
 import org.mozilla.jss.netscape.security.util.DerValue;
 import org.mozilla.jss.netscape.security.util.ObjectIdentifier;
@@ -137,10 +138,27 @@ public class X509CertImpl extends X509Certificate
 
     // Certificate data, and its envelope
     private byte[] signedCert;
-    protected X509CertInfo info = null;
+    protected volatile X509CertInfo info = null;
     protected AlgorithmId algId;
     protected byte[] signature;
 
+    // Lazily decoded certificate (see X509CertImpl(byte[], boolean)):
+    // offsets of the tbsCertificate fields in signedCert, and the fields
+    // decoded so far. info is only decoded when something needs it.
+    private int[] fieldOffsets;
+    private volatile Integer lazyVersion;
+    private volatile BigInteger lazySerialNumber;
+    private volatile X500Name lazyIssuerName;
+    private volatile X500Name lazySubjectName;
+    private volatile CertificateValidity lazyValidity;
+
+    private static final int TBS = 0;
+    private static final int VERSION = 1;
+    private static final int SERIAL_NUMBER = 2;
+    private static final int ISSUER = 3;
+    private static final int VALIDITY = 4;
+    private static final int SUBJECT = 5;
+
     // recognized extension OIDS
     private static final String KEY_USAGE_OID = "2.5.29.15";
     private static final String BASIC_CONSTRAINT_OID = "2.5.29.19";
@@ -195,6 +213,46 @@ public class X509CertImpl extends X509Certificate
         }
     }
 
+    /**
+     * Unmarshals a certificate from its encoded form. If lazy is true,
+     * only the certificate envelope is parsed up front; the offsets of the
+     * tbsCertificate fields are recorded and each field is decoded on
+     * first use. The version, serial number, issuer, subject and validity
+     * are decoded individually; anything else (e.g. the public key or
+     * extensions) decodes the whole X509CertInfo. getEncoded() and
+     * getTBSCertificate() return copies of the encoded data without
+     * decoding anything.
+     * <p>
+     * Since fields are only decoded on first use, errors in them are only
+     * reported then, like the getters of this class do for eagerly parsed
+     * certificates.
+     *
+     * @param certData the encoded bytes, with no trailing padding.
+     * @param lazy whether to decode the certificate fields on first use.
+     * @exception CertificateException on parsing and initialization errors.
+     */
+    public X509CertImpl(byte[] certData, boolean lazy)
+            throws CertificateException {
+
+        if (!lazy) {
+            // parse the whole certificate as X509CertImpl(byte[]) does
+            try {
+                parse(new DerValue(certData));
+                signedCert = certData;
+            } catch (IOException e) {
+                throw new CertificateException(UNABLE_TO_PARSE_CERTIFICATE_DATA + e.getMessage(), e);
+            }
+            return;
+        }
+
+        try {
+            parseLazily(certData);
+            signedCert = certData;
+        } catch (IOException e) {
+            throw new CertificateException(UNABLE_TO_PARSE_CERTIFICATE_DATA + e.getMessage(), e);
+        }
+    }
+
     /**
      * unmarshals an X.509 certificate from an input stream.
      *
@@ -368,7 +426,7 @@ public class X509CertImpl extends X509Certificate
         sigVerf = Signature.getInstance(algId.getName(), sigProvider);
         sigVerf.initVerify(key);
 
-        byte[] rawCert = info.getEncodedInfo();
+        byte[] rawCert = getTBSCertificate();
         sigVerf.update(rawCert, 0, rawCert.length);
 
         if (!sigVerf.verify(signature)) {
@@ -491,7 +549,7 @@ public class X509CertImpl extends X509Certificate
 
         CertificateValidity interval = null;
         try {
-            interval = (CertificateValidity) info.get(CertificateValidity.NAME);
+            interval = getValidity();
         } catch (Exception e) {
             throw new CertificateNotYetValidException("Incorrect validity period: " + e.getMessage());
         }
@@ -520,10 +578,10 @@ public class X509CertImpl extends X509Certificate
 
         if (id.equalsIgnoreCase(INFO)) {
             if (attr.getSuffix() == null) {
-                return (info);
+                return (info());
             }
             try {
-                return info.get(attr.getSuffix());
+                return info().get(attr.getSuffix());
             } catch (IOException | CertificateException e) {
                 throw new CertificateParsingException("Unable to get certificate attribute: " + e.getMessage(), e);
             }
@@ -650,10 +708,10 @@ public class X509CertImpl extends X509Certificate
      */
     @Override
     public String toString() {
-        if (info == null || algId == null || signature == null)
+        if (info() == null || algId == null || signature == null)
             return "";
 
-        StringBuffer sb = new StringBuffer("[\n"+info.toString() + "\n" + "  Algorithm: [" + algId.toString() + "]\n");
+        StringBuffer sb = new StringBuffer("[\n"+info().toString() + "\n" + "  Algorithm: [" + algId.toString() + "]\n");
 
         org.mozilla.jss.netscape.security.util.PrettyPrintFormat pp =
                 new org.mozilla.jss.netscape.security.util.PrettyPrintFormat(" ", 20);
@@ -673,10 +731,10 @@ public class X509CertImpl extends X509Certificate
      */
     @Override
     public PublicKey getPublicKey() {
-        if (info == null)
+        if (info() == null)
             return null;
         try {
-            return (PublicKey) info.get(CertificateX509Key.NAME
+            return (PublicKey) info().get(CertificateX509Key.NAME
                                  + DOT + CertificateX509Key.KEY);
         } catch (Exception e) {
             return null;
@@ -690,6 +748,21 @@ public class X509CertImpl extends X509Certificate
      */
     @Override
     public int getVersion() {
+        if (fieldOffsets != null) {
+            try {
+                Integer version = lazyVersion;
+                if (version == null) {
+                    int offset = fieldOffsets[VERSION];
+                    version = offset < 0 ? CertificateVersion.V1
+                            : (Integer) new CertificateVersion(decodeField(VERSION))
+                                    .get(CertificateVersion.VERSION);
+                    lazyVersion = version;
+                }
+                return version.intValue();
+            } catch (Exception e) {
+                return -1;
+            }
+        }
         if (info == null)
             return -1;
         try {
@@ -707,6 +780,18 @@ public class X509CertImpl extends X509Certificate
      */
     @Override
     public BigInteger getSerialNumber() {
+        if (fieldOffsets != null) {
+            try {
+                BigInteger serialNumber = lazySerialNumber;
+                if (serialNumber == null) {
+                    serialNumber = new SerialNumber(decodeField(SERIAL_NUMBER)).getNumber().toBigInteger();
+                    lazySerialNumber = serialNumber;
+                }
+                return serialNumber;
+            } catch (Exception e) {
+                return null;
+            }
+        }
         if (info == null)
             return null;
         try {
@@ -733,6 +818,21 @@ public class X509CertImpl extends X509Certificate
 
     public X500Name getSubjectName() {
 
+        if (fieldOffsets != null) {
+            try {
+                X500Name name = lazySubjectName;
+                if (name == null) {
+                    name = new X500Name(getFieldStream(SUBJECT));
+                    lazySubjectName = name;
+                }
+                return name;
+
+            } catch (Exception e) {
+                logger.warn("Unable to get subject name: " + e.getMessage(), e);
+                return null;
+            }
+        }
+
         if (info == null) {
             return null;
         }
@@ -748,11 +848,11 @@ public class X509CertImpl extends X509Certificate
     }
 
     public CertificateSubjectName getSubjectObj() {
-        return info.getSubjectObj();
+        return info().getSubjectObj();
     }
 
     public X509CertInfo getInfo() {
-        return info;
+        return info();
     }
 
     /**
@@ -769,6 +869,21 @@ public class X509CertImpl extends X509Certificate
 
     public X500Name getIssuerName() {
 
+        if (fieldOffsets != null) {
+            try {
+                X500Name name = lazyIssuerName;
+                if (name == null) {
+                    name = new X500Name(getFieldStream(ISSUER));
+                    lazyIssuerName = name;
+                }
+                return name;
+
+            } catch (Exception e) {
+                logger.warn("Unable to get issuer name: " + e.getMessage(), e);
+                return null;
+            }
+        }
+
         if (info == null) {
             return null;
         }
@@ -784,7 +899,7 @@ public class X509CertImpl extends X509Certificate
     }
 
     public CertificateIssuerName getIssuerObj() {
-        return info.getIssuerObj();
+        return info().getIssuerObj();
     }
 
     /**
@@ -794,6 +909,13 @@ public class X509CertImpl extends X509Certificate
      */
     @Override
     public Date getNotBefore() {
+        if (fieldOffsets != null) {
+            try {
+                return (Date) getValidity().get(CertificateValidity.NOT_BEFORE);
+            } catch (Exception e) {
+                return null;
+            }
+        }
         if (info == null)
             return null;
         try {
@@ -811,6 +933,13 @@ public class X509CertImpl extends X509Certificate
      */
     @Override
     public Date getNotAfter() {
+        if (fieldOffsets != null) {
+            try {
+                return (Date) getValidity().get(CertificateValidity.NOT_AFTER);
+            } catch (Exception e) {
+                return null;
+            }
+        }
         if (info == null)
             return null;
         try {
@@ -830,6 +959,14 @@ public class X509CertImpl extends X509Certificate
      */
     @Override
     public byte[] getTBSCertificate() throws CertificateEncodingException {
+        if (fieldOffsets != null) {
+            int start = fieldOffsets[TBS];
+            try {
+                return Arrays.copyOfRange(signedCert, start, DerScanner.getEnd(signedCert, start, signedCert.length));
+            } catch (IOException e) {
+                throw new CertificateEncodingException(e);
+            }
+        }
         if (info == null)
             throw new CertificateEncodingException("Uninitialized certificate");
         return info.getEncodedInfo();
@@ -902,10 +1039,10 @@ public class X509CertImpl extends X509Certificate
      */
     @Override
     public boolean[] getIssuerUniqueID() {
-        if (info == null)
+        if (info() == null)
             return null;
         try {
-            UniqueIdentity id = (UniqueIdentity) info.get(
+            UniqueIdentity id = (UniqueIdentity) info().get(
                                      CertificateIssuerUniqueIdentity.NAME
                                              + DOT + CertificateIssuerUniqueIdentity.ID);
             return id == null ? null : (id.getId());
@@ -921,10 +1058,10 @@ public class X509CertImpl extends X509Certificate
      */
     @Override
     public boolean[] getSubjectUniqueID() {
-        if (info == null)
+        if (info() == null)
             return null;
         try {
-            UniqueIdentity id = (UniqueIdentity) info.get(
+            UniqueIdentity id = (UniqueIdentity) info().get(
                                      CertificateSubjectUniqueIdentity.NAME
                                              + DOT + CertificateSubjectUniqueIdentity.ID);
             return id == null ? null : (id.getId());
@@ -942,10 +1079,10 @@ public class X509CertImpl extends X509Certificate
      */
     @Override
     public Set<String> getCriticalExtensionOIDs() {
-        if (info == null)
+        if (info() == null)
             return null;
         try {
-            CertificateExtensions exts = (CertificateExtensions) info.get(
+            CertificateExtensions exts = (CertificateExtensions) info().get(
                                              CertificateExtensions.NAME);
             if (exts == null)
                 return null;
@@ -971,10 +1108,10 @@ public class X509CertImpl extends X509Certificate
      */
     @Override
     public Set<String> getNonCriticalExtensionOIDs() {
-        if (info == null)
+        if (info() == null)
             return null;
         try {
-            CertificateExtensions exts = (CertificateExtensions) info.get(
+            CertificateExtensions exts = (CertificateExtensions) info().get(
                                              CertificateExtensions.NAME);
             if (exts == null)
                 return null;
@@ -994,7 +1131,7 @@ public class X509CertImpl extends X509Certificate
 
     public Extension getExtension(String oid) {
         try {
-            CertificateExtensions exts = (CertificateExtensions) info.get(
+            CertificateExtensions exts = (CertificateExtensions) info().get(
                                          CertificateExtensions.NAME);
             if (exts == null)
                 return null;
@@ -1027,7 +1164,7 @@ public class X509CertImpl extends X509Certificate
 
             if (extAlias == null) { // may be unknown
                 // get the extensions, search thru' for this oid
-                CertificateExtensions exts = (CertificateExtensions) info.get(
+                CertificateExtensions exts = (CertificateExtensions) info().get(
                                          CertificateExtensions.NAME);
                 if (exts == null)
                     return null;
@@ -1130,6 +1267,62 @@ public class X509CertImpl extends X509Certificate
         return isCA;
     }
 
+    /**
+     * Returns the certificate info, decoding it first for lazily decoded
+     * certificates.
+     */
+    private X509CertInfo info() {
+        X509CertInfo info = this.info;
+        if (info != null || fieldOffsets == null)
+            return info;
+
+        synchronized (this) {
+            info = this.info;
+            if (info == null) {
+                try {
+                    info = new X509CertInfo(decodeField(TBS));
+                } catch (IOException | CertificateException e) {
+                    logger.warn("Unable to decode certificate info: " + e.getMessage(), e);
+                    return null;
+                }
+                this.info = info;
+            }
+        }
+        return info;
+    }
+
+    private CertificateValidity getValidity() throws IOException, CertificateException {
+        if (fieldOffsets == null)
+            return (CertificateValidity) info().get(CertificateValidity.NAME);
+
+        CertificateValidity validity = lazyValidity;
+        if (validity == null) {
+            validity = new CertificateValidity(getFieldStream(VALIDITY));
+            lazyValidity = validity;
+        }
+        return validity;
+    }
+
+    /**
+     * Returns a stream over the given tbsCertificate field of a lazily
+     * decoded certificate.
+     */
+    private DerInputStream getFieldStream(int field) throws IOException {
+        int start = fieldOffsets[field];
+        int end = DerScanner.getEnd(signedCert, start, signedCert.length);
+        return new DerInputStream(signedCert, start, end - start);
+    }
+
+    /**
+     * Decodes the given tbsCertificate field of a lazily decoded
+     * certificate.
+     */
+    private DerValue decodeField(int field) throws IOException {
+        int start = fieldOffsets[field];
+        int end = DerScanner.getEnd(signedCert, start, signedCert.length);
+        return new DerValue(signedCert, start, end - start);
+    }
+
     /************************************************************/
 
     /*
@@ -1177,6 +1370,76 @@ public class X509CertImpl extends X509Certificate
         }
     }
 
+    /*
+     * Parses the certificate envelope and records where the tbsCertificate
+     * fields are without decoding them.
+     */
+    private void parseLazily(byte[] data) throws CertificateException, IOException {
+        // check if can over write the certificate
+        if (readOnly)
+            throw new CertificateParsingException(CANNOT_OVERWRITE_EXISTING_CERTIFICATE);
+
+        readOnly = true;
+
+        if (data.length == 0 || data[0] != DerValue.tag_Sequence)
+            throw new CertificateParsingException("invalid certificate");
+
+        int end = DerScanner.getEnd(data, 0, data.length);
+        if (end != data.length)
+            throw new CertificateParsingException("signed overrun, bytes = " + (data.length - end));
+
+        int tbs = DerScanner.getContentOffset(data, 0, end);
+        if (tbs >= end || data[tbs] != DerValue.tag_Sequence)
+            throw new CertificateParsingException("signed fields invalid");
+
+        int sigAlg = DerScanner.getEnd(data, tbs, end);
+        if (sigAlg >= end)
+            throw new CertificateParsingException("missing algid field");
+        int sig = DerScanner.getEnd(data, sigAlg, end);
+        if (sig >= end)
+            throw new CertificateParsingException("missing signature");
+        if (DerScanner.getEnd(data, sig, end) != end)
+            throw new CertificateParsingException("signed fields overrun");
+
+        algId = AlgorithmId.parse(new DerValue(data, sigAlg, sig - sigAlg));
+        signature = new DerValue(data, sig, end - sig).getBitString();
+
+        int[] offsets = new int[SUBJECT + 1];
+        offsets[TBS] = tbs;
+
+        int tbsEnd = DerScanner.getEnd(data, tbs, end);
+        int pos = DerScanner.getContentOffset(data, tbs, tbsEnd);
+
+        // version [0] EXPLICIT (optional)
+        if (pos < tbsEnd && data[pos] == (byte) 0xa0) {
+            offsets[VERSION] = pos;
+            pos = DerScanner.getEnd(data, pos, tbsEnd);
+        } else {
+            offsets[VERSION] = -1;
+        }
+
+        // serialNumber, signature, issuer, validity, subject
+        for (int field = SERIAL_NUMBER; field <= SUBJECT; field++) {
+            if (pos >= tbsEnd)
+                throw new CertificateParsingException("truncated certificate info");
+
+            if (field == ISSUER) {
+                // skip signature AlgorithmIdentifier
+                pos = DerScanner.getEnd(data, pos, tbsEnd);
+                if (pos >= tbsEnd)
+                    throw new CertificateParsingException("truncated certificate info");
+            }
+
+            offsets[field] = pos;
+            pos = DerScanner.getEnd(data, pos, tbsEnd);
+        }
+
+        if (data[offsets[SERIAL_NUMBER]] != DerValue.tag_Integer)
+            throw new CertificateParsingException("invalid serial number");
+
+        fieldOffsets = offsets;
+    }
+
     /**
      * Serialization write ... X.509 certificates serialize as
      * themselves, and they're parsed when they get read back.
@@ -1256,13 +1519,18 @@ public class X509CertImpl extends X509Certificate
         }
     }
 
+    /**
+     * Hash the certificate by its DER encoding, so a lazily decoded
+     * certificate doesn't need to be decoded to be used as a key.
+     */
     @Override
     public int hashCode() {
+        if (signedCert != null)
+            return Arrays.hashCode(signedCert);
+
         final int prime = 31;
-        int result = super.hashCode();
-        result = prime * result + Arrays.hashCode(signature);
-        result = prime * result + Arrays.hashCode(signedCert);
-        result = prime * result + Objects.hash(algId, info, readOnly);
+        int result = Arrays.hashCode(signature);
+        result = prime * result + Objects.hash(algId, info(), readOnly);
         return result;
     }
 
@@ -1270,12 +1538,12 @@ public class X509CertImpl extends X509Certificate
     public boolean equals(Object obj) {
         if (this == obj)
             return true;
-        if (!super.equals(obj))
-            return false;
-        if (getClass() != obj.getClass())
+        if (obj == null || getClass() != obj.getClass())
             return false;
         X509CertImpl other = (X509CertImpl) obj;
-        return Objects.equals(algId, other.algId) && Objects.equals(info, other.info) && readOnly == other.readOnly
-                && Arrays.equals(signature, other.signature) && Arrays.equals(signedCert, other.signedCert);
+        if (signedCert != null || other.signedCert != null)
+            return Arrays.equals(signedCert, other.signedCert);
+        return Objects.equals(algId, other.algId) && Objects.equals(info(), other.info()) && readOnly == other.readOnly
+                && Arrays.equals(signature, other.signature);
     }
 }
@@ -1,13 +1,160 @@
 package org.mozilla.jss.nss;
 
+import java.nio.ByteBuffer;
+
 public class Buffer {
+    /**
+     * Default maximum number of bytes held by the buffer pool.
+     *
+     * See also: JB_POOL_DEFAULT_LIMIT in org/mozilla/jss/ssl/javax/j_buffer.h
+     */
+    public static final long DEFAULT_POOL_LIMIT = 16 * 1024 * 1024;
+
     /**
      * Create a new j_buffer object with the specified number of bytes.
      *
-     * See also: jb_alloc in org/mozilla/jss/ssl/javax/j_buffer.h
+     * Buffers are drawn from a process-wide pool of freed buffers of the
+     * same size when possible, and returned to it by Free(...); see
+     * SetPoolLimit(...).
+     *
+     * See also: jb_pool_alloc in org/mozilla/jss/ssl/javax/j_buffer.h
      */
     public static native BufferProxy Create(long length);
 
+    /**
+     * Grow a buffer to hold the specified number of bytes, keeping its
+     * contents. Buffers never shrink. Returns false if the buffer could
+     * not be grown.
+     *
+     * See also: jb_grow in org/mozilla/jss/ssl/javax/j_buffer.h
+     */
+    public static native boolean Grow(BufferProxy buf, long length);
+
+    /**
+     * Return the contents of an empty buffer to the buffer pool, keeping
+     * the buffer itself usable: it reads as empty and takes new contents
+     * from the pool on the next write. Returns false when the buffer still
+     * holds unread bytes.
+     *
+     * See also: jb_detach in org/mozilla/jss/ssl/javax/j_buffer.h
+     */
+    public static native boolean Detach(BufferProxy buf);
+
+    /**
+     * Check whether or not the buffer currently holds its contents; see
+     * Detach(...).
+     *
+     * See also: jb_is_attached in org/mozilla/jss/ssl/javax/j_buffer.h
+     */
+    public static native boolean IsAttached(BufferProxy buf);
+
+    /**
+     * Set the maximum number of bytes of freed buffers kept in the pool
+     * for reuse; 0 disables pooling. Buffers above the new limit are
+     * freed immediately.
+     *
+     * See also: jb_pool_set_limit in org/mozilla/jss/ssl/javax/j_buffer.h
+     */
+    public static native void SetPoolLimit(long limit);
+
+    /**
+     * Get the maximum number of bytes of freed buffers kept in the pool.
+     */
+    public static native long GetPoolLimit();
+
+    /**
+     * Get a snapshot of the buffer pool's counters.
+     */
+    public static PoolStatistics GetPoolStatistics() {
+        return new PoolStatistics(getPoolCounters());
+    }
+
+    private static native long[] getPoolCounters();
+
+    /**
+     * Counters of the buffer pool since the process started.
+     */
+    public static class PoolStatistics {
+        private final long hits;
+        private final long misses;
+        private final long returns;
+        private final long discards;
+        private final long grows;
+        private final long pooledBuffers;
+        private final long pooledBytes;
+
+        // Keep in sync with Java_org_mozilla_jss_nss_Buffer_getPoolCounters.
+        PoolStatistics(long[] counters) {
+            hits = counters[0];
+            misses = counters[1];
+            returns = counters[2];
+            discards = counters[3];
+            grows = counters[4];
+            pooledBuffers = counters[5];
+            pooledBytes = counters[6];
+        }
+
+        /**
+         * Number of buffers created from the pool.
+         */
+        public long getHits() {
+            return hits;
+        }
+
+        /**
+         * Number of buffers which had to be allocated.
+         */
+        public long getMisses() {
+            return misses;
+        }
+
+        /**
+         * Number of freed buffers kept in the pool.
+         */
+        public long getReturns() {
+            return returns;
+        }
+
+        /**
+         * Number of freed buffers released because the pool was full.
+         */
+        public long getDiscards() {
+            return discards;
+        }
+
+        /**
+         * Number of buffers grown by Grow(...).
+         */
+        public long getGrows() {
+            return grows;
+        }
+
+        /**
+         * Number of buffers currently held by the pool.
+         */
+        public long getPooledBuffers() {
+            return pooledBuffers;
+        }
+
+        /**
+         * Number of bytes currently held by the pool.
+         */
+        public long getPooledBytes() {
+            return pooledBytes;
+        }
+
+        @Override
+        public String toString() {
+            return "PoolStatistics[hits=" + hits +
+                ", misses=" + misses +
+                ", returns=" + returns +
+                ", discards=" + discards +
+                ", grows=" + grows +
+                ", pooledBuffers=" + pooledBuffers +
+                ", pooledBytes=" + pooledBytes + "]";
+        }
+    }
+
     /**
      * Check the total capacity of a buffer object.
      *
@@ -59,6 +206,88 @@ public class Buffer {
      */
     public static native long Write(BufferProxy buf, byte[] input);
 
+    /**
+     * Read up to dst.remaining() bytes from the buffer into the specified
+     * ByteBuffer, advancing its position by the number of bytes read.
+     *
+     * When dst is a direct buffer, bytes are copied straight from the
+     * native buffer into dst's memory; when dst is backed by an accessible
+     * array, bytes are copied straight into that array. Neither case
+     * allocates an intermediate array. Returns the number of bytes read.
+     *
+     * See also: jb_read in org/mozilla/jss/ssl/javax/j_buffer.h
+     */
+    public static int Read(BufferProxy buf, ByteBuffer dst) {
+        int pos = dst.position();
+        int length = dst.remaining();
+        if (length == 0) {
+            return 0;
+        }
+
+        long read;
+        if (dst.isDirect()) {
+            read = ReadDirect(buf, dst, pos, length);
+        } else if (dst.hasArray()) {
+            read = ReadArray(buf, dst.array(), dst.arrayOffset() + pos, length);
+        } else {
+            byte[] data = Read(buf, length);
+            dst.put(data);
+            return data.length;
+        }
+
+        if (read <= 0) {
+            return 0;
+        }
+
+        dst.position(pos + (int) read);
+        return (int) read;
+    }
+
+    /**
+     * Write up to src.remaining() bytes from the specified ByteBuffer into
+     * the buffer, advancing src's position by the number of bytes written.
+     *
+     * As with Read(BufferProxy, ByteBuffer), direct and array-backed
+     * ByteBuffers are copied into the native buffer without an intermediate
+     * allocation. Returns the number of bytes written.
+     *
+     * See also: jb_write in org/mozilla/jss/ssl/javax/j_buffer.h
+     */
+    public static int Write(BufferProxy buf, ByteBuffer src) {
+        int pos = src.position();
+        int length = src.remaining();
+        if (length == 0) {
+            return 0;
+        }
+
+        long written;
+        if (src.isDirect()) {
+            written = WriteDirect(buf, src, pos, length);
+        } else if (src.hasArray()) {
+            written = WriteArray(buf, src.array(), src.arrayOffset() + pos, length);
+        } else {
+            // Read-only heap buffers don't expose their backing array, so
+            // fall back to copying through a temporary array.
+            int capacity = (int) Math.min(WriteCapacity(buf), length);
+            byte[] data = new byte[capacity];
+            src.get(data);
+            written = Write(buf, data);
+            src.position(pos);
+        }
+
+        if (written <= 0) {
+            return 0;
+        }
+
+        src.position(pos + (int) written);
+        return (int) written;
+    }
+
+    private static native long ReadDirect(BufferProxy buf, ByteBuffer dst, int offset, int length);
+    private static native long ReadArray(BufferProxy buf, byte[] dst, int offset, int length);
+    private static native long WriteDirect(BufferProxy buf, ByteBuffer src, int offset, int length);
+    private static native long WriteArray(BufferProxy buf, byte[] src, int offset, int length);
+
     /**
      * Get a single character from the buffer.
      *
@@ -74,9 +303,10 @@ public class Buffer {
     public static native int Put(BufferProxy buf, byte input);
 
     /**
-     * Destroy a buffer object, freeing its resources.
+     * Destroy a buffer object, zeroing it and returning it to the buffer
+     * pool (or freeing it when the pool is full).
      *
-     * See also: jb_free in org/mozilla/jss/ssl/javax/j_buffer.h
+     * See also: jb_pool_release in org/mozilla/jss/ssl/javax/j_buffer.h
      */
     public static native void Free(BufferProxy buf);
 }
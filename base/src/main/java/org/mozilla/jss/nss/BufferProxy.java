@@ -2,7 +2,7 @@ package org.mozilla.jss.nss;
 
 public class BufferProxy extends org.mozilla.jss.util.NativeProxy {
     public BufferProxy(byte[] pointer) {
-        super(pointer);
+        super(pointer, BufferProxy::releaseNativeResources);
     }
 
     /**
@@ -16,8 +16,8 @@ public class BufferProxy extends org.mozilla.jss.util.NativeProxy {
         Buffer.Free(this);
     }
 
-    @Override
-    protected void finalize() throws Throwable {
-        super.finalize();
-    }
+    /**
+     * Frees the buffer of a proxy which wasn't closed.
+     */
+    private static native void releaseNativeResources(long pointer);
 }
@@ -1,5 +1,7 @@
 package org.mozilla.jss.nss;
 
+import java.nio.ByteBuffer;
+
 /**
  * This class provides static access to raw NSPS calls with the PR prefix,
  * and handles the usage of NativeProxy objects.
@@ -117,6 +119,45 @@ public class PR {
      */
     public static native byte[] Read(PRFDProxy fd, int amount);
 
+    /**
+     * Read up to dst.remaining() bytes from a PRFDProxy into the specified
+     * ByteBuffer, advancing its position by the number of bytes read.
+     *
+     * When dst is a direct buffer, NSPR reads straight into its memory.
+     * Otherwise, the data is copied into dst's backing array without
+     * allocating a new Java array. Returns the number of bytes read, zero
+     * on end of data, or -1 on error (see GetError()).
+     *
+     * See also: PR_Read in /usr/include/nspr4/prio.h
+     */
+    public static int Read(PRFDProxy fd, ByteBuffer dst) {
+        int pos = dst.position();
+        int amount = dst.remaining();
+
+        int read;
+        if (dst.isDirect()) {
+            read = ReadDirect(fd, dst, pos, amount);
+        } else if (dst.hasArray()) {
+            read = ReadArray(fd, dst.array(), dst.arrayOffset() + pos, amount);
+        } else {
+            byte[] data = Read(fd, amount);
+            if (data == null) {
+                return -1;
+            }
+            dst.put(data);
+            return data.length;
+        }
+
+        if (read > 0) {
+            dst.position(pos + read);
+        }
+
+        return read;
+    }
+
+    private static native int ReadDirect(PRFDProxy fd, ByteBuffer dst, int offset, int amount);
+    private static native int ReadArray(PRFDProxy fd, byte[] dst, int offset, int amount);
+
     /**
      * Recv up to amount bytes from a PRFDProxy, given the specified receive
      * flags and timeout value.
@@ -136,6 +177,109 @@ public class PR {
      */
     public static native int Write(PRFDProxy fd, byte[] buf);
 
+    /**
+     * Write up to src.remaining() bytes from the specified ByteBuffer to the
+     * PRFDProxy, advancing src's position by the number of bytes written.
+     *
+     * When src is a direct buffer, NSPR reads straight from its memory.
+     * Returns the number of bytes written, or a negative value on error
+     * (see GetError()).
+     *
+     * See also: PR_Write in /usr/include/nspr4/prio.h
+     */
+    public static int Write(PRFDProxy fd, ByteBuffer src) {
+        int pos = src.position();
+        int amount = src.remaining();
+
+        int written;
+        if (src.isDirect()) {
+            written = WriteDirect(fd, src, pos, amount);
+        } else if (src.hasArray()) {
+            written = WriteArray(fd, src.array(), src.arrayOffset() + pos, amount);
+        } else {
+            byte[] data = new byte[amount];
+            src.get(data);
+            src.position(pos);
+            written = Write(fd, data);
+        }
+
+        if (written > 0) {
+            src.position(pos + written);
+        }
+
+        return written;
+    }
+
+    private static native int WriteDirect(PRFDProxy fd, ByteBuffer src, int offset, int amount);
+    private static native int WriteArray(PRFDProxy fd, byte[] src, int offset, int amount);
+
+    /**
+     * Write up to limit bytes, gathered from srcs[offset] through
+     * srcs[offset + length - 1], to the PRFDProxy, advancing the positions
+     * of the buffers by the number of bytes written. Null and empty
+     * buffers are skipped.
+     *
+     * Unlike PR_Writev, the buffers are gathered (through a fixed native
+     * buffer) into contiguous PR_Write calls of up to 16 KiB, the maximum
+     * TLS record size. On an SSL PRFileDesc, this makes NSS emit records
+     * as large as the write rather than (at least) one record per buffer.
+     *
+     * Returns the number of bytes written, or a negative value on error
+     * (see GetError()).
+     *
+     * See also: PR_Write in /usr/include/nspr4/prio.h
+     */
+    public static int Writev(PRFDProxy fd, ByteBuffer[] srcs, int offset, int length, int limit) {
+        Object[] data = new Object[length];
+        int[] offsets = new int[length];
+        int[] lengths = new int[length];
+        int count = 0;
+        int total = 0;
+
+        for (int i = offset; i < offset + length && total < limit; i++) {
+            ByteBuffer src = srcs[i];
+            if (src == null || !src.hasRemaining()) {
+                continue;
+            }
+
+            int amount = Math.min(src.remaining(), limit - total);
+            if (src.isDirect()) {
+                data[count] = src;
+                offsets[count] = src.position();
+            } else if (src.hasArray()) {
+                data[count] = src.array();
+                offsets[count] = src.arrayOffset() + src.position();
+            } else {
+                byte[] copy = new byte[amount];
+                src.duplicate().get(copy);
+                data[count] = copy;
+                offsets[count] = 0;
+            }
+            lengths[count] = amount;
+
+            count += 1;
+            total += amount;
+        }
+
+        int written = WritevNative(fd, data, offsets, lengths, count);
+
+        int remaining = written;
+        for (int i = offset; i < offset + length && remaining > 0; i++) {
+            ByteBuffer src = srcs[i];
+            if (src == null) {
+                continue;
+            }
+
+            int amount = Math.min(src.remaining(), remaining);
+            src.position(src.position() + amount);
+            remaining -= amount;
+        }
+
+        return written;
+    }
+
+    private static native int WritevNative(PRFDProxy fd, Object[] data, int[] offsets, int[] lengths, int count);
+
     /**
      * Send the specified bytes via the PRFDProxy, given the specified
      * send flags and timeout value.
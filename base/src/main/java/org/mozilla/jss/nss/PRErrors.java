@@ -21,6 +21,14 @@ public class PRErrors {
      */
     public static final int SOCKET_SHUTDOWN_ERROR = getSocketShutdownError();
 
+    /**
+     * The operation timed out.
+     *
+     * See also: PR_IO_TIMEOUT_ERROR in /usr/include/nspr4/prerr.h
+     */
+    public static final int IO_TIMEOUT_ERROR = getIOTimeoutError();
+
     private static native int getWouldBlockError();
     private static native int getSocketShutdownError();
+    private static native int getIOTimeoutError();
 }
@@ -2,7 +2,7 @@ package org.mozilla.jss.nss;
 
 public class PRFDProxy extends org.mozilla.jss.util.NativeProxy {
     public PRFDProxy(byte[] pointer) {
-        super(pointer);
+        super(pointer, PRFDProxy::releaseNativeResources);
     }
 
     @Override
@@ -10,8 +10,8 @@ public class PRFDProxy extends org.mozilla.jss.util.NativeProxy {
         PR.Close(this);
     }
 
-    @Override
-    protected void finalize() throws Throwable {
-        super.finalize();
-    }
+    /**
+     * Closes the PRFileDesc of a proxy which wasn't closed.
+     */
+    private static native void releaseNativeResources(long pointer);
 }
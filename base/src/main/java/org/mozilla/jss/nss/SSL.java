@@ -5,6 +5,7 @@ package org.mozilla.jss.nss;
  * and handles the usage of NativeProxy objects.
  */
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 
 import org.mozilla.jss.pkcs11.PK11Cert;
@@ -153,6 +154,14 @@ public class SSL {
      */
     public static final int REQUIRE_NO_ERROR = getSSLRequireNoError();
 
+    /**
+     * Option for disabling the session cache. Value for use with OptionGet
+     * and OptionSet.
+     *
+     * See also: SSL_NO_CACHE in /usr/include/nss3/ssl.h
+     */
+    public static final int NO_CACHE = getSSLNoCache();
+
     /**
      * Import a file descriptor to create a new SSL file descriptor out of it.
      *
@@ -198,6 +207,14 @@ public class SSL {
      */
     public static native int SetURL(SSLFDProxy fd, String url);
 
+    /**
+     * Set the peer ID used to look up and store sessions in NSS's client
+     * session cache for the specified PRFileDesc.
+     *
+     * See also: SSL_SetSockPeerID in /usr/include/nss3/ssl.h
+     */
+    public static native int SetSockPeerID(SSLFDProxy fd, String peerID);
+
     /**
      * Set the preference for a specific cipher suite on the specified
      * PRFileDesc.
@@ -249,6 +266,35 @@ public class SSL {
      */
     private static native int VersionRangeSetNative(SSLFDProxy fd, int min_ssl, int max_ssl);
 
+    /**
+     * Apply a version range, cipher suite preferences and options to the
+     * specified PRFileDesc in a single call.
+     *
+     * When range is not null, it is applied as with VersionRangeSet. When
+     * ciphers is not null, all implemented cipher suites are disabled and
+     * only the given cipher suite IDs are enabled; suites which can't be
+     * enabled (e.g., due to local policy) are skipped. Options are given
+     * as consecutive (option, value) pairs and applied in order as with
+     * OptionSet; the first failure stops and returns SECFailure.
+     *
+     * See also: SSL_VersionRangeSet, SSL_CipherPrefSet and SSL_OptionSet
+     * in /usr/include/nss3/ssl.h
+     */
+    public static int ApplyProfile(SSLFDProxy fd, SSLVersionRange range, int[] ciphers, int[] options) {
+        if (range == null) {
+            return ApplyProfileNative(fd, -1, -1, ciphers, options);
+        }
+
+        return ApplyProfileNative(fd, range.getMinEnum(), range.getMaxEnum(), ciphers, options);
+    }
+
+    /**
+     * Apply a version range, cipher suite preferences and options. The
+     * version parameters are values of the SSLVersion enum, or -1 to
+     * leave the version range alone.
+     */
+    private static native int ApplyProfileNative(SSLFDProxy fd, int min_ssl, int max_ssl, int[] ciphers, int[] options);
+
     /**
      * Get the range of TLS versions enabled by this server.
      *
@@ -341,6 +387,114 @@ public class SSL {
      */
     public static native int ReHandshake(SSLFDProxy fd, boolean flushCache);
 
+    /**
+     * Bytes consumed from src by UnwrapStep or WrapStep; index into their
+     * result array.
+     */
+    public static final int STEP_CONSUMED = 0;
+
+    /**
+     * Bytes produced into dst by UnwrapStep or WrapStep; index into their
+     * result array.
+     */
+    public static final int STEP_PRODUCED = 1;
+
+    /**
+     * NSPR error which stopped UnwrapStep or WrapStep, or zero; index into
+     * their result array. PR_WOULD_BLOCK_ERROR is never reported.
+     */
+    public static final int STEP_ERROR = 2;
+
+    /**
+     * Bytes left in the read buffer after UnwrapStep or WrapStep; index
+     * into their result array.
+     */
+    public static final int STEP_READ_PENDING = 3;
+
+    /**
+     * Bytes left in the write buffer after UnwrapStep or WrapStep; index
+     * into their result array.
+     */
+    public static final int STEP_WRITE_PENDING = 4;
+
+    /**
+     * Size of the result array of UnwrapStep and WrapStep.
+     */
+    public static final int STEP_RESULT_SIZE = 5;
+
+    /**
+     * Whether UnwrapStep and WrapStep can use the given ByteBuffer: it must
+     * be direct or have an accessible backing array.
+     */
+    public static boolean CanStep(ByteBuffer buffer) {
+        return buffer != null && (buffer.isDirect() || buffer.hasArray());
+    }
+
+    /**
+     * Unwrap in a single native call: repeatedly write ciphertext from src
+     * into read_buf (the read side of the Buffer-backed fd) and read the
+     * decrypted data from fd into dst, until neither makes progress. The
+     * positions of src and dst are advanced accordingly.
+     *
+     * The byte counts, the error which stopped the step (if any) and the
+     * data left in read_buf and write_buf are stored in result; see the
+     * STEP_* indices. Both buffers must satisfy CanStep(...).
+     *
+     * Returns SECFailure only when the arguments can't be dereferenced.
+     *
+     * See also: PR_Read in /usr/include/nspr4/prio.h
+     */
+    public static int UnwrapStep(SSLFDProxy fd, BufferProxy read_buf, BufferProxy write_buf, ByteBuffer src, ByteBuffer dst, int[] result) {
+        int ret = UnwrapStepNative(fd, read_buf, write_buf,
+            stepData(src), stepOffset(src), src.remaining(),
+            stepData(dst), stepOffset(dst), dst.remaining(), result);
+
+        if (ret == SECSuccess) {
+            src.position(src.position() + result[STEP_CONSUMED]);
+            dst.position(dst.position() + result[STEP_PRODUCED]);
+        }
+
+        return ret;
+    }
+
+    private static native int UnwrapStepNative(SSLFDProxy fd, BufferProxy read_buf, BufferProxy write_buf,
+        Object src, int src_offset, int src_length, Object dst, int dst_offset, int dst_length, int[] result);
+
+    /**
+     * Wrap in a single native call: repeatedly write application data from
+     * src to fd, at most max_write bytes per PR_Write, and read the
+     * resulting records from write_buf (the write side of the
+     * Buffer-backed fd) into dst, until neither makes progress. The
+     * positions of src and dst are advanced accordingly.
+     *
+     * Results are stored as with UnwrapStep(...).
+     *
+     * See also: PR_Write in /usr/include/nspr4/prio.h
+     */
+    public static int WrapStep(SSLFDProxy fd, BufferProxy read_buf, BufferProxy write_buf, ByteBuffer src, ByteBuffer dst, int max_write, int[] result) {
+        int ret = WrapStepNative(fd, read_buf, write_buf,
+            stepData(src), stepOffset(src), src.remaining(),
+            stepData(dst), stepOffset(dst), dst.remaining(), max_write, result);
+
+        if (ret == SECSuccess) {
+            src.position(src.position() + result[STEP_CONSUMED]);
+            dst.position(dst.position() + result[STEP_PRODUCED]);
+        }
+
+        return ret;
+    }
+
+    private static native int WrapStepNative(SSLFDProxy fd, BufferProxy read_buf, BufferProxy write_buf,
+        Object src, int src_offset, int src_length, Object dst, int dst_offset, int dst_length, int max_write, int[] result);
+
+    private static Object stepData(ByteBuffer buffer) {
+        return buffer.isDirect() ? buffer : buffer.array();
+    }
+
+    private static int stepOffset(ByteBuffer buffer) {
+        return buffer.isDirect() ? buffer.position() : buffer.arrayOffset() + buffer.position();
+    }
+
     /**
      * Force a handshake to occur if not started, else step one.
      *
@@ -537,4 +691,5 @@ public class SSL {
     private static native int getSSLRequireAlways();
     private static native int getSSLRequireFirstHandshake();
     private static native int getSSLRequireNoError();
+    private static native int getSSLNoCache();
 }
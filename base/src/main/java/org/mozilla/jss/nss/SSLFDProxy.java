@@ -69,12 +69,37 @@ public class SSLFDProxy extends PRFDProxy implements SSLSocketListener {
     }
 
     @Override
-    public void alertReceived(SSLAlertEvent event) {
+    public synchronized void alertReceived(SSLAlertEvent event) {
         inboundAlerts.add(event);
     }
 
     @Override
-    public void alertSent(SSLAlertEvent event) {
+    public synchronized void alertSent(SSLAlertEvent event) {
         outboundAlerts.add(event);
     }
+
+    /**
+     * Returns the next inbound alert after inboundOffset (advancing it), or
+     * null when there is none. Safe to call while another thread reads from
+     * or writes to this PRFileDesc.
+     */
+    public synchronized SSLAlertEvent nextInboundAlert() {
+        if (inboundOffset >= inboundAlerts.size()) {
+            return null;
+        }
+
+        return inboundAlerts.get(inboundOffset++);
+    }
+
+    /**
+     * Returns the next outbound alert after outboundOffset (advancing it),
+     * or null when there is none; see nextInboundAlert().
+     */
+    public synchronized SSLAlertEvent nextOutboundAlert() {
+        if (outboundOffset >= outboundAlerts.size()) {
+            return null;
+        }
+
+        return outboundAlerts.get(outboundOffset++);
+    }
 }
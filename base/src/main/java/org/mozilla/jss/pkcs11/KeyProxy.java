@@ -5,12 +5,7 @@ package org.mozilla.jss.pkcs11;
 
 abstract class KeyProxy extends org.mozilla.jss.util.NativeProxy {
 
-    protected KeyProxy(byte[] pointer) {
-        super(pointer);
-    }
-
-    @Override
-    protected void finalize() throws Throwable {
-        super.finalize();
+    protected KeyProxy(byte[] pointer, Releaser releaser) {
+        super(pointer, releaser);
     }
 }
@@ -8,14 +8,8 @@ import org.mozilla.jss.util.*;
 
 final class ModuleProxy extends NativeProxy {
     ModuleProxy(byte[] pointer) {
-        super(pointer);
+        super(pointer, ModuleProxy::releaseNativeResources);
     }
 
-    @Override
-    protected native void releaseNativeResources();
-
-    @Override
-    protected void finalize() throws Throwable {
-        super.finalize();
-    }
+    private static native void releaseNativeResources(long pointer);
 }
@@ -0,0 +1,242 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.jss.pkcs11;
+
+import java.security.InvalidKeyException;
+import java.util.Objects;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.ShortBufferException;
+
+import org.mozilla.jss.crypto.CryptoToken;
+import org.mozilla.jss.crypto.SymmetricKey;
+import org.mozilla.jss.crypto.TokenException;
+
+/**
+ * AEAD encryption (AES-GCM, ChaCha20-Poly1305) through the NSS message
+ * interface.
+ *
+ * A context is bound to a key and a direction when it is initialized and
+ * can then process any number of messages, each with its own IV and AAD,
+ * in a single PK11_AEADOp(...) call. Ciphertexts are returned with the tag
+ * appended, as in the JCA.
+ */
+public final class PK11AEADCipher implements AutoCloseable {
+
+    // set once in the constructor
+    private long mechanism;
+
+    // set with initXXX()
+    private SymmetricKey key;
+
+    // set with initXXX()
+    private CipherContextProxy contextProxy;
+
+    // set with initXXX()
+    private boolean encrypt;
+
+    /**
+     * @param mechanism PKCS #11 AEAD mechanism, i.e.,
+     *     PKCS11Constants.CKM_AES_GCM or
+     *     PKCS11Constants.CKM_CHACHA20_POLY1305.
+     */
+    public PK11AEADCipher(long mechanism) {
+        if (mechanism != PKCS11Constants.CKM_AES_GCM
+                && mechanism != PKCS11Constants.CKM_CHACHA20_POLY1305) {
+            throw new IllegalArgumentException(
+                "Expected an AEAD mechanism: 0x" + Long.toHexString(mechanism));
+        }
+        this.mechanism = mechanism;
+    }
+
+    public long getMechanism() {
+        return mechanism;
+    }
+
+    public SymmetricKey getKey() {
+        return key;
+    }
+
+    public boolean isEncrypting() {
+        return contextProxy != null && encrypt;
+    }
+
+    public void initEncrypt(SymmetricKey key)
+        throws InvalidKeyException, TokenException
+    {
+        init(true, key);
+    }
+
+    public void initDecrypt(SymmetricKey key)
+        throws InvalidKeyException, TokenException
+    {
+        init(false, key);
+    }
+
+    private void init(boolean encrypt, SymmetricKey key)
+        throws InvalidKeyException, TokenException
+    {
+        if (key == null) {
+            throw new InvalidKeyException("Key is null");
+        }
+        if (!(key instanceof PK11SymKey)) {
+            throw new InvalidKeyException("Key is not a PKCS #11 key");
+        }
+
+        // A message context handles any number of messages, so it only
+        // has to be recreated when the key or the direction changes.
+        if (contextProxy != null && key == this.key && encrypt == this.encrypt) {
+            return;
+        }
+
+        release();
+        contextProxy = initContext(encrypt, key, mechanism);
+        this.key = key;
+        this.encrypt = encrypt;
+    }
+
+    /**
+     * Returns the exact output size of encrypt() or decrypt() for the
+     * given input length (including the tag when decrypting).
+     */
+    public int getOutputSize(int inputLength, int tagLength) {
+        checkState();
+        if (encrypt) {
+            return inputLength + tagLength;
+        }
+        return Math.max(0, inputLength - tagLength);
+    }
+
+    /**
+     * Encrypts a message into the output array, followed by a tag of
+     * tagLength bytes.
+     *
+     * @return The number of bytes written.
+     */
+    public int encrypt(byte[] iv, byte[] aad, int aadLength,
+            byte[] input, int inputOffset, int inputLength,
+            byte[] output, int outputOffset, int tagLength)
+        throws ShortBufferException, TokenException
+    {
+        checkState();
+        if (!encrypt) {
+            throw new IllegalStateException("Cipher is not initialized for encryption");
+        }
+        try {
+            return process(iv, aad, aadLength, input, inputOffset, inputLength,
+                output, outputOffset, tagLength);
+        } catch (AEADBadTagException e) {
+            // only thrown when decrypting
+            throw new TokenException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Decrypts a message whose last tagLength bytes are the tag into the
+     * output array.
+     *
+     * @return The number of bytes written.
+     * @throws AEADBadTagException If the tag does not match.
+     */
+    public int decrypt(byte[] iv, byte[] aad, int aadLength,
+            byte[] input, int inputOffset, int inputLength,
+            byte[] output, int outputOffset, int tagLength)
+        throws ShortBufferException, AEADBadTagException, TokenException
+    {
+        checkState();
+        if (encrypt) {
+            throw new IllegalStateException("Cipher is not initialized for decryption");
+        }
+        if (inputLength < tagLength) {
+            throw new AEADBadTagException("Input is shorter than the tag");
+        }
+        return process(iv, aad, aadLength, input, inputOffset, inputLength,
+            output, outputOffset, tagLength);
+    }
+
+    private int process(byte[] iv, byte[] aad, int aadLength,
+            byte[] input, int inputOffset, int inputLength,
+            byte[] output, int outputOffset, int tagLength)
+        throws ShortBufferException, AEADBadTagException, TokenException
+    {
+        Objects.requireNonNull(iv, "IV is null");
+        if (aad == null) {
+            aad = new byte[0];
+        }
+        Objects.checkFromIndexSize(0, aadLength, aad.length);
+        Objects.checkFromIndexSize(inputOffset, inputLength, input.length);
+        if (tagLength <= 0) {
+            throw new IllegalArgumentException("Expected a positive tag length: " + tagLength);
+        }
+
+        int needed = getOutputSize(inputLength, tagLength);
+        if (outputOffset < 0 || output.length - outputOffset < needed) {
+            throw new ShortBufferException(
+                "Output buffer too small: need " + needed + " bytes");
+        }
+
+        return aeadOp(contextProxy, encrypt, iv, aad, aadLength,
+            input, inputOffset, inputLength, output, outputOffset, tagLength);
+    }
+
+    /**
+     * Imports raw key bits onto the token for use with the given AEAD
+     * mechanism. This is how ChaCha20 keys, which have no JSS key type,
+     * get into NSS.
+     */
+    public static SymmetricKey importKey(CryptoToken token, byte[] keyBits,
+            long mechanism)
+        throws InvalidKeyException, TokenException
+    {
+        if (!(token instanceof PK11Token pk11Token)) {
+            throw new InvalidKeyException("Token is not a PKCS #11 token");
+        }
+        if (keyBits == null || keyBits.length == 0) {
+            throw new InvalidKeyException("Key is empty");
+        }
+        return importKeyBits(pk11Token, keyBits, mechanism);
+    }
+
+    private void checkState() {
+        if (contextProxy == null) {
+            throw new IllegalStateException("Cipher not initialized");
+        }
+    }
+
+    private void release() throws TokenException {
+        if (contextProxy != null) {
+            try {
+                contextProxy.close();
+            } catch (Exception e) {
+                throw new TokenException("Unable to release AEAD context: " + e.getMessage(), e);
+            } finally {
+                contextProxy = null;
+                key = null;
+            }
+        }
+    }
+
+    private static native CipherContextProxy
+    initContext(boolean encrypt, SymmetricKey key, long mechanism)
+        throws TokenException;
+
+    // Runs one AEAD operation into the output, which must be
+    // large enough for the result; returns the number of bytes written.
+    // When decrypting, the tag is the last tagLength bytes of the input.
+    private static native int
+    aeadOp(CipherContextProxy context, boolean encrypt, byte[] iv,
+            byte[] aad, int aadLength, byte[] input, int inputOffset,
+            int inputLength, byte[] output, int outputOffset, int tagLength)
+        throws TokenException, AEADBadTagException;
+
+    private static native SymmetricKey
+    importKeyBits(PK11Token token, byte[] keyBits, long mechanism)
+        throws TokenException;
+
+    @Override
+    public void close() throws TokenException {
+        release();
+    }
+}
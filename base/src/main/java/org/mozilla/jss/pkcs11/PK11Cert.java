@@ -19,6 +19,7 @@ import java.util.Arrays;
 import java.util.Date;
 import java.util.Set;
 
+import org.mozilla.jss.CryptoManager;
 import org.mozilla.jss.crypto.CryptoToken;
 import org.mozilla.jss.crypto.X509Certificate;
 import org.mozilla.jss.netscape.security.x509.X509CertImpl;
@@ -432,11 +433,6 @@ public class PK11Cert
         }
     }
 
-    @Override
-    public void finalize() throws Throwable {
-        close();
-    }
-
     @Override
     public void close() throws Exception {
         if (certProxy != null) {
@@ -476,7 +472,15 @@ public class PK11Cert
     ///////////////////////////////////////////////////////////////////////
 
     @Override
-    public native void setTrust(int type, int trust);
+    public void setTrust(int type, int trust) {
+        try {
+            setTrustNative(type, trust);
+        } finally {
+            CryptoManager.trustChanged();
+        }
+    }
+
+    private native void setTrustNative(int type, int trust);
 
     @Override
     public native int getTrust(int type);
@@ -512,9 +516,8 @@ class CertProxy extends org.mozilla.jss.util.NativeProxy {
     public static Logger logger = LoggerFactory.getLogger(CertProxy.class);
 
     public CertProxy(byte[] pointer) {
-        super(pointer);
+        super(pointer, CertProxy::releaseNativeResources);
     }
 
-    @Override
-    protected native void releaseNativeResources();
+    private static native void releaseNativeResources(long pointer);
 }
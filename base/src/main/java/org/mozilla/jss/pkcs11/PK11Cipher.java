@@ -4,12 +4,17 @@
 
 package org.mozilla.jss.pkcs11;
 
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.security.spec.AlgorithmParameterSpec;
+import java.util.Arrays;
+import java.util.Objects;
 
 import javax.crypto.BadPaddingException;
+import javax.crypto.ShortBufferException;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.RC2ParameterSpec;
 
@@ -42,6 +47,13 @@ public final class PK11Cipher
     // set with initXXX()
     private CipherContextProxy contextProxy = null;
 
+    // set with initXXX()
+    private boolean padded;
+
+    // number of input bytes the context holds back, e.g., the last block
+    // when decrypting with padding; modified by various operations
+    private int buffered;
+
     // modified by various operations
     private int state=UNINITIALIZED;
 
@@ -104,6 +116,7 @@ public final class PK11Cipher
         this.key = key;
         this.parameters = parameters;
         state = ENCRYPT;
+        padded = algorithm.isPadded();
 
         if( parameters instanceof RC2ParameterSpec ) {
             contextProxy = initContextWithKeyBits(
@@ -134,6 +147,7 @@ public final class PK11Cipher
         this.key = key;
         this.parameters = parameters;
         state = DECRYPT;
+        padded = algorithm.isPadded();
 
         if( parameters instanceof RC2ParameterSpec ) {
             contextProxy = initContextWithKeyBits(
@@ -150,74 +164,223 @@ public final class PK11Cipher
     public byte[] update(byte[] bytes)
         throws IllegalStateException, TokenException
     {
-        if( state == UNINITIALIZED ) {
-            throw new IllegalStateException();
-        }
-
-        return updateContext( contextProxy, bytes, algorithm.getBlockSize());
+        return update(bytes, 0, bytes.length);
     }
 
     @Override
     public byte[] update(byte[] bytes, int offset, int length)
         throws IllegalStateException, TokenException
     {
-        byte[] sub = new byte[length];
+        byte[] output = new byte[buffered + length];
+        try {
+            int written = update(bytes, offset, length, output, 0);
+            return trim(output, written);
+        } catch (ShortBufferException e) {
+            // output is always large enough
+            throw new RuntimeException(e);
+        }
+    }
 
-        System.arraycopy( bytes, offset, sub, 0, length );
+    @Override
+    public int update(byte[] input, int inputOffset, int inputLength,
+            byte[] output, int outputOffset)
+        throws IllegalStateException, ShortBufferException, TokenException
+    {
+        checkState();
+        Objects.checkFromIndexSize(inputOffset, inputLength, input.length);
+        Objects.checkFromIndexSize(outputOffset, 0, output.length);
+
+        int available = output.length - outputOffset;
+        checkOutputSize(buffered + inputLength, available);
+        if (inputLength == 0) {
+            return 0;
+        }
 
-        return update(sub);
+        int written = updateContextArray(contextProxy, input, inputOffset,
+                inputLength, output, outputOffset, available);
+        buffered += inputLength - written;
+        return written;
     }
 
-    /**
-     * @deprecated isPadded() in EncryptionAlgorithm has been deprecated
-     */
     @Override
-    @Deprecated
-    public byte[] doFinal(byte[] bytes)
-        throws IllegalStateException, IllegalBlockSizeException,
-        BadPaddingException, TokenException
+    public int update(ByteBuffer input, ByteBuffer output)
+        throws IllegalStateException, ShortBufferException, TokenException
     {
-        if( state == UNINITIALIZED ) {
-            throw new IllegalStateException();
+        checkState();
+
+        if (output.isReadOnly()) {
+            throw new ReadOnlyBufferException();
         }
 
-        byte[] first = update(bytes);
+        int inputLength = input.remaining();
+        int available = output.remaining();
+        checkOutputSize(buffered + inputLength, available);
+        if (inputLength == 0) {
+            return 0;
+        }
 
-        byte[] last = finalizeContext(contextProxy, algorithm.getBlockSize(),
-                    algorithm.isPadded() );
+        int written;
+        if (input.isDirect() && output.isDirect()) {
+            written = updateContextDirect(contextProxy, input, input.position(),
+                    inputLength, output, output.position(), available);
+        } else if (input.hasArray() && output.hasArray()) {
+            written = updateContextArray(contextProxy,
+                    input.array(), input.arrayOffset() + input.position(), inputLength,
+                    output.array(), output.arrayOffset() + output.position(), available);
+        } else {
+            byte[] bytes = new byte[inputLength];
+            input.duplicate().get(bytes);
+            byte[] result = updateContext(contextProxy, bytes, algorithm.getBlockSize());
+            output.duplicate().put(result);
+            written = result.length;
+        }
 
-        byte[] combined = new byte[ first.length+last.length ];
-        System.arraycopy(first, 0, combined, 0, first.length);
-        System.arraycopy(last, 0, combined, first.length, last.length);
-        return combined;
+        buffered += inputLength - written;
+        input.position(input.limit());
+        output.position(output.position() + written);
+        return written;
     }
 
     @Override
-    public byte[] doFinal(byte[] bytes, int offset, int length)
+    public byte[] doFinal(byte[] bytes)
         throws IllegalStateException, IllegalBlockSizeException,
         BadPaddingException, TokenException
     {
-        byte[] sub = new byte[length];
+        return doFinal(bytes, 0, bytes.length);
+    }
 
-        System.arraycopy(bytes, offset, sub, 0, length);
+    @Override
+    public byte[] doFinal(byte[] bytes, int offset, int length)
+        throws IllegalStateException, IllegalBlockSizeException,
+        BadPaddingException, TokenException
+    {
+        checkState();
 
-        return doFinal(sub);
+        byte[] output = new byte[getOutputSize(length)];
+        try {
+            int written = doFinal(bytes, offset, length, output, 0);
+            return trim(output, written);
+        } catch (ShortBufferException e) {
+            // output is always large enough
+            throw new RuntimeException(e);
+        }
     }
 
-    /**
-     * @deprecated isPadded() in EncryptionAlgorithm has been deprecated
-     */
     @Override
-    @Deprecated
     public byte[] doFinal()
         throws IllegalStateException, IllegalBlockSizeException,
         BadPaddingException, TokenException
     {
+        return doFinal(new byte[0], 0, 0);
+    }
+
+    @Override
+    public int doFinal(byte[] input, int inputOffset, int inputLength,
+            byte[] output, int outputOffset)
+        throws IllegalStateException, IllegalBlockSizeException,
+        BadPaddingException, ShortBufferException, TokenException
+    {
+        checkState();
+        Objects.checkFromIndexSize(inputOffset, inputLength, input.length);
+        Objects.checkFromIndexSize(outputOffset, 0, output.length);
+
+        int available = output.length - outputOffset;
+        checkOutputSize(getOutputSize(inputLength), available);
+
+        int written = 0;
+        if (inputLength > 0) {
+            written = updateContextArray(contextProxy, input, inputOffset,
+                    inputLength, output, outputOffset, available);
+        }
+
+        written += finalizeContextArray(contextProxy, output,
+                outputOffset + written, available - written);
+        buffered = 0;
+        return written;
+    }
+
+    @Override
+    public int doFinal(ByteBuffer input, ByteBuffer output)
+        throws IllegalStateException, IllegalBlockSizeException,
+        BadPaddingException, ShortBufferException, TokenException
+    {
+        checkState();
+
+        if (output.isReadOnly()) {
+            throw new ReadOnlyBufferException();
+        }
+
+        int inputLength = input.remaining();
+        int available = output.remaining();
+        checkOutputSize(getOutputSize(inputLength), available);
+
+        int position = output.position();
+        int written;
+        if (input.isDirect() && output.isDirect()) {
+            written = inputLength == 0 ? 0 : updateContextDirect(contextProxy,
+                    input, input.position(), inputLength, output, position, available);
+            written += finalizeContextDirect(contextProxy, output,
+                    position + written, available - written);
+        } else if (input.hasArray() && output.hasArray()) {
+            int offset = output.arrayOffset() + position;
+            written = inputLength == 0 ? 0 : updateContextArray(contextProxy,
+                    input.array(), input.arrayOffset() + input.position(), inputLength,
+                    output.array(), offset, available);
+            written += finalizeContextArray(contextProxy, output.array(),
+                    offset + written, available - written);
+        } else {
+            byte[] bytes = new byte[inputLength];
+            input.duplicate().get(bytes);
+            byte[] first = updateContext(contextProxy, bytes, algorithm.getBlockSize());
+            byte[] last = finalizeContext(contextProxy, algorithm.getBlockSize(), padded);
+            ByteBuffer dup = output.duplicate();
+            dup.put(first);
+            dup.put(last);
+            written = first.length + last.length;
+        }
+
+        buffered = 0;
+        input.position(input.limit());
+        output.position(position + written);
+        return written;
+    }
+
+    /**
+     * Returns the maximum number of bytes a doFinal() call with the given
+     * amount of input can produce, taking into account the input held
+     * back by the context so far. An update() call produces at most
+     * getOutputSize(inputLength) - 1 bytes when padding is added, and
+     * no more than getOutputSize(inputLength) bytes otherwise.
+     */
+    public int getOutputSize(int inputLength) {
+        int total = buffered + inputLength;
+        int blockSize = algorithm.getBlockSize();
+        if (state == ENCRYPT && padded) {
+            return (total / blockSize + 1) * blockSize;
+        }
+        return total;
+    }
+
+    private void checkState() {
         if( state == UNINITIALIZED ) {
             throw new IllegalStateException();
         }
-        return finalizeContext(contextProxy, algorithm.getBlockSize(),
-                    algorithm.isPadded() );
+    }
+
+    private static void checkOutputSize(int needed, int available)
+        throws ShortBufferException
+    {
+        if (needed > available) {
+            throw new ShortBufferException(needed + " needed, " +
+                available + " supplied");
+        }
+    }
+
+    private static byte[] trim(byte[] output, int length) {
+        if (length == output.length) {
+            return output;
+        }
+        return Arrays.copyOf(output, length);
     }
 
     private static native CipherContextProxy
@@ -239,10 +402,36 @@ public final class PK11Cipher
     finalizeContext( CipherContextProxy context, int blocksize, boolean padded)
         throws TokenException, IllegalBlockSizeException, BadPaddingException;
 
+    // Process input straight into the caller's output, which must be
+    // large enough for the result; returns the number of bytes written.
+    private static native int
+    updateContextArray(CipherContextProxy context, byte[] input,
+            int inputOffset, int inputLength, byte[] output,
+            int outputOffset, int outputLength)
+        throws TokenException;
+
+    private static native int
+    updateContextDirect(CipherContextProxy context, ByteBuffer input,
+            int inputOffset, int inputLength, ByteBuffer output,
+            int outputOffset, int outputLength)
+        throws TokenException;
+
+    private static native int
+    finalizeContextArray(CipherContextProxy context, byte[] output,
+            int outputOffset, int outputLength)
+        throws TokenException;
+
+    private static native int
+    finalizeContextDirect(CipherContextProxy context, ByteBuffer output,
+            int outputOffset, int outputLength)
+        throws TokenException;
+
     private void reset() {
         parameters = null;
         key = null;
         IV = null;
+        padded = false;
+        buffered = 0;
         state = UNINITIALIZED;
         contextProxy = null;
     }
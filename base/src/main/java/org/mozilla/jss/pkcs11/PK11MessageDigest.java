@@ -5,23 +5,40 @@
 package org.mozilla.jss.pkcs11;
 
 import org.mozilla.jss.crypto.*;
+import java.nio.ByteBuffer;
 import java.security.DigestException;
 import java.security.NoSuchAlgorithmException;
 import java.security.InvalidKeyException;
+import java.util.Arrays;
 
 /**
  * Message Digesting with PKCS #11.
+ *
+ * The native context is created once and restarted with
+ * PK11_DigestBegin after each digest, reset, or initHMAC with the same
+ * key, so it is only recreated for a new HMAC key. The restart is folded
+ * into the next native call, and small updates are collected in Java
+ * and passed along with the final call, so a short message costs a
+ * single JNI call.
  */
 public final class PK11MessageDigest
     extends JSSMessageDigest
     implements java.lang.AutoCloseable
 {
+    // updates up to this size are collected in Java
+    static final int PENDING_SIZE = 512;
 
     private PK11Token token;
     private CipherContextProxy digestProxy;
     private PK11SymKey hmacKey;
     private DigestAlgorithm alg;
 
+    // whether the context must be restarted before its next use
+    private boolean needsBegin;
+
+    private byte[] pending;
+    private int pendingLen;
+
     PK11MessageDigest(PK11Token token, DigestAlgorithm alg)
         throws NoSuchAlgorithmException, DigestException
     {
@@ -48,8 +65,18 @@ public final class PK11MessageDigest
             throw new InvalidKeyException("HMAC key is not a PKCS #11 key");
         }
 
+        clearPending();
+
+        if (key == hmacKey && digestProxy != null) {
+            // same key: restart the existing context
+            needsBegin = true;
+            return;
+        }
+
+        closeContext();
         hmacKey = (PK11SymKey) key;
         this.digestProxy = initHMAC(token, alg, hmacKey);
+        needsBegin = false;
     }
 
     @Override
@@ -64,7 +91,37 @@ public final class PK11MessageDigest
                 "Input buffer is not large enough for offset and length");
         }
 
-        update(digestProxy, input, offset, len);
+        if (len <= PENDING_SIZE - pendingLen) {
+            addPending(input, offset, len);
+            return;
+        }
+
+        flushPending();
+
+        if (len <= PENDING_SIZE) {
+            addPending(input, offset, len);
+            return;
+        }
+
+        update(digestProxy, begin(), input, offset, len);
+        needsBegin = false;
+    }
+
+    @Override
+    public void update(ByteBuffer input) throws DigestException {
+        if (!input.isDirect()) {
+            super.update(input);
+            return;
+        }
+        if( digestProxy == null ) {
+            throw new DigestException("Digest not correctly initialized");
+        }
+
+        flushPending();
+
+        updateDirect(digestProxy, begin(), input, input.position(), input.remaining());
+        needsBegin = false;
+        input.position(input.limit());
     }
 
     @Override
@@ -79,27 +136,78 @@ public final class PK11MessageDigest
                 "Output buffer is not large enough for offset and length");
         }
 
-        int retval = digest(digestProxy, outbuf, offset, len);
+        if (pendingLen == 0) {
+            return digest(digestProxy, begin(), outbuf, offset, len);
+        }
+
+        try {
+            return digestArray(digestProxy, begin(), pending, 0, pendingLen,
+                    outbuf, offset, len);
+        } finally {
+            clearPending();
+        }
+    }
+
+    @Override
+    public int digest(byte[] input, int inOffset, int inLen,
+            byte[] outbuf, int offset, int len)
+        throws DigestException
+    {
+        if( digestProxy == null ) {
+            throw new DigestException("Digest not correctly initialized");
+        }
+        if( input.length < inOffset+inLen ) {
+            throw new IllegalArgumentException(
+                "Input buffer is not large enough for offset and length");
+        }
+        if( outbuf.length < offset+len ) {
+            throw new IllegalArgumentException(
+                "Output buffer is not large enough for offset and length");
+        }
+
+        if (pendingLen > 0) {
+            // keep the collected input in front of the final data
+            update(input, inOffset, inLen);
+            return digest(outbuf, offset, len);
+        }
 
-        reset();
+        return digestArray(digestProxy, begin(), input, inOffset, inLen,
+                outbuf, offset, len);
+    }
+
+    @Override
+    public byte[] digest(ByteBuffer input) throws DigestException {
+        if (!input.isDirect()) {
+            return super.digest(input);
+        }
+        if( digestProxy == null ) {
+            throw new DigestException("Digest not correctly initialized");
+        }
+
+        flushPending();
 
-        return retval;
+        byte[] output = new byte[getOutputSize()];
+        digestDirect(digestProxy, begin(), input, input.position(), input.remaining(),
+                output, 0, output.length);
+        input.position(input.limit());
+        return output;
     }
 
     @Override
     public void reset() throws DigestException {
-        if( ! (alg instanceof HMACAlgorithm || alg instanceof CMACAlgorithm) ) {
+        clearPending();
+
+        if (digestProxy != null) {
+            // restart the existing context, which keeps the HMAC key
+            needsBegin = true;
+        } else if( ! (alg instanceof HMACAlgorithm || alg instanceof CMACAlgorithm) ) {
             // This is a regular digest, so we have enough information
             // to initialize the context
             this.digestProxy = initDigest(alg);
-        } else if( hmacKey != null ) {
-            // This is an HMAC digest, and we have a key
-            this.digestProxy = initHMAC(token, alg, hmacKey);
-        } else {
-            // this is an HMAC digest for which we don't have the key yet,
-            // we have to wait to construct the context
-            this.digestProxy = null;
+            needsBegin = false;
         }
+        // otherwise this is an HMAC digest for which we don't have the
+        // key yet; we have to wait to construct the context
     }
 
     @Override
@@ -107,6 +215,57 @@ public final class PK11MessageDigest
         return alg;
     }
 
+    /**
+     * Returns whether the next native call must restart the context.
+     * Until that call succeeds, later calls must restart it too; after
+     * a digest, the context always needs to be restarted.
+     */
+    private boolean begin() {
+        boolean begin = needsBegin;
+        needsBegin = true;
+        return begin;
+    }
+
+    private void addPending(byte[] input, int offset, int len) {
+        if (pending == null) {
+            pending = new byte[PENDING_SIZE];
+        }
+        System.arraycopy(input, offset, pending, pendingLen, len);
+        pendingLen += len;
+    }
+
+    private void flushPending() throws DigestException {
+        if (pendingLen == 0) {
+            return;
+        }
+        try {
+            update(digestProxy, begin(), pending, 0, pendingLen);
+            needsBegin = false;
+        } finally {
+            clearPending();
+        }
+    }
+
+    private void clearPending() {
+        if (pendingLen > 0) {
+            Arrays.fill(pending, 0, pendingLen, (byte) 0);
+            pendingLen = 0;
+        }
+    }
+
+    private void closeContext() throws DigestException {
+        if (digestProxy == null) {
+            return;
+        }
+        try {
+            digestProxy.close();
+        } catch (Exception e) {
+            throw new DigestException("Unable to close digest context: " + e.getMessage());
+        } finally {
+            digestProxy = null;
+        }
+    }
+
     private static native CipherContextProxy
     initDigest(DigestAlgorithm alg)
         throws DigestException;
@@ -116,18 +275,31 @@ public final class PK11MessageDigest
         throws DigestException;
 
     private static native void
-    update(CipherContextProxy proxy, byte[] inbuf, int offset, int len);
+    update(CipherContextProxy proxy, boolean begin, byte[] inbuf, int offset, int len)
+        throws DigestException;
+
+    private static native void
+    updateDirect(CipherContextProxy proxy, boolean begin, ByteBuffer inbuf, int offset, int len)
+        throws DigestException;
 
     private static native int
-    digest(CipherContextProxy proxy, byte[] outbuf, int offset, int len);
+    digest(CipherContextProxy proxy, boolean begin, byte[] outbuf, int offset, int len)
+        throws DigestException;
 
-    @Override
-    public void finalize() throws Throwable {
-        close();
-    }
+    private static native int
+    digestArray(CipherContextProxy proxy, boolean begin, byte[] inbuf, int inOffset, int inLen,
+            byte[] outbuf, int outOffset, int outLen)
+        throws DigestException;
+
+    private static native int
+    digestDirect(CipherContextProxy proxy, boolean begin, ByteBuffer inbuf, int inOffset, int inLen,
+            byte[] outbuf, int outOffset, int outLen)
+        throws DigestException;
 
     @Override
     public void close() throws Exception {
+        clearPending();
+
         if (digestProxy != null) {
             try {
                 digestProxy.close();
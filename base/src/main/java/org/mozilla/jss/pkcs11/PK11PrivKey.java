@@ -173,9 +173,8 @@ class PrivateKeyProxy extends KeyProxy {
     public static Logger logger = LoggerFactory.getLogger(PrivateKeyProxy.class);
 
     public PrivateKeyProxy(byte[] pointer) {
-        super(pointer);
+        super(pointer, PrivateKeyProxy::releaseNativeResources);
     }
 
-    @Override
-    protected native void releaseNativeResources();
+    private static native void releaseNativeResources(long pointer);
 }
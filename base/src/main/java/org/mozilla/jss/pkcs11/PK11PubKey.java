@@ -104,9 +104,8 @@ class PublicKeyProxy extends KeyProxy {
     public static Logger logger = LoggerFactory.getLogger(PublicKeyProxy.class);
 
     public PublicKeyProxy(byte[] pointer) {
-        super(pointer);
+        super(pointer, PublicKeyProxy::releaseNativeResources);
     }
 
-    @Override
-    protected native void releaseNativeResources();
+    private static native void releaseNativeResources(long pointer);
 }
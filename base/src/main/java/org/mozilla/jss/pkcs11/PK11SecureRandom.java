@@ -4,14 +4,42 @@
 
 package org.mozilla.jss.pkcs11;
 
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.mozilla.jss.crypto.TokenException;
+import org.mozilla.jss.crypto.TokenRuntimeException;
+
 /**
  * A random number generator for PKCS #11.
  *
+ * All instances draw from the NSS RNG. To avoid a JNI transition per
+ * request, small requests (up to a quarter of the block size) are served
+ * from blocks drawn from the token in one call, held in a fixed number of
+ * lock-striped buffers so threads rarely contend. Served bytes are wiped
+ * from the buffers, and all buffered bytes are discarded when the RNG is
+ * seeded, when the block size changes, or on discardBuffers(), e.g.,
+ * after restoring a process snapshot.
+ *
+ * Deployments which require every request to be a direct token draw
+ * (e.g., for FIPS) can disable buffering with a block size of 0, via
+ * InitializationValues.randomBlockSize or jss.random.block_size.
+ *
  * @see org.mozilla.jss.CryptoManager
  */
 public final
 class PK11SecureRandom implements org.mozilla.jss.crypto.JSSSecureRandom
 {
+    public static final int DEFAULT_BLOCK_SIZE = 4096;
+
+    private static volatile int blockSize = DEFAULT_BLOCK_SIZE;
+
+    // bumped to invalidate all buffered bytes
+    private static final AtomicLong generation = new AtomicLong();
+
+    private static final Stripe[] stripes = createStripes();
+
     ////////////////////////////////////////////////////
     // construction and finalization
     ////////////////////////////////////////////////////
@@ -19,13 +47,61 @@ class PK11SecureRandom implements org.mozilla.jss.crypto.JSSSecureRandom
     public
     PK11SecureRandom() {}
 
+    private static Stripe[] createStripes() {
+        int count = Integer.highestOneBit(
+            Math.max(1, Runtime.getRuntime().availableProcessors()) * 2 - 1) * 2;
+        Stripe[] result = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            result[i] = new Stripe();
+        }
+        return result;
+    }
+
+    ////////////////////////////////////////////////////
+    //  configuration
+    ////////////////////////////////////////////////////
+
+    /**
+     * Sets the size of the blocks drawn from the token for small
+     * requests; 0 disables buffering. Discards all buffered bytes.
+     */
+    public static void setBlockSize(int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("Expected a non-negative block size: " + size);
+        }
+        blockSize = size;
+        discardBuffers();
+    }
+
+    public static int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * Discards all buffered random bytes, so that later requests are
+     * served from new token draws.
+     */
+    public static void discardBuffers() {
+        generation.incrementAndGet();
+    }
+
     ////////////////////////////////////////////////////
     //  public routines
     ////////////////////////////////////////////////////
 
     @Override
-    public synchronized native void
-    setSeed( byte[] seed );
+    public void
+    setSeed( byte[] seed )
+    {
+        try {
+            seedRandom(seed);
+        } catch (TokenException e) {
+            throw new TokenRuntimeException(e.getMessage());
+        }
+
+        // don't serve bytes drawn before the seed
+        discardBuffers();
+    }
 
     @Override
     public void
@@ -42,7 +118,73 @@ class PK11SecureRandom implements org.mozilla.jss.crypto.JSSSecureRandom
     }
 
     @Override
-    public synchronized native void
-    nextBytes( byte bytes[] );
-}
+    public void
+    nextBytes( byte bytes[] )
+    {
+        int size = blockSize;
+        if (size == 0 || bytes.length > size / 4) {
+            generate(bytes, 0, bytes.length);
+            return;
+        }
+
+        long id = Thread.currentThread().threadId();
+        Stripe stripe = stripes[Long.hashCode(id * 0x9E3779B97F4A7C15L) & (stripes.length - 1)];
+
+        stripe.lock.lock();
+        try {
+            stripe.next(bytes, size);
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    private static void generate(byte[] bytes, int offset, int length) {
+        if (length == 0) {
+            return;
+        }
+        try {
+            generateRandom(bytes, offset, length);
+        } catch (TokenException e) {
+            throw new TokenRuntimeException(e.getMessage());
+        }
+    }
+
+    private static final class Stripe {
+
+        final ReentrantLock lock = new ReentrantLock();
+
+        byte[] buffer;
+        int position;
+        long generation = -1;
+
+        // Called with the lock held.
+        void next(byte[] bytes, int size) {
+            long current = PK11SecureRandom.generation.get();
+            if (generation != current || buffer == null || buffer.length != size) {
+                if (buffer != null) {
+                    Arrays.fill(buffer, (byte) 0);
+                }
+                if (buffer == null || buffer.length != size) {
+                    buffer = new byte[size];
+                }
+                position = size;
+                generation = current;
+            }
 
+            if (size - position < bytes.length) {
+                generate(buffer, 0, size);
+                position = 0;
+            }
+
+            System.arraycopy(buffer, position, bytes, 0, bytes.length);
+            Arrays.fill(buffer, position, position + bytes.length, (byte) 0);
+            position += bytes.length;
+        }
+    }
+
+    private static native void
+    seedRandom( byte[] seed ) throws TokenException;
+
+    private static native void
+    generateRandom( byte[] bytes, int offset, int length ) throws TokenException;
+}
@@ -13,6 +13,14 @@ import java.security.SecureRandom;
 import java.security.SignatureException;
 import java.security.spec.AlgorithmParameterSpec;
 import java.security.spec.PSSParameterSpec;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.mozilla.jss.crypto.Algorithm;
 import org.mozilla.jss.crypto.DigestAlgorithm;
@@ -24,6 +32,17 @@ import org.mozilla.jss.util.NativeProxy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Signing and verification with PKCS #11.
+ *
+ * The signing context is kept after each signature and restarted with
+ * SGN_Begin in the next native call, so it is only recreated by
+ * initSign. Verification contexts keep state from the signature they
+ * checked, so they are recreated for the next verification instead.
+ * Small updates are collected in Java and passed along with the final
+ * call, and signAll/verifyAll process a whole batch with one key
+ * lookup in a single JNI call.
+ */
 public final class PK11Signature
     extends org.mozilla.jss.crypto.SignatureSpi
     implements java.lang.AutoCloseable
@@ -37,6 +56,9 @@ public final class PK11Signature
     public static final String SIG_NOT_INITIALIZED = "Signature is not initialized";
     public static final String NO_INPUT_STREAM = "Raw signature has no input stream";
 
+    // updates up to this size are collected in Java
+    static final int PENDING_SIZE = 512;
+
     public PK11Signature(PK11Token token, SignatureAlgorithm algorithm)
         throws NoSuchAlgorithmException, TokenException
     {
@@ -125,11 +147,11 @@ public final class PK11Signature
         }
 
         // Finally, the key is OK
+        resetContext();
 		key = privKey;
 
         // Now initialize the signature context
         if( ! raw ) {
-            sigContext = null;
             initSigContext();
         }
 
@@ -188,10 +210,10 @@ public final class PK11Signature
             throw new InvalidKeyException("Unknown algorithm: " + algorithm, e);
         }
 
+        resetContext();
 		key = pubKey;
 
         if( ! raw ) {
-            sigContext = null;
             initVfyContext();
         }
 
@@ -205,7 +227,18 @@ public final class PK11Signature
     public void engineUpdate(byte b)
         throws SignatureException, TokenException
     {
-        engineUpdate(new byte[] {b}, 0, 1);
+        validateUpdate();
+        if (raw) {
+            rawInput.write(b);
+            return;
+        }
+        if (pendingLen == PENDING_SIZE) {
+            flushPending();
+        }
+        if (pending == null) {
+            pending = new byte[PENDING_SIZE];
+        }
+        pending[pendingLen++] = b;
     }
 
     @Override
@@ -218,9 +251,23 @@ public final class PK11Signature
         validateUpdate();
         if (raw) {
             rawInput.write(b, off, len);
-        } else {
-            engineUpdateNative( b, off, len);
+            return;
         }
+
+        if (len <= PENDING_SIZE - pendingLen) {
+            addPending(b, off, len);
+            return;
+        }
+
+        flushPending();
+
+        if (len <= PENDING_SIZE) {
+            addPending(b, off, len);
+            return;
+        }
+
+        engineUpdateNative(begin(), b, off, len);
+        needsBegin = false;
     }
 
     private void validateUpdate() throws SignatureException {
@@ -240,38 +287,269 @@ public final class PK11Signature
         }
     }
 
-    protected native void engineUpdateNative(byte[] b, int off, int len)
+    private void checkState(int expected) throws SignatureException {
+        if (state != expected) {
+            throw new SignatureException(SIG_NOT_INITIALIZED);
+        }
+        if (!raw && sigContext == null) {
+            throw new SignatureException(NO_CONTEXT);
+        } else if (raw && rawInput == null) {
+            throw new SignatureException(NO_INPUT_STREAM);
+        }
+        if (key == null) {
+            throw new SignatureException(NO_KEY);
+        }
+    }
+
+    private static void checkMessages(byte[][] messages) throws SignatureException {
+        if (messages == null) {
+            throw new SignatureException("No messages provided");
+        }
+        for (byte[] message : messages) {
+            if (message == null) {
+                throw new SignatureException("No message provided");
+            }
+        }
+    }
+
+    /**
+     * Returns whether the next native call must restart the context.
+     * Until that call succeeds, later calls must restart it too; after
+     * a signature or verification, the context always needs to be
+     * restarted.
+     */
+    private boolean begin() throws TokenException {
+        boolean begin = needsBegin;
+        needsBegin = true;
+        if (begin && state == VERIFY && !raw) {
+            closeContext();
+            initVfyContext();
+            return false;
+        }
+        return begin;
+    }
+
+    private void addPending(byte[] b, int off, int len) {
+        if (pending == null) {
+            pending = new byte[PENDING_SIZE];
+        }
+        System.arraycopy(b, off, pending, pendingLen, len);
+        pendingLen += len;
+    }
+
+    private void flushPending() throws TokenException {
+        if (pendingLen == 0) {
+            return;
+        }
+        try {
+            engineUpdateNative(begin(), pending, 0, pendingLen);
+            needsBegin = false;
+        } finally {
+            clearPending();
+        }
+    }
+
+    private void clearPending() {
+        if (pendingLen > 0) {
+            Arrays.fill(pending, 0, pendingLen, (byte) 0);
+            pendingLen = 0;
+        }
+    }
+
+    /**
+     * Discards the context, any input, and the key before a new init.
+     */
+    private void resetContext() throws TokenException {
+        state = UNINITIALIZED;
+        key = null;
+        needsBegin = false;
+        clearPending();
+        if (rawInput != null) {
+            rawInput.reset();
+        }
+        closeContext();
+    }
+
+    private void closeContext() throws TokenException {
+        if (sigContext == null) {
+            return;
+        }
+        try {
+            sigContext.close();
+        } catch (Exception e) {
+            throw new TokenException("Unable to close signature context: " + e.getMessage(), e);
+        } finally {
+            sigContext = null;
+        }
+    }
+
+    protected native void engineUpdateNative(boolean begin, byte[] b, int off, int len)
         throws TokenException;
 
 
+    /**
+     * Finishes the signature. Like java.security.Signature, this context
+     * stays initialized with the same key, so the next update starts a
+     * new signature.
+     */
     @Override
     public byte[] engineSign()
         throws SignatureException, TokenException
     {
-        if(state != SIGN) {
-            throw new SignatureException(SIG_NOT_INITIALIZED);
+        checkState(SIGN);
+
+        if( raw ) {
+            try {
+                return engineRawSignNative(token, (PK11PrivKey)key,
+                    rawInput.toByteArray());
+            } finally {
+                rawInput.reset();
+            }
         }
-        if(!raw && sigContext==null) {
-            throw new SignatureException(NO_CONTEXT);
-        } else if(raw && rawInput==null) {
-            throw new SignatureException(NO_INPUT_STREAM);
+
+        try {
+            return engineSignNative(begin(), pending, 0, pendingLen);
+        } finally {
+            clearPending();
         }
-        if (key == null) {
-            throw new SignatureException(NO_KEY);
+    }
+
+    @Override
+    public byte[] engineSign(byte[] data)
+        throws SignatureException, TokenException
+    {
+        if (data == null) {
+            throw new SignatureException("No data provided");
         }
+        checkState(SIGN);
 
-        byte[] result;
-        if( raw ) {
-            result = engineRawSignNative(token, (PK11PrivKey)key,
-                rawInput.toByteArray());
+        if (raw || pendingLen > 0) {
+            // keep the collected input in front of the data
+            return super.engineSign(data);
+        }
+
+        return engineSignNative(begin(), data, 0, data.length);
+    }
+
+    /**
+     * Signs each message with this context in a single native call, so
+     * the key and context are looked up once for the whole batch.
+     */
+    @Override
+    public byte[][] engineSignAll(byte[][] messages)
+        throws SignatureException, TokenException
+    {
+        checkMessages(messages);
+        checkState(SIGN);
+        clearPending();
+
+        if (raw) {
             rawInput.reset();
-        } else {
-            result = engineSignNative();
+            byte[][] signatures = new byte[messages.length][];
+            for (int i = 0; i < messages.length; i++) {
+                signatures[i] = engineRawSignNative(token, (PK11PrivKey)key,
+                    messages[i]);
+            }
+            return signatures;
+        }
+
+        // the batch restarts the context for each message
+        needsBegin = true;
+        return engineSignBatchNative(messages);
+    }
+
+    /**
+     * Signs the first part of the batch with this context and the other
+     * parts concurrently on the caller's executor, each with a separate
+     * context for the same key. Parts the executor rejects are signed on
+     * the calling thread.
+     */
+    @Override
+    public byte[][] engineSignAll(byte[][] messages, Executor executor, int parallelism)
+        throws SignatureException, TokenException
+    {
+        checkMessages(messages);
+        checkState(SIGN);
+
+        if (executor == null) {
+            throw new SignatureException("No executor provided");
+        }
+
+        int workers = Math.min(parallelism, messages.length);
+        if (workers <= 1) {
+            return engineSignAll(messages);
+        }
+
+        int chunk = (messages.length + workers - 1) / workers;
+        List<Future<byte[][]>> futures = new ArrayList<>();
+
+        for (int start = chunk; start < messages.length; start += chunk) {
+            byte[][] part = Arrays.copyOfRange(messages, start,
+                    Math.min(start + chunk, messages.length));
+            FutureTask<byte[][]> task = new FutureTask<>(() -> {
+                try (PK11Signature worker = newSigner()) {
+                    return worker.engineSignAll(part);
+                }
+            });
+            futures.add(task);
+
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                task.run();
+            }
+        }
+
+        byte[][] signatures = new byte[messages.length][];
+        try {
+            byte[][] first = engineSignAll(Arrays.copyOf(messages, chunk));
+            System.arraycopy(first, 0, signatures, 0, chunk);
+
+            int offset = chunk;
+            for (Future<byte[][]> future : futures) {
+                byte[][] part = join(future);
+                System.arraycopy(part, 0, signatures, offset, part.length);
+                offset += part.length;
+            }
+
+        } finally {
+            for (Future<byte[][]> future : futures) {
+                future.cancel(false);
+            }
         }
-		state = UNINITIALIZED;
-		sigContext = null;
 
-		return result;
+        return signatures;
+    }
+
+    private PK11Signature newSigner()
+        throws NoSuchAlgorithmException, InvalidKeyException, TokenException
+    {
+        PK11Signature signer = new PK11Signature(token, (SignatureAlgorithm) algorithm);
+        signer.digestAlgorithm = digestAlgorithm;
+        signer.engineInitSign((PK11PrivKey) key);
+        return signer;
+    }
+
+    private static byte[][] join(Future<byte[][]> future)
+        throws SignatureException, TokenException
+    {
+        try {
+            return future.get();
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SignatureException("Interrupted while signing", e);
+
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SignatureException) {
+                throw (SignatureException) cause;
+            }
+            if (cause instanceof TokenException) {
+                throw (TokenException) cause;
+            }
+            throw new SignatureException("Unable to sign: " + cause.getMessage(), cause);
+        }
     }
 
     @Override
@@ -281,14 +559,7 @@ public final class PK11Signature
         if (outbuf == null) {
             throw new SignatureException("No output buffer provided");
         }
-        byte[] sig;
-        if (raw) {
-            sig = engineRawSignNative(token, (PK11PrivKey)key,
-                rawInput.toByteArray());
-            rawInput.reset();
-        } else {
-            sig = engineSign();
-        }
+        byte[] sig = engineSign();
         if (outbuf.length <= offset || len < sig.length || offset + len > outbuf.length) {
             throw new SignatureException("outbuf is not sufficient to hold signature");
         }
@@ -303,7 +574,14 @@ public final class PK11Signature
         PrivateKey key, byte[] hash)
         throws SignatureException, TokenException;
 
-    private native byte[] engineSignNative()
+    /**
+     * Adds the given data to the context, restarting it first if begin
+     * is true, and finishes the signature.
+     */
+    private native byte[] engineSignNative(boolean begin, byte[] data, int off, int len)
+        throws SignatureException, TokenException;
+
+    private native byte[][] engineSignBatchNative(byte[][] messages)
         throws SignatureException, TokenException;
 
     @Override
@@ -313,31 +591,67 @@ public final class PK11Signature
         if (sigBytes == null) {
             throw new SignatureException("No signature bytes provided");
         }
-        if(state != VERIFY) {
-            throw new SignatureException("Signature is not initialized properly");
-            }
-        if(!raw && sigContext == null) {
-            throw new SignatureException(NO_CONTEXT);
+        checkState(VERIFY);
+
+        if( raw ) {
+            try {
+                return engineRawVerifyNative(token, (PK11PubKey)key,
+                    rawInput.toByteArray(), sigBytes);
+            } finally {
+                rawInput.reset();
             }
-        if(raw && rawInput == null) {
-            throw new SignatureException(NO_INPUT_STREAM);
         }
-        if (key == null) {
-            throw new SignatureException(NO_KEY);
+
+        try {
+            return engineVerifyNative(begin(), pending, 0, pendingLen, sigBytes);
+        } finally {
+            clearPending();
         }
+    }
 
-        boolean result;
-        if( raw ) {
-            result = engineRawVerifyNative(token, (PK11PubKey)key,
-                rawInput.toByteArray(), sigBytes);
+    @Override
+    public boolean engineVerify(byte[] data, byte[] sigBytes)
+        throws SignatureException, TokenException
+    {
+        if (data == null) {
+            throw new SignatureException("No data provided");
+        }
+        if (sigBytes == null) {
+            throw new SignatureException("No signature bytes provided");
+        }
+        checkState(VERIFY);
+
+        if (raw || pendingLen > 0) {
+            return super.engineVerify(data, sigBytes);
+        }
+
+        return engineVerifyNative(begin(), data, 0, data.length, sigBytes);
+    }
+
+    @Override
+    public boolean[] engineVerifyAll(byte[][] messages, byte[][] signatures)
+        throws SignatureException, TokenException
+    {
+        checkMessages(messages);
+        checkMessages(signatures);
+        if (messages.length != signatures.length) {
+            throw new SignatureException("Expected one signature per message");
+        }
+        checkState(VERIFY);
+        clearPending();
+
+        if (raw) {
             rawInput.reset();
-        } else {
-            result = engineVerifyNative(sigBytes);
+            boolean[] results = new boolean[messages.length];
+            for (int i = 0; i < messages.length; i++) {
+                results[i] = engineRawVerifyNative(token, (PK11PubKey)key,
+                    messages[i], signatures[i]);
+            }
+            return results;
         }
-		state = UNINITIALIZED;
-		sigContext = null;
 
-		return result;
+        needsBegin = true;
+        return engineVerifyBatchNative(messages, signatures);
     }
 
     /**
@@ -348,9 +662,14 @@ public final class PK11Signature
         PublicKey key, byte[] hash, byte[] signature)
         throws SignatureException, TokenException;
 
-	protected native boolean engineVerifyNative(byte[] sigBytes)
+	protected native boolean engineVerifyNative(boolean begin, byte[] data,
+		int off, int len, byte[] sigBytes)
 		throws SignatureException, TokenException;
 
+    private native boolean[] engineVerifyBatchNative(byte[][] messages,
+        byte[][] signatures)
+        throws SignatureException, TokenException;
+
     @Override
     public void engineSetParameter(AlgorithmParameterSpec params)
         throws InvalidAlgorithmParameterException, TokenException
@@ -406,19 +725,9 @@ public final class PK11Signature
     }
 
     @Override
-    public void finalize() throws Throwable {
-        close();
-    }
-
-    @Override
-    public void close() throws Exception {
-        if (sigContext != null) {
-            try {
-                sigContext.close();
-            } finally {
-                sigContext = null;
-            }
-        }
+    public void close() throws TokenException {
+        clearPending();
+        closeContext();
     }
 
     protected PK11Token token;
@@ -431,6 +740,12 @@ public final class PK11Signature
     protected boolean raw=false; // raw signing only, no hashing
     protected ByteArrayOutputStream rawInput;
 
+    // whether the context must be restarted before its next use
+    private boolean needsBegin;
+
+    private byte[] pending;
+    private int pendingLen;
+
     // states
     public static final int UNINITIALIZED = 0;
     public static final int SIGN = 1;
@@ -442,8 +757,8 @@ class SigContextProxy extends NativeProxy {
     public static Logger logger = LoggerFactory.getLogger(SigContextProxy.class);
 
     public SigContextProxy(byte[] pointer) {
-        super(pointer);
+        super(pointer, SigContextProxy::releaseNativeResources);
     }
-    @Override
-    protected native void releaseNativeResources();
+
+    private static native void releaseNativeResources(long pointer);
 }
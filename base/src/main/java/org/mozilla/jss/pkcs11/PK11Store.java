@@ -230,7 +230,16 @@ public final class PK11Store implements CryptoStore {
             throws TokenException;
 
     @Override
-    public native X509Certificate importCert(byte[] certBytes, String nickname)
+    public X509Certificate importCert(byte[] certBytes, String nickname)
+            throws TokenException {
+        try {
+            return importCertNative(certBytes, nickname);
+        } finally {
+            CryptoManager.trustChanged();
+        }
+    }
+
+    private native X509Certificate importCertNative(byte[] certBytes, String nickname)
             throws TokenException;
 
     /**
@@ -244,7 +253,16 @@ public final class PK11Store implements CryptoStore {
 	// Currently have to use PK11_DeleteTokenObject + PK11_FindObjectForCert
 	// or maybe SEC_DeletePermCertificate.
     @Override
-    public native void deleteCert(X509Certificate cert)
+    public void deleteCert(X509Certificate cert)
+        throws NoSuchItemOnTokenException, TokenException {
+        try {
+            deleteCertNative(cert);
+        } finally {
+            CryptoManager.trustChanged();
+        }
+    }
+
+    private native void deleteCertNative(X509Certificate cert)
         throws NoSuchItemOnTokenException, TokenException;
 
     /**
@@ -255,7 +273,16 @@ public final class PK11Store implements CryptoStore {
      * @exception TokenException General token error
      */
     @Override
-    public native void deleteCertOnly(X509Certificate cert)
+    public void deleteCertOnly(X509Certificate cert)
+        throws NoSuchItemOnTokenException, TokenException {
+        try {
+            deleteCertOnlyNative(cert);
+        } finally {
+            CryptoManager.trustChanged();
+        }
+    }
+
+    private native void deleteCertOnlyNative(X509Certificate cert)
         throws NoSuchItemOnTokenException, TokenException;
 
 	////////////////////////////////////////////////////////////
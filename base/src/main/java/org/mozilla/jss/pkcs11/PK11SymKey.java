@@ -106,14 +106,8 @@ public final class PK11SymKey implements SymmetricKey {
 class SymKeyProxy extends KeyProxy {
 
     public SymKeyProxy(byte[] pointer) {
-        super(pointer);
+        super(pointer, SymKeyProxy::releaseNativeResources);
     }
 
-    @Override
-    protected native void releaseNativeResources();
-
-    @Override
-    protected void finalize() throws Throwable {
-        super.finalize();
-    }
+    private static native void releaseNativeResources(long pointer);
 }
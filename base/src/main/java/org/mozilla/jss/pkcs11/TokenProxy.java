@@ -13,9 +13,8 @@ public final class TokenProxy extends NativeProxy {
     public static Logger logger = LoggerFactory.getLogger(TokenProxy.class);
 
     public TokenProxy(byte[] pointer) {
-        super(pointer);
+        super(pointer, TokenProxy::releaseNativeResources);
     }
 
-    @Override
-    protected native void releaseNativeResources();
+    private static native void releaseNativeResources(long pointer);
 }
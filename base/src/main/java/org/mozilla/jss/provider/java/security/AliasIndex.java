@@ -0,0 +1,335 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.jss.provider.java.security;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateEncodingException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.mozilla.jss.CryptoManager;
+import org.mozilla.jss.NotInitializedException;
+import org.mozilla.jss.crypto.CryptoStore;
+import org.mozilla.jss.crypto.CryptoToken;
+import org.mozilla.jss.crypto.ObjectNotFoundException;
+import org.mozilla.jss.crypto.PrivateKey;
+import org.mozilla.jss.crypto.TokenException;
+import org.mozilla.jss.crypto.X509Certificate;
+import org.mozilla.jss.netscape.security.util.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Index of the aliases visible through a JSSKeyStoreSpi.
+ *
+ * The index maps each certificate nickname to the certificate, each
+ * private key alias (the hex-encoded key ID, prefixed with the token name
+ * for external tokens) to the private key, and the SHA-256 hash of each
+ * certificate's DER encoding to its nickname. It is built on first use,
+ * updated incrementally by the JSSKeyStoreSpi operations which add or
+ * remove entries, and rebuilt when the trust database generation changes
+ * (see CryptoManager.getTrustGeneration()) or refresh() is called.
+ *
+ * Private keys generated or deleted by other means don't change the
+ * trust database generation; call refresh() (or reload the KeyStore)
+ * after such changes.
+ */
+final class AliasIndex {
+
+    public static Logger logger = LoggerFactory.getLogger(AliasIndex.class);
+
+    /**
+     * Token to index, or null for all tokens except the internal crypto
+     * token.
+     */
+    private CryptoToken token;
+
+    private boolean loaded;
+    private long generation;
+
+    private final Set<String> aliases = new LinkedHashSet<>();
+    private final Map<String, X509Certificate> certs = new HashMap<>();
+    private final Map<String, PrivateKey> privateKeys = new HashMap<>();
+    private final Map<String, String> certAliases = new HashMap<>();
+
+    /**
+     * Aliases of stored private keys whose token objects haven't been
+     * looked up yet.
+     */
+    private final Set<String> unresolvedKeys = new HashSet<>();
+
+    synchronized void setToken(CryptoToken token) {
+        this.token = token;
+        loaded = false;
+    }
+
+    /**
+     * Discard the index; it will be rebuilt on next use.
+     */
+    synchronized void refresh() {
+        loaded = false;
+    }
+
+    static String getHash(byte[] der) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return Utils.HexEncode(digest.digest(der));
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("Unable to create SHA-256 digest: " + e.getMessage(), e);
+        }
+    }
+
+    static String getKeyAlias(String tokenName, PrivateKey privateKey) throws TokenException {
+        // convert key ID into hexadecimal
+        String keyID = Utils.HexEncode(privateKey.getUniqueID());
+        if (tokenName == null) {
+            return keyID;
+        }
+        return tokenName + ":" + keyID;
+    }
+
+    /**
+     * Get the token name used in aliases for keys on the given token, or
+     * null for the internal key storage token.
+     */
+    static String getTokenName(CryptoManager cm, CryptoToken token) throws TokenException {
+        if (token == cm.getInternalKeyStorageToken()) {
+            return null;
+        }
+        return token.getName();
+    }
+
+    /**
+     * Rebuild the index if needed; must be called while holding the lock.
+     */
+    private void load() throws NotInitializedException, TokenException {
+
+        long current = CryptoManager.getTrustGeneration();
+        if (loaded && generation == current) {
+            return;
+        }
+
+        logger.debug("AliasIndex: building alias index");
+
+        aliases.clear();
+        certs.clear();
+        privateKeys.clear();
+        certAliases.clear();
+        unresolvedKeys.clear();
+
+        List<CryptoToken> tokens = new ArrayList<>();
+        CryptoManager cm = CryptoManager.getInstance();
+
+        if (token == null) {
+            logger.debug("AliasIndex: getting aliases from all tokens");
+
+            Enumeration<CryptoToken> e = cm.getAllTokens();
+
+            while (e.hasMoreElements()) {
+                CryptoToken t = e.nextElement();
+
+                if (t == cm.getInternalCryptoToken()) {
+                    continue; // exclude crypto token
+                }
+
+                tokens.add(t);
+            }
+
+        } else {
+            logger.debug("AliasIndex: getting aliases from keystore token");
+            tokens.add(token);
+        }
+
+        for (CryptoToken token : tokens) {
+
+            String tokenName = getTokenName(cm, token);
+            logger.debug("AliasIndex: token: " + (tokenName == null ? "internal" : tokenName));
+
+            CryptoStore store = token.getCryptoStore();
+
+            logger.debug("AliasIndex: - certificates:");
+            for (X509Certificate cert : store.getCertificates()) {
+                logger.debug("AliasIndex:   - " + cert.getNickname());
+                addCert(cert);
+            }
+
+            logger.debug("AliasIndex: - private keys:");
+            for (PrivateKey privateKey : store.getPrivateKeys()) {
+                String alias = getKeyAlias(tokenName, privateKey);
+                logger.debug("AliasIndex:   - " + alias);
+                aliases.add(alias);
+                privateKeys.putIfAbsent(alias, privateKey);
+            }
+        }
+
+        loaded = true;
+        generation = current;
+    }
+
+    private void addCert(X509Certificate cert) {
+        String nickname = cert.getNickname();
+        aliases.add(nickname);
+        certs.putIfAbsent(nickname, cert);
+
+        try {
+            certAliases.putIfAbsent(getHash(cert.getEncoded()), nickname);
+        } catch (CertificateEncodingException e) {
+            logger.warn("AliasIndex: unable to encode cert " + nickname + ": " + e.getMessage());
+        }
+    }
+
+    synchronized Collection<String> getAliases() throws NotInitializedException, TokenException {
+        load();
+        return new ArrayList<>(aliases);
+    }
+
+    synchronized boolean contains(String alias) throws NotInitializedException, TokenException {
+        load();
+        return aliases.contains(alias);
+    }
+
+    synchronized int size() throws NotInitializedException, TokenException {
+        load();
+        return aliases.size();
+    }
+
+    /**
+     * Get the private key with the given key ID alias, or null.
+     */
+    synchronized PrivateKey getPrivateKey(String alias) throws NotInitializedException, TokenException {
+        if (unresolvedKeys.contains(alias)) {
+            loaded = false;
+        }
+        load();
+        return privateKeys.get(alias);
+    }
+
+    /**
+     * Get the nickname of the indexed cert with the given DER encoding,
+     * or null.
+     */
+    synchronized String getCertAlias(byte[] der) throws NotInitializedException, TokenException {
+        load();
+        return certAliases.get(getHash(der));
+    }
+
+    /**
+     * Record that the given cert was deleted. The operation is expected
+     * to have changed the trust database generation by the given amount
+     * since it was read into before.
+     */
+    synchronized void certRemoved(X509Certificate cert, long before, int changes) throws NotInitializedException, TokenException {
+
+        if (!sync(before, changes)) {
+            return;
+        }
+
+        String nickname = cert.getNickname();
+
+        try {
+            certAliases.remove(getHash(cert.getEncoded()));
+        } catch (CertificateEncodingException e) {
+            logger.warn("AliasIndex: unable to encode cert " + nickname + ": " + e.getMessage());
+        }
+
+        // other certs may share the nickname
+        try {
+            certs.put(nickname, CryptoManager.getInstance().findCertByNickname(nickname));
+            return;
+        } catch (ObjectNotFoundException e) {
+            logger.debug("AliasIndex: no more certs with nickname " + nickname);
+        }
+
+        certs.remove(nickname);
+        if (!privateKeys.containsKey(nickname)) {
+            aliases.remove(nickname);
+        }
+    }
+
+    /**
+     * Record that a private key with the given alias was stored. The key
+     * object itself is looked up when it's first needed.
+     */
+    synchronized void keyAdded(String alias, long before, int changes) throws NotInitializedException, TokenException {
+
+        if (!sync(before, changes)) {
+            return;
+        }
+
+        aliases.add(alias);
+        if (!privateKeys.containsKey(alias)) {
+            unresolvedKeys.add(alias);
+        }
+    }
+
+    /**
+     * Record a private key which was found on the given token although
+     * the index missed it, e.g., because it was generated by other means
+     * since the index was built.
+     */
+    synchronized void keyFound(CryptoToken token, String alias, PrivateKey privateKey) {
+
+        if (!loaded) {
+            return;
+        }
+
+        if (this.token == null || this.token == token) {
+            aliases.add(alias);
+        }
+
+        privateKeys.put(alias, privateKey);
+        unresolvedKeys.remove(alias);
+    }
+
+    /**
+     * Record that the private key with the given alias was deleted.
+     */
+    synchronized void keyRemoved(String alias, long before, int changes) throws NotInitializedException, TokenException {
+
+        if (!sync(before, changes)) {
+            return;
+        }
+
+        privateKeys.remove(alias);
+        unresolvedKeys.remove(alias);
+        if (!certs.containsKey(alias)) {
+            aliases.remove(alias);
+        }
+    }
+
+    /**
+     * Bring the index up to date before an incremental update. Returns
+     * false if the index had to be rebuilt anyway, in which case the
+     * update is already reflected in it.
+     *
+     * If the trust database generation changed by more than the update
+     * itself accounts for, someone else changed the database as well,
+     * so the index is rebuilt.
+     */
+    private boolean sync(long before, int changes) throws NotInitializedException, TokenException {
+
+        if (!loaded || generation != before) {
+            load();
+            return false;
+        }
+
+        long current = CryptoManager.getTrustGeneration();
+        if (current != before + changes) {
+            load();
+            return false;
+        }
+
+        generation = current;
+        return true;
+    }
+}
@@ -16,13 +16,9 @@ import java.security.cert.Certificate;
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.CertificateException;
 import java.security.cert.CertificateFactory;
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Enumeration;
-import java.util.LinkedHashSet;
-import java.util.List;
-import java.util.Set;
 
 import org.apache.commons.lang3.StringUtils;
 import org.mozilla.jss.CryptoManager;
@@ -79,6 +75,13 @@ import org.slf4j.LoggerFactory;
  *
  * <li>setKeyEntry not supported yet. Need to convert a temporary key
  * into a permanent key.
+ *
+ * <li>aliases, containsAlias, size, isKeyEntry and getCertificateAlias use
+ * an index of the keystore's certs and private keys, which is kept up to
+ * date by this class and rebuilt when the trust database changes. Lookups
+ * by key ID fall back to searching the token when the index misses, but
+ * aliases, containsAlias and size only see keys generated or deleted by
+ * other means after refresh() (or loading the keystore again).
  * </ol>
  */
 public class JSSKeyStoreSpi extends java.security.KeyStoreSpi {
@@ -88,6 +91,8 @@ public class JSSKeyStoreSpi extends java.security.KeyStoreSpi {
     CryptoToken token;
     protected TokenProxy proxy;
 
+    final AliasIndex index = new AliasIndex();
+
     public JSSKeyStoreSpi() {
 
         logger.debug("JSSKeyStoreSpi: <init>()");
@@ -132,69 +137,9 @@ public class JSSKeyStoreSpi extends java.security.KeyStoreSpi {
     public Collection<String> getAliases() {
 
         logger.debug("JSSKeyStoreSpi: getAliases()");
-        Set<String> aliases = new LinkedHashSet<>();
 
         try {
-            List<CryptoToken> tokens = new ArrayList<>();
-            CryptoManager cm = CryptoManager.getInstance();
-
-            if (token == null) {
-                logger.debug("JSSKeyStoreSpi: getting aliases from all tokens");
-
-                Enumeration<CryptoToken> e = cm.getAllTokens();
-
-                while (e.hasMoreElements()) {
-                    CryptoToken t = e.nextElement();
-
-                    if (t == cm.getInternalCryptoToken()) {
-                        continue; // exclude crypto token
-                    }
-
-                    tokens.add(t);
-                }
-
-            } else {
-                logger.debug("JSSKeyStoreSpi: getting aliases from keystore token");
-                tokens.add(token);
-            }
-
-            for (CryptoToken token : tokens) {
-
-                String tokenName;
-                if (token == cm.getInternalKeyStorageToken()) {
-                    tokenName = null;
-                    logger.debug("JSSKeyStoreSpi: token: internal");
-
-                } else {
-                    tokenName = token.getName();
-                    logger.debug("JSSKeyStoreSpi: token: " + tokenName);
-                }
-
-                CryptoStore store = token.getCryptoStore();
-
-                logger.debug("JSSKeyStoreSpi: - certificates:");
-                for (X509Certificate cert : store.getCertificates()) {
-                    String nickname = cert.getNickname();
-                    logger.debug("JSSKeyStoreSpi:   - " + nickname);
-                    aliases.add(nickname);
-                }
-
-                logger.debug("JSSKeyStoreSpi: - private keys:");
-                for (PrivateKey privateKey : store.getPrivateKeys()) {
-                    // convert key ID into hexadecimal
-                    String keyID = Utils.HexEncode(privateKey.getUniqueID());
-                    String nickname;
-                    if (tokenName == null) {
-                        nickname = keyID;
-                    } else {
-                        nickname = tokenName + ":" + keyID;
-                    }
-                    logger.debug("JSSKeyStoreSpi:   - " + nickname);
-                    aliases.add(nickname);
-                }
-            }
-
-            return aliases;
+            return index.getAliases();
 
         } catch (NotInitializedException e) {
             throw new RuntimeException(e);
@@ -204,12 +149,29 @@ public class JSSKeyStoreSpi extends java.security.KeyStoreSpi {
         }
     }
 
+    /**
+     * Rebuild the alias index, e.g., after keys were generated or deleted
+     * outside of this keystore.
+     */
+    public void refresh() {
+        logger.debug("JSSKeyStoreSpi: refresh()");
+        index.refresh();
+    }
+
     @Override
     public boolean engineContainsAlias(String alias) {
 
         logger.debug("JSSKeyStoreSpi: engineContainsAlias(" + alias + ")");
 
-        return getAliases().contains(alias);
+        try {
+            return index.contains(alias);
+
+        } catch (NotInitializedException e) {
+            throw new RuntimeException(e);
+
+        } catch (TokenException e) {
+            throw new RuntimeException(e);
+        }
     }
 
     @Override
@@ -233,7 +195,9 @@ public class JSSKeyStoreSpi extends java.security.KeyStoreSpi {
                 CryptoStore store = token.getCryptoStore();
 
                 logger.debug("JSSKeyStoreSpi: deleting cert: " + alias);
+                long generation = CryptoManager.getTrustGeneration();
                 store.deleteCertOnly(cert);
+                index.certRemoved(cert, generation, 1);
                 return;
 
             } catch (ObjectNotFoundException e) {
@@ -254,16 +218,9 @@ public class JSSKeyStoreSpi extends java.security.KeyStoreSpi {
             CryptoStore store = token.getCryptoStore();
 
             logger.debug("JSSKeyStoreSpi: searching for private key");
+            PrivateKey privateKey = findPrivateKey(manager, token, alias, nickname);
 
-            for (PrivateKey privateKey : store.getPrivateKeys()) {
-
-                // convert key ID into hexadecimal
-                String keyID = Utils.HexEncode(privateKey.getUniqueID());
-                logger.debug("JSSKeyStoreSpi: - " + keyID);
-
-                if (!nickname.equals(keyID)) {
-                    continue;
-                }
+            if (privateKey != null) {
 
                 try {
                     logger.debug("JSSKeyStoreSpi: searching for public key: " + nickname);
@@ -277,7 +234,9 @@ public class JSSKeyStoreSpi extends java.security.KeyStoreSpi {
                 }
 
                 logger.debug("JSSKeyStoreSpi: deleting private key: " + nickname);
+                long generation = CryptoManager.getTrustGeneration();
                 store.deletePrivateKey(privateKey);
+                index.keyRemoved(AliasIndex.getKeyAlias(AliasIndex.getTokenName(manager, token), privateKey), generation, 0);
 
                 return;
             }
@@ -349,9 +308,17 @@ public class JSSKeyStoreSpi extends java.security.KeyStoreSpi {
             return _c.getNickname();
         }
 
-        return getCertNickname( cert.getEncoded() );
+        byte[] der = cert.getEncoded();
+        String alias = index.getCertAlias(der);
+        if (alias != null) {
+            return alias;
+        }
+
+        return getCertNickname(der);
       } catch(CertificateEncodingException e) {
         return null;
+      } catch (NotInitializedException | TokenException e) {
+        throw new RuntimeException(e);
       }
     }
 
@@ -454,17 +421,11 @@ public class JSSKeyStoreSpi extends java.security.KeyStoreSpi {
             CryptoStore store = token.getCryptoStore();
 
             logger.debug("JSSKeyStoreSpi: searching for private key");
+            PrivateKey privateKey = findPrivateKey(cm, token, alias, nickname);
 
-            for (PrivateKey privateKey : store.getPrivateKeys()) {
-
-                // convert key ID into hexadecimal
-                String keyID = Utils.HexEncode(privateKey.getUniqueID());
-                logger.debug("JSSKeyStoreSpi: - " + keyID);
-
-                if (nickname.equals(keyID)) {
-                    logger.debug("JSSKeyStoreSpi: found private key: " + nickname);
-                    return privateKey;
-                }
+            if (privateKey != null) {
+                logger.debug("JSSKeyStoreSpi: found private key: " + nickname);
+                return privateKey;
             }
 
             logger.debug("JSSKeyStoreSpi: searching for symmetric key");
@@ -493,6 +454,41 @@ public class JSSKeyStoreSpi extends java.security.KeyStoreSpi {
         }
     }
 
+    /**
+     * Find the private key with the given key ID on the given token. On an
+     * index miss the token is scanned as well, since keys generated by
+     * other means aren't indexed until the next refresh(); a key found
+     * that way is added to the index.
+     */
+    PrivateKey findPrivateKey(CryptoManager cm, CryptoToken token, String alias, String nickname)
+            throws NotInitializedException, TokenException {
+
+        PrivateKey privateKey = index.getPrivateKey(alias);
+        if (privateKey != null) {
+            return privateKey;
+        }
+
+        logger.debug("JSSKeyStoreSpi: private key not indexed, searching token");
+
+        for (PrivateKey key : token.getCryptoStore().getPrivateKeys()) {
+
+            // convert key ID into hexadecimal
+            String keyID = Utils.HexEncode(key.getUniqueID());
+            logger.debug("JSSKeyStoreSpi: - " + keyID);
+
+            if (!nickname.equals(keyID)) {
+                continue;
+            }
+
+            String tokenName = AliasIndex.getTokenName(cm, token);
+            index.keyFound(token, AliasIndex.getKeyAlias(tokenName, key), key);
+
+            return key;
+        }
+
+        return null;
+    }
+
     /**
      * Returns true if there is a cert with this nickname but there is no
      * key associated with the cert.
@@ -530,7 +526,20 @@ public class JSSKeyStoreSpi extends java.security.KeyStoreSpi {
 
         logger.debug("JSSKeyStoreSpi: engineIsKeyEntry(" + alias + ")");
 
-        /* this is somewhat wasteful but we can speed it up later */
+        try {
+            if (index.getPrivateKey(alias) != null) {
+                return true;
+            }
+
+        } catch (NotInitializedException e) {
+            throw new RuntimeException(e);
+
+        } catch (TokenException e) {
+            throw new RuntimeException(e);
+        }
+
+        // certs with keys, symmetric keys, and private keys generated by
+        // other means since the index was built aren't indexed
         return engineGetKey(alias, null) != null;
     }
 
@@ -539,6 +548,7 @@ public class JSSKeyStoreSpi extends java.security.KeyStoreSpi {
         throws IOException
     {
         logger.debug("JSSKeyStoreSpi: engineLoad(stream, password)");
+        index.refresh();
     }
 
     @Override
@@ -553,6 +563,7 @@ public class JSSKeyStoreSpi extends java.security.KeyStoreSpi {
 
         JSSLoadStoreParameter jssParam = (JSSLoadStoreParameter) param;
         token = jssParam.getToken();
+        index.setToken(token);
 
         try {
             logger.debug("JSSKeyStoreSpi: token: " + token.getName());
@@ -600,8 +611,27 @@ public class JSSKeyStoreSpi extends java.security.KeyStoreSpi {
         if( key instanceof SecretKeyFacade ) {
             SecretKeyFacade skf = (SecretKeyFacade)key;
             engineSetKeyEntryNative(alias, skf.key, password, chain);
-        } else {
-            engineSetKeyEntryNative(alias, key, password, chain);
+            return;
+        }
+
+        long generation = CryptoManager.getTrustGeneration();
+        engineSetKeyEntryNative(alias, key, password, chain);
+
+        if (!(key instanceof PrivateKey privateKey)) {
+            return;
+        }
+
+        try {
+            // the native code copies the key to its token, keeping its ID
+            CryptoManager cm = CryptoManager.getInstance();
+            String tokenName = AliasIndex.getTokenName(cm, privateKey.getOwningToken());
+            index.keyAdded(AliasIndex.getKeyAlias(tokenName, privateKey), generation, 0);
+
+        } catch (NotInitializedException e) {
+            throw new KeyStoreException(e);
+
+        } catch (TokenException e) {
+            throw new KeyStoreException(e);
         }
     }
 
@@ -613,7 +643,15 @@ public class JSSKeyStoreSpi extends java.security.KeyStoreSpi {
 
         logger.debug("JSSKeyStoreSpi: engineSize()");
 
-        return getAliases().size();
+        try {
+            return index.size();
+
+        } catch (NotInitializedException e) {
+            throw new RuntimeException(e);
+
+        } catch (TokenException e) {
+            throw new RuntimeException(e);
+        }
     }
 
     @Override
@@ -0,0 +1,542 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.jss.provider.javax.crypto;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.security.AlgorithmParameters;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.security.SecureRandom;
+import java.security.spec.AlgorithmParameterSpec;
+import java.security.spec.InvalidParameterSpecException;
+import java.util.Arrays;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
+import javax.crypto.CipherSpi;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.SecretKey;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.IvParameterSpec;
+
+import org.mozilla.jss.crypto.CryptoToken;
+import org.mozilla.jss.crypto.SecretKeyFacade;
+import org.mozilla.jss.crypto.SymmetricKey;
+import org.mozilla.jss.crypto.TokenException;
+import org.mozilla.jss.crypto.TokenRuntimeException;
+import org.mozilla.jss.crypto.TokenSupplierManager;
+import org.mozilla.jss.pkcs11.PK11AEADCipher;
+import org.mozilla.jss.pkcs11.PKCS11Constants;
+
+/**
+ * AES/GCM/NoPadding and ChaCha20-Poly1305 on top of PK11AEADCipher.
+ *
+ * NSS runs an AEAD message in a single PK11_AEADOp(...) call, so data
+ * passed to update() is buffered and only processed, in one pass, by
+ * doFinal(); update() never returns any output. AAD must be supplied
+ * before any data.
+ */
+public abstract class JSSAEADCipherSpi extends CipherSpi {
+
+    private final String algorithm;
+    private final long mechanism;
+
+    CryptoToken token;
+    private PK11AEADCipher cipher;
+
+    private int opmode;
+    private byte[] iv;
+    private int tagLength;
+
+    // the JCA key last imported into the token, and the result
+    private Key sourceKey;
+    private SymmetricKey importedKey;
+
+    // key and IV of the last encryption, which must not be reused
+    private Key lastEncryptionKey;
+    private byte[] lastEncryptionIV;
+
+    // set after an encryption until the cipher is initialized with a new IV
+    private boolean ivUsed;
+
+    private final Buffer aad = new Buffer();
+    private final Buffer data = new Buffer();
+
+    protected JSSAEADCipherSpi(String algorithm, long mechanism) {
+        this.algorithm = algorithm;
+        this.mechanism = mechanism;
+        token = TokenSupplierManager.getTokenSupplier().getThreadToken();
+    }
+
+    /**
+     * Returns the IV and tag length (in bytes) given by the parameters,
+     * or generates them if params is null and the cipher is encrypting.
+     */
+    abstract Params parseParams(AlgorithmParameterSpec params, boolean encrypt,
+            SecureRandom random)
+        throws InvalidAlgorithmParameterException;
+
+    abstract AlgorithmParameterSpec makeParams(byte[] iv, int tagLength);
+
+    abstract Class<? extends AlgorithmParameterSpec> getParamsClass();
+
+    abstract String getParamsAlgorithm();
+
+    abstract String getMode();
+
+    record Params(byte[] iv, int tagLength) { }
+
+    @Override
+    public void engineSetMode(String mode) throws NoSuchAlgorithmException {
+        if (!mode.equalsIgnoreCase(getMode())) {
+            throw new NoSuchAlgorithmException("Unsupported mode for " + algorithm + ": " + mode);
+        }
+    }
+
+    @Override
+    public void engineSetPadding(String padding) throws NoSuchPaddingException {
+        if (!padding.equalsIgnoreCase("NoPadding")) {
+            throw new NoSuchPaddingException("Unsupported padding for " + algorithm + ": " + padding);
+        }
+    }
+
+    @Override
+    public void engineInit(int opmode, Key key,
+            AlgorithmParameterSpec givenParams, SecureRandom random)
+        throws InvalidKeyException, InvalidAlgorithmParameterException
+    {
+        if (opmode != Cipher.ENCRYPT_MODE && opmode != Cipher.DECRYPT_MODE) {
+            throw new InvalidKeyException("Invalid opmode");
+        }
+        boolean encrypt = opmode == Cipher.ENCRYPT_MODE;
+
+        SymmetricKey symkey = getSymmetricKey(key);
+        Params params = parseParams(givenParams, encrypt, random);
+
+        if (encrypt && key.equals(lastEncryptionKey)
+                && Arrays.equals(params.iv(), lastEncryptionIV)) {
+            throw new InvalidAlgorithmParameterException(
+                "Cannot reuse IV for " + algorithm + " encryption");
+        }
+
+        try {
+            if (cipher == null) {
+                cipher = new PK11AEADCipher(mechanism);
+            }
+            if (encrypt) {
+                cipher.initEncrypt(symkey);
+            } else {
+                cipher.initDecrypt(symkey);
+            }
+        } catch (TokenException e) {
+            throw new TokenRuntimeException(e.getMessage());
+        }
+
+        this.opmode = opmode;
+        iv = params.iv();
+        tagLength = params.tagLength();
+        ivUsed = false;
+        aad.reset();
+        data.reset();
+
+        if (encrypt) {
+            lastEncryptionKey = key;
+            lastEncryptionIV = iv;
+        }
+    }
+
+    @Override
+    public void engineInit(int opmode, Key key,
+            AlgorithmParameters givenParams, SecureRandom random)
+        throws InvalidKeyException, InvalidAlgorithmParameterException
+    {
+        AlgorithmParameterSpec spec = null;
+        if (givenParams != null) {
+            try {
+                spec = givenParams.getParameterSpec(getParamsClass());
+            } catch (InvalidParameterSpecException e) {
+                throw new InvalidAlgorithmParameterException(e.getMessage(), e);
+            }
+        }
+        engineInit(opmode, key, spec, random);
+    }
+
+    @Override
+    public void engineInit(int opmode, Key key, SecureRandom random)
+        throws InvalidKeyException
+    {
+        try {
+            engineInit(opmode, key, (AlgorithmParameterSpec) null, random);
+        } catch (InvalidAlgorithmParameterException e) {
+            throw new InvalidKeyException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Gets the NSS key for a JCA key, importing it on first use.
+     */
+    private SymmetricKey getSymmetricKey(Key key) throws InvalidKeyException {
+        if (key instanceof SecretKeyFacade facade) {
+            return facade.key;
+        }
+        if (!(key instanceof SecretKey sKey)) {
+            throw new InvalidKeyException("Invalid key type: " +
+                (key == null ? null : key.getClass().getName()));
+        }
+        if (key == sourceKey) {
+            return importedKey;
+        }
+
+        SymmetricKey symkey;
+        try {
+            SecretKeyFactory fact = SecretKeyFactory.getInstance(
+                sKey.getAlgorithm(), "Mozilla-JSS");
+            symkey = ((SecretKeyFacade) fact.translateKey(sKey)).key;
+        } catch (NoSuchAlgorithmException e) {
+            // No JSS key type (e.g., ChaCha20): import the raw bits.
+            byte[] encoded = sKey.getEncoded();
+            if (encoded == null || !"RAW".equalsIgnoreCase(sKey.getFormat())) {
+                throw new InvalidKeyException(
+                    "Unable to translate key with algorithm " + sKey.getAlgorithm());
+            }
+            try {
+                symkey = PK11AEADCipher.importKey(token, encoded, mechanism);
+            } catch (TokenException te) {
+                throw new InvalidKeyException(
+                    "Unable to import key: " + te.getMessage(), te);
+            } finally {
+                Arrays.fill(encoded, (byte) 0);
+            }
+        } catch (NoSuchProviderException e) {
+            throw new InvalidKeyException(
+                "Unable to find provider, this should not happen");
+        }
+
+        sourceKey = key;
+        importedKey = symkey;
+        return symkey;
+    }
+
+    private void checkState() {
+        if (cipher == null || iv == null) {
+            throw new IllegalStateException("Cipher not initialized");
+        }
+        if (ivUsed) {
+            throw new IllegalStateException(
+                "Cipher must be initialized with a new IV after encryption");
+        }
+    }
+
+    @Override
+    public void engineUpdateAAD(byte[] src, int offset, int len) {
+        checkState();
+        if (data.size() > 0) {
+            throw new IllegalStateException("AAD must be supplied before data");
+        }
+        aad.write(src, offset, len);
+    }
+
+    @Override
+    public void engineUpdateAAD(ByteBuffer src) {
+        checkState();
+        if (data.size() > 0) {
+            throw new IllegalStateException("AAD must be supplied before data");
+        }
+        aad.write(src);
+    }
+
+    @Override
+    public byte[] engineUpdate(byte[] input, int inputOffset, int inputLen) {
+        checkState();
+        data.write(input, inputOffset, inputLen);
+        return new byte[0];
+    }
+
+    @Override
+    public int engineUpdate(byte[] input, int inputOffset, int inputLen,
+            byte[] output, int outputOffset)
+    {
+        checkState();
+        data.write(input, inputOffset, inputLen);
+        return 0;
+    }
+
+    @Override
+    public byte[] engineDoFinal(byte[] input, int inputOffset, int inputLen)
+        throws IllegalBlockSizeException, BadPaddingException
+    {
+        byte[] output = new byte[engineGetOutputSize(inputLen)];
+        try {
+            int length = engineDoFinal(input, inputOffset, inputLen, output, 0);
+            return length == output.length ? output : Arrays.copyOf(output, length);
+        } catch (ShortBufferException e) {
+            throw new RuntimeException("Output size miscalculated: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public int engineDoFinal(byte[] input, int inputOffset, int inputLen,
+            byte[] output, int outputOffset)
+        throws ShortBufferException, IllegalBlockSizeException,
+            BadPaddingException
+    {
+        checkState();
+
+        if (input == null) {
+            input = new byte[0];
+            inputOffset = 0;
+            inputLen = 0;
+        }
+
+        // Single-shot calls go straight from the caller's array.
+        byte[] src = input;
+        int srcOffset = inputOffset;
+        int srcLength = inputLen;
+        if (data.size() > 0) {
+            data.write(input, inputOffset, inputLen);
+            src = data.array();
+            srcOffset = 0;
+            srcLength = data.size();
+        }
+
+        try {
+            int written;
+            if (opmode == Cipher.ENCRYPT_MODE) {
+                written = cipher.encrypt(iv, aad.array(), aad.size(),
+                    src, srcOffset, srcLength, output, outputOffset, tagLength);
+                ivUsed = true;
+            } else {
+                written = cipher.decrypt(iv, aad.array(), aad.size(),
+                    src, srcOffset, srcLength, output, outputOffset, tagLength);
+            }
+            aad.reset();
+            data.reset();
+            return written;
+
+        } catch (AEADBadTagException e) {
+            aad.reset();
+            data.reset();
+            throw e;
+
+        } catch (ShortBufferException e) {
+            // keep the buffered input so the caller can retry
+            if (src == data.array()) {
+                data.truncate(data.size() - inputLen);
+            }
+            throw e;
+
+        } catch (TokenException e) {
+            throw new TokenRuntimeException(e.getMessage());
+        }
+    }
+
+    @Override
+    public int engineGetBlockSize() {
+        return 0;
+    }
+
+    @Override
+    public byte[] engineGetIV() {
+        return iv == null ? null : iv.clone();
+    }
+
+    @Override
+    public int engineGetOutputSize(int inputLen) {
+        if (cipher == null || iv == null) {
+            throw new IllegalStateException("Cipher not initialized");
+        }
+        return cipher.getOutputSize(data.size() + inputLen, tagLength);
+    }
+
+    @Override
+    public AlgorithmParameters engineGetParameters() {
+        if (iv == null) {
+            return null;
+        }
+        try {
+            AlgorithmParameters algParams = AlgorithmParameters.getInstance(getParamsAlgorithm());
+            algParams.init(makeParams(iv, tagLength));
+            return algParams;
+        } catch (NoSuchAlgorithmException | InvalidParameterSpecException e) {
+            throw new RuntimeException("Unable to get parameters: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public int engineGetKeySize(Key key) throws InvalidKeyException {
+        if (key instanceof SecretKeyFacade sk) {
+            return sk.key.getLength() * 8;
+        }
+        byte[] encoded = key.getEncoded();
+        if (encoded == null) {
+            throw new InvalidKeyException("Unable to determine key size");
+        }
+        Arrays.fill(encoded, (byte) 0);
+        return encoded.length * 8;
+    }
+
+    static byte[] generateIV(int length, SecureRandom random) {
+        byte[] iv = new byte[length];
+        try {
+            if (random == null) {
+                random = SecureRandom.getInstance("pkcs11prng", "Mozilla-JSS");
+            }
+            random.nextBytes(iv);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+        return iv;
+    }
+
+    /**
+     * ByteArrayOutputStream with access to its array, so buffered input
+     * can be handed to the native code without another copy.
+     */
+    private static class Buffer extends ByteArrayOutputStream {
+
+        byte[] array() {
+            return buf;
+        }
+
+        void write(ByteBuffer src) {
+            int len = src.remaining();
+            byte[] bytes = new byte[len];
+            src.get(bytes);
+            write(bytes, 0, len);
+        }
+
+        void truncate(int size) {
+            count = size;
+        }
+
+        @Override
+        public void reset() {
+            Arrays.fill(buf, 0, count, (byte) 0);
+            super.reset();
+        }
+    }
+
+    public static class AES_GCM extends JSSAEADCipherSpi {
+
+        // recommended IV length from NIST SP 800-38D
+        private static final int IV_LENGTH = 12;
+        private static final int TAG_LENGTH = 16;
+
+        public AES_GCM() {
+            super("AES/GCM/NoPadding", PKCS11Constants.CKM_AES_GCM);
+        }
+
+        @Override
+        Params parseParams(AlgorithmParameterSpec params, boolean encrypt,
+                SecureRandom random)
+            throws InvalidAlgorithmParameterException
+        {
+            if (params == null) {
+                if (!encrypt) {
+                    throw new InvalidAlgorithmParameterException(
+                        "GCMParameterSpec required for decryption");
+                }
+                return new Params(generateIV(IV_LENGTH, random), TAG_LENGTH);
+            }
+            if (!(params instanceof GCMParameterSpec gcm)) {
+                throw new InvalidAlgorithmParameterException(
+                    "Expected GCMParameterSpec: " + params.getClass().getName());
+            }
+            int tagBits = gcm.getTLen();
+            if (tagBits < 96 || tagBits > 128 || tagBits % 8 != 0) {
+                throw new InvalidAlgorithmParameterException(
+                    "Unsupported GCM tag length: " + tagBits);
+            }
+            byte[] iv = gcm.getIV();
+            if (iv.length == 0) {
+                throw new InvalidAlgorithmParameterException("IV is empty");
+            }
+            return new Params(iv, tagBits / 8);
+        }
+
+        @Override
+        AlgorithmParameterSpec makeParams(byte[] iv, int tagLength) {
+            return new GCMParameterSpec(tagLength * 8, iv);
+        }
+
+        @Override
+        Class<? extends AlgorithmParameterSpec> getParamsClass() {
+            return GCMParameterSpec.class;
+        }
+
+        @Override
+        String getParamsAlgorithm() {
+            return "GCM";
+        }
+
+        @Override
+        String getMode() {
+            return "GCM";
+        }
+    }
+
+    public static class ChaCha20_Poly1305 extends JSSAEADCipherSpi {
+
+        // RFC 8439
+        private static final int NONCE_LENGTH = 12;
+        private static final int TAG_LENGTH = 16;
+
+        public ChaCha20_Poly1305() {
+            super("ChaCha20-Poly1305", PKCS11Constants.CKM_CHACHA20_POLY1305);
+        }
+
+        @Override
+        Params parseParams(AlgorithmParameterSpec params, boolean encrypt,
+                SecureRandom random)
+            throws InvalidAlgorithmParameterException
+        {
+            if (params == null) {
+                if (!encrypt) {
+                    throw new InvalidAlgorithmParameterException(
+                        "IvParameterSpec required for decryption");
+                }
+                return new Params(generateIV(NONCE_LENGTH, random), TAG_LENGTH);
+            }
+            if (!(params instanceof IvParameterSpec ivSpec)) {
+                throw new InvalidAlgorithmParameterException(
+                    "Expected IvParameterSpec: " + params.getClass().getName());
+            }
+            byte[] nonce = ivSpec.getIV();
+            if (nonce.length != NONCE_LENGTH) {
+                throw new InvalidAlgorithmParameterException(
+                    "Expected a " + NONCE_LENGTH + "-byte nonce: " + nonce.length);
+            }
+            return new Params(nonce, TAG_LENGTH);
+        }
+
+        @Override
+        AlgorithmParameterSpec makeParams(byte[] iv, int tagLength) {
+            return new IvParameterSpec(iv);
+        }
+
+        @Override
+        Class<? extends AlgorithmParameterSpec> getParamsClass() {
+            return IvParameterSpec.class;
+        }
+
+        @Override
+        String getParamsAlgorithm() {
+            return "ChaCha20-Poly1305";
+        }
+
+        @Override
+        String getMode() {
+            return "None";
+        }
+    }
+}
@@ -4,6 +4,7 @@
 
 package org.mozilla.jss.provider.javax.crypto;
 
+import java.nio.ByteBuffer;
 import java.security.AlgorithmParameters;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
@@ -37,6 +38,7 @@ import org.mozilla.jss.crypto.SymmetricKey;
 import org.mozilla.jss.crypto.TokenException;
 import org.mozilla.jss.crypto.TokenRuntimeException;
 import org.mozilla.jss.crypto.TokenSupplierManager;
+import org.mozilla.jss.pkcs11.PK11Cipher;
 import org.mozilla.jss.pkcs11.PK11PrivKey;
 import org.mozilla.jss.pkcs11.PK11PubKey;
 import org.mozilla.jss.pkix.primitive.SubjectPublicKeyInfo;
@@ -309,6 +311,9 @@ public class JSSCipherSpi extends javax.crypto.CipherSpi {
 
     @Override
     public int engineGetOutputSize(int inputLen) {
+        if (cipher instanceof PK11Cipher pk11Cipher) {
+            return pk11Cipher.getOutputSize(inputLen);
+        }
         int total = (blockSize-1) + inputLen;
         return ((total / blockSize) + 1) * blockSize;
     }
@@ -331,13 +336,28 @@ public class JSSCipherSpi extends javax.crypto.CipherSpi {
     public int engineUpdate(byte[] input, int inputOffset, int inputLen,
         byte[] output, int outputOffset) throws ShortBufferException
     {
-        byte[] bytes = engineUpdate(input, inputOffset, inputLen);
-        if( bytes.length > output.length-outputOffset ) {
-            throw new ShortBufferException(bytes.length +  " needed, " +
-                (output.length-outputOffset) + " supplied");
+        if(cipher == null) {
+            throw new IllegalStateException();
+        }
+        try {
+            return cipher.update(input, inputOffset, inputLen, output, outputOffset);
+        } catch(TokenException te) {
+            throw new TokenRuntimeException(te.getMessage());
+        }
+    }
+
+    @Override
+    public int engineUpdate(ByteBuffer input, ByteBuffer output)
+        throws ShortBufferException
+    {
+        if(cipher == null) {
+            throw new IllegalStateException();
+        }
+        try {
+            return cipher.update(input, output);
+        } catch(TokenException te) {
+            throw new TokenRuntimeException(te.getMessage());
         }
-        System.arraycopy(bytes, 0, output, outputOffset, bytes.length);
-        return bytes.length;
     }
 
     @Override
@@ -370,13 +390,42 @@ public class JSSCipherSpi extends javax.crypto.CipherSpi {
             throws ShortBufferException, IllegalBlockSizeException,
             BadPaddingException
     {
-        byte[] bytes = engineDoFinal(input, inputOffset, inputLen);
-        if( bytes.length > output.length-outputOffset ) {
-            throw new ShortBufferException(bytes.length +  " needed, " +
-                (output.length-outputOffset) + " supplied");
+        if( cipher == null ) {
+            throw new IllegalStateException();
+        }
+        try {
+            if( input == null ) {
+                input = new byte[0];
+                inputOffset = 0;
+                inputLen = 0;
+            }
+            return cipher.doFinal(input, inputOffset, inputLen, output, outputOffset);
+        } catch(IllegalStateException ise) {
+            throw ise;
+        } catch(org.mozilla.jss.crypto.IllegalBlockSizeException ibse) {
+            throw new IllegalBlockSizeException(ibse.getMessage());
+        } catch(TokenException te) {
+            throw new TokenRuntimeException(te.getMessage());
+        }
+    }
+
+    @Override
+    public int engineDoFinal(ByteBuffer input, ByteBuffer output)
+            throws ShortBufferException, IllegalBlockSizeException,
+            BadPaddingException
+    {
+        if( cipher == null ) {
+            throw new IllegalStateException();
+        }
+        try {
+            return cipher.doFinal(input, output);
+        } catch(IllegalStateException ise) {
+            throw ise;
+        } catch(org.mozilla.jss.crypto.IllegalBlockSizeException ibse) {
+            throw new IllegalBlockSizeException(ibse.getMessage());
+        } catch(TokenException te) {
+            throw new TokenRuntimeException(te.getMessage());
         }
-        System.arraycopy(bytes, 0, output, outputOffset, bytes.length);
-        return bytes.length;
     }
 
     @Override
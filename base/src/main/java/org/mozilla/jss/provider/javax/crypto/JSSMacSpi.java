@@ -4,14 +4,17 @@
 
 package org.mozilla.jss.provider.javax.crypto;
 
+import java.nio.ByteBuffer;
 import java.security.DigestException;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.Key;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
 import java.security.spec.AlgorithmParameterSpec;
 import java.security.spec.InvalidKeySpecException;
+import java.util.Arrays;
 
 import javax.crypto.SecretKeyFactory;
 import javax.crypto.spec.SecretKeySpec;
@@ -32,6 +35,12 @@ public class JSSMacSpi extends javax.crypto.MacSpi {
     private DigestAlgorithm alg;
     private String keyName;
 
+    // last key imported from its encoding, so that initializing again
+    // with the same key bits reuses the key and the native context; only
+    // a SHA-256 digest of the bits is kept, never the bits themselves
+    private byte[] importedDigest;
+    private SymmetricKey importedKey;
+
     protected JSSMacSpi(DigestAlgorithm alg, String keyName) {
       try {
         this.alg = alg;
@@ -63,20 +72,7 @@ public class JSSMacSpi extends javax.crypto.MacSpi {
         } else if (key instanceof SymmetricKey) {
             real_key = (SymmetricKey)key;
         } else if (key.getEncoded() != null) {
-            SecretKeyFactory factory = SecretKeyFactory.getInstance(keyName, "Mozilla-JSS");
-            SecretKeySpec spec = new SecretKeySpec(key.getEncoded(), keyName);
-            Key manufactured = factory.generateSecret(spec);
-            if (manufactured instanceof SecretKeyFacade) {
-                SecretKeyFacade facade = (SecretKeyFacade)manufactured;
-                real_key = facade.key;
-            } else if (manufactured instanceof SymmetricKey) {
-                real_key = (SymmetricKey)manufactured;
-            } else {
-                String msg = "Internal error while converting key: ";
-                msg += "SecretKeyFactory gave unrecognized manufactured ";
-                msg += "key type: " + manufactured.getClass().getName();
-                throw new InvalidKeyException(msg);
-            }
+            real_key = importKey(key.getEncoded());
         } else {
             String msg = "Must use a key created by JSS; got ";
             msg += key.getClass().getName() + ". ";
@@ -98,6 +94,44 @@ public class JSSMacSpi extends javax.crypto.MacSpi {
       }
     }
 
+    private SymmetricKey importKey(byte[] encoded)
+        throws InvalidKeyException, NoSuchAlgorithmException,
+            NoSuchProviderException, InvalidKeySpecException
+    {
+        byte[] hash;
+        Key manufactured;
+        try {
+            hash = MessageDigest.getInstance("SHA-256").digest(encoded);
+            if (importedKey != null && MessageDigest.isEqual(hash, importedDigest)) {
+                return importedKey;
+            }
+
+            SecretKeyFactory factory = SecretKeyFactory.getInstance(keyName, "Mozilla-JSS");
+            SecretKeySpec spec = new SecretKeySpec(encoded, keyName);
+            manufactured = factory.generateSecret(spec);
+        } finally {
+            Arrays.fill(encoded, (byte) 0);
+        }
+
+        SymmetricKey real_key;
+        if (manufactured instanceof SecretKeyFacade) {
+            SecretKeyFacade facade = (SecretKeyFacade)manufactured;
+            real_key = facade.key;
+        } else if (manufactured instanceof SymmetricKey) {
+            real_key = (SymmetricKey)manufactured;
+        } else {
+            String msg = "Internal error while converting key: ";
+            msg += "SecretKeyFactory gave unrecognized manufactured ";
+            msg += "key type: " + manufactured.getClass().getName();
+            throw new InvalidKeyException(msg);
+        }
+
+        importedDigest = hash;
+        importedKey = real_key;
+
+        return real_key;
+    }
+
     @Override
     public void engineUpdate(byte input) {
       try {
@@ -116,6 +150,15 @@ public class JSSMacSpi extends javax.crypto.MacSpi {
       }
     }
 
+    @Override
+    public void engineUpdate(ByteBuffer input) {
+      try {
+        digest.update(input);
+      } catch(DigestException de) {
+        throw new TokenRuntimeException("DigestException: " + de.getMessage());
+      }
+    }
+
     @Override
     public byte[] engineDoFinal() {
       try {
@@ -75,6 +75,7 @@ public class JSSTrustManager implements X509TrustManager {
         this.enableCertRevokeVerify = enableCertRevokeVerify;
     }
     private SSLCertificateApprovalCallback callback;
+    private ValidatedChainCache validationCache;
 
     public String getHostname() {
         return hostname;
@@ -96,6 +97,19 @@ public class JSSTrustManager implements X509TrustManager {
         this.callback = certCallback;
     }
 
+    public ValidatedChainCache getValidationCache() {
+        return validationCache;
+    }
+
+    /**
+     * Cache chains which passed validation so repeated handshakes with the
+     * same peer skip revalidating them; null (the default) disables it.
+     * The cache may be shared between trust managers.
+     */
+    public void setValidationCache(ValidatedChainCache validationCache) {
+        this.validationCache = validationCache;
+    }
+
     public boolean isValidSAN(SubjectAlternativeNameExtension sanExt) throws Exception {
 
         logger.debug("JSSTrustManager: Checking hostname in SAN extension");
@@ -172,6 +186,38 @@ public class JSSTrustManager implements X509TrustManager {
     }
 
     public void checkCertChain(X509Certificate[] certChain, String keyUsage) throws Exception {
+        verifyCertChain(certChain, keyUsage);
+    }
+
+    /**
+     * Validate the cert chain, consulting the validation cache if one is
+     * configured.
+     */
+    public void checkCertChain(X509Certificate[] certChain, String authType, String keyUsage) throws Exception {
+
+        if (validationCache == null) {
+            verifyCertChain(certChain, keyUsage);
+            return;
+        }
+
+        String key = ValidatedChainCache.getKey(certChain, authType, keyUsage, hostname,
+                allowMissingExtendedKeyUsage, enableCertRevokeVerify);
+
+        if (validationCache.isValidated(key)) {
+            logger.debug("JSSTrustManager: Cert chain already validated");
+            return;
+        }
+
+        if (verifyCertChain(certChain, keyUsage)) {
+            validationCache.put(key, certChain, enableCertRevokeVerify);
+        }
+    }
+
+    /**
+     * Validate the cert chain. Returns true if the chain is trusted, or
+     * false if it was only approved by the callback.
+     */
+    private boolean verifyCertChain(X509Certificate[] certChain, String keyUsage) throws Exception {
 
         logger.debug("JSSTrustManager: checkCertChain(" + keyUsage + ")");
 
@@ -191,12 +237,12 @@ public class JSSTrustManager implements X509TrustManager {
         Enumeration<ValidityItem> reasons = status.getReasons();
         if (!reasons.hasMoreElements()) {
             logger.debug("JSSTrustManager: Trusted cert: " + leafCert.getSubjectX500Principal());
-            return;
+            return true;
         }
 
         if (callback != null && callback.approve(leafCert, status)) {
             logger.debug("JSSTrustManager: Approved cert: " + leafCert.getSubjectX500Principal());
-            return;
+            return false;
         }
 
         // throw an exception based on the first issue
@@ -394,7 +440,7 @@ public class JSSTrustManager implements X509TrustManager {
         logger.debug("JSSTrustManager: checkClientTrusted(" + authType + "):");
 
         try {
-            checkCertChain(certChain, CLIENT_AUTH_OID);
+            checkCertChain(certChain, authType, CLIENT_AUTH_OID);
             logger.debug("JSSTrustManager: SSL client certificate is valid");
 
         } catch (CertificateException e) {
@@ -411,7 +457,7 @@ public class JSSTrustManager implements X509TrustManager {
         logger.debug("JSSTrustManager: checkServerTrusted(" + certChain.length + ", " + authType + "):");
 
         try {
-            checkCertChain(certChain, SERVER_AUTH_OID);
+            checkCertChain(certChain, authType, SERVER_AUTH_OID);
             logger.debug("JSSTrustManager: SSL server certificate is valid");
 
         } catch (CertificateException e) {
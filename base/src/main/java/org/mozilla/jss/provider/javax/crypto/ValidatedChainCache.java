@@ -0,0 +1,296 @@
+package org.mozilla.jss.provider.javax.crypto;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.mozilla.jss.CryptoManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded cache of certificate chains which JSSTrustManager has
+ * successfully validated.
+ *
+ * Entries are keyed by a SHA-256 digest over the DER encoding of the
+ * chain, the auth type, the required extended key usage, the expected
+ * hostname, the trust manager's options and the current trust database
+ * generation (see CryptoManager.getTrustGeneration()), so a change to any
+ * of them results in a fresh validation. An entry expires after the cache
+ * TTL, when the first certificate in the chain expires, or, when
+ * revocation checking is enabled, after the revocation freshness window,
+ * whichever comes first.
+ *
+ * Only chains trusted outright are cached; failures and chains approved
+ * by an SSLCertificateApprovalCallback are always validated again.
+ */
+public class ValidatedChainCache {
+    public static Logger logger = LoggerFactory.getLogger(ValidatedChainCache.class);
+
+    /**
+     * Default maximum number of validated chains to keep.
+     */
+    public static final int DEFAULT_MAX_SIZE = 1024;
+
+    /**
+     * Default lifetime of a cached result, in seconds.
+     */
+    public static final int DEFAULT_TIMEOUT = 300;
+
+    /**
+     * Default lifetime of a cached result when revocation checking is
+     * enabled, in seconds.
+     */
+    public static final int DEFAULT_REVOCATION_FRESHNESS = 60;
+
+    /**
+     * Expiration times keyed by chain digest, in access order; guarded by
+     * this.
+     */
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+
+    private long generation = CryptoManager.getTrustGeneration();
+
+    private int maxSize;
+    private int timeout;
+    private int revocationFreshness;
+
+    public ValidatedChainCache() {
+        this(DEFAULT_MAX_SIZE, DEFAULT_TIMEOUT, DEFAULT_REVOCATION_FRESHNESS);
+    }
+
+    public ValidatedChainCache(int maxSize, int timeout, int revocationFreshness) {
+        setMaxSize(maxSize);
+        setTimeout(timeout);
+        setRevocationFreshness(revocationFreshness);
+    }
+
+    /**
+     * Compute the cache key for validating the given chain against the
+     * current trust database. A chain validated while the trust database
+     * changes is thus stored under a key which is never looked up again.
+     */
+    public static String getKey(X509Certificate[] certChain, String authType,
+            String keyUsage, String hostname, boolean allowMissingExtendedKeyUsage,
+            boolean enableCertRevokeVerify) throws CertificateEncodingException {
+
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("Unable to create SHA-256 digest: " + e.getMessage(), e);
+        }
+
+        for (X509Certificate cert : certChain) {
+            byte[] der = cert.getEncoded();
+            update(digest, der.length);
+            digest.update(der);
+        }
+
+        update(digest, authType);
+        update(digest, keyUsage);
+        update(digest, hostname);
+        digest.update((byte) (allowMissingExtendedKeyUsage ? 1 : 0));
+        digest.update((byte) (enableCertRevokeVerify ? 1 : 0));
+
+        long generation = CryptoManager.getTrustGeneration();
+        update(digest, (int) (generation >>> 32));
+        update(digest, (int) generation);
+
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static void update(MessageDigest digest, int value) {
+        digest.update((byte) (value >>> 24));
+        digest.update((byte) (value >>> 16));
+        digest.update((byte) (value >>> 8));
+        digest.update((byte) value);
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        if (value == null) {
+            update(digest, -1);
+            return;
+        }
+
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        update(digest, bytes.length);
+        digest.update(bytes);
+    }
+
+    /**
+     * Whether the chain with the given key was validated and the result
+     * is still fresh.
+     */
+    public boolean isValidated(String key) {
+        synchronized (this) {
+            checkGeneration();
+
+            Long expiration = entries.get(key);
+            if (expiration != null && expiration > System.currentTimeMillis()) {
+                hits.incrementAndGet();
+                return true;
+            }
+
+            if (expiration != null) {
+                entries.remove(key);
+                expirations.incrementAndGet();
+            }
+        }
+
+        misses.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Record that the chain with the given key was validated.
+     */
+    public void put(String key, X509Certificate[] certChain, boolean enableCertRevokeVerify) {
+        long now = System.currentTimeMillis();
+        long expiration = now + timeout * 1000L;
+
+        if (enableCertRevokeVerify) {
+            expiration = Math.min(expiration, now + revocationFreshness * 1000L);
+        }
+
+        for (X509Certificate cert : certChain) {
+            expiration = Math.min(expiration, cert.getNotAfter().getTime());
+        }
+
+        if (expiration <= now) {
+            return;
+        }
+
+        synchronized (this) {
+            checkGeneration();
+            entries.put(key, expiration);
+            trim();
+        }
+    }
+
+    /**
+     * Drop all cached results if the trust database changed since they
+     * were computed; must be called while holding the lock.
+     */
+    private void checkGeneration() {
+        long current = CryptoManager.getTrustGeneration();
+        if (current != generation) {
+            logger.debug("ValidatedChainCache: trust database changed, clearing " + entries.size() + " entries");
+            entries.clear();
+            generation = current;
+        }
+    }
+
+    /**
+     * Drop expired entries and the least recently used entries beyond the
+     * maximum size; must be called while holding the lock.
+     */
+    private void trim() {
+        long now = System.currentTimeMillis();
+
+        Iterator<Long> it = entries.values().iterator();
+        while (it.hasNext()) {
+            long expiration = it.next();
+            if (expiration <= now) {
+                it.remove();
+                expirations.incrementAndGet();
+            } else if (entries.size() > maxSize) {
+                it.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public final synchronized void setMaxSize(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Expected positive validated chain cache size, got: " + maxSize);
+        }
+
+        this.maxSize = maxSize;
+        trim();
+    }
+
+    public synchronized int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Set the lifetime of a cached result, in seconds.
+     */
+    public final void setTimeout(int timeout) {
+        if (timeout <= 0) {
+            throw new IllegalArgumentException("Expected positive validated chain cache timeout, got: " + timeout);
+        }
+
+        this.timeout = timeout;
+    }
+
+    public int getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Set the lifetime of a cached result when revocation checking is
+     * enabled, in seconds.
+     */
+    public final void setRevocationFreshness(int revocationFreshness) {
+        if (revocationFreshness <= 0) {
+            throw new IllegalArgumentException("Expected positive revocation freshness, got: " + revocationFreshness);
+        }
+
+        this.revocationFreshness = revocationFreshness;
+    }
+
+    public int getRevocationFreshness() {
+        return revocationFreshness;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    public long getExpirationCount() {
+        return expirations.get();
+    }
+
+    /**
+     * Fraction of lookups which found a validated chain, or zero if there
+     * were no lookups yet.
+     */
+    public double getHitRatio() {
+        long hit = hits.get();
+        long total = hit + misses.get();
+        if (total == 0) {
+            return 0.0;
+        }
+
+        return (double) hit / total;
+    }
+}
@@ -12,7 +12,9 @@ import org.mozilla.jss.provider.javax.crypto.JSSKeyManager;
 import org.mozilla.jss.ssl.javax.JSSEngine;
 import org.mozilla.jss.ssl.javax.JSSEngineReferenceImpl;
 import org.mozilla.jss.ssl.javax.JSSParameters;
+import org.mozilla.jss.ssl.javax.ServerCredentialCache;
 import org.mozilla.jss.ssl.javax.JSSServerSocketFactory;
+import org.mozilla.jss.ssl.javax.JSSSessionContext;
 import org.mozilla.jss.ssl.javax.JSSSocketFactory;
 import org.mozilla.jss.ssl.SSLVersion;
 
@@ -22,6 +24,12 @@ public class JSSContextSpi extends SSLContextSpi {
     JSSKeyManager key_manager;
     X509TrustManager[] trust_managers;
 
+    /**
+     * Certificates and keys resolved through key_manager, shared by the
+     * engines created by this context.
+     */
+    ServerCredentialCache credential_cache;
+
     SSLVersion protocol_version;
 
     @Override
@@ -37,6 +45,11 @@ public class JSSContextSpi extends SSLContextSpi {
             }
         }
 
+        if (credential_cache != null) {
+            credential_cache.refresh();
+        }
+        credential_cache = key_manager == null ? null : new ServerCredentialCache(key_manager);
+
         if (tms != null) {
             ArrayList<X509TrustManager> xtms = new ArrayList<>();
             for (TrustManager tm : tms) {
@@ -72,6 +85,7 @@ public class JSSContextSpi extends SSLContextSpi {
     private void initializeEngine(JSSEngine eng) {
         eng.setKeyManager(key_manager);
         eng.setTrustManagers(trust_managers);
+        eng.setServerCredentialCache(credential_cache);
 
         if (protocol_version != null) {
             eng.setEnabledProtocols(protocol_version, protocol_version);
@@ -80,14 +94,14 @@ public class JSSContextSpi extends SSLContextSpi {
 
     @Override
     public SSLSessionContext engineGetClientSessionContext() {
-        logger.debug("JSSContextSpi.engineGetClientSessionContext() - not implemented");
-        return null;
+        logger.debug("JSSContextSpi.engineGetClientSessionContext()");
+        return JSSSessionContext.getClientSessionContext();
     }
 
     @Override
     public SSLSessionContext engineGetServerSessionContext() {
-        logger.debug("JSSContextSpi.engineGetServerSessionContext() - not implemented");
-        return null;
+        logger.debug("JSSContextSpi.engineGetServerSessionContext()");
+        return JSSSessionContext.getServerSessionContext();
     }
 
     @Override
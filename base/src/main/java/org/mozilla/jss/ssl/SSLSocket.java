@@ -10,8 +10,13 @@ import java.io.OutputStream;
 import java.net.InetAddress;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.GatheringByteChannel;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Objects;
 
 import javax.net.ssl.HandshakeCompletedListener;
 import javax.net.ssl.SSLSession;
@@ -19,7 +24,9 @@ import javax.net.ssl.SSLSession;
 /**
  * SSL client socket.
  */
-public class SSLSocket extends javax.net.ssl.SSLSocket {
+public class SSLSocket extends javax.net.ssl.SSLSocket
+    implements ByteChannel, GatheringByteChannel
+{
 
     /**
      *
@@ -355,21 +362,25 @@ public class SSLSocket extends javax.net.ssl.SSLSocket {
     /*
      * Locking strategy of SSLSocket
      *
-     * isClosed, inRead, and inWrite must be accessed with the object
-     * locked.
+     * isClosed, inRead, and inWrite are volatile. A read or write sets
+     * inRead or inWrite before checking isClosed, and close() sets
+     * isClosed before checking inRead and inWrite, so either the I/O
+     * sees the socket closed, or close() aborts the I/O. Reads and
+     * writes therefore don't lock the object.
      *
-     * readLock must be locked throughout the read method.  It is used
+     * readLock must be locked throughout the read methods.  It is used
      * to serialize read calls.
      *
-     * writeLock must be locked throughout the write method. It is used
-     * to serialize write calls.
+     * writeLock must be locked throughout the write methods. It is used
+     * to serialize write calls, so a gathering write is not interleaved
+     * with other writes.
      */
 
     private java.lang.Object readLock = new java.lang.Object();
     private java.lang.Object writeLock = new java.lang.Object();
-    private boolean isClosed = false;
-    private boolean inRead = false;
-    private boolean inWrite = false;
+    private volatile boolean isClosed = false;
+    private volatile boolean inRead = false;
+    private volatile boolean inWrite = false;
     private InetAddress inetAddress;
     private int port;
     private SocketProxy sockProxy = null;
@@ -1496,39 +1507,23 @@ public class SSLSocket extends javax.net.ssl.SSLSocket {
     int read(byte[] b, int off, int len)
             throws IOException, SocketTimeoutException {
         synchronized (readLock) {
-            synchronized (this) {
-                if (isClosed) { /* abort read if socket is closed */
-                    throw new IOException(
-                            "Socket has been closed, and cannot be reused.");
-                }
-                inRead = true;
-            }
-            int iRet;
+            beginRead();
             try {
-                iRet = socketRead(b, off, len, base.getTimeout());
+                return socketRead(b, off, len, base.getTimeout());
             } catch (SocketTimeoutException ste) {
                 throw new SocketTimeoutException("Unable to read from socket: " + ste);
             } catch (IOException ioe) {
                 throw new IOException("Unable to read from socket: " + ioe.getMessage(), ioe);
             } finally {
-                synchronized (this) {
-                    inRead = false;
-                }
+                inRead = false;
             }
-            return iRet;
         }
     }
 
     void write(byte[] b, int off, int len)
             throws IOException, SocketTimeoutException {
         synchronized (writeLock) {
-            synchronized (this) {
-                if (isClosed) { /* abort write if socket is closed */
-                    throw new IOException(
-                            "Socket has been closed, and cannot be reused.");
-                }
-                inWrite = true;
-            }
+            beginWrite();
             try {
                 socketWrite(b, off, len, base.getTimeout());
             } catch (SocketTimeoutException ste) {
@@ -1536,19 +1531,204 @@ public class SSLSocket extends javax.net.ssl.SSLSocket {
             } catch (IOException ioe) {
                 throw new IOException("Unable to write to socket: " + ioe.getMessage(), ioe);
             } finally {
-                synchronized (this) {
-                    inWrite = false;
+                inWrite = false;
+            }
+        }
+    }
+
+    private void beginRead() throws IOException {
+        inRead = true;
+        if (isClosed) { /* abort read if socket is closed */
+            inRead = false;
+            throw new IOException(
+                    "Socket has been closed, and cannot be reused.");
+        }
+    }
+
+    private void beginWrite() throws IOException {
+        inWrite = true;
+        if (isClosed) { /* abort write if socket is closed */
+            inWrite = false;
+            throw new IOException(
+                    "Socket has been closed, and cannot be reused.");
+        }
+    }
+
+    /**
+     * Reads up to dst.remaining() bytes into the buffer, blocking until
+     * at least one byte is available. Direct buffers are read into by
+     * NSS without copying.
+     *
+     * @return The number of bytes read, or -1 at the end of the stream.
+     */
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        if (dst.isReadOnly()) {
+            throw new ReadOnlyBufferException();
+        }
+
+        int len = dst.remaining();
+        if (len == 0) {
+            return 0;
+        }
+
+        if (dst.hasArray()) {
+            int nread = read(dst.array(), dst.arrayOffset() + dst.position(), len);
+            if (nread > 0) {
+                dst.position(dst.position() + nread);
+            }
+            return nread;
+        }
+
+        synchronized (readLock) {
+            beginRead();
+            try {
+                int nread = socketReadDirect(dst, dst.position(), len, base.getTimeout());
+                if (nread > 0) {
+                    dst.position(dst.position() + nread);
                 }
+                return nread;
+            } catch (SocketTimeoutException ste) {
+                throw new SocketTimeoutException("Unable to read from socket: " + ste);
+            } catch (IOException ioe) {
+                throw new IOException("Unable to read from socket: " + ioe.getMessage(), ioe);
+            } finally {
+                inRead = false;
             }
         }
     }
 
+    /**
+     * Writes all remaining bytes of the buffer.
+     */
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        return (int) write(new ByteBuffer[] { src }, 0, 1);
+    }
+
+    /**
+     * Writes all remaining bytes of the buffers, in order.
+     */
+    @Override
+    public long write(ByteBuffer[] srcs) throws IOException {
+        return write(srcs, 0, srcs.length);
+    }
+
+    /**
+     * Writes all remaining bytes of the given buffers, in order, as one
+     * write with respect to other writers. Consecutive direct buffers are
+     * passed to NSS without copying in one gathering write of up to
+     * MAX_GATHER buffers, so NSS can coalesce them into full records.
+     */
+    @Override
+    public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+        Objects.checkFromIndexSize(offset, length, srcs.length);
+
+        long total = 0;
+        synchronized (writeLock) {
+            int i = offset;
+            int end = offset + length;
+            while (i < end) {
+                ByteBuffer src = srcs[i];
+
+                if (!src.hasRemaining()) {
+                    i++;
+                    continue;
+                }
+
+                if (!src.isDirect()) {
+                    total += writeHeap(src);
+                    i++;
+                    continue;
+                }
+
+                // collect a run of direct buffers
+                ByteBuffer[] buffers = new ByteBuffer[MAX_GATHER];
+                int[] offsets = new int[MAX_GATHER];
+                int[] lengths = new int[MAX_GATHER];
+                int count = 0;
+                long size = 0;
+
+                while (i < end && count < MAX_GATHER && srcs[i].isDirect()
+                        && size + srcs[i].remaining() <= Integer.MAX_VALUE) {
+                    ByteBuffer buffer = srcs[i++];
+                    if (!buffer.hasRemaining()) {
+                        continue;
+                    }
+                    buffers[count] = buffer;
+                    offsets[count] = buffer.position();
+                    lengths[count] = buffer.remaining();
+                    size += lengths[count];
+                    count++;
+                }
+
+                writeDirect(buffers, offsets, lengths, count);
+
+                for (int j = 0; j < count; j++) {
+                    buffers[j].position(offsets[j] + lengths[j]);
+                }
+                total += size;
+            }
+        }
+        return total;
+    }
+
+    // Called with writeLock held.
+    private int writeHeap(ByteBuffer src) throws IOException {
+        int len = src.remaining();
+        if (src.hasArray()) {
+            write(src.array(), src.arrayOffset() + src.position(), len);
+            src.position(src.limit());
+        } else {
+            byte[] copy = new byte[len];
+            src.get(copy);
+            write(copy, 0, len);
+        }
+        return len;
+    }
+
+    // Called with writeLock held.
+    private void writeDirect(ByteBuffer[] buffers, int[] offsets, int[] lengths, int count)
+            throws IOException {
+        beginWrite();
+        try {
+            socketWriteDirect(buffers, offsets, lengths, count, base.getTimeout());
+        } catch (SocketTimeoutException ste) {
+            throw new SocketTimeoutException("Unable to write to socket: " + ste);
+        } catch (IOException ioe) {
+            throw new IOException("Unable to write to socket: " + ioe.getMessage(), ioe);
+        } finally {
+            inWrite = false;
+        }
+    }
+
+    /**
+     * @return Whether this socket has not been closed.
+     */
+    @Override
+    public boolean isOpen() {
+        return !isClosed;
+    }
+
     private native int socketRead(byte[] b, int off, int len, int timeout)
             throws IOException;
 
     private native void socketWrite(byte[] b, int off, int len, int timeout)
             throws IOException;
 
+    private native int socketReadDirect(ByteBuffer b, int off, int len, int timeout)
+            throws IOException;
+
+    private native int socketWriteDirect(ByteBuffer[] b, int[] offsets, int[] lengths,
+            int count, int timeout)
+            throws IOException;
+
+    /**
+     * The maximum number of buffers in one gathering write, which is
+     * the NSPR limit (PR_MAX_IOVECTOR_SIZE).
+     */
+    static final int MAX_GATHER = 16;
+
     /**
      * Removes the current session from the session cache.
      */
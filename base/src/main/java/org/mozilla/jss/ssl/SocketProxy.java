@@ -7,14 +7,8 @@ package org.mozilla.jss.ssl;
 class SocketProxy extends org.mozilla.jss.util.NativeProxy {
 
     public SocketProxy(byte[] pointer) {
-        super(pointer);
+        super(pointer, SocketProxy::releaseNativeResources);
     }
 
-    @Override
-    protected native void releaseNativeResources();
-
-    @Override
-    protected void finalize() throws Throwable {
-        super.finalize();
-    }
+    private static native void releaseNativeResources(long pointer);
 }
@@ -0,0 +1,360 @@
+package org.mozilla.jss.ssl.javax;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.mozilla.jss.nss.CertAuthHandler;
+import org.mozilla.jss.nss.PRErrors;
+import org.mozilla.jss.nss.SECErrors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Opt-in executor for validating peer certificate chains off the thread
+ * driving the JSSEngine.
+ *
+ * Validation runs the configured X509TrustManagers, which may make slow
+ * OCSP or CRL lookups. With an executor configured (see
+ * JSSEngine.setCertValidationExecutor(...)), a client-mode engine submits
+ * validation as soon as NSS asks for it and hands out a delegated task
+ * which merely waits for the result; many handshakes can then validate in
+ * parallel. NSS only supports asynchronous certificate authentication on
+ * the client side (a server's callback returning SECWouldBlock fails the
+ * handshake), so server-mode engines still answer NSS from within the
+ * handshake. They validate on this executor, bounded by its timeout, and
+ * release the engine's lock while waiting; see
+ * JSSEngineReferenceImpl.validateInCallback(...).
+ *
+ * At most maxPending validations may be queued or running at once; when
+ * that limit is reached, submissions are rejected and the engine falls
+ * back to validating on the caller's thread. Each validation is given the
+ * configured timeout, after which it is cancelled and the handshake fails
+ * with PR_IO_TIMEOUT_ERROR.
+ *
+ * Cancelling only interrupts a running validation; it may keep running
+ * until the TrustManagers return, long after the engine has been cleaned
+ * up. Handlers must therefore not touch the engine's ssl_fd from check();
+ * JSSEngineReferenceImpl collects the peer's chain on the engine's thread
+ * before submitting it.
+ */
+public class CertValidationExecutor implements AutoCloseable {
+    public static Logger logger = LoggerFactory.getLogger(CertValidationExecutor.class);
+
+    /**
+     * Default time allowed for a single validation, in milliseconds.
+     */
+    public static final long DEFAULT_TIMEOUT = 30000;
+
+    private final ExecutorService executor;
+    private final Semaphore permits;
+    private final int maxPending;
+    private final long timeout;
+
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger maxQueued = new AtomicInteger();
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong totalTime = new AtomicLong();
+
+    /**
+     * Create an executor on top of the given ExecutorService, allowing at
+     * most maxPending outstanding validations of at most timeout
+     * milliseconds each. The ExecutorService is shut down on close().
+     */
+    public CertValidationExecutor(ExecutorService executor, int maxPending, long timeout) {
+        if (maxPending <= 0) {
+            throw new IllegalArgumentException("Expected positive number of pending validations, got: " + maxPending);
+        }
+
+        if (timeout <= 0) {
+            throw new IllegalArgumentException("Expected positive validation timeout, got: " + timeout);
+        }
+
+        this.executor = executor;
+        this.permits = new Semaphore(maxPending);
+        this.maxPending = maxPending;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Create an executor backed by a fixed pool of daemon threads.
+     */
+    public static CertValidationExecutor newFixedPool(int threads, int maxPending, long timeout) {
+        AtomicInteger counter = new AtomicInteger();
+        ThreadFactory factory = r -> {
+            Thread thread = new Thread(r, "jss-cert-validation-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+
+        return new CertValidationExecutor(Executors.newFixedThreadPool(threads, factory), maxPending, timeout);
+    }
+
+    /**
+     * Create an executor running each validation on its own virtual
+     * thread; maxPending bounds how many run at once.
+     */
+    public static CertValidationExecutor newVirtualThreadPool(int maxPending, long timeout) {
+        return new CertValidationExecutor(Executors.newVirtualThreadPerTaskExecutor(), maxPending, timeout);
+    }
+
+    /**
+     * Handle on a submitted validation. Running it waits (up to the
+     * remaining timeout) for the validation to finish; it is suitable as
+     * an SSLEngine delegated task.
+     */
+    public final class Validation implements Runnable {
+        private static final int QUEUED = 0;
+        private static final int RUNNING = 1;
+        private static final int ABANDONED = 2;
+
+        private final CertAuthHandler handler;
+        private final Runnable listener;
+        private final long deadline;
+        private final AtomicInteger state = new AtomicInteger(QUEUED);
+        private Future<?> future;
+
+        private volatile boolean finished;
+        private volatile int result;
+
+        private Validation(CertAuthHandler handler, Runnable listener) {
+            this.handler = handler;
+            this.listener = listener;
+            this.deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        }
+
+        /**
+         * Whether the validation has finished (or timed out), without
+         * blocking.
+         */
+        public boolean isFinished() {
+            if (!finished && (future.isDone() || System.nanoTime() - deadline >= 0)) {
+                run();
+            }
+
+            return finished;
+        }
+
+        /**
+         * The PRErrorCode result of the validation, else 0; only valid once
+         * isFinished() returns true.
+         */
+        public int getResult() {
+            return result;
+        }
+
+        @Override
+        public synchronized void run() {
+            if (finished) {
+                return;
+            }
+
+            try {
+                future.get(Math.max(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+                result = handler.result;
+            } catch (TimeoutException e) {
+                abandon();
+                timeouts.incrementAndGet();
+                logger.warn("CertValidationExecutor: validation timed out after " + timeout + " ms");
+                result = PRErrors.IO_TIMEOUT_ERROR;
+            } catch (CancellationException e) {
+                // Cancelled by cancel(), e.g., because the engine was
+                // cleaned up while NSS waited for the result.
+                result = PRErrors.IO_TIMEOUT_ERROR;
+            } catch (ExecutionException e) {
+                // check() reports failures through its return code, so this
+                // only happens on unexpected runtime errors.
+                logger.warn("CertValidationExecutor: validation failed: " + e.getMessage(), e);
+                result = handler.result != 0 ? handler.result : SECErrors.UNTRUSTED_CERT;
+            } catch (InterruptedException e) {
+                // Leave the validation pending; the caller can retry.
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            finished = true;
+        }
+
+        /**
+         * Cancel the validation, e.g., because the engine was closed.
+         */
+        public void cancel() {
+            if (!finished) {
+                abandon();
+            }
+        }
+
+        /**
+         * Cancel the validation. If it never started, it never will, so
+         * release its slot here; otherwise execute() releases it.
+         */
+        private void abandon() {
+            if (state.compareAndSet(QUEUED, ABANDONED)) {
+                queued.decrementAndGet();
+                permits.release();
+            }
+
+            future.cancel(true);
+        }
+    }
+
+    /**
+     * Submit the handler for validation, returning null when too many
+     * validations are already outstanding; callers should then run the
+     * handler themselves.
+     */
+    public Validation submit(CertAuthHandler handler) {
+        return submit(handler, null);
+    }
+
+    /**
+     * Like submit(CertAuthHandler), but also runs the given listener, if
+     * any, on the executor's thread once the handler has run.
+     */
+    public Validation submit(CertAuthHandler handler, Runnable listener) {
+        if (!permits.tryAcquire()) {
+            rejected.incrementAndGet();
+            return null;
+        }
+
+        Validation validation = new Validation(handler, listener);
+        int depth = queued.incrementAndGet();
+        maxQueued.accumulateAndGet(depth, Math::max);
+
+        try {
+            validation.future = executor.submit(() -> execute(validation));
+        } catch (RejectedExecutionException e) {
+            queued.decrementAndGet();
+            permits.release();
+            rejected.incrementAndGet();
+            return null;
+        }
+
+        submitted.incrementAndGet();
+        return validation;
+    }
+
+    private void execute(Validation validation) {
+        if (!validation.state.compareAndSet(Validation.QUEUED, Validation.RUNNING)) {
+            // Timed out while waiting for a thread.
+            return;
+        }
+
+        queued.decrementAndGet();
+        running.incrementAndGet();
+        long start = System.nanoTime();
+
+        try {
+            validation.handler.run();
+        } finally {
+            totalTime.addAndGet(System.nanoTime() - start);
+            completed.incrementAndGet();
+            running.decrementAndGet();
+            permits.release();
+        }
+
+        if (validation.listener != null) {
+            validation.listener.run();
+        }
+    }
+
+    /**
+     * Validate on this executor, waiting for the result; runs the handler
+     * on the calling thread if the executor is saturated. Returns the
+     * PRErrorCode result of the validation, else 0.
+     */
+    public int validate(CertAuthHandler handler) {
+        Validation validation = submit(handler);
+        if (validation == null) {
+            handler.run();
+            return handler.result;
+        }
+
+        while (!validation.finished) {
+            validation.run();
+            if (Thread.currentThread().isInterrupted() && !validation.finished) {
+                // We can't leave NSS waiting; treat it like a timeout.
+                validation.abandon();
+                return PRErrors.IO_TIMEOUT_ERROR;
+            }
+        }
+
+        return validation.getResult();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    public int getMaxPending() {
+        return maxPending;
+    }
+
+    public long getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Number of validations waiting for a thread.
+     */
+    public int getQueueDepth() {
+        return queued.get();
+    }
+
+    /**
+     * Largest number of validations ever waiting for a thread at once.
+     */
+    public int getMaxQueueDepth() {
+        return maxQueued.get();
+    }
+
+    /**
+     * Number of validations currently running.
+     */
+    public int getActiveCount() {
+        return running.get();
+    }
+
+    public long getSubmittedCount() {
+        return submitted.get();
+    }
+
+    public long getCompletedCount() {
+        return completed.get();
+    }
+
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    public long getTimeoutCount() {
+        return timeouts.get();
+    }
+
+    /**
+     * Average time spent running a validation, in milliseconds.
+     */
+    public double getAverageValidationTime() {
+        long count = completed.get();
+        if (count == 0) {
+            return 0.0;
+        }
+
+        return totalTime.get() / 1e6 / count;
+    }
+}
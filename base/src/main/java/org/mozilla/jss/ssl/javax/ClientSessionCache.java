@@ -0,0 +1,290 @@
+package org.mozilla.jss.ssl.javax;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.mozilla.jss.ssl.SSLCipher;
+import org.mozilla.jss.ssl.SSLVersion;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Policy and metrics for client-side session resumption.
+ *
+ * NSS keeps the resumable sessions themselves in its process-wide client
+ * session cache, looking them up by peer address, SNI hostname and a peer
+ * ID string. BufferPRFD can only give NSS a truncated, faked peer address,
+ * so on its own that lookup can't tell apart connections to different
+ * backends, or connections to the same backend made under a different
+ * protocol range or cipher policy.
+ *
+ * This cache maps each (host, port, SNI, protocol range, cipher policy)
+ * key to the peer ID client-mode JSSEngines hand to NSS, so NSS only ever
+ * resumes a session negotiated under the same key. Each entry has a
+ * generation; expiring or evicting an entry bumps the generation, which
+ * makes NSS forget the old session (it ages out of NSS's cache on its own)
+ * and bounds the number of resumable sessions by the size of this cache.
+ *
+ * Because the underlying NSS cache is global, one instance is shared by
+ * all JSSContextSpi instances; see JSSEngine.getClientSessionCache().
+ * TLS 1.3 tickets are used once by NSS and replaced by the ones sent in
+ * the resumed handshake, so the timeout also bounds how long a chain of
+ * tickets to the same key may be reused.
+ */
+public final class ClientSessionCache {
+    public static Logger logger = LoggerFactory.getLogger(ClientSessionCache.class);
+
+    /**
+     * Default maximum number of keys to keep resumable sessions for.
+     */
+    public static final int DEFAULT_MAX_SIZE = 1024;
+
+    /**
+     * Default lifetime of a cache entry, in seconds.
+     */
+    public static final int DEFAULT_TIMEOUT = 86400;
+
+    /**
+     * Entries keyed by getKey(...), in access order; guarded by this.
+     */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Source of generations, unique across all keys so that a re-created
+     * entry never reuses an older peer ID.
+     */
+    private final AtomicLong generations = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+    private final AtomicLong fullHandshakes = new AtomicLong();
+    private final AtomicLong resumedHandshakes = new AtomicLong();
+
+    private int maxSize;
+    private int timeout;
+
+    public ClientSessionCache() {
+        this(DEFAULT_MAX_SIZE, DEFAULT_TIMEOUT);
+    }
+
+    public ClientSessionCache(int maxSize, int timeout) {
+        setMaxSize(maxSize);
+        setTimeout(timeout);
+    }
+
+    private static final class Entry {
+        final String peerID;
+        final long created;
+
+        Entry(String peerID, long created) {
+            this.peerID = peerID;
+            this.created = created;
+        }
+    }
+
+    /**
+     * Build the cache key for a connection.
+     *
+     * Protocols and ciphers may be null, meaning the NSS defaults are used.
+     */
+    public static String getKey(String host, int port, String sni,
+            SSLVersion minProtocol, SSLVersion maxProtocol, SSLCipher[] ciphers) {
+        StringBuilder key = new StringBuilder();
+        key.append(host).append(':').append(port);
+        key.append('/').append(sni == null ? "" : sni);
+        key.append('/').append(minProtocol == null ? "default" : minProtocol.name());
+        key.append('-').append(maxProtocol == null ? "default" : maxProtocol.name());
+        key.append('/');
+
+        if (ciphers == null) {
+            key.append("default");
+        } else {
+            // Order doesn't matter to NSS, so don't let it matter here.
+            // Use the whole list; a hash of it could collide and let NSS
+            // resume a session negotiated under another cipher policy.
+            int[] ids = new int[ciphers.length];
+            for (int i = 0; i < ciphers.length; i++) {
+                ids[i] = ciphers[i].getID();
+            }
+            Arrays.sort(ids);
+
+            for (int i = 0; i < ids.length; i++) {
+                if (i > 0) {
+                    key.append(',');
+                }
+                key.append(Integer.toHexString(ids[i]));
+            }
+        }
+
+        return key.toString();
+    }
+
+    /**
+     * Get the NSS peer ID to use for a connection with the given key,
+     * creating a new entry if there is no live one. Returns null when the
+     * cache is disabled (a maximum size of zero), in which case the
+     * connection shouldn't use NSS's session cache at all.
+     */
+    public String getPeerID(String key) {
+        synchronized (this) {
+            if (maxSize == 0) {
+                misses.incrementAndGet();
+                return null;
+            }
+
+            long now = System.currentTimeMillis();
+            Entry entry = entries.get(key);
+            if (entry != null && isExpired(entry, now)) {
+                entries.remove(key);
+                expirations.incrementAndGet();
+                entry = null;
+            }
+
+            if (entry != null) {
+                hits.incrementAndGet();
+                return entry.peerID;
+            }
+
+            misses.incrementAndGet();
+            entry = new Entry(key + "#" + generations.incrementAndGet(), now);
+            entries.put(key, entry);
+            trim();
+
+            return entry.peerID;
+        }
+    }
+
+    /**
+     * Record whether a handshake on a connection using this cache resumed
+     * a session.
+     */
+    public void recordHandshake(boolean resumed) {
+        if (resumed) {
+            resumedHandshakes.incrementAndGet();
+        } else {
+            fullHandshakes.incrementAndGet();
+        }
+    }
+
+    /**
+     * Stop resuming sessions for the given key; the next connection will
+     * perform a full handshake.
+     */
+    public synchronized void invalidate(String key) {
+        if (entries.remove(key) != null) {
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * Stop resuming all cached sessions.
+     */
+    public synchronized void clear() {
+        evictions.addAndGet(entries.size());
+        entries.clear();
+    }
+
+    private boolean isExpired(Entry entry, long now) {
+        return timeout > 0 && entry.created + timeout * 1000L <= now;
+    }
+
+    /**
+     * Drop expired entries and the least recently used entries beyond the
+     * maximum size; must be called while holding the lock.
+     */
+    private void trim() {
+        long now = System.currentTimeMillis();
+
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (isExpired(entry, now)) {
+                it.remove();
+                expirations.incrementAndGet();
+            } else if (entries.size() > maxSize) {
+                it.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Set the maximum number of keys to keep resumable sessions for; zero
+     * disables client session resumption.
+     */
+    public synchronized void setMaxSize(int maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("Expected non-negative client session cache size, got: " + maxSize);
+        }
+
+        this.maxSize = maxSize;
+        trim();
+    }
+
+    public synchronized int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Set the lifetime of a cache entry in seconds; zero means entries
+     * only leave the cache when evicted.
+     */
+    public synchronized void setTimeout(int timeout) {
+        if (timeout < 0) {
+            throw new IllegalArgumentException("Expected non-negative client session cache timeout, got: " + timeout);
+        }
+
+        this.timeout = timeout;
+        trim();
+    }
+
+    public synchronized int getTimeout() {
+        return timeout;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    public long getExpirationCount() {
+        return expirations.get();
+    }
+
+    public long getFullHandshakeCount() {
+        return fullHandshakes.get();
+    }
+
+    public long getResumedHandshakeCount() {
+        return resumedHandshakes.get();
+    }
+
+    /**
+     * Fraction of completed handshakes which resumed a session, or zero
+     * if no handshakes have completed yet.
+     */
+    public double getResumptionRatio() {
+        long resumed = resumedHandshakes.get();
+        long total = resumed + fullHandshakes.get();
+        if (total == 0) {
+            return 0.0;
+        }
+
+        return (double) resumed / total;
+    }
+}
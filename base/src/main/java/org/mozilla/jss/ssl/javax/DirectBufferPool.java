@@ -0,0 +1,118 @@
+package org.mozilla.jss.ssl.javax;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide pool of direct ByteBuffers, used for the network buffers of
+ * JSSSocketChannel instances with pooled buffers enabled.
+ *
+ * Channels take a buffer only while it holds data and give it back
+ * afterwards, so idle connections don't hold any. Released buffers are
+ * kept, up to getLimit() bytes in total, for the next channel asking for
+ * the same size; beyond that, they're left to the garbage collector. This
+ * mirrors the native buffer pool behind org.mozilla.jss.nss.Buffer.
+ */
+public final class DirectBufferPool {
+
+    /**
+     * Default maximum number of bytes held by the pool.
+     */
+    public static final long DEFAULT_LIMIT = 16 * 1024 * 1024;
+
+    private static final Map<Integer, Queue<ByteBuffer>> free = new ConcurrentHashMap<>();
+    private static final AtomicLong pooled = new AtomicLong();
+    private static volatile long limit = DEFAULT_LIMIT;
+
+    private static final LongAdder hits = new LongAdder();
+    private static final LongAdder misses = new LongAdder();
+
+    private DirectBufferPool() {
+    }
+
+    /**
+     * Get a cleared direct ByteBuffer of the given capacity, reusing a
+     * released one when available.
+     */
+    public static ByteBuffer acquire(int size) {
+        Queue<ByteBuffer> queue = free.get(size);
+        ByteBuffer buf = queue == null ? null : queue.poll();
+
+        if (buf == null) {
+            misses.increment();
+            return ByteBuffer.allocateDirect(size);
+        }
+
+        pooled.addAndGet(-size);
+        hits.increment();
+        buf.clear();
+        return buf;
+    }
+
+    /**
+     * Give a buffer obtained from acquire(...) back to the pool. The
+     * caller must not use it afterwards.
+     */
+    public static void release(ByteBuffer buf) {
+        if (buf == null || !buf.isDirect()) {
+            return;
+        }
+
+        int size = buf.capacity();
+        if (pooled.addAndGet(size) > limit) {
+            pooled.addAndGet(-size);
+            return;
+        }
+
+        free.computeIfAbsent(size, key -> new ConcurrentLinkedQueue<>()).offer(buf);
+    }
+
+    /**
+     * Set the maximum number of bytes the pool holds on to; 0 disables
+     * pooling. Buffers already pooled beyond the new limit are dropped.
+     */
+    public static void setLimit(long bytes) {
+        if (bytes < 0) {
+            throw new IllegalArgumentException("Expected 0 or a positive number of bytes: " + bytes);
+        }
+
+        limit = bytes;
+
+        for (Queue<ByteBuffer> queue : free.values()) {
+            ByteBuffer buf;
+            while (pooled.get() > bytes && (buf = queue.poll()) != null) {
+                pooled.addAndGet(-buf.capacity());
+            }
+        }
+    }
+
+    public static long getLimit() {
+        return limit;
+    }
+
+    /**
+     * Number of bytes currently held by the pool.
+     */
+    public static long getPooledBytes() {
+        return pooled.get();
+    }
+
+    /**
+     * Number of acquire(...) calls served from the pool.
+     */
+    public static long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Number of acquire(...) calls which allocated a new buffer.
+     */
+    public static long getMissCount() {
+        return misses.sum();
+    }
+}
@@ -0,0 +1,201 @@
+package org.mozilla.jss.ssl.javax;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.mozilla.jss.nss.SSL;
+import org.mozilla.jss.ssl.SSLCipher;
+import org.mozilla.jss.ssl.SSLVersion;
+import org.mozilla.jss.ssl.SSLVersionRange;
+
+/**
+ * Cipher suites, protocol versions, configuration options and client
+ * authentication mode of a JSSEngine, compiled once into the arguments of
+ * SSL.ApplyProfile(...).
+ *
+ * JSSEngineReferenceImpl applies its profile to each new connection with
+ * a single native call, rather than one call per cipher suite known to
+ * JSS plus one per option. Engines build (and keep) a profile from their
+ * own settings on first use; engines given the same profile through
+ * setEngineProfile(...) share it without building anything.
+ *
+ * Profiles never change; build a new one for different settings.
+ */
+public final class EngineProfile {
+
+    private final SSLCipher[] ciphers;
+    private final SSLVersion min_protocol;
+    private final SSLVersion max_protocol;
+    private final Map<Integer, Integer> config;
+    private final boolean want_client_auth;
+    private final boolean need_client_auth;
+
+    private final SSLVersionRange range;
+    private final int[] cipher_ids;
+    private final int[] client_options;
+    private final int[] server_options;
+
+    /**
+     * Build a profile from explicit values. A null list of cipher suites
+     * or a missing protocol version keeps the NSS defaults, like the
+     * corresponding JSSEngine fields.
+     */
+    public EngineProfile(SSLCipher[] ciphers, SSLVersion min_protocol, SSLVersion max_protocol,
+            Map<Integer, Integer> config, boolean want_client_auth, boolean need_client_auth) {
+        this.ciphers = ciphers == null ? null : ciphers.clone();
+        this.min_protocol = min_protocol;
+        this.max_protocol = max_protocol;
+        this.config = config == null ? Collections.emptyMap()
+            : Collections.unmodifiableMap(new LinkedHashMap<>(config));
+        this.want_client_auth = want_client_auth;
+        this.need_client_auth = need_client_auth;
+
+        if (min_protocol != null && max_protocol != null) {
+            range = new SSLVersionRange(min_protocol, max_protocol);
+        } else {
+            range = null;
+        }
+
+        if (this.ciphers != null) {
+            int count = 0;
+            int[] ids = new int[this.ciphers.length];
+            for (SSLCipher suite : this.ciphers) {
+                if (suite != null) {
+                    ids[count++] = suite.getID();
+                }
+            }
+            cipher_ids = Arrays.copyOf(ids, count);
+        } else {
+            cipher_ids = null;
+        }
+
+        // Client authentication options only apply to servers; see
+        // JSSEngineReferenceImpl.configureClientAuth().
+        client_options = new int[2 * this.config.size()];
+        server_options = new int[4 + client_options.length];
+
+        server_options[0] = SSL.REQUEST_CERTIFICATE;
+        server_options[1] = want_client_auth || need_client_auth ? 1 : 0;
+        server_options[2] = SSL.REQUIRE_CERTIFICATE;
+        server_options[3] = need_client_auth ? SSL.REQUIRE_ALWAYS : 0;
+
+        int offset = 0;
+        for (Map.Entry<Integer, Integer> entry : this.config.entrySet()) {
+            client_options[offset] = entry.getKey();
+            client_options[offset + 1] = entry.getValue();
+            offset += 2;
+        }
+        System.arraycopy(client_options, 0, server_options, 4, client_options.length);
+    }
+
+    /**
+     * Build a profile from the cipher suites, protocol versions and client
+     * authentication mode of the given JSSParameters, with the given
+     * configuration options (see JSSEngine.getDefaultConfiguration()).
+     * Unsupported cipher suites are dropped, like with
+     * JSSEngine.setEnabledCipherSuites(...).
+     */
+    public EngineProfile(JSSParameters params, Map<Integer, Integer> config) {
+        this(supportedCiphers(params.getSSLCiphers()),
+            params.getSSLVersionRange() == null ? null : params.getSSLVersionRange().getMinVersion(),
+            params.getSSLVersionRange() == null ? null : params.getSSLVersionRange().getMaxVersion(),
+            config, params.getWantClientAuth(), params.getNeedClientAuth());
+    }
+
+    private static SSLCipher[] supportedCiphers(SSLCipher[] suites) {
+        if (suites == null) {
+            return null;
+        }
+
+        ArrayList<SSLCipher> supported = new ArrayList<>();
+        for (SSLCipher suite : suites) {
+            if (suite != null && suite.isSupported()) {
+                supported.add(suite);
+            }
+        }
+
+        return supported.isEmpty() ? null : supported.toArray(new SSLCipher[0]);
+    }
+
+    /**
+     * Enabled cipher suites, or null for the NSS defaults. Shared; don't
+     * modify.
+     */
+    SSLCipher[] getCiphers() {
+        return ciphers;
+    }
+
+    public SSLCipher[] getCipherSuites() {
+        return ciphers == null ? null : ciphers.clone();
+    }
+
+    public SSLVersion getMinProtocol() {
+        return min_protocol;
+    }
+
+    public SSLVersion getMaxProtocol() {
+        return max_protocol;
+    }
+
+    public Map<Integer, Integer> getConfiguration() {
+        return config;
+    }
+
+    public boolean getWantClientAuth() {
+        return want_client_auth;
+    }
+
+    public boolean getNeedClientAuth() {
+        return need_client_auth;
+    }
+
+    /**
+     * Version range to apply, or null when either version is missing.
+     */
+    SSLVersionRange getVersionRange() {
+        return range;
+    }
+
+    /**
+     * IDs of the cipher suites to enable, or null to keep the defaults.
+     * Shared; don't modify.
+     */
+    int[] getCipherIDs() {
+        return cipher_ids;
+    }
+
+    /**
+     * (option, value) pairs to set on a server or client socket. Shared;
+     * don't modify.
+     */
+    int[] getOptions(boolean as_server) {
+        return as_server ? server_options : client_options;
+    }
+
+    /**
+     * Whether this profile was built from the given engine settings. The
+     * cipher suites are usually the same array; only compare their
+     * contents otherwise.
+     */
+    boolean matches(SSLCipher[] ciphers, SSLVersion min_protocol, SSLVersion max_protocol,
+            Map<Integer, Integer> config, boolean want_client_auth, boolean need_client_auth) {
+        return this.min_protocol == min_protocol
+            && this.max_protocol == max_protocol
+            && this.want_client_auth == want_client_auth
+            && this.need_client_auth == need_client_auth
+            && (this.ciphers == ciphers || Arrays.equals(this.ciphers, ciphers))
+            && this.config.equals(config == null ? Collections.emptyMap() : config);
+    }
+
+    @Override
+    public String toString() {
+        return "EngineProfile[ciphers=" + (ciphers == null ? "default" : Arrays.toString(ciphers))
+            + ", protocols=" + (range == null ? "default" : min_protocol + "-" + max_protocol)
+            + ", config=" + config
+            + ", want_client_auth=" + want_client_auth
+            + ", need_client_auth=" + need_client_auth + "]";
+    }
+}
@@ -104,6 +104,20 @@ public abstract class JSSEngine extends javax.net.ssl.SSLEngine {
      */
     protected List<Pair<PK11Cert, PK11PrivKey>> certs;
 
+    /**
+     * Pre-resolved certificates and keys this JSSEngine instance shares
+     * with others, when configured via setServerCredentials(...); certs
+     * is then the (unmodifiable) list of these credentials.
+     */
+    protected ServerCredentials credentials;
+
+    /**
+     * Credentials already resolved by the JSSContextSpi which created this
+     * JSSEngine instance, used by setCertFromAliases(...) while the
+     * KeyManager is the one they were resolved through.
+     */
+    protected ServerCredentialCache credential_cache;
+
     /**
      * A list of all KeyManagers available to this JSSEngine instance.
      *
@@ -184,6 +198,13 @@ public abstract class JSSEngine extends javax.net.ssl.SSLEngine {
      */
     protected JSSSession session;
 
+    /**
+     * Session context to record our session in once the handshake
+     * completes; when null, the global server or client context is used
+     * based on our mode.
+     */
+    protected JSSSessionContext session_context;
+
     /**
      * Internal SSLFDProxy instance; useful for JSSSession support and any
      * custom extensions the developer wishes to support.
@@ -205,12 +226,77 @@ public abstract class JSSEngine extends javax.net.ssl.SSLEngine {
      */
     protected HashMap<Integer, Integer> config;
 
+    /**
+     * Profile last built from (or given for) the settings above; see
+     * getEngineProfile().
+     */
+    protected EngineProfile profile;
+
     /**
      * Set of cached server sockets based on the PK11Cert they were
      * initialized with.
+     *
+     * @deprecated No longer consulted by JSSEngine; model sockets are kept
+     * in serverTemplateCache instead. Kept (empty) for compatibility with
+     * existing subclasses.
      */
+    @Deprecated
     protected static HashMap<List<Pair<PK11Cert, PK11PrivKey>>, SSLFDProxy> serverTemplates = new HashMap<>();
 
+    /**
+     * Cache of model server sockets based on the PK11Cert they were
+     * initialized with.
+     *
+     * This is shared by all JSSEngine instances and is safe to use
+     * concurrently; see ServerTemplateCache for details.
+     */
+    protected static final ServerTemplateCache serverTemplateCache = new ServerTemplateCache();
+
+    /**
+     * Resumption policy and metrics for client-mode engines.
+     *
+     * NSS's client session cache is global, so this is shared by all
+     * JSSEngine instances; see ClientSessionCache for details.
+     */
+    protected static final ClientSessionCache clientSessions = new ClientSessionCache();
+
+    /**
+     * Executor used by new JSSEngine instances to validate the peer's
+     * certificate chain; null to validate on the caller's thread.
+     */
+    private static volatile CertValidationExecutor defaultCertValidationExecutor;
+
+    /**
+     * Executor used to validate the peer's certificate chain; null to
+     * validate on the caller's thread. See CertValidationExecutor.
+     */
+    protected CertValidationExecutor cert_validation_executor = defaultCertValidationExecutor;
+
+    /**
+     * Record size policy used by new JSSEngine instances; null writes each
+     * source buffer separately.
+     */
+    private static volatile RecordSizePolicy defaultRecordSizePolicy;
+
+    /**
+     * Policy for gathering application data into TLS records; null writes
+     * each source buffer separately. See RecordSizePolicy.
+     */
+    protected RecordSizePolicy record_size_policy = defaultRecordSizePolicy;
+
+    /**
+     * Whether new JSSEngine instances release their idle buffers.
+     */
+    private static volatile boolean defaultReleaseIdleBuffers;
+
+    /**
+     * Whether to return the contents of the native network buffers to the
+     * buffer pool whenever they're empty after the handshake, instead of
+     * holding them for the life of the connection. See
+     * setReleaseIdleBuffers(...).
+     */
+    protected boolean release_idle_buffers = defaultReleaseIdleBuffers;
+
     /**
      * Whether or not the session cache has been initialized already.
      *
@@ -328,6 +414,15 @@ public abstract class JSSEngine extends javax.net.ssl.SSLEngine {
         return ssl_fd;
     }
 
+    /**
+     * Wait until the calling thread may use ssl_fd; must be called while
+     * holding the engine's lock. Implementations which release the lock
+     * in the middle of an NSS call on ssl_fd (see JSSEngineReferenceImpl)
+     * wait here for that call to finish.
+     */
+    protected void awaitSSLFD() {
+    }
+
     /**
      * Get the configuration from the current JSSEngine object as a
      * JSSParameters object.
@@ -475,6 +570,8 @@ public abstract class JSSEngine extends javax.net.ssl.SSLEngine {
     }
     
     public void setCertFromAliases(List<String> aliases) throws IllegalArgumentException {
+        credentials = null;
+
         if (aliases == null || aliases.isEmpty()) {
             // Per calling, semantics, get rid of any existing cert/key we
             // might have.
@@ -483,6 +580,11 @@ public abstract class JSSEngine extends javax.net.ssl.SSLEngine {
             return;
         }
 
+        if (credential_cache != null && key_managers != null && key_managers.length == 1 && key_managers[0] == credential_cache.getKeyManager()) {
+            setServerCredentials(credential_cache.get(aliases));
+            return;
+        }
+
         certAliases = aliases;
         certs = new ArrayList<>();
 
@@ -532,6 +634,48 @@ public abstract class JSSEngine extends javax.net.ssl.SSLEngine {
         }
     }
 
+    /**
+     * Use the given pre-resolved certificates and keys, in place of
+     * resolving aliases with setCertFromAliases(...).
+     *
+     * This only stores a reference to the credentials; it doesn't search
+     * the NSS database, and engines sharing the same credentials also
+     * share the same model server socket. When creds is null, this clears
+     * all previous certs and keys.
+     */
+    public void setServerCredentials(ServerCredentials creds) {
+        credentials = creds;
+
+        if (creds == null) {
+            certAliases = null;
+            certs = null;
+            return;
+        }
+
+        certAliases = creds.getAliases();
+        certs = creds.getCerts();
+
+        if (creds.hasMLDSAKey()) {
+            usePQCBufferSize();
+        }
+    }
+
+    public ServerCredentials getServerCredentials() {
+        return credentials;
+    }
+
+    /**
+     * Set the cache setCertFromAliases(...) resolves aliases through; see
+     * ServerCredentialCache.
+     */
+    public void setServerCredentialCache(ServerCredentialCache cache) {
+        credential_cache = cache;
+    }
+
+    public ServerCredentialCache getServerCredentialCache() {
+        return credential_cache;
+    }
+
     /**
      * Sets the list of enabled cipher suites from a list of JCA-approved
      * String names.
@@ -799,7 +943,11 @@ public abstract class JSSEngine extends javax.net.ssl.SSLEngine {
 
         if (certs == null) {
             certs = new ArrayList<>();
+        } else if (credentials != null) {
+            // Shared credentials can't be modified; continue with a copy.
+            certs = new ArrayList<>(certs);
         }
+        credentials = null;
         certs.add(ImmutablePair.of(our_cert, our_key));
         updateBufferSizeForPQCKeys(our_key);
     }
@@ -886,6 +1034,31 @@ public abstract class JSSEngine extends javax.net.ssl.SSLEngine {
         return session;
     }
 
+    /**
+     * Gets the session context this engine records its session in.
+     *
+     * See also: JSSSessionContext.getServerSessionContext() and
+     * JSSSessionContext.getClientSessionContext()
+     */
+    public JSSSessionContext getSessionContext() {
+        if (session_context != null) {
+            return session_context;
+        }
+
+        if (as_server) {
+            return JSSSessionContext.getServerSessionContext();
+        }
+
+        return JSSSessionContext.getClientSessionContext();
+    }
+
+    /**
+     * Sets the session context this engine records its session in.
+     */
+    public void setSessionContext(JSSSessionContext context) {
+        session_context = context;
+    }
+
     /**
      * Whether or not to enable this SSLEngine instance to create new
      * sessions.
@@ -1120,30 +1293,178 @@ public abstract class JSSEngine extends javax.net.ssl.SSLEngine {
     }
 
     /**
-     * Returns the templated server certificate, if one exists.
+     * Returns the cipher suites, protocol versions, configuration and
+     * client authentication mode of this engine as an EngineProfile,
+     * reusing the previous one while these settings don't change.
      */
-    protected static SSLFDProxy getServerTemplate(List<Pair<PK11Cert, PK11PrivKey>> lstCerts) {
+    public EngineProfile getEngineProfile() {
+        EngineProfile result = profile;
+        if (result != null && result.matches(enabled_ciphers, min_protocol, max_protocol,
+                config, want_client_auth, need_client_auth)) {
+            return result;
+        }
+
+        result = new EngineProfile(enabled_ciphers, min_protocol, max_protocol,
+            config, want_client_auth, need_client_auth);
+
+        // Share the profile's copy of the cipher suites, so the next check
+        // only compares references.
+        enabled_ciphers = result.getCiphers();
+        profile = result;
+        return result;
+    }
+
+    /**
+     * Sets the cipher suites, protocol versions, configuration and client
+     * authentication mode from the given EngineProfile, replacing all
+     * current values. Engines sharing a profile apply it without building
+     * their own. This call must occur before the handshake starts.
+     */
+    public void setEngineProfile(EngineProfile profile) throws IllegalArgumentException {
+        if (ssl_fd != null) {
+            String msg = "Unable to process setEngineProfile(...) ";
+            msg += "after handshake has started!";
+            throw new IllegalArgumentException(msg);
+        }
+
+        enabled_ciphers = profile.getCiphers();
+        min_protocol = profile.getMinProtocol();
+        max_protocol = profile.getMaxProtocol();
+        config = new HashMap<>(profile.getConfiguration());
+        want_client_auth = profile.getWantClientAuth();
+        need_client_auth = profile.getNeedClientAuth();
+
+        this.profile = profile;
+    }
+
+    /**
+     * Returns the templated server certificate, creating it if necessary.
+     *
+     * The returned template holds a reference to the model socket; callers
+     * must call release() on it once they've finished copying from the
+     * model (e.g., via SSL.ImportFD(...)). Returns null when no
+     * certificates are given.
+     */
+    protected static ServerTemplateCache.Template acquireServerTemplate(List<Pair<PK11Cert, PK11PrivKey>> lstCerts) {
         if (lstCerts == null || lstCerts.isEmpty()) {
             return null;
         }
 
-        SSLFDProxy fd = serverTemplates.get(lstCerts);
-        if (fd == null) {
-            PRFDProxy base = PR.NewTCPSocket();
-            fd = SSL.ImportFD(null, base);
-            for(Pair<PK11Cert, PK11PrivKey> pairKey: lstCerts) {
-                if (SSL.ConfigServerCert(fd, pairKey.getLeft(), pairKey.getRight()) != SSL.SECSuccess) {
-                    String msg = "Unable to configure certificate and key on ";
-                    msg += "model SSL PRFileDesc proxy: ";
-                    msg += errorText(PR.GetError());
-                    throw new RuntimeException(msg);
-                }
-            }
- 
-            serverTemplates.put(lstCerts, fd);
+        return serverTemplateCache.acquire(lstCerts);
+    }
+
+    /**
+     * Returns the templated server certificate, if one exists.
+     *
+     * @deprecated Use acquireServerTemplate(...), which lets the cache
+     * close the model socket once it's evicted. The model socket returned
+     * here stays open for the life of the process, as it used to.
+     */
+    @Deprecated
+    protected static SSLFDProxy getServerTemplate(List<Pair<PK11Cert, PK11PrivKey>> lstCerts) {
+        ServerTemplateCache.Template template = acquireServerTemplate(lstCerts);
+        if (template == null) {
+            return null;
         }
 
-        return fd;
+        // The reference is never released, pinning the model socket.
+        return template.getModel();
+    }
+
+    /**
+     * Get the cache of model server sockets shared by all JSSEngine
+     * instances, e.g., to resize it or to query its hit and miss counts.
+     */
+    public static ServerTemplateCache getServerTemplateCache() {
+        return serverTemplateCache;
+    }
+
+    /**
+     * Get the client session resumption cache shared by all JSSEngine
+     * instances, e.g., to bound it or to query its resumption counts.
+     */
+    public static ClientSessionCache getClientSessionCache() {
+        return clientSessions;
+    }
+
+    /**
+     * Set the certificate validation executor used by JSSEngine instances
+     * created from now on; null disables asynchronous validation.
+     */
+    public static void setDefaultCertValidationExecutor(CertValidationExecutor executor) {
+        defaultCertValidationExecutor = executor;
+    }
+
+    public static CertValidationExecutor getDefaultCertValidationExecutor() {
+        return defaultCertValidationExecutor;
+    }
+
+    /**
+     * Set the executor used to validate the peer's certificate chain; null
+     * validates on the caller's thread. Must be called prior to the
+     * handshake starting.
+     */
+    public void setCertValidationExecutor(CertValidationExecutor executor) {
+        cert_validation_executor = executor;
+    }
+
+    public CertValidationExecutor getCertValidationExecutor() {
+        return cert_validation_executor;
+    }
+
+    /**
+     * Set the record size policy used by JSSEngine instances created from
+     * now on; null disables gathering source buffers into records.
+     */
+    public static void setDefaultRecordSizePolicy(RecordSizePolicy policy) {
+        defaultRecordSizePolicy = policy;
+    }
+
+    public static RecordSizePolicy getDefaultRecordSizePolicy() {
+        return defaultRecordSizePolicy;
+    }
+
+    /**
+     * Set the policy used to gather the source buffers passed to wrap(...)
+     * into TLS records; null writes each source buffer separately. May be
+     * changed at any time; it applies from the next wrap(...) call.
+     */
+    public void setRecordSizePolicy(RecordSizePolicy policy) {
+        record_size_policy = policy;
+    }
+
+    public RecordSizePolicy getRecordSizePolicy() {
+        return record_size_policy;
+    }
+
+    /**
+     * Set whether JSSEngine instances created from now on release their
+     * idle buffers; see setReleaseIdleBuffers(...).
+     */
+    public static void setDefaultReleaseIdleBuffers(boolean release) {
+        defaultReleaseIdleBuffers = release;
+    }
+
+    public static boolean getDefaultReleaseIdleBuffers() {
+        return defaultReleaseIdleBuffers;
+    }
+
+    /**
+     * Set whether to release the native network buffers while they're
+     * idle. When enabled, once the handshake has completed, unwrap(...)
+     * returns the contents of the read buffer to the native buffer pool
+     * whenever NSS has consumed all of it, and wrap(...) does the same
+     * with the write buffer once all of it was copied to dst. The next
+     * call needing a buffer takes it back from the pool. This trades a
+     * pool lookup per call for not holding two buffers per idle
+     * connection (e.g., HTTP keep-alive). May be changed at any time.
+     */
+    public void setReleaseIdleBuffers(boolean release) {
+        release_idle_buffers = release;
+    }
+
+    public boolean getReleaseIdleBuffers() {
+        return release_idle_buffers;
     }
 
     /**
@@ -1167,10 +1488,14 @@ public abstract class JSSEngine extends javax.net.ssl.SSLEngine {
      */
     private void updateBufferSizeForPQCKeys(PK11PrivKey key) {
         if (key != null && key.getKeyType() == KeyType.MLDSA) {
-            bufferSize = Integer.getInteger("jdk.tls.maxHandshakeMessageSize", DEFAULT_PQC_BUFFER_SIZE);
-            if (session != null) {
-                session.setPacketBufferSize(bufferSize);
-            }
+            usePQCBufferSize();
+        }
+    }
+
+    private void usePQCBufferSize() {
+        bufferSize = Integer.getInteger("jdk.tls.maxHandshakeMessageSize", DEFAULT_PQC_BUFFER_SIZE);
+        if (session != null) {
+            session.setPacketBufferSize(bufferSize);
         }
     }
 }
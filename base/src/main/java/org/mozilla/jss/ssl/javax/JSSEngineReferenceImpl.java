@@ -12,6 +12,7 @@ import java.security.PublicKey;
 import java.security.cert.CertificateException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.net.ssl.SSLEngineResult;
@@ -61,6 +62,14 @@ import org.mozilla.jss.ssl.SSLVersionRange;
  * occur during the test suite (where packets aren't sent over the wire by
  * default). This maintains the client/server relationship, and are logged
  * as being from the appropriate side of the TLS connection.
+ *
+ * wrap(...), unwrap(...), beginHandshake() and the close and cleanup
+ * methods synchronize on the engine. NSS may write to write_buf from
+ * within unwrap(...) (e.g., alerts or a KeyUpdate), and both directions
+ * update the handshake and exception state, so they must not overlap
+ * even when one thread reads while another writes. The one exception is a
+ * server-side certificate validation on a CertValidationExecutor, which
+ * releases the lock while waiting; see validateInCallback(...).
  */
 public class JSSEngineReferenceImpl extends JSSEngine {
 
@@ -113,6 +122,12 @@ public class JSSEngineReferenceImpl extends JSSEngine {
      */
     private String peer_info;
 
+    /**
+     * Key of this engine's entry in the client session cache, when we're
+     * a client with known peer information; null otherwise.
+     */
+    private String client_session_key;
+
     /**
      * Whether or not the underlying ssl_fd is closed or not.
      *
@@ -131,6 +146,53 @@ public class JSSEngineReferenceImpl extends JSSEngine {
      */
     private BufferProxy write_buf;
 
+    /**
+     * Current capacities of read_buf and write_buf. Both start out at
+     * most DEFAULT_BUFFER_SIZE bytes and grow up to bufferSize when a
+     * handshake needs more; see growBuffer(...).
+     */
+    private int read_buf_size;
+    private int write_buf_size;
+
+    /**
+     * Application bytes written since the connection started or last went
+     * idle, for the record size policy.
+     */
+    private long record_bytes;
+
+    /**
+     * System.nanoTime() of the last write of application data.
+     */
+    private long last_write;
+
+    /**
+     * Whether this connection reports to TLSMetrics; decided when the
+     * engine is initialized.
+     */
+    private boolean metrics;
+
+    /**
+     * System.nanoTime() at the start of the current handshake, or zero
+     * when no handshake is being timed.
+     */
+    private long handshake_start;
+
+    /**
+     * Record counters for the wire data in wrap's dst and unwrap's src,
+     * when reporting metrics.
+     */
+    private RecordCounter wrapped_records;
+    private RecordCounter unwrapped_records;
+
+    /**
+     * Results of the single-call native steps of wrap(...) and unwrap(...);
+     * see SSL.WrapStep(...). Both are only used while holding the engine's
+     * lock, as wrap and unwrap never run concurrently; see the class
+     * comment.
+     */
+    private final int[] wrap_step = new int[SSL.STEP_RESULT_SIZE];
+    private final int[] unwrap_step = new int[SSL.STEP_RESULT_SIZE];
+
     /**
      * Number of times heuristic has not matched the current state.
      *
@@ -203,6 +265,20 @@ public class JSSEngineReferenceImpl extends JSSEngine {
      */
     private CertValidationTask task;
 
+    /**
+     * Pending validation of task on the certificate validation executor,
+     * when one is configured and had capacity; see CertValidationExecutor.
+     */
+    private CertValidationExecutor.Validation validation;
+
+    /**
+     * Thread in NSS's server-side certificate callback which waits for
+     * callback_validation with the engine's lock released, else null; see
+     * validateInCallback(...).
+     */
+    private Thread cert_callback_thread;
+    private CertValidationExecutor.Validation callback_validation;
+
     public JSSEngineReferenceImpl() {
         super();
 
@@ -351,10 +427,13 @@ public class JSSEngineReferenceImpl extends JSSEngine {
             initClient();
         }
 
-        // Apply the requested cipher suites and protocols.
-        applyProtocols();
-        applyCiphers();
-        applyConfig();
+        // Apply the requested cipher suites, protocols, configuration and
+        // client authentication mode.
+        applyProfile();
+
+        // Select the client session to resume, now that the protocols and
+        // ciphers it depends on are known.
+        applyClientSession();
 
         // Apply hostname information (via setURL). Note that this is an
         // extension to SSLEngine for use with NSS; we don't always get this
@@ -375,15 +454,60 @@ public class JSSEngineReferenceImpl extends JSSEngine {
 
         // If the buffers exist, destroy them and then recreate them.
 
+        // Buffers are drawn from the native buffer pool. Start with buffers
+        // large enough for regular handshakes; only connections which
+        // actually exchange larger handshake messages (e.g., ML-DSA
+        // certificate chains) grow them to bufferSize.
+        int size = Math.min(bufferSize, DEFAULT_BUFFER_SIZE);
+
         if (read_buf != null) {
             Buffer.Free(read_buf);
         }
-        read_buf = Buffer.Create(bufferSize);
+        read_buf = Buffer.Create(size);
+        read_buf_size = size;
 
         if (write_buf != null) {
             Buffer.Free(write_buf);
         }
-        write_buf = Buffer.Create(bufferSize);
+        write_buf = Buffer.Create(size);
+        write_buf_size = size;
+    }
+
+    /**
+     * Return the contents of an empty buffer to the native buffer pool when
+     * releasing idle buffers; see JSSEngine.setReleaseIdleBuffers(...).
+     * The buffer (and the BufferPRFD using it) stays valid and takes its
+     * contents back from the pool on the next write.
+     *
+     * Must be called while holding the engine's lock: NSS writes to
+     * write_buf from unwrap(...) as well as wrap(...), so the buffer may
+     * only be detached while no PR_Read or PR_Write can be filling it.
+     */
+    private void releaseIdleBuffer(BufferProxy buf) {
+        assert Thread.holdsLock(this);
+
+        if (!release_idle_buffers || buf == null || buf.isNull() || ssl_fd == null) {
+            return;
+        }
+
+        if (!ssl_fd.handshakeComplete || handshake_state != SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING) {
+            return;
+        }
+
+        Buffer.Detach(buf);
+    }
+
+    /**
+     * Grow one of our buffers to bufferSize bytes, keeping its contents.
+     */
+    private int growBuffer(BufferProxy buf, String name) throws SSLException {
+        debug("JSSEngine: growing " + name + " to " + bufferSize + " bytes");
+
+        if (!Buffer.Grow(buf, bufferSize)) {
+            throw new SSLException("Unable to grow " + name + " to " + bufferSize + " bytes");
+        }
+
+        return bufferSize;
     }
 
     private void createBufferFD() throws SSLException {
@@ -405,18 +529,32 @@ public class JSSEngineReferenceImpl extends JSSEngine {
             throw new SSLException("Error creating buffer-backed PRFileDesc.");
         }
 
-        SSLFDProxy model = null;
+        ServerTemplateCache.Template template = null;
         if (as_server) {
             // As a performance improvement, we can copy the server template
             // (containing the desired key and certificate) rather than
             // re-creating it from scratch. This saves a significant amount of
             // time during construction. The implementation lives in JSSEngine,
-            // to be shared by all other JSSEngine implementations.
-            model = getServerTemplate(certs);
+            // to be shared by all other JSSEngine implementations. Shared
+            // credentials hand us their model directly.
+            if (credentials != null) {
+                template = credentials.acquireTemplate();
+            } else {
+                template = acquireServerTemplate(certs);
+            }
+        }
+
+        // Initialize ssl_fd from the model Buffer-backed PRFileDesc. Hold
+        // our reference to the template until the copy is complete, so it
+        // can't be closed underneath us if it gets evicted.
+        try {
+            ssl_fd = SSL.ImportFD(template == null ? null : template.getModel(), fd);
+        } finally {
+            if (template != null) {
+                template.release();
+            }
         }
 
-        // Initialize ssl_fd from the model Buffer-backed PRFileDesc.
-        ssl_fd = SSL.ImportFD(model, fd);
         if (ssl_fd == null) {
             PR.Close(fd);
             throw new SSLException("Error creating SSL socket on top of buffer-backed PRFileDesc.");
@@ -496,28 +634,31 @@ public class JSSEngineReferenceImpl extends JSSEngine {
 
         debug("JSSEngine.initServer(): " + certs);
 
-        List<PK11Cert> lstCerts = new ArrayList<>();
-        for (Pair<PK11Cert, PK11PrivKey> pairKeys: certs) {
-            lstCerts.add(pairKeys.getLeft());
-            PK11PrivKey key = pairKeys.getRight();
- 
-            // Workaround to account for NSS giving us a copy of the actual SSL Server private key.
-            // This is to keep calls to SECKEY_DestroyPrivateKey from blowing the long lived SSL cert
-            // private key off the token.
+        if (credentials != null) {
+            // Shared credentials already marked their keys as permanent
+            // when they were resolved.
+            session.setLocalCertificates(credentials.getLocalCertificates().clone());
+        } else {
+            List<PK11Cert> lstCerts = new ArrayList<>();
+            for (Pair<PK11Cert, PK11PrivKey> pairKeys: certs) {
+                lstCerts.add(pairKeys.getLeft());
+                PK11PrivKey key = pairKeys.getRight();
+
+                // Workaround to account for NSS giving us a copy of the actual SSL Server private key.
+                // This is to keep calls to SECKEY_DestroyPrivateKey from blowing the long lived SSL cert
+                // private key off the token.
 
-            if(key != null) {
-                key.setTemporary(false);
+                if(key != null) {
+                    key.setTemporary(false);
+                }
             }
-        }
- 
-        session.setLocalCertificates(lstCerts.toArray(new PK11Cert[0]));
 
-        // Create a small server session cache.
-        //
-        // TODO: Make this configurable.
-        initializeSessionCache(1, 100, null);
+            session.setLocalCertificates(lstCerts.toArray(new PK11Cert[0]));
+        }
 
-        configureClientAuth();
+        // Create the server session cache, sized by the session context.
+        // Client authentication is configured by applyProfile().
+        getSessionContext().initializeServerCache();
     }
 
     private void configureClientAuth() throws SSLException {
@@ -558,6 +699,26 @@ public class JSSEngineReferenceImpl extends JSSEngine {
         }
     }
 
+    private void applyProfile() throws SSLException {
+        EngineProfile current = getEngineProfile();
+        debug("JSSEngine: applyProfile() " + current);
+
+        // Everything goes to NSS in a single native call.
+        if (SSL.ApplyProfile(ssl_fd, current.getVersionRange(), current.getCipherIDs(), current.getOptions(as_server)) == SSL.SECSuccess) {
+            return;
+        }
+
+        // Something was refused; apply the settings one at a time, which
+        // reports the offending one.
+        debug("JSSEngine: applyProfile() failed: " + errorText(PR.GetError()));
+        if (as_server) {
+            configureClientAuth();
+        }
+        applyProtocols();
+        applyCiphers();
+        applyConfig();
+    }
+
     private void applyCiphers() throws SSLException {
         debug("JSSEngine: applyCiphers()");
         // Enabled the ciphersuites specified by setEnabledCipherSuites(...).
@@ -625,6 +786,34 @@ public class JSSEngineReferenceImpl extends JSSEngine {
         }
     }
 
+    private void applyClientSession() throws SSLException {
+        debug("JSSEngine: applyClientSession()");
+
+        client_session_key = null;
+
+        // Servers use the server session cache; clients without peer
+        // information get NSS's default behavior.
+        if (as_server || peer_info == null) {
+            return;
+        }
+
+        client_session_key = ClientSessionCache.getKey(getPeerHost(), getPeerPort(), hostname,
+            min_protocol, max_protocol, enabled_ciphers);
+
+        String peer_id = clientSessions.getPeerID(client_session_key);
+        if (peer_id == null) {
+            // Client session resumption is disabled.
+            if (SSL.OptionSet(ssl_fd, SSL.NO_CACHE, 1) != SSL.SECSuccess) {
+                throw new SSLException("Unable to disable session cache: " + errorText(PR.GetError()));
+            }
+            return;
+        }
+
+        if (SSL.SetSockPeerID(ssl_fd, peer_id) != SSL.SECSuccess) {
+            throw new SSLException("Unable to configure session peer ID: " + errorText(PR.GetError()));
+        }
+    }
+
     private void applyHosts() throws SSLException {
         debug("JSSEngine: applyHosts()");
 
@@ -669,7 +858,16 @@ public class JSSEngineReferenceImpl extends JSSEngine {
             // from Runnable, so we can reuse it here as well. We can create
             // it ahead of time though. In this case, checkNeedCertValidation()
             // is never called.
-            ssl_fd.certAuthHandler = new CertValidationTask(ssl_fd, as_server, need_client_auth, trust_managers, this);
+            CertValidationTask handler = new CertValidationTask(ssl_fd, as_server, need_client_auth, trust_managers, this);
+            ssl_fd.certAuthHandler = handler;
+
+            // NSS doesn't support asynchronous certificate authentication
+            // for servers (returning SECWouldBlock fails the handshake), but
+            // we can still validate on the executor, bounded by its
+            // timeout, without holding the engine's lock meanwhile.
+            if (cert_validation_executor != null) {
+                ssl_fd.certAuthHandler = new ExecutorCertAuthHandler(ssl_fd, handler, this);
+            }
 
             if (SSL.ConfigSyncTrustManagerCertAuthCallback(ssl_fd) == SSL.SECFailure) {
                 throw new SSLException("Unable to configure TrustManager validation on this JSSengine: " + errorText(PR.GetError()));
@@ -728,8 +926,9 @@ public class JSSEngineReferenceImpl extends JSSEngine {
     }
 
     @Override
-    public void beginHandshake() throws SSLException {
+    public synchronized void beginHandshake() throws SSLException {
         debug("JSSEngine: beginHandshake()");
+        awaitSSLFD();
 
         // We assume beginHandshake(...) is the entry point for initializing
         // the buffer. In particular, wrap(...) / unwrap(...) *MUST* call
@@ -749,6 +948,12 @@ public class JSSEngineReferenceImpl extends JSSEngine {
             init();
             assert(ssl_fd != null);
 
+            metrics = TLSMetrics.isMetricsEnabled();
+            if (metrics) {
+                wrapped_records = new RecordCounter();
+                unwrapped_records = new RecordCounter();
+            }
+
             // Reset the handshake status, using the new socket and
             // configuration which was just created. This ensures that
             // we'll attempt to handshake when ForceHandshake is called.
@@ -815,11 +1020,16 @@ public class JSSEngineReferenceImpl extends JSSEngine {
         // Lastly, each handshake must return a FINISHED individually,
         // reset returned_finished to false.
         returned_finished = false;
+
+        if (metrics) {
+            handshake_start = System.nanoTime();
+        }
     }
 
     @Override
     public synchronized void closeInbound() {
         debug("JSSEngine: closeInbound()");
+        awaitSSLFD();
 
         if (!is_inbound_closed && ssl_fd != null && !closed_fd) {
             // Send PR_SHUTDOWN_RCV only once. Additionally, this call
@@ -834,6 +1044,7 @@ public class JSSEngineReferenceImpl extends JSSEngine {
     @Override
     public synchronized void closeOutbound() {
         debug("JSSEngine: closeOutbound()");
+        awaitSSLFD();
 
         if (!is_outbound_closed && ssl_fd != null && !closed_fd) {
             // Send PR_SHUTDOWN_SEND only once. Additionally, this call
@@ -866,27 +1077,40 @@ public class JSSEngineReferenceImpl extends JSSEngine {
             checkNeedCertValidation();
         }
 
-        return task;
+        Runnable delegated = task;
+        if (validation != null) {
+            // Validation is already running on the executor; hand out a
+            // task which waits for it to finish.
+            delegated = validation;
+        }
+
+        if (metrics && delegated != null) {
+            return TLSMetrics.timeTask(this, delegated);
+        }
+
+        return delegated;
     }
 
     private boolean checkNeedCertValidation() {
         debug("JSSEngine: checkNeedCertValidation()");
         if (task != null) {
-            if (!task.finished) {
+            boolean finished = validation != null ? validation.isFinished() : task.finished;
+            if (!finished) {
                 // Already created runnable task; exit with true status to
                 // show it still needs to be run.
                 debug("JSSEngine: checkNeedCertValidation() - task not done");
                 return true;
             }
 
-            debug("JSSEngine: checkNeedCertValidation() - task done with code " + task.result);
+            int result = validation != null ? validation.getResult() : task.result;
+            debug("JSSEngine: checkNeedCertValidation() - task done with code " + result);
 
             // Since the task has finished, we now need to inform NSS about
             // the results of our certificate validation step.
-            if (SSL.AuthCertificateComplete(ssl_fd, task.result) != SSL.SECSuccess) {
+            if (SSL.AuthCertificateComplete(ssl_fd, result) != SSL.SECSuccess) {
                 String msg = "Got unexpected failure finishing cert ";
                 msg += "authentication in NSS. Returned code ";
-                msg += task.result;
+                msg += result;
                 throw new RuntimeException(msg);
             }
 
@@ -899,6 +1123,7 @@ public class JSSEngineReferenceImpl extends JSSEngine {
             debug("JSSEngine: checkNeedCertValidation() - task done, removing");
 
             task = null;
+            validation = null;
             handshake_state = SSLEngineResult.HandshakeStatus.NEED_WRAP;
             ssl_fd.needCertValidation = false;
 
@@ -925,6 +1150,16 @@ public class JSSEngineReferenceImpl extends JSSEngine {
         // OK, time to create our runnable task.
         task = new CertValidationTask(ssl_fd, as_server, need_client_auth, trust_managers, this);
 
+        // Collect the peer's chain while we know ssl_fd is valid; the task
+        // may run on another thread, possibly after cleanup().
+        task.prepare(ssl_fd);
+
+        // When we have a validation executor, start validating right away;
+        // if it is saturated, the caller runs the task itself as usual.
+        if (cert_validation_executor != null) {
+            validation = cert_validation_executor.submit(task);
+        }
+
         // Update our handshake state so we know what to do next.
         handshake_state = SSLEngineResult.HandshakeStatus.NEED_TASK;
 
@@ -1013,57 +1248,105 @@ public class JSSEngineReferenceImpl extends JSSEngine {
         return result;
     }
 
-    private int putData(byte[] data, ByteBuffer[] buffers, int offset, int length) {
-        debug("JSSEngine: putData()");
-        // Handle the rather unreasonable task of moving data into the buffers.
-        // We assume the buffer parameters have already been checked by
-        // computeSize(...); that is, offset/length contracts hold and that
-        // each buffer in the range is non-null.
+    private int readData(ByteBuffer[] buffers, int offset, int length) {
+        debug("JSSEngine: readData()");
+        // Read decrypted application data from ssl_fd directly into the
+        // destination buffers. We assume the buffer parameters have already
+        // been checked by computeSize(...); that is, offset/length contracts
+        // hold. PR.Read(fd, ByteBuffer) places data directly into direct
+        // buffers (or the backing array of heap buffers), so there's no
+        // intermediate array to allocate and copy out of.
         //
-        // We also assume that data.length does not exceed the total number
-        // of bytes the buffers can hold; this is what computeSize(...)'s
-        // return value should ensure. This directly means that the inner
-        // while loop won't exceed the bounds of offset+length.
-
-        int buffer_index = offset;
-        int data_index = 0;
+        // Returns the number of bytes read, or -1 when the very first read
+        // failed; the caller can inspect PR.GetError() in that case.
+        int data_length = 0;
 
-        if (data == null || buffers == null) {
-            return data_index;
+        if (buffers == null) {
+            return data_length;
         }
 
-        for (data_index = 0; data_index < data.length;) {
-            // Ensure we have have a buffer with capacity.
-            while ((buffers[buffer_index] == null || buffers[buffer_index].remaining() <= 0) &&
-                    (buffer_index < offset + length)) {
-                buffer_index += 1;
+        for (int index = offset; index < offset + length; index++) {
+            ByteBuffer buffer = buffers[index];
+            if (buffer == null || buffer.remaining() <= 0) {
+                continue;
+            }
+
+            int expected_read = buffer.remaining();
+            int this_read = PR.Read(ssl_fd, buffer);
+            if (this_read < 0) {
+                return data_length > 0 ? data_length : -1;
             }
-            if (buffer_index >= offset + length) {
+
+            data_length += this_read;
+
+            if (this_read < expected_read) {
+                // NSS has no more data available right now; don't bother
+                // polling it again for the remaining buffers.
                 break;
             }
+        }
 
-            // Compute the size of the put: it is the minimum of the space
-            // remaining in this buffer and the bytes remaining in the data
-            // array.
-            int put_size = buffers[buffer_index].remaining();
-            if (put_size > (data.length - data_index)) {
-                put_size = data.length - data_index;
+        return data_length;
+    }
+
+    private void checkReadError(int error) {
+        debug("JSSEngine.unwrap() - read failed with error=" + errorText(error));
+
+        // There are two scenarios we need to ignore here:
+        //  1. WOULD_BLOCK_ERRORs are safe, because we're expecting
+        //     not to block. Usually this means we don't have space
+        //     to write any more data.
+        //  2. SOCKET_SHUTDOWN_ERRORs are safe, because if the
+        //     underling cause was fatal, we'd catch it after reading,
+        //     in checkSSLAlerts().
+        if (error != 0 && error != PRErrors.WOULD_BLOCK_ERROR && error != PRErrors.SOCKET_SHUTDOWN_ERROR) {
+            ssl_exception = new SSLException("Unexpected return from PR.Read(): " + errorText(error));
+            seen_exception = true;
+        }
+    }
+
+    /**
+     * Whether wrap(...) and unwrap(...) can hand their buffers to NSS in a
+     * single native call (see SSL.WrapStep(...)): only when no handshake
+     * is in progress, so updateHandshakeState() has nothing to do but
+     * check for alerts, which we do afterwards anyways.
+     */
+    private boolean canStep() {
+        return !step_handshake && !seen_exception && ssl_exception == null
+            && handshake_state == SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING;
+    }
+
+    /**
+     * Returns the only buffer in buffers[offset, offset + length) with
+     * bytes remaining, when it can be handed to the native steps; null
+     * otherwise.
+     */
+    private static ByteBuffer singleBuffer(ByteBuffer[] buffers, int offset, int length) {
+        ByteBuffer result = null;
+
+        for (int index = offset; index < offset + length; index++) {
+            ByteBuffer buffer = buffers[index];
+            if (buffer == null || !buffer.hasRemaining()) {
+                continue;
+            }
+
+            if (result != null) {
+                return null;
             }
 
-            buffers[buffer_index].put(data, data_index, put_size);
-            data_index += put_size;
+            result = buffer;
         }
 
-        return data_index;
+        return SSL.CanStep(result) ? result : null;
     }
 
     private SSLException checkSSLAlerts() {
         debug("JSSEngine: Checking inbound and outbound SSL Alerts. Have " + ssl_fd.inboundAlerts.size() + " inbound and " + ssl_fd.outboundAlerts.size() + " outbound alerts.");
 
-        // Prefer inbound alerts to outbound alerts.
-        while (ssl_fd.inboundOffset < ssl_fd.inboundAlerts.size()) {
-            SSLAlertEvent event = ssl_fd.inboundAlerts.get(ssl_fd.inboundOffset);
-            ssl_fd.inboundOffset += 1;
+        // Prefer inbound alerts to outbound alerts. wrap and unwrap may run
+        // concurrently, so take each alert from ssl_fd atomically.
+        SSLAlertEvent event;
+        while ((event = ssl_fd.nextInboundAlert()) != null) {
 
             if (event.getLevelEnum() == SSLAlertLevel.WARNING && event.getDescriptionEnum() == SSLAlertDescription.CLOSE_NOTIFY) {
                 debug("Got inbound CLOSE_NOTIFY alert");
@@ -1074,6 +1357,9 @@ public class JSSEngineReferenceImpl extends JSSEngine {
             event.setEngine(this);
             // Fire inbound alert prior to raising any exception.
             fireAlertReceived(event);
+            if (metrics) {
+                TLSMetrics.fireAlertReceived(event);
+            }
 
             // Not every SSL Alert is fatal; toException() only returns a
             // SSLException on fatal instances. We shouldn't return NULL
@@ -1084,9 +1370,7 @@ public class JSSEngineReferenceImpl extends JSSEngine {
             }
         }
 
-        while (ssl_fd.outboundOffset < ssl_fd.outboundAlerts.size()) {
-            SSLAlertEvent event = ssl_fd.outboundAlerts.get(ssl_fd.outboundOffset);
-            ssl_fd.outboundOffset += 1;
+        while ((event = ssl_fd.nextOutboundAlert()) != null) {
 
             if (event.getLevelEnum() == SSLAlertLevel.WARNING && event.getDescriptionEnum() == SSLAlertDescription.CLOSE_NOTIFY) {
                 debug("Sent outbound CLOSE_NOTIFY alert.");
@@ -1099,6 +1383,9 @@ public class JSSEngineReferenceImpl extends JSSEngine {
             // this still triggers after this alert is written to the output
             // wire buffer.
             fireAlertSent(event);
+            if (metrics) {
+                TLSMetrics.fireAlertSent(event);
+            }
 
             SSLException exception = event.toException();
             if (exception != null) {
@@ -1172,6 +1459,12 @@ public class JSSEngineReferenceImpl extends JSSEngine {
                 ssl_exception = new SSLHandshakeException("Error duing SSL.ForceHandshake() :: " + errorText(error_value));
                 seen_exception = true;
 
+                if (metrics && handshake_start != 0) {
+                    long nanos = System.nanoTime() - handshake_start;
+                    handshake_start = 0;
+                    TLSMetrics.fireHandshakeFailed(new TLSHandshakeMetrics(this, nanos, session.getPreliminaryChannelInfo()));
+                }
+
                 handshake_state = SSLEngineResult.HandshakeStatus.NEED_WRAP;
                 return;
             }
@@ -1216,8 +1509,20 @@ public class JSSEngineReferenceImpl extends JSSEngine {
                 ssl_exception = new SSLException(msg, e);
             }
 
-            // Also update our session information here.
+            // Also update our session information here and record it in
+            // the session context.
             session.refreshData();
+            getSessionContext().recordHandshake(session);
+
+            if (client_session_key != null) {
+                clientSessions.recordHandshake(session.isResumed());
+            }
+
+            if (metrics && handshake_start != 0) {
+                long nanos = System.nanoTime() - handshake_start;
+                handshake_start = 0;
+                TLSMetrics.fireHandshakeCompleted(new TLSHandshakeMetrics(this, nanos, session.getChannelInfo()));
+            }
 
             // Finally, fire any handshake completed event listeners now.
             fireHandshakeComplete(new SSLHandshakeCompletedEvent(this));
@@ -1274,8 +1579,9 @@ public class JSSEngineReferenceImpl extends JSSEngine {
     }
 
     @Override
-    public SSLEngineResult unwrap(ByteBuffer src, ByteBuffer[] dsts, int offset, int length) throws IllegalArgumentException, SSLException {
+    public synchronized SSLEngineResult unwrap(ByteBuffer src, ByteBuffer[] dsts, int offset, int length) throws IllegalArgumentException, SSLException {
         debug("JSSEngine: unwrap(ssl_fd=" + ssl_fd + ")");
+        awaitSSLFD();
 
         // In this method, we're taking the network wire contents of src and
         // passing them as the read side of our buffer. If there's any data
@@ -1298,17 +1604,23 @@ public class JSSEngineReferenceImpl extends JSSEngine {
 
         boolean handshake_already_complete = ssl_fd.handshakeComplete;
         int src_capacity = src.remaining();
+        int src_start = src.position();
 
         // Check if the incoming packet is larger than our buffer capacity.
         // This prevents silent performance degradation from looping when
-        // processing large TLS packets (e.g., ML-DSA certificates).
-        if (src_capacity > bufferSize && !handshake_already_complete) {
-            String msg = "Incoming TLS packet size (" + src_capacity + " bytes) exceeds ";
-            msg += "buffer capacity (" + bufferSize + " bytes). ";
-            msg += "This may indicate Post-Quantum Cryptography (ML-DSA) is generating ";
-            msg += "large handshake messages. In this case the buffer can be defined with ";
-            msg += "the java property 'jdk.tls.maxHandshakeMessageSize'.";            
-            throw new SSLException(msg);
+        // processing large TLS packets (e.g., ML-DSA certificates): grow
+        // read_buf up to bufferSize, and fail beyond that.
+        if (src_capacity > read_buf_size && !handshake_already_complete) {
+            if (src_capacity > bufferSize) {
+                String msg = "Incoming TLS packet size (" + src_capacity + " bytes) exceeds ";
+                msg += "buffer capacity (" + bufferSize + " bytes). ";
+                msg += "This may indicate Post-Quantum Cryptography (ML-DSA) is generating ";
+                msg += "large handshake messages. In this case the buffer can be defined with ";
+                msg += "the java property 'jdk.tls.maxHandshakeMessageSize'.";
+                throw new SSLException(msg);
+            }
+
+            read_buf_size = growBuffer(read_buf, "read_buf");
         }
 
         logUnwrap(src);
@@ -1339,50 +1651,57 @@ public class JSSEngineReferenceImpl extends JSSEngine {
         int this_src_write;
         int this_dst_write;
 
-        do {
-            this_src_write = 0;
-            this_dst_write = 0;
-
-            if (src != null) {
-                this_src_write = Math.min((int) Buffer.WriteCapacity(read_buf), src.remaining());
+        // Once the handshake is over, the loop below only moves data
+        // between src, NSS and dsts; when there's a single destination,
+        // do all of that in one native call instead.
+        ByteBuffer step_dst = null;
+        if (canStep() && SSL.CanStep(src) && computeSize(dsts, offset, length) > 0) {
+            step_dst = singleBuffer(dsts, offset, length);
+        }
 
-                // When we have data from src, write it to read_buf.
-                if (this_src_write > 0) {
-                    byte[] wire_buffer = new byte[this_src_write];
-                    src.get(wire_buffer);
+        if (step_dst != null && !step_dst.isReadOnly()) {
+            if (SSL.UnwrapStep(ssl_fd, read_buf, write_buf, src, step_dst, unwrap_step) == SSL.SECFailure) {
+                throw new SSLException("Unable to unwrap data on this SSLFDProxy instance.");
+            }
 
-                    this_src_write = (int) Buffer.Write(read_buf, wire_buffer);
+            wire_data = unwrap_step[SSL.STEP_CONSUMED];
+            app_data = unwrap_step[SSL.STEP_PRODUCED];
+            debug("JSSEngine.unwrap() - stepped " + wire_data + " bytes from src into " + app_data + " bytes of dst");
 
-                    wire_data += this_src_write;
-                    debug("JSSEngine.unwrap(): Wrote " + this_src_write + " bytes to read_buf.");
-                }
+            if (unwrap_step[SSL.STEP_ERROR] != 0) {
+                checkReadError(unwrap_step[SSL.STEP_ERROR]);
             }
+        } else {
+            do {
+                this_src_write = 0;
+                this_dst_write = 0;
+
+                if (src != null) {
+                    // When we have data from src, write it to read_buf. This
+                    // copies directly from src (or its backing array) into the
+                    // native buffer, bounded by read_buf's write capacity.
+                    this_src_write = Buffer.Write(read_buf, src);
+                    if (this_src_write > 0) {
+                        wire_data += this_src_write;
+                        debug("JSSEngine.unwrap(): Wrote " + this_src_write + " bytes to read_buf.");
+                    }
+                }
+
+                // In the above, we should always try to read and write data. Check to
+                // see if we need to step our handshake process or not.
+                updateHandshakeState();
 
-            // In the above, we should always try to read and write data. Check to
-            // see if we need to step our handshake process or not.
-            updateHandshakeState();
-
-            int max_dst_size = computeSize(dsts, offset, length);
-            byte[] app_buffer = PR.Read(ssl_fd, max_dst_size);
-            int error = PR.GetError();
-            debug("JSSEngine.unwrap() - " + app_buffer + " error=" + errorText(error));
-            if (app_buffer != null) {
-                this_dst_write = putData(app_buffer, dsts, offset, length);
-                app_data += this_dst_write;
-            } else if (max_dst_size > 0) {
-                // There are two scenarios we need to ignore here:
-                //  1. WOULD_BLOCK_ERRORs are safe, because we're expecting
-                //     not to block. Usually this means we don't have space
-                //     to write any more data.
-                //  2. SOCKET_SHUTDOWN_ERRORs are safe, because if the
-                //     underling cause was fatal, we'd catch it after exiting
-                //     the do-while loop, in checkSSLAlerts().
-                if (error != 0 && error != PRErrors.WOULD_BLOCK_ERROR && error != PRErrors.SOCKET_SHUTDOWN_ERROR) {
-                    ssl_exception = new SSLException("Unexpected return from PR.Read(): " + errorText(error));
-                    seen_exception = true;
+                int max_dst_size = computeSize(dsts, offset, length);
+                int app_read = max_dst_size > 0 ? readData(dsts, offset, length) : 0;
+                if (app_read >= 0) {
+                    debug("JSSEngine.unwrap() - read " + app_read + " bytes into dsts");
+                    this_dst_write = app_read;
+                    app_data += this_dst_write;
+                } else {
+                    checkReadError(PR.GetError());
                 }
-            }
-        } while (this_src_write != 0 || this_dst_write != 0);
+            } while (this_src_write != 0 || this_dst_write != 0);
+        }
 
         SSLException checkException = checkSSLAlerts();
         if (checkException != null && !seen_exception) {
@@ -1425,6 +1744,19 @@ public class JSSEngineReferenceImpl extends JSSEngine {
             returned_finished = true;
         }
 
+        if (metrics) {
+            int records = unwrapped_records.count(src, src_start, src_start + wire_data);
+            TLSMetrics.fireUnwrapped(this, wire_data, app_data, records);
+
+            if (handshake_status == SSLEngineResult.Status.BUFFER_UNDERFLOW) {
+                TLSMetrics.fireBufferUnderflow(this);
+            } else if (computeSize(dsts, offset, length) == 0 && Buffer.ReadCapacity(read_buf) > 0) {
+                TLSMetrics.fireBufferOverflow(this);
+            }
+        }
+
+        releaseIdleBuffer(read_buf);
+
         tryCleanup();
         Reference.reachabilityFence(this);
         return new SSLEngineResult(handshake_status, handshake_state, wire_data, app_data);
@@ -1432,6 +1764,12 @@ public class JSSEngineReferenceImpl extends JSSEngine {
 
     public int writeData(ByteBuffer[] srcs, int offset, int length) {
         debug("JSSEngine: writeData()");
+
+        RecordSizePolicy policy = record_size_policy;
+        if (policy != null) {
+            return writeRecords(srcs, offset, length, policy);
+        }
+
         // This is the tough end of reading/writing. There's two potential
         // places buffering could occur:
         //
@@ -1441,12 +1779,8 @@ public class JSSEngineReferenceImpl extends JSSEngine {
         // So when we call PR.Write(ssl_fd, data), it isn't guaranteed that
         // we can write all of data to ssl_fd (unlike with all our other read
         // or write operations where we have a clear bound). In the event that
-        // our Write call is truncated, we have to put data back into the
-        // buffer from whence it was read.
-        //
-        // However, we do use Buffer.WriteCapacity(write_buf) as a proxy
-        // metric for how much we can write without having to place data back
-        // in a src buffer.
+        // our Write call is truncated, only the bytes actually consumed by
+        // NSS are removed from the src buffer.
         //
         // When we don't perform an actual NSPR write call, make a dummy
         // invocation to ensure we always attempt to flush these buffers.
@@ -1474,37 +1808,27 @@ public class JSSEngineReferenceImpl extends JSSEngine {
             int expected_write = Math.min(srcs[index].remaining(), bufferSize);
             debug("JSSEngine.writeData(): expected_write=" + expected_write + " write_cap=" + Buffer.WriteCapacity(write_buf) + " read_cap=" + Buffer.ReadCapacity(read_buf));
 
-            // Get data from our current srcs[index] buffer.
-            byte[] app_data = new byte[expected_write];
-            srcs[index].get(app_data);
+            // Write directly from our current srcs[index] buffer, limiting
+            // it to expected_write bytes. PR.Write(fd, ByteBuffer) only
+            // advances the position by the amount actually written, so
+            // there's no need to rewind srcs[index] on a short write.
+            ByteBuffer src = srcs[index];
+            int src_limit = src.limit();
+            src.limit(src.position() + expected_write);
 
             // Actual amount written. Since this is a PR.Write call, mark
             // attempted_write.
-            int this_write = PR.Write(ssl_fd, app_data);
-            attempted_write = true;
-
-            // Reset our buffer's position in event of sub-optimal write.
-            if (this_write < expected_write) {
-                int pos = srcs[index].position();
-
-                // When this_write < 0, we want to reset to the beginning
-                // because we assume we haven't written any data due to an
-                // error before writing.
-                int delta = expected_write - Math.max(0, this_write);
-
-                srcs[index].position(pos - delta);
+            int this_write;
+            try {
+                this_write = PR.Write(ssl_fd, src);
+            } finally {
+                src.limit(src_limit);
             }
+            attempted_write = true;
 
             debug("JSSEngine.writeData(): this_write=" + this_write);
             if (this_write < 0) {
-                int error = PR.GetError();
-                if (error == PRErrors.SOCKET_SHUTDOWN_ERROR) {
-                    debug("NSPR reports outbound socket is shutdown.");
-                    is_outbound_closed = true;
-                } else if (error != PRErrors.WOULD_BLOCK_ERROR) {
-                    throw new RuntimeException("Unable to write to internal ssl_fd: " + errorText(PR.GetError()));
-                }
-
+                checkWriteError(PR.GetError());
                 break;
             }
 
@@ -1523,7 +1847,7 @@ public class JSSEngineReferenceImpl extends JSSEngine {
         // ensure we always attempt to write to push data from NSS's internal
         // buffers into our network buffers.
         if (!attempted_write) {
-            PR.Write(ssl_fd, null);
+            PR.Write(ssl_fd, (byte[]) null);
         }
 
         debug("JSSEngine.writeData(): data_length=" + data_length);
@@ -1531,6 +1855,93 @@ public class JSSEngineReferenceImpl extends JSSEngine {
         return data_length;
     }
 
+    /**
+     * Write application data from srcs, gathering the buffers into records
+     * sized by the given policy rather than writing each buffer on its
+     * own. Returns the number of bytes consumed from srcs, like writeData.
+     */
+    private int writeRecords(ByteBuffer[] srcs, int offset, int length, RecordSizePolicy policy) {
+        int data_length = 0;
+
+        int index = offset;
+        int max_index = offset + length;
+
+        boolean attempted_write = false;
+
+        // After the connection has been idle, the congestion window may
+        // have shrunk again, so start over with the initial record size.
+        long now = System.nanoTime();
+        if (policy.getIdleTimeout() > 0 && now - last_write > TimeUnit.MILLISECONDS.toNanos(policy.getIdleTimeout())) {
+            record_bytes = 0;
+        }
+
+        while (true) {
+            // Skip over the buffers we've already drained.
+            while (index < max_index && (srcs[index] == null || !srcs[index].hasRemaining())) {
+                index += 1;
+            }
+
+            long remaining = 0;
+            for (int i = index; i < max_index; i++) {
+                if (srcs[i] != null) {
+                    remaining += srcs[i].remaining();
+                }
+            }
+
+            if (remaining == 0) {
+                break;
+            }
+
+            // Each PR.Writev call becomes a single PR_Write on ssl_fd,
+            // which NSS turns into a single record (up to the maximum
+            // record size), so the size of this write is the size of the
+            // record we produce.
+            int record_size = Math.min(policy.getRecordSize(record_bytes), bufferSize);
+            int expected_write = (int) Math.min(remaining, record_size);
+            debug("JSSEngine.writeRecords(): index=" + index + " expected_write=" + expected_write);
+
+            int this_write = PR.Writev(ssl_fd, srcs, index, max_index - index, expected_write);
+            attempted_write = true;
+
+            debug("JSSEngine.writeRecords(): this_write=" + this_write);
+            if (this_write < 0) {
+                checkWriteError(PR.GetError());
+                break;
+            }
+
+            data_length += this_write;
+            record_bytes += this_write;
+            last_write = now;
+
+            if (this_write < expected_write) {
+                // See writeData: give the caller a chance to drain write_buf.
+                break;
+            }
+        }
+
+        if (!attempted_write) {
+            PR.Write(ssl_fd, (byte[]) null);
+        }
+
+        debug("JSSEngine.writeRecords(): data_length=" + data_length);
+
+        return data_length;
+    }
+
+    /**
+     * Handle a failed write to ssl_fd: a shutdown outbound socket closes
+     * our outbound side and would-block is expected; anything else is
+     * fatal.
+     */
+    private void checkWriteError(int error) {
+        if (error == PRErrors.SOCKET_SHUTDOWN_ERROR) {
+            debug("NSPR reports outbound socket is shutdown.");
+            is_outbound_closed = true;
+        } else if (error != PRErrors.WOULD_BLOCK_ERROR) {
+            throw new RuntimeException("Unable to write to internal ssl_fd: " + errorText(error));
+        }
+    }
+
     private void logWrap(ByteBuffer dst) {
         if (debug_port <= 0 || dst == null || dst.remaining() == 0) {
             return;
@@ -1563,8 +1974,9 @@ public class JSSEngineReferenceImpl extends JSSEngine {
     }
 
     @Override
-    public SSLEngineResult wrap(ByteBuffer[] srcs, int offset, int length, ByteBuffer dst) throws IllegalArgumentException, SSLException {
+    public synchronized SSLEngineResult wrap(ByteBuffer[] srcs, int offset, int length, ByteBuffer dst) throws IllegalArgumentException, SSLException {
         debug("JSSEngine: wrap(ssl_fd=" + ssl_fd + ")");
+        awaitSSLFD();
         // In this method, we're taking the application data from the various
         // srcs and writing it to the remote peer (via ssl_fd). If there's any
         // data for us to send to the remote peer, we place it in dst.
@@ -1613,88 +2025,118 @@ public class JSSEngineReferenceImpl extends JSSEngine {
         // write_buf, and the size of dst, if present.
         int wire_data = 0;
 
+        // Where the wire data starts in dst, for counting records.
+        int dst_start = dst != null ? dst.position() : 0;
+
         if (is_inbound_closed && !is_outbound_closed) {
             closeOutbound();
         }
 
         int this_src_write;
         int this_dst_write;
-        do {
-            this_src_write = 0;
-            this_dst_write = 0;
-
-            // First we try updating the handshake state.
-            updateHandshakeState();
-
-            // Check if write_buf has accumulated excessive data, indicating
-            // NSS is trying to send a packet larger than our buffer capacity.
-            // This prevents silent performance degradation from looping when
-            // sending large TLS packets (e.g., ML-DSA certificate messages).
-            long write_buf_data = Buffer.ReadCapacity(write_buf);
-            if (write_buf_data >= bufferSize && !ssl_fd.handshakeComplete) {
-                String msg = "Outbound TLS data in buffer (" + write_buf_data + " bytes) ";
-                msg += "has reached buffer capacity (" + bufferSize + " bytes). ";
-                msg += "This may indicate Post-Quantum Cryptography (ML-DSA) is generating ";
-                msg += "large handshake messages. In this case the buffer can be defined with ";
-                msg += "the java property 'jdk.tls.maxHandshakeMessageSize'.";            
-                throw new SSLException(msg);
-            }
 
-            if (ssl_exception == null && seen_exception) {
-                if (handshake_state != SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING) {
-                    // In the event that:
-                    //
-                    //      1. We saw an exception in the past
-                    //          --> (seen_exception is true),
-                    //      2. We've already thrown it from wrap or unwrap,
-                    //          --> (ssl_exception is null),
-                    //      3. We were previously handshaking
-                    //          --> (handshake_state is a handshaking state),
-                    //
-                    // we need to make sure wrap is called again to ensure the
-                    // alert is actually written to the wire. So here we are,
-                    // in wrap and the above hold true; we can mark the handshake
-                    // status as "FINISHED" (because well, it is over due to the
-                    // alert). That leaves the return state to be anything other
-                    // than OK to indicate the error.
-                    handshake_state = SSLEngineResult.HandshakeStatus.FINISHED;
-                }
+        // As in unwrap(...), once the handshake is over, move data from a
+        // single source through NSS into dst in one native call. Record
+        // size policies gather several sources, so they take the loop.
+        ByteBuffer step_src = null;
+        if (canStep() && !is_outbound_closed && record_size_policy == null && SSL.CanStep(dst) && !dst.isReadOnly()) {
+            step_src = singleBuffer(srcs, offset, length);
+        }
+
+        if (step_src != null) {
+            if (SSL.WrapStep(ssl_fd, read_buf, write_buf, step_src, dst, bufferSize, wrap_step) == SSL.SECFailure) {
+                throw new SSLException("Unable to wrap data on this SSLFDProxy instance.");
             }
 
-            // Try writing data from srcs to the other end of the connection. Note
-            // that we always attempt this, even if the handshake isn't yet marked
-            // as finished. This is because we need the call to PR.Write(...) to
-            // tell if an alert is getting sent.
-            this_src_write = writeData(srcs, offset, length);
-            if (this_src_write > 0) {
-                app_data += this_src_write;
-                debug("JSSEngine.wrap(): wrote " + this_src_write + " from srcs to buffer.");
-            } else {
-                debug("JSSEngine.wrap(): not writing from srcs to buffer: this_src_write=" + this_src_write);
+            app_data = wrap_step[SSL.STEP_CONSUMED];
+            wire_data = wrap_step[SSL.STEP_PRODUCED];
+            debug("JSSEngine.wrap() - stepped " + app_data + " bytes from src into " + wire_data + " bytes of dst");
+
+            if (wrap_step[SSL.STEP_ERROR] != 0) {
+                checkWriteError(wrap_step[SSL.STEP_ERROR]);
             }
+        } else {
+            do {
+                this_src_write = 0;
+                this_dst_write = 0;
+
+                // First we try updating the handshake state.
+                updateHandshakeState();
+
+                // Check if write_buf has accumulated excessive data, indicating
+                // NSS is trying to send a packet larger than our buffer capacity.
+                // This prevents silent performance degradation from looping when
+                // sending large TLS packets (e.g., ML-DSA certificate messages).
+                // Until write_buf has grown to bufferSize, grow it instead; NSS
+                // continues with the rest of the message on the next pass.
+                long write_buf_data = Buffer.ReadCapacity(write_buf);
+                if (write_buf_data >= write_buf_size && !ssl_fd.handshakeComplete) {
+                    if (write_buf_size >= bufferSize) {
+                        String msg = "Outbound TLS data in buffer (" + write_buf_data + " bytes) ";
+                        msg += "has reached buffer capacity (" + bufferSize + " bytes). ";
+                        msg += "This may indicate Post-Quantum Cryptography (ML-DSA) is generating ";
+                        msg += "large handshake messages. In this case the buffer can be defined with ";
+                        msg += "the java property 'jdk.tls.maxHandshakeMessageSize'.";
+                        throw new SSLException(msg);
+                    }
+
+                    write_buf_size = growBuffer(write_buf, "write_buf");
+                }
+
+                if (ssl_exception == null && seen_exception) {
+                    if (handshake_state != SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING) {
+                        // In the event that:
+                        //
+                        //      1. We saw an exception in the past
+                        //          --> (seen_exception is true),
+                        //      2. We've already thrown it from wrap or unwrap,
+                        //          --> (ssl_exception is null),
+                        //      3. We were previously handshaking
+                        //          --> (handshake_state is a handshaking state),
+                        //
+                        // we need to make sure wrap is called again to ensure the
+                        // alert is actually written to the wire. So here we are,
+                        // in wrap and the above hold true; we can mark the handshake
+                        // status as "FINISHED" (because well, it is over due to the
+                        // alert). That leaves the return state to be anything other
+                        // than OK to indicate the error.
+                        handshake_state = SSLEngineResult.HandshakeStatus.FINISHED;
+                    }
+                }
+
+                // Try writing data from srcs to the other end of the connection. Note
+                // that we always attempt this, even if the handshake isn't yet marked
+                // as finished. This is because we need the call to PR.Write(...) to
+                // tell if an alert is getting sent.
+                this_src_write = writeData(srcs, offset, length);
+                if (this_src_write > 0) {
+                    app_data += this_src_write;
+                    debug("JSSEngine.wrap(): wrote " + this_src_write + " from srcs to buffer.");
+                } else {
+                    debug("JSSEngine.wrap(): not writing from srcs to buffer: this_src_write=" + this_src_write);
+                }
 
-            if (dst != null) {
-                // Get an estimate for the expected write to dst; this is
-                // the minimum of write_buf read capacity and dst.remaining
-                // capacity.
-                this_dst_write = Math.min((int) Buffer.ReadCapacity(write_buf), dst.remaining());
+                if (dst != null) {
+                    // Get an estimate for the expected write to dst; this is
+                    // the minimum of write_buf read capacity and dst.remaining
+                    // capacity.
+                    this_dst_write = Math.min((int) Buffer.ReadCapacity(write_buf), dst.remaining());
 
-                // Try reading data from write_buf to dst; always do this, even
-                // if we didn't write.
-                if (this_dst_write > 0) {
-                    byte[] wire_buffer = Buffer.Read(write_buf, this_dst_write);
-                    dst.put(wire_buffer);
-                    this_dst_write = wire_buffer.length;
-                    wire_data += this_dst_write;
+                    // Try reading data from write_buf to dst; always do this, even
+                    // if we didn't write.
+                    if (this_dst_write > 0) {
+                        this_dst_write = Buffer.Read(write_buf, dst);
+                        wire_data += this_dst_write;
 
-                    debug("JSSEngine.wrap() - Wrote " + wire_buffer.length + " bytes to dst.");
+                        debug("JSSEngine.wrap() - Wrote " + this_dst_write + " bytes to dst.");
+                    } else {
+                        debug("JSSEngine.wrap(): not writing from write_buf into dst: this_dst_write=0 write_buf.read_capacity=" + Buffer.ReadCapacity(write_buf) + " dst.remaining=" + dst.remaining());
+                    }
                 } else {
-                    debug("JSSEngine.wrap(): not writing from write_buf into dst: this_dst_write=0 write_buf.read_capacity=" + Buffer.ReadCapacity(write_buf) + " dst.remaining=" + dst.remaining());
+                    debug("JSSEngine.wrap(): not writing from write_buf into NULL dst");
                 }
-            } else {
-                debug("JSSEngine.wrap(): not writing from write_buf into NULL dst");
-            }
-        } while (this_src_write != 0 || this_dst_write != 0);
+            } while (this_src_write != 0 || this_dst_write != 0);
+        }
 
         // Check for new outbound alerts to the peer and fire the related events
         SSLException newSSLException = checkSSLAlerts();
@@ -1746,6 +2188,17 @@ public class JSSEngineReferenceImpl extends JSSEngine {
             returned_finished = true;
         }
 
+        if (metrics) {
+            int records = wire_data > 0 ? wrapped_records.count(dst, dst_start, dst_start + wire_data) : 0;
+            TLSMetrics.fireWrapped(this, app_data, wire_data, records);
+
+            if (dst != null && !dst.hasRemaining() && Buffer.ReadCapacity(write_buf) > 0) {
+                TLSMetrics.fireBufferOverflow(this);
+            }
+        }
+
+        releaseIdleBuffer(write_buf);
+
         tryCleanup();
         Reference.reachabilityFence(this);
         return new SSLEngineResult(handshake_status, handshake_state, app_data, wire_data);
@@ -1779,6 +2232,15 @@ public class JSSEngineReferenceImpl extends JSSEngine {
     public synchronized void cleanup() {
         debug("JSSEngine: cleanup()");
 
+        // If NSS is waiting on a server-side validation, fail it rather
+        // than wait for it, and let the handshake step unwind before
+        // freeing anything it uses.
+        if (callback_validation != null) {
+            callback_validation.cancel();
+            notifyAll();
+        }
+        awaitSSLFD();
+
         // Set closed_fd BEFORE calling closeInbound()/closeOutbound() to prevent
         // them from calling PR.Shutdown() on ssl_fd that is about to be freed.
         // This avoids a use-after-free crash in the finalizer thread.
@@ -1794,6 +2256,13 @@ public class JSSEngineReferenceImpl extends JSSEngine {
             closeOutbound();
         }
 
+        // Stop any validation which hasn't started yet; it would only
+        // fail against a freed ssl_fd.
+        if (validation != null) {
+            validation.cancel();
+            validation = null;
+        }
+
         // First cleanup any debugging ports, if any.
         cleanupLoggingSocket();
 
@@ -1845,12 +2314,125 @@ public class JSSEngineReferenceImpl extends JSSEngine {
         // Cleaner's EngineCleanup.run(). See cleanupSSLFD() and EngineCleanup.
     }
 
+    /**
+     * Validate the peer's chain on the certificate validation executor
+     * from within NSS's (synchronous) server-side certificate callback.
+     *
+     * The callback runs inside wrap(...) or unwrap(...), holding the
+     * engine's lock. While the validation runs, this waits on the lock,
+     * releasing it, so that e.g. cleanup() on another thread can fail
+     * the validation instead of waiting for it. Every other method which
+     * touches ssl_fd under the lock first waits in awaitSSLFD() until the
+     * callback returns, as NSS is in the middle of a handshake step.
+     */
+    private synchronized int validateInCallback(CertValidationTask handler) {
+        CertValidationExecutor executor = cert_validation_executor;
+        CertValidationExecutor.Validation pending = executor.submit(handler, this::validationFinished);
+        if (pending == null) {
+            // The executor is saturated; validate here, as without one.
+            handler.run();
+            return handler.result;
+        }
+
+        cert_callback_thread = Thread.currentThread();
+        callback_validation = pending;
+        boolean interrupted = false;
+
+        try {
+            while (!pending.isFinished()) {
+                try {
+                    wait(executor.getTimeout());
+                } catch (InterruptedException e) {
+                    // We can't leave NSS waiting; fail the validation.
+                    interrupted = true;
+                    pending.cancel();
+                }
+            }
+
+            return pending.getResult();
+
+        } finally {
+            cert_callback_thread = null;
+            callback_validation = null;
+            notifyAll();
+
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private synchronized void validationFinished() {
+        notifyAll();
+    }
+
+    /**
+     * Wait while NSS's certificate callback on another thread waits for a
+     * validation; see validateInCallback(...).
+     */
+    @Override
+    protected void awaitSSLFD() {
+        boolean interrupted = false;
+
+        while (cert_callback_thread != null && cert_callback_thread != Thread.currentThread()) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Synchronous certificate authentication handler which runs the actual
+     * validation on the engine's CertValidationExecutor; see
+     * validateInCallback(...).
+     */
+    private static class ExecutorCertAuthHandler extends CertAuthHandler {
+        private final CertValidationTask handler;
+        private final java.lang.ref.WeakReference<JSSEngineReferenceImpl> engineRef;
+
+        public ExecutorCertAuthHandler(SSLFDProxy fd, CertValidationTask handler, JSSEngineReferenceImpl engine) {
+            super(fd);
+            this.handler = handler;
+            this.engineRef = new java.lang.ref.WeakReference<>(engine);
+        }
+
+        @Override
+        public int check(SSLFDProxy fd) {
+            // We're called from NSS on the engine's thread, while fd is
+            // still valid; the executor only gets the collected chain.
+            handler.prepare(fd);
+
+            JSSEngineReferenceImpl engine = engineRef.get();
+            if (engine == null) {
+                handler.run();
+                return handler.result;
+            }
+
+            return engine.validateInCallback(handler);
+        }
+    }
+
     private static class CertValidationTask extends CertAuthHandler {
         private final java.lang.ref.WeakReference<JSSEngineReferenceImpl> engineRef;
         private final boolean as_server;
         private final boolean need_client_auth;
         private final X509TrustManager[] trust_managers;
 
+        /**
+         * Peer chain and auth type collected by prepare(...), so that
+         * check(...) doesn't need the ssl_fd; see prepare(...).
+         */
+        private volatile boolean prepared;
+        private PK11Cert[] peer_chain;
+        private String auth_type;
+        private Exception prepare_exception;
+
         public CertValidationTask(SSLFDProxy fd, boolean asServer,
                   boolean needClientAuth, X509TrustManager[] trustManagers,
                   JSSEngineReferenceImpl engine) {
@@ -1934,18 +2516,50 @@ public class JSSEngineReferenceImpl extends JSSEngine {
             return null;
         }
 
+        /**
+         * Collect the peer's certificate chain and auth type from the
+         * ssl_fd. This must run on the engine's thread: validation on a
+         * CertValidationExecutor may still be running (or have timed out)
+         * after the engine has freed its ssl_fd, so check(...) then only
+         * uses what was collected here.
+         */
+        public void prepare(SSLFDProxy fd) {
+            peer_chain = null;
+            auth_type = null;
+            prepare_exception = null;
+
+            try {
+                peer_chain = SSL.PeerCertificateChain(fd);
+                auth_type = findAuthType(fd, peer_chain);
+            } catch (Exception excpt) {
+                prepare_exception = excpt;
+            }
+
+            prepared = true;
+        }
+
         @Override
         public int check(SSLFDProxy fd) {
             // Needs to be available for assignException() below.
 
             JSSEngineReferenceImpl engine = engineRef.get();
 
-            PK11Cert[] chain = null;
-            String authType;
+            if (!prepared) {
+                prepare(fd);
+            }
+
+            // Server-side handlers are reused across handshakes on the same
+            // ssl_fd; the next check collects the chain again.
+            PK11Cert[] chain = peer_chain;
+            String authType = auth_type;
+            Exception failure = prepare_exception;
+            prepared = false;
 
             try {
-                chain = SSL.PeerCertificateChain(fd);
-                authType = findAuthType(fd, chain);
+                if (failure != null) {
+                    throw failure;
+                }
+
                 if (engine != null) {
                     engine.debug("CertAuthType: " + authType);
                 }
@@ -11,6 +11,7 @@ import javax.net.ssl.SSLSessionBindingListener;
 import javax.net.ssl.SSLSessionContext;
 import javax.security.cert.X509Certificate;
 
+import org.mozilla.jss.crypto.ObjectNotFoundException;
 import org.mozilla.jss.nss.SSL;
 import org.mozilla.jss.nss.SSLChannelInfo;
 import org.mozilla.jss.nss.SSLFDProxy;
@@ -22,6 +23,7 @@ import org.mozilla.jss.ssl.SSLVersion;
 public class JSSSession implements SSLSession, AutoCloseable {
     private static final int MAX_TLS_RECORD_PAYLOAD = (1 << 14);
     private JSSEngine parent;
+    private JSSSessionContext context;
 
     private int applicationBufferSize;
     private int packetBufferSize;
@@ -50,6 +52,7 @@ public class JSSSession implements SSLSession, AutoCloseable {
     private Certificate[] peerCertificates;
 
     private boolean closed;
+    private volatile boolean invalidated;
 
     protected JSSSession(JSSEngine engine, int buffer_size) {
         this.parent = engine;
@@ -60,11 +63,55 @@ public class JSSSession implements SSLSession, AutoCloseable {
         this.appDataMap = new HashMap<>();
     }
 
+    /**
+     * Get the engine which negotiated this session, or null if this is a
+     * snapshot kept by the session context after the engine was cleaned
+     * up.
+     */
     public JSSEngine getEngine() {
         return parent;
     }
 
+    /**
+     * Copy this session's parameters into a session which doesn't
+     * reference the engine, for the session context to keep once the
+     * connection is closed. The peer certificates are freed with the
+     * connection, so only the peer principal is kept.
+     */
+    protected JSSSession snapshot() {
+        JSSSession copy = new JSSSession(null, packetBufferSize);
+        copy.applicationBufferSize = applicationBufferSize;
+        copy.context = context;
+
+        copy.cipherSuite = cipherSuite;
+        copy.protocolVersion = protocolVersion;
+
+        copy.creationTime = creationTime;
+        copy.lastAccessTime = lastAccessTime;
+        copy.expirationTime = expirationTime;
+        copy.sessionID = sessionID;
+
+        copy.appDataMap = appDataMap;
+
+        copy.localCertificates = localCertificates;
+        copy.localPrincipal = localPrincipal;
+
+        copy.peerHost = peerHost;
+        copy.peerPort = peerPort;
+        copy.localAddr = localAddr;
+        copy.remoteAddr = remoteAddr;
+
+        copy.peerPrincipal = peerPrincipal;
+        copy.peerChain = peerChain;
+
+        return copy;
+    }
+
     public SSLChannelInfo getChannelInfo() {
+        if (parent == null) {
+            return null;
+        }
+
         SSLFDProxy ssl_fd = parent.getSSLFDProxy();
         if (ssl_fd != null && ssl_fd.handshakeComplete) {
             return SSL.GetChannelInfo(ssl_fd);
@@ -74,7 +121,7 @@ public class JSSSession implements SSLSession, AutoCloseable {
     }
 
     public SSLPreliminaryChannelInfo getPreliminaryChannelInfo() {
-        if (parent.getSSLFDProxy() != null) {
+        if (parent != null && parent.getSSLFDProxy() != null) {
             return SSL.GetPreliminaryChannelInfo(parent.getSSLFDProxy());
         }
 
@@ -106,7 +153,15 @@ public class JSSSession implements SSLSession, AutoCloseable {
 
     @Override
     public SSLSessionContext getSessionContext() {
-        return null;
+        if (context == null && parent != null) {
+            return parent.getSessionContext();
+        }
+
+        return context;
+    }
+
+    protected void setSessionContext(JSSSessionContext context) {
+        this.context = context;
     }
 
     @Override
@@ -156,15 +211,58 @@ public class JSSSession implements SSLSession, AutoCloseable {
         expirationTime = when;
     }
 
+    /**
+     * Whether the handshake resumed a previous session rather than
+     * performing a full handshake.
+     *
+     * Returns false when the handshake hasn't completed or the version of
+     * NSS doesn't report this.
+     */
+    public boolean isResumed() {
+        SSLChannelInfo info = getChannelInfo();
+        if (info == null) {
+            return false;
+        }
+
+        try {
+            return info.getResumed();
+        } catch (ObjectNotFoundException e) {
+            return false;
+        }
+    }
+
     @Override
     public boolean isValid() {
-        return !closed && System.currentTimeMillis() < getExpirationTime();
+        return !closed && !invalidated && System.currentTimeMillis() < getExpirationTime();
     }
 
     @Override
     public void invalidate() {
-        if (parent.getSSLFDProxy() != null) {
-             SSL.InvalidateSession(parent.getSSLFDProxy());
+        invalidated = true;
+        invalidateNativeSession();
+
+        if (context != null) {
+            context.remove(this);
+        }
+    }
+
+    /**
+     * Invalidate this session in NSS so it can't be resumed, if its
+     * connection is still open. This takes the engine's lock, so the
+     * ssl_fd can't be freed by a concurrent cleanup.
+     */
+    protected void invalidateNativeSession() {
+        JSSEngine engine = parent;
+        if (engine == null) {
+            return;
+        }
+
+        synchronized (engine) {
+            engine.awaitSSLFD();
+            SSLFDProxy ssl_fd = engine.getSSLFDProxy();
+            if (ssl_fd != null) {
+                SSL.InvalidateSession(ssl_fd);
+            }
         }
     }
 
@@ -172,6 +270,12 @@ public class JSSSession implements SSLSession, AutoCloseable {
     public void close() {
         closed = true;
         setPeerCertificates(null);
+
+        // Keep a snapshot in the context in place of the closed engine,
+        // unless the session was invalidated.
+        if (context != null && !invalidated) {
+            context.closed(this);
+        }
     }
 
     @Override
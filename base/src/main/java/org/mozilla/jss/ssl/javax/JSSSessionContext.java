@@ -0,0 +1,377 @@
+package org.mozilla.jss.ssl.javax;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * SSLSessionContext view over NSS's session cache.
+ *
+ * NSS keeps a single, process-wide server session ID cache (configured via
+ * SSL_ConfigServerSessionIDCache) and a single client session cache, so
+ * there is exactly one server and one client context; see
+ * getServerSessionContext() and getClientSessionContext().
+ *
+ * Sessions are recorded here when a JSSEngine finishes its handshake. When
+ * the engine is cleaned up, its session is replaced by a snapshot which
+ * doesn't reference the engine, since NSS can still resume it. The context
+ * tracks sessions by session ID in least recently used order and keeps
+ * counts of full and resumed handshakes.
+ *
+ * NSS only accepts the cache size and timeout when the server cache is
+ * first created; values set before then are used to create it. The
+ * context enforces later changes itself: sessions beyond the size or past
+ * the timeout are dropped and invalidated in NSS. NSS can only invalidate
+ * a session through an open connection, so a session whose connection is
+ * already closed is instead invalidated when a handshake resumes it, and
+ * isn't resumed again after that.
+ */
+public class JSSSessionContext implements SSLSessionContext {
+    public static Logger logger = LoggerFactory.getLogger(JSSSessionContext.class);
+
+    /**
+     * Default maximum number of sessions to cache; the JDK's default.
+     */
+    public static final int DEFAULT_SESSION_CACHE_SIZE = 20480;
+
+    /**
+     * Default session timeout, in seconds; the JDK's default, and the
+     * longest NSS accepts.
+     */
+    public static final int DEFAULT_SESSION_TIMEOUT = 86400;
+
+    private static final JSSSessionContext serverContext = new JSSSessionContext(true);
+    private static final JSSSessionContext clientContext = new JSSSessionContext(false);
+
+    private final boolean server;
+
+    /**
+     * Maximum number of dropped session IDs to remember.
+     */
+    private static final int MAX_REVOKED = DEFAULT_SESSION_CACHE_SIZE;
+
+    /**
+     * Sessions keyed by ID, in access order; guarded by this.
+     */
+    private final LinkedHashMap<SessionID, JSSSession> sessions = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * IDs of sessions dropped from the context which NSS may still resume;
+     * guarded by this.
+     */
+    private final LinkedHashMap<SessionID, Boolean> revoked = new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<SessionID, Boolean> eldest) {
+            return size() > MAX_REVOKED;
+        }
+    };
+
+    private final AtomicLong fullHandshakes = new AtomicLong();
+    private final AtomicLong resumedHandshakes = new AtomicLong();
+
+    private volatile int cacheSize = DEFAULT_SESSION_CACHE_SIZE;
+    private volatile int timeout = DEFAULT_SESSION_TIMEOUT;
+
+    protected JSSSessionContext(boolean server) {
+        this.server = server;
+    }
+
+    /**
+     * Get the context for sessions negotiated by server-mode engines.
+     */
+    public static JSSSessionContext getServerSessionContext() {
+        return serverContext;
+    }
+
+    /**
+     * Get the context for sessions negotiated by client-mode engines.
+     */
+    public static JSSSessionContext getClientSessionContext() {
+        return clientContext;
+    }
+
+    public boolean isServer() {
+        return server;
+    }
+
+    /**
+     * Record a completed handshake on the given session, adding it to
+     * this context; called by the session's engine while holding its
+     * lock.
+     *
+     * A resumed session which this context already dropped is invalidated
+     * instead. Sessions dropped to make room aren't invalidated here, as
+     * that would take other engines' locks while holding this one's;
+     * they're invalidated when a handshake resumes them.
+     */
+    protected void recordHandshake(JSSSession session) {
+        boolean resumed = session.isResumed();
+        if (resumed) {
+            resumedHandshakes.incrementAndGet();
+        } else {
+            fullHandshakes.incrementAndGet();
+        }
+
+        byte[] id = session.getId();
+        if (id == null || id.length == 0) {
+            return;
+        }
+
+        session.setSessionContext(this);
+
+        SessionID key = new SessionID(id);
+        boolean revoke;
+
+        synchronized (this) {
+            revoke = resumed && (revoked.containsKey(key) || isExpired(session, System.currentTimeMillis()));
+            if (!revoke) {
+                sessions.put(key, session);
+            }
+
+            trim();
+        }
+
+        if (revoke) {
+            logger.debug("JSSSessionContext: invalidating resumed session " + session);
+            session.invalidateNativeSession();
+        }
+    }
+
+    /**
+     * Replace the session with a snapshot when its engine is cleaned up,
+     * so it can still be looked up while NSS can resume it.
+     */
+    protected synchronized void closed(JSSSession session) {
+        byte[] id = session.getId();
+        if (id == null) {
+            return;
+        }
+
+        SessionID key = new SessionID(id);
+        if (sessions.get(key) == session) {
+            sessions.put(key, session.snapshot());
+        }
+    }
+
+    /**
+     * Remove the session from this context when it is invalidated.
+     */
+    protected synchronized void remove(JSSSession session) {
+        byte[] id = session.getId();
+        if (id != null) {
+            SessionID key = new SessionID(id);
+            sessions.remove(key, session);
+            revoked.put(key, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * Drop expired sessions and sessions beyond the cache size, returning
+     * the ones removed; must be called while holding the lock.
+     *
+     * The removed sessions belong to other engines, so they must be
+     * invalidated in NSS (see invalidateAll()) after releasing the lock.
+     */
+    private List<JSSSession> trim() {
+        List<JSSSession> removed = new ArrayList<>();
+        long now = System.currentTimeMillis();
+
+        Iterator<Map.Entry<SessionID, JSSSession>> it = sessions.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<SessionID, JSSSession> entry = it.next();
+            JSSSession session = entry.getValue();
+            if (isExpired(session, now) || (cacheSize > 0 && sessions.size() > cacheSize)) {
+                logger.debug("JSSSessionContext: dropping session " + session);
+                it.remove();
+                revoked.put(entry.getKey(), Boolean.TRUE);
+                removed.add(session);
+            }
+        }
+
+        return removed;
+    }
+
+    /**
+     * Invalidate the dropped sessions whose connections are still open,
+     * each under its engine's lock. Must not be called while holding this
+     * context's lock or an engine's lock.
+     */
+    private static void invalidateAll(List<JSSSession> removed) {
+        for (JSSSession session : removed) {
+            session.invalidateNativeSession();
+        }
+    }
+
+    private boolean isExpired(JSSSession session, long now) {
+        return timeout > 0 && session.getCreationTime() + timeout * 1000L <= now;
+    }
+
+    @Override
+    public SSLSession getSession(byte[] sessionId) {
+        if (sessionId == null) {
+            throw new NullPointerException("Session ID must not be null");
+        }
+
+        synchronized (this) {
+            SessionID key = new SessionID(sessionId);
+            JSSSession session = sessions.get(key);
+            if (session != null && isExpired(session, System.currentTimeMillis())) {
+                sessions.remove(key);
+                revoked.put(key, Boolean.TRUE);
+                return null;
+            }
+
+            return session;
+        }
+    }
+
+    @Override
+    public Enumeration<byte[]> getIds() {
+        List<byte[]> ids = new ArrayList<>();
+
+        synchronized (this) {
+            trim();
+            for (SessionID key : sessions.keySet()) {
+                ids.add(key.id.clone());
+            }
+        }
+
+        return Collections.enumeration(ids);
+    }
+
+    /**
+     * Set the session timeout in seconds; zero means no limit.
+     *
+     * Open connections whose sessions are dropped are invalidated under
+     * their engine's lock, so this must not be called from a handshake
+     * listener or another callback running under an engine's lock.
+     *
+     * See also: SSLSessionContext.setSessionTimeout(int)
+     */
+    @Override
+    public void setSessionTimeout(int seconds) {
+        if (seconds < 0) {
+            throw new IllegalArgumentException("Expected non-negative session timeout, got: " + seconds);
+        }
+
+        timeout = seconds;
+        applyLimits();
+    }
+
+    @Override
+    public int getSessionTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Set the maximum number of cached sessions; zero means no limit.
+     *
+     * See setSessionTimeout(int) for the locking requirements.
+     *
+     * See also: SSLSessionContext.setSessionCacheSize(int)
+     */
+    @Override
+    public void setSessionCacheSize(int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("Expected non-negative session cache size, got: " + size);
+        }
+
+        cacheSize = size;
+        applyLimits();
+    }
+
+    @Override
+    public int getSessionCacheSize() {
+        return cacheSize;
+    }
+
+    /**
+     * Apply a new size or timeout, invalidating the dropped sessions in
+     * NSS so they can no longer be resumed.
+     */
+    private void applyLimits() {
+        List<JSSSession> removed;
+        synchronized (this) {
+            removed = trim();
+        }
+
+        invalidateAll(removed);
+    }
+
+    /**
+     * Initialize NSS's server session cache from this context's size and
+     * timeout, if it hasn't been initialized already.
+     *
+     * NSS treats zero as "use the default", which differs from the "no
+     * limit" meaning SSLSessionContext gives it; NSS's defaults are large
+     * enough that this is the closest match.
+     */
+    protected void initializeServerCache() throws SSLException {
+        JSSEngine.initializeSessionCache(cacheSize, timeout, null);
+    }
+
+    /**
+     * Number of sessions currently tracked by this context.
+     */
+    public synchronized int size() {
+        return sessions.size();
+    }
+
+    public long getFullHandshakeCount() {
+        return fullHandshakes.get();
+    }
+
+    public long getResumedHandshakeCount() {
+        return resumedHandshakes.get();
+    }
+
+    /**
+     * Fraction of completed handshakes which resumed an existing session,
+     * or zero if no handshakes have completed yet.
+     */
+    public double getResumptionRatio() {
+        long resumed = resumedHandshakes.get();
+        long total = resumed + fullHandshakes.get();
+        if (total == 0) {
+            return 0.0;
+        }
+
+        return (double) resumed / total;
+    }
+
+    /**
+     * Wrapper giving byte[] session IDs value semantics as map keys.
+     */
+    private static final class SessionID {
+        private final byte[] id;
+        private final int hash;
+
+        SessionID(byte[] id) {
+            this.id = id.clone();
+            this.hash = Arrays.hashCode(id);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof SessionID && Arrays.equals(id, ((SessionID) o).id);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -25,8 +25,16 @@ import javax.net.ssl.SSLException;
  *
  * This class contains all low-level interactions with the underlying
  * SSLEngine and reading/writing to/from the underlying Socket.
+ *
+ * Reads and writes are serialized separately, so one thread can read while
+ * another writes. By default, each channel allocates its own heap network
+ * buffers. With pooled buffers (see setDefaultPooledBuffers(...)), they're
+ * direct buffers taken from the DirectBufferPool only while they hold
+ * data, so idle connections don't keep any.
  */
 public class JSSSocketChannel extends SocketChannel {
+    private static volatile boolean defaultPooledBuffers = false;
+
     private JSSSocket sslSocket;
     private SocketChannel parent;
     private Socket parentSocket;
@@ -39,13 +47,27 @@ public class JSSSocketChannel extends SocketChannel {
 
     private boolean autoClose = true;
 
-    private boolean inboundClosed = false;
-    private boolean outboundClosed = false;
+    private volatile boolean inboundClosed = false;
+    private volatile boolean outboundClosed = false;
 
     private ByteBuffer empty = ByteBuffer.allocate(0);
     private ByteBuffer readBuffer;
     private ByteBuffer writeBuffer;
 
+    private final boolean pooledBuffers;
+    private final int bufferSize;
+
+    // Guard readBuffer and writeBuffer respectively; when both are needed,
+    // readLock is taken first. The engine serializes wrap and unwrap
+    // itself, so these only let network reads and writes overlap.
+    private final Object readLock = new Object();
+    private final Object writeLock = new Object();
+
+    // Reused to pass a single buffer to read(ByteBuffer[]) and
+    // write(ByteBuffer[]) while holding the corresponding lock.
+    private final ByteBuffer[] readDsts = new ByteBuffer[1];
+    private final ByteBuffer[] writeSrcs = new ByteBuffer[1];
+
     private boolean handshakeCompleted = false;
 
     public JSSSocketChannel(JSSSocket sslSocket, SocketChannel parent, Socket parentSocket, ReadableByteChannel readChannel, WritableByteChannel writeChannel, JSSEngine engine) throws IOException {
@@ -58,8 +80,13 @@ public class JSSSocketChannel extends SocketChannel {
         this.writeChannel = writeChannel;
         this.engine = engine;
 
-        this.readBuffer = ByteBuffer.allocate(engine.getSession().getApplicationBufferSize());
-        this.writeBuffer = ByteBuffer.allocate(engine.getSession().getApplicationBufferSize());
+        this.pooledBuffers = defaultPooledBuffers;
+        this.bufferSize = engine.getSession().getApplicationBufferSize();
+
+        if (!pooledBuffers) {
+            this.readBuffer = ByteBuffer.allocate(bufferSize);
+            this.writeBuffer = ByteBuffer.allocate(bufferSize);
+        }
     }
 
     public JSSSocketChannel(JSSSocket sslSocket, SocketChannel parent, JSSEngine engine) throws IOException {
@@ -77,6 +104,27 @@ public class JSSSocketChannel extends SocketChannel {
         configureBlocking(true);
     }
 
+    /**
+     * Set whether channels created from now on use direct network buffers
+     * from the DirectBufferPool instead of allocating their own heap
+     * buffers. Default is false.
+     */
+    public static void setDefaultPooledBuffers(boolean pooled) {
+        defaultPooledBuffers = pooled;
+    }
+
+    public static boolean getDefaultPooledBuffers() {
+        return defaultPooledBuffers;
+    }
+
+    /**
+     * Whether this channel takes its network buffers from the
+     * DirectBufferPool.
+     */
+    public boolean hasPooledBuffers() {
+        return pooledBuffers;
+    }
+
     /**
      * Give data already consumed by a call to the underlying socket's read
      * method to this Socket, allowing it to be read by the SSLEngine.
@@ -242,15 +290,41 @@ public class JSSSocketChannel extends SocketChannel {
 
     @Override
     public int read(ByteBuffer dst) throws IOException {
-        return (int) read(new ByteBuffer[] { dst });
+        synchronized (readLock) {
+            readDsts[0] = dst;
+            try {
+                return (int) read(readDsts, 0, 1);
+            } finally {
+                readDsts[0] = null;
+            }
+        }
     }
 
     @Override
-    public synchronized long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
-        if (inboundClosed) {
-            return -1;
+    public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+        synchronized (readLock) {
+            if (inboundClosed) {
+                return -1;
+            }
+
+            if (readBuffer == null) {
+                readBuffer = DirectBufferPool.acquire(bufferSize);
+            }
+
+            try {
+                return readLocked(dsts, offset, length);
+            } finally {
+                // Only hold on to a pooled buffer while it holds part of
+                // a record.
+                if (pooledBuffers && readBuffer != null && readBuffer.position() == 0) {
+                    DirectBufferPool.release(readBuffer);
+                    readBuffer = null;
+                }
+            }
         }
+    }
 
+    private long readLocked(ByteBuffer[] dsts, int offset, int length) throws IOException {
         long unwrapped = 0;
         long decrypted = 0;
 
@@ -258,6 +332,9 @@ public class JSSSocketChannel extends SocketChannel {
             SSLEngineResult result;
             do {
                 int n = remoteRead();
+                if (n > 0 && TLSMetrics.isMetricsEnabled()) {
+                    TLSMetrics.fireChannelRead(this, n);
+                }
 
                 if (readBuffer.position() == 0) {
                     // We didn't read anything and there is no left-over data.
@@ -313,15 +390,41 @@ public class JSSSocketChannel extends SocketChannel {
 
     @Override
     public int write(ByteBuffer src) throws IOException {
-        return (int) write(new ByteBuffer[] { src });
+        synchronized (writeLock) {
+            writeSrcs[0] = src;
+            try {
+                return (int) write(writeSrcs, 0, 1);
+            } finally {
+                writeSrcs[0] = null;
+            }
+        }
     }
 
     @Override
-    public synchronized long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
-        if (outboundClosed) {
-            return -1;
+    public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+        synchronized (writeLock) {
+            if (outboundClosed) {
+                return -1;
+            }
+
+            if (writeBuffer == null) {
+                writeBuffer = DirectBufferPool.acquire(bufferSize);
+            }
+
+            try {
+                return writeLocked(srcs, offset, length);
+            } finally {
+                // Everything wrapped has been sent (or the write failed),
+                // so a pooled buffer can go back right away.
+                if (pooledBuffers && writeBuffer != null) {
+                    DirectBufferPool.release(writeBuffer);
+                    writeBuffer = null;
+                }
+            }
         }
+    }
 
+    private long writeLocked(ByteBuffer[] srcs, int offset, int length) throws IOException {
         writeBuffer.clear();
 
         ByteBuffer dst = writeBuffer;
@@ -351,8 +454,12 @@ public class JSSSocketChannel extends SocketChannel {
 
                 dst.flip();
 
-                int thisWrite = writeChannel.write(dst);
+                // Handshake and close steps often produce nothing to send.
+                int thisWrite = dst.hasRemaining() ? writeChannel.write(dst) : 0;
                 sent += thisWrite;
+                if (thisWrite > 0 && TLSMetrics.isMetricsEnabled()) {
+                    TLSMetrics.fireChannelWritten(this, thisWrite);
+                }
 
                 if (sent < encrypted && result.bytesConsumed() == 0 && result.bytesProduced() == 0 && thisWrite == 0) {
                     String msg = "Calls to wrap or write stalled, consuming ";
@@ -383,35 +490,48 @@ public class JSSSocketChannel extends SocketChannel {
         // is necessary to send our acknowledgement of the peer's alert.
 
         try {
-            synchronized (this) {
-                // unwrap() triggers a call to PR_Read(), which in turn will
-                // execute the received alert callback. However, PR_Read is
-                // effectively a no-op with an empty buffer, resulting in the
-                // callback never triggering. Use a single byte buffer instead,
-                // discarding any data because we're closing the channel. This
-                // should ensure we always get a callback.
-                ByteBuffer readOne = ByteBuffer.allocate(1);
-
-                shutdownInput();
-
-                // Bypass read check.
-                inboundClosed = false;
-                read(readOne);
-
-                if (!outboundClosed) {
-                    shutdownOutput();
-                }
+            synchronized (readLock) {
+                synchronized (writeLock) {
+                    // unwrap() triggers a call to PR_Read(), which in turn will
+                    // execute the received alert callback. However, PR_Read is
+                    // effectively a no-op with an empty buffer, resulting in the
+                    // callback never triggering. Use a single byte buffer instead,
+                    // discarding any data because we're closing the channel. This
+                    // should ensure we always get a callback.
+                    ByteBuffer readOne = ByteBuffer.allocate(1);
+
+                    shutdownInput();
+
+                    // Bypass read check.
+                    inboundClosed = false;
+                    read(readOne);
+
+                    if (!outboundClosed) {
+                        shutdownOutput();
+                    }
 
-                // Make sure we close the input side of the SSLEngine.
-                engine.closeInbound();
+                    // Make sure we close the input side of the SSLEngine.
+                    engine.closeInbound();
 
-                outboundClosed = true;
-                inboundClosed = true;
+                    outboundClosed = true;
+                    inboundClosed = true;
+                }
             }
         } finally {
             engine.cleanup();
             engine = null;
 
+            if (pooledBuffers) {
+                synchronized (readLock) {
+                    DirectBufferPool.release(readBuffer);
+                    readBuffer = null;
+                }
+                synchronized (writeLock) {
+                    DirectBufferPool.release(writeBuffer);
+                    writeBuffer = null;
+                }
+            }
+
             if (autoClose) {
                 if (parent == null) {
                     parentSocket.shutdownInput();
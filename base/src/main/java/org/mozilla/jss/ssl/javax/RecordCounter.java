@@ -0,0 +1,54 @@
+package org.mozilla.jss.ssl.javax;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Counts the TLS records in a stream of wire data handed over in arbitrary
+ * pieces, by following the length fields of the record headers.
+ *
+ * Used by JSSEngineReferenceImpl to report records wrapped and unwrapped
+ * to TLSMetrics; one instance follows one direction of one connection.
+ */
+final class RecordCounter {
+
+    /**
+     * Content type (1), version (2) and length (2).
+     */
+    static final int HEADER_SIZE = 5;
+
+    private int header_read;
+    private int length_high;
+    private int body_remaining;
+
+    /**
+     * Count the records whose headers lie in buf[start, end), without
+     * moving buf's position.
+     */
+    int count(ByteBuffer buf, int start, int end) {
+        int records = 0;
+        int index = start;
+
+        while (index < end) {
+            if (body_remaining > 0) {
+                int skip = Math.min(body_remaining, end - index);
+                body_remaining -= skip;
+                index += skip;
+                continue;
+            }
+
+            int value = buf.get(index) & 0xFF;
+            index += 1;
+            header_read += 1;
+
+            if (header_read == HEADER_SIZE - 1) {
+                length_high = value;
+            } else if (header_read == HEADER_SIZE) {
+                body_remaining = (length_high << 8) | value;
+                header_read = 0;
+                records += 1;
+            }
+        }
+
+        return records;
+    }
+}
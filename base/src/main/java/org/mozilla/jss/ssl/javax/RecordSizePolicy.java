@@ -0,0 +1,108 @@
+package org.mozilla.jss.ssl.javax;
+
+/**
+ * Sizing of the TLS records JSSEngine produces for application data.
+ *
+ * By default, JSSEngine writes each source buffer passed to wrap(...)
+ * separately, so an HTTP response made of a header and many small body
+ * chunks becomes many small records, each paying its own MAC/AEAD and
+ * header overhead. With a RecordSizePolicy set (see
+ * JSSEngine.setRecordSizePolicy(...)), source buffers are instead gathered
+ * into records of up to getRecordSize(...) bytes.
+ *
+ * The policy may start a connection with small records, which fit a single
+ * TCP segment and can be decrypted by the peer as soon as they arrive, and
+ * switch to full-size records once initialBytes bytes have been sent. When
+ * the connection has been idle for longer than idleTimeout milliseconds,
+ * it starts over with small records.
+ */
+public final class RecordSizePolicy {
+
+    /**
+     * Largest amount of plaintext a single TLS record may carry.
+     */
+    public static final int MAX_RECORD_SIZE = 1 << 14;
+
+    /**
+     * Records of roughly one TCP segment (MSS minus TLS overhead).
+     */
+    public static final int SEGMENT_RECORD_SIZE = 1400;
+
+    /**
+     * Always gather into full-size records.
+     */
+    public static final RecordSizePolicy FULL = new RecordSizePolicy(MAX_RECORD_SIZE, 0, MAX_RECORD_SIZE, 0);
+
+    /**
+     * Segment-sized records for the first 64 KiB and after a second of
+     * idleness, full-size records otherwise.
+     */
+    public static final RecordSizePolicy DYNAMIC = new RecordSizePolicy(SEGMENT_RECORD_SIZE, 1 << 16, MAX_RECORD_SIZE, 1000);
+
+    private final int initialRecordSize;
+    private final long initialBytes;
+    private final int recordSize;
+    private final long idleTimeout;
+
+    /**
+     * Create a policy which gathers up to initialRecordSize bytes per
+     * record for the first initialBytes bytes, and up to recordSize bytes
+     * after that. When idleTimeout is positive, the connection goes back
+     * to initialRecordSize after that many milliseconds without a write.
+     */
+    public RecordSizePolicy(int initialRecordSize, long initialBytes, int recordSize, long idleTimeout) {
+        checkRecordSize(initialRecordSize);
+        checkRecordSize(recordSize);
+
+        if (initialBytes < 0) {
+            throw new IllegalArgumentException("Expected a non-negative number of initial bytes: " + initialBytes);
+        }
+
+        if (idleTimeout < 0) {
+            throw new IllegalArgumentException("Expected a non-negative idle timeout: " + idleTimeout);
+        }
+
+        this.initialRecordSize = initialRecordSize;
+        this.initialBytes = initialBytes;
+        this.recordSize = recordSize;
+        this.idleTimeout = idleTimeout;
+    }
+
+    private static void checkRecordSize(int size) {
+        if (size <= 0 || size > MAX_RECORD_SIZE) {
+            throw new IllegalArgumentException("Expected a record size between 1 and " + MAX_RECORD_SIZE + ": " + size);
+        }
+    }
+
+    public int getInitialRecordSize() {
+        return initialRecordSize;
+    }
+
+    public long getInitialBytes() {
+        return initialBytes;
+    }
+
+    public int getRecordSize() {
+        return recordSize;
+    }
+
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * Get the size of the next record, given the number of application
+     * bytes written since the connection started or last went idle.
+     */
+    public int getRecordSize(long bytesWritten) {
+        return bytesWritten < initialBytes ? initialRecordSize : recordSize;
+    }
+
+    @Override
+    public String toString() {
+        return "RecordSizePolicy[initialRecordSize=" + initialRecordSize +
+            ", initialBytes=" + initialBytes +
+            ", recordSize=" + recordSize +
+            ", idleTimeout=" + idleTimeout + "]";
+    }
+}
@@ -0,0 +1,76 @@
+package org.mozilla.jss.ssl.javax;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.net.ssl.X509KeyManager;
+
+import org.mozilla.jss.provider.javax.crypto.JSSKeyManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * ServerCredentials resolved through a single JSSKeyManager, by list of
+ * aliases.
+ *
+ * Each JSSContextSpi keeps one of these for the JSSKeyManager it was
+ * initialized with and hands it to the engines it creates. Their calls to
+ * setCertFromAliases(...) (directly or through JSSParameters) then resolve
+ * each list of aliases once per context rather than once per connection.
+ * Call refresh() after changing the certificates in the NSS database.
+ */
+public final class ServerCredentialCache {
+    public static Logger logger = LoggerFactory.getLogger(ServerCredentialCache.class);
+
+    private final JSSKeyManager key_manager;
+    private final X509KeyManager[] key_managers;
+
+    private final Map<List<String>, ServerCredentials> entries = new ConcurrentHashMap<>();
+
+    public ServerCredentialCache(JSSKeyManager key_manager) {
+        this.key_manager = key_manager;
+        this.key_managers = new X509KeyManager[] { key_manager };
+    }
+
+    /**
+     * The JSSKeyManager aliases are resolved through.
+     */
+    public JSSKeyManager getKeyManager() {
+        return key_manager;
+    }
+
+    /**
+     * Get the credentials for the given aliases, resolving them on first
+     * use. Raises an IllegalArgumentException (and caches nothing) when
+     * none of the aliases resolve.
+     */
+    public ServerCredentials get(List<String> aliases) throws IllegalArgumentException {
+        ServerCredentials creds = entries.get(aliases);
+        if (creds != null) {
+            return creds;
+        }
+
+        return entries.computeIfAbsent(new ArrayList<>(aliases), key -> ServerCredentials.resolve(key_managers, key));
+    }
+
+    /**
+     * Forget all resolved credentials, so that the next engines resolve
+     * their aliases again. Engines already using the old credentials keep
+     * working.
+     */
+    public void refresh() {
+        for (Map.Entry<List<String>, ServerCredentials> entry : entries.entrySet()) {
+            if (entries.remove(entry.getKey(), entry.getValue())) {
+                entry.getValue().close();
+            }
+        }
+
+        logger.debug("ServerCredentialCache: refreshed");
+    }
+
+    public int size() {
+        return entries.size();
+    }
+}
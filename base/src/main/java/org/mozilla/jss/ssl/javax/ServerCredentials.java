@@ -0,0 +1,218 @@
+package org.mozilla.jss.ssl.javax;
+
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.net.ssl.X509KeyManager;
+
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.apache.commons.lang3.tuple.Pair;
+import org.mozilla.jss.pkcs11.KeyType;
+import org.mozilla.jss.pkcs11.PK11Cert;
+import org.mozilla.jss.pkcs11.PK11PrivKey;
+import org.mozilla.jss.provider.javax.crypto.JSSKeyManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Certificates and keys resolved once from a list of aliases, for handing
+ * to many JSSEngine instances via setServerCredentials(...).
+ *
+ * Resolving aliases (see JSSEngine.setCertFromAliases(...)) searches the
+ * NSS database for each certificate and its private key, and returns new
+ * PK11Cert and PK11PrivKey instances every time. Because NativeProxy
+ * instances only equal themselves, engines configured that way also miss
+ * in the shared ServerTemplateCache on every connection. Engines given the
+ * same ServerCredentials instead share the same certificates and keys, so
+ * their model socket is found with a single hash lookup.
+ *
+ * The resolved certificates and keys never change; to pick up renewed
+ * certificates, resolve a new instance and close the old one. Once the
+ * first server engine uses them (or after preload()), instances also hold
+ * a reference to their model socket, which engines then copy from
+ * directly, even if the ServerTemplateCache has since evicted it; close()
+ * drops that reference.
+ */
+public final class ServerCredentials implements AutoCloseable {
+    public static Logger logger = LoggerFactory.getLogger(ServerCredentials.class);
+
+    private final List<String> aliases;
+    private final List<Pair<PK11Cert, PK11PrivKey>> certs;
+    private final PK11Cert[] localCerts;
+    private final Map<String, X509Certificate[]> chains;
+    private final boolean mldsa;
+
+    /**
+     * Reference to the model socket taken by preload(); only written
+     * while holding this.
+     */
+    private volatile ServerTemplateCache.Template template;
+
+    /**
+     * Whether close() was called; only written while holding this.
+     */
+    private volatile boolean closed;
+
+    private ServerCredentials(List<String> aliases, List<Pair<PK11Cert, PK11PrivKey>> certs, Map<String, X509Certificate[]> chains) {
+        this.aliases = Collections.unmodifiableList(new ArrayList<>(aliases));
+        this.certs = Collections.unmodifiableList(certs);
+        this.chains = chains;
+
+        localCerts = new PK11Cert[certs.size()];
+        boolean hasMLDSA = false;
+        for (int i = 0; i < localCerts.length; i++) {
+            localCerts[i] = certs.get(i).getLeft();
+
+            PK11PrivKey key = certs.get(i).getRight();
+            if (key != null) {
+                // See JSSEngineReferenceImpl.initServer(): keep NSS from
+                // destroying the long-lived key along with its copies.
+                key.setTemporary(false);
+                hasMLDSA |= key.getKeyType() == KeyType.MLDSA;
+            }
+        }
+        mldsa = hasMLDSA;
+    }
+
+    /**
+     * Resolve the certificate and key of each alias through the first
+     * JSSKeyManager holding them. Aliases without a certificate and key
+     * are skipped.
+     *
+     * Raises an IllegalArgumentException when no KeyManagers are given or
+     * none of the aliases resolve, like JSSEngine.setCertFromAliases(...).
+     */
+    public static ServerCredentials resolve(X509KeyManager[] key_managers, List<String> aliases) throws IllegalArgumentException {
+        if (key_managers == null || key_managers.length == 0) {
+            String msg = "Missing or null KeyManagers; refusing to search ";
+            msg += "for cert";
+            throw new IllegalArgumentException(msg);
+        }
+
+        List<Pair<PK11Cert, PK11PrivKey>> certs = new ArrayList<>();
+        Map<String, X509Certificate[]> chains = new HashMap<>();
+
+        for (String alias : aliases) {
+            for (X509KeyManager key_manager : key_managers) {
+                // Skip null entries and anything but a JSSKeyManager; see
+                // JSSEngine.setCertFromAliases(...).
+                if (!(key_manager instanceof JSSKeyManager)) {
+                    continue;
+                }
+
+                JSSKeyManager jkm = (JSSKeyManager) key_manager;
+
+                PK11Cert cert = (PK11Cert) jkm.getCertificate(alias);
+                PK11PrivKey key = (PK11PrivKey) jkm.getPrivateKey(alias);
+
+                if (cert != null && key != null) {
+                    certs.add(ImmutablePair.of(cert, key));
+                    chains.put(alias, jkm.getCertificateChain(alias));
+                    break;
+                }
+            }
+        }
+
+        if (certs.isEmpty()) {
+            String msg = "JSSEngine.setCertFromAlias: Unable to find ";
+            msg += "certificate and key for specified alias!";
+            throw new IllegalArgumentException(msg);
+        }
+
+        ServerCredentials result = new ServerCredentials(aliases, certs, chains);
+        logger.debug("ServerCredentials: resolved " + String.join(", ", aliases));
+        return result;
+    }
+
+    /**
+     * Aliases these credentials were resolved from.
+     */
+    public List<String> getAliases() {
+        return aliases;
+    }
+
+    /**
+     * Resolved certificates and keys, in alias order.
+     */
+    public List<Pair<PK11Cert, PK11PrivKey>> getCerts() {
+        return certs;
+    }
+
+    /**
+     * Resolved (leaf) certificates, in alias order. Shared; don't modify.
+     */
+    PK11Cert[] getLocalCertificates() {
+        return localCerts;
+    }
+
+    /**
+     * Whether any of the keys is an ML-DSA key, requiring larger
+     * handshake buffers.
+     */
+    public boolean hasMLDSAKey() {
+        return mldsa;
+    }
+
+    /**
+     * Get the certificate chain of the given alias, or null when the alias
+     * isn't part of these credentials.
+     */
+    public X509Certificate[] getCertificateChain(String alias) {
+        X509Certificate[] chain = chains.get(alias);
+        return chain == null ? null : chain.clone();
+    }
+
+    /**
+     * Get (creating if necessary) the model socket for these credentials
+     * from JSSEngine's ServerTemplateCache, and keep a reference to it
+     * until close(). Does nothing when already done or after close().
+     */
+    public synchronized void preload() {
+        if (template == null && !closed) {
+            template = JSSEngine.getServerTemplateCache().acquire(certs);
+        }
+    }
+
+    /**
+     * Get a reference to the model socket for these credentials, for
+     * JSSEngine implementations to copy from; callers must release() it.
+     * The first call preloads the model socket; after close(), engines
+     * still using these credentials go through the ServerTemplateCache.
+     */
+    ServerTemplateCache.Template acquireTemplate() {
+        ServerTemplateCache.Template pinned = template;
+        if (pinned == null && !closed) {
+            preload();
+            pinned = template;
+        }
+
+        if (pinned != null && pinned.retain()) {
+            return pinned;
+        }
+
+        return JSSEngine.getServerTemplateCache().acquire(certs);
+    }
+
+    /**
+     * Drop the reference to the model socket taken by preload(). Engines
+     * which are already configured with these credentials keep working.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+
+        if (template != null) {
+            template.release();
+            template = null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ServerCredentials[" + String.join(", ", aliases) + "]";
+    }
+}
@@ -0,0 +1,239 @@
+package org.mozilla.jss.ssl.javax;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.mozilla.jss.nss.PR;
+import org.mozilla.jss.nss.PRFDProxy;
+import org.mozilla.jss.nss.SSL;
+import org.mozilla.jss.nss.SSLFDProxy;
+import org.mozilla.jss.pkcs11.PK11Cert;
+import org.mozilla.jss.pkcs11.PK11PrivKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Thread-safe, bounded cache of model server SSLFDProxy instances.
+ *
+ * Each model socket is configured with a set of server certificates and
+ * keys; JSSEngine instances copy their configuration via SSL_ImportFD
+ * rather than re-configuring the certificates from scratch.
+ *
+ * Lookups are lock-free. When several engines miss on the same key at the
+ * same time, only one of them creates the model socket. When the cache
+ * exceeds its maximum size, the least recently used entries are evicted.
+ * Because another thread may be copying from an evicted model socket, each
+ * entry is reference counted and only closed once the last user releases
+ * it.
+ */
+public final class ServerTemplateCache {
+    public static Logger logger = LoggerFactory.getLogger(ServerTemplateCache.class);
+
+    /**
+     * Default maximum number of model sockets to keep.
+     */
+    public static final int DEFAULT_MAX_SIZE = 64;
+
+    private final ConcurrentHashMap<List<Pair<PK11Cert, PK11PrivKey>>, Template> templates = new ConcurrentHashMap<>();
+
+    /**
+     * Monotonic clock used for tracking recency of use; cheaper and more
+     * precise than reading the system time on every lookup.
+     */
+    private final AtomicLong clock = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    private volatile int maxSize;
+
+    public ServerTemplateCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    public ServerTemplateCache(int maxSize) {
+        setMaxSize(maxSize);
+    }
+
+    /**
+     * A cached model socket along with its reference count.
+     *
+     * The cache itself holds one reference for as long as the entry is
+     * present in the map; each caller of acquire(...) holds another one
+     * until it calls release().
+     */
+    public static final class Template implements AutoCloseable {
+        private final SSLFDProxy model;
+        private final AtomicInteger refs = new AtomicInteger(1);
+        private volatile long lastUsed;
+
+        Template(SSLFDProxy model) {
+            this.model = model;
+        }
+
+        /**
+         * Get the model SSLFDProxy; only valid until release() is called.
+         */
+        public SSLFDProxy getModel() {
+            return model;
+        }
+
+        boolean retain() {
+            while (true) {
+                int current = refs.get();
+                if (current == 0) {
+                    // Already evicted and closed; caller must retry.
+                    return false;
+                }
+
+                if (refs.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * Release this reference to the model socket, closing it if it has
+         * been evicted and this was the last reference.
+         */
+        public void release() {
+            if (refs.decrementAndGet() == 0) {
+                try {
+                    model.close();
+                } catch (Exception e) {
+                    logger.warn("Unable to close evicted server template: " + e.getMessage(), e);
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            release();
+        }
+    }
+
+    /**
+     * Get (creating if necessary) the model socket for the given
+     * certificates and keys, holding a reference to it. Callers must call
+     * release() on the result once they're done copying from the model.
+     */
+    public Template acquire(List<Pair<PK11Cert, PK11PrivKey>> certs) {
+        while (true) {
+            Template template = templates.get(certs);
+            if (template != null) {
+                hits.incrementAndGet();
+            } else {
+                template = templates.computeIfAbsent(certs, key -> {
+                    misses.incrementAndGet();
+                    Template created = new Template(createModel(key));
+                    created.lastUsed = clock.incrementAndGet();
+                    return created;
+                });
+            }
+
+            if (template.retain()) {
+                template.lastUsed = clock.incrementAndGet();
+                evictIfNeeded();
+                return template;
+            }
+
+            // We raced with eviction; remove the stale mapping (if it is
+            // still present) and try again.
+            templates.remove(certs, template);
+        }
+    }
+
+    private static SSLFDProxy createModel(List<Pair<PK11Cert, PK11PrivKey>> certs) {
+        PRFDProxy base = PR.NewTCPSocket();
+        SSLFDProxy fd = SSL.ImportFD(null, base);
+        for (Pair<PK11Cert, PK11PrivKey> pairKey : certs) {
+            if (SSL.ConfigServerCert(fd, pairKey.getLeft(), pairKey.getRight()) != SSL.SECSuccess) {
+                String msg = "Unable to configure certificate and key on ";
+                msg += "model SSL PRFileDesc proxy: ";
+                msg += JSSEngine.errorText(PR.GetError());
+
+                try {
+                    fd.close();
+                } catch (Exception e) {
+                    logger.warn("Unable to close partially configured server template: " + e.getMessage(), e);
+                }
+
+                throw new RuntimeException(msg);
+            }
+        }
+
+        return fd;
+    }
+
+    private void evictIfNeeded() {
+        while (templates.size() > maxSize) {
+            Map.Entry<List<Pair<PK11Cert, PK11PrivKey>>, Template> oldest = null;
+            for (Map.Entry<List<Pair<PK11Cert, PK11PrivKey>>, Template> entry : templates.entrySet()) {
+                if (oldest == null || entry.getValue().lastUsed < oldest.getValue().lastUsed) {
+                    oldest = entry;
+                }
+            }
+
+            if (oldest == null) {
+                return;
+            }
+
+            // Only the thread which actually removes the mapping drops the
+            // cache's reference, so concurrent evictors can't double-release.
+            if (templates.remove(oldest.getKey(), oldest.getValue())) {
+                evictions.incrementAndGet();
+                oldest.getValue().release();
+            }
+        }
+    }
+
+    /**
+     * Evict all model sockets from the cache, closing them once they are
+     * no longer in use.
+     */
+    public void clear() {
+        for (Map.Entry<List<Pair<PK11Cert, PK11PrivKey>>, Template> entry : templates.entrySet()) {
+            if (templates.remove(entry.getKey(), entry.getValue())) {
+                evictions.incrementAndGet();
+                entry.getValue().release();
+            }
+        }
+    }
+
+    /**
+     * Set the maximum number of model sockets to keep; must be positive.
+     * Shrinking the cache takes effect on the next lookup.
+     */
+    public void setMaxSize(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Expected positive server template cache size, got: " + maxSize);
+        }
+
+        this.maxSize = maxSize;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public int size() {
+        return templates.size();
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+}
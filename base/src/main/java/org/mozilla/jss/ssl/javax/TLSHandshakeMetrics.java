@@ -0,0 +1,141 @@
+package org.mozilla.jss.ssl.javax;
+
+import org.mozilla.jss.crypto.ObjectNotFoundException;
+import org.mozilla.jss.nss.SSLChannelInfo;
+import org.mozilla.jss.nss.SSLPreliminaryChannelInfo;
+import org.mozilla.jss.ssl.SSLCipher;
+import org.mozilla.jss.ssl.SSLNamedGroup;
+import org.mozilla.jss.ssl.SSLSignatureScheme;
+import org.mozilla.jss.ssl.SSLVersion;
+
+/**
+ * Duration and negotiated parameters of a single handshake, as reported to
+ * TLSMetricsListener instances.
+ *
+ * Parameters which weren't negotiated (or, for failed handshakes, weren't
+ * negotiated yet) are null.
+ */
+public final class TLSHandshakeMetrics {
+
+    private final JSSEngine engine;
+    private final long nanos;
+    private final boolean server;
+    private final boolean resumed;
+    private final SSLVersion version;
+    private final SSLCipher cipher;
+    private final SSLNamedGroup group;
+    private final SSLSignatureScheme scheme;
+
+    TLSHandshakeMetrics(JSSEngine engine, long nanos, SSLChannelInfo info) {
+        this.engine = engine;
+        this.nanos = nanos;
+        this.server = !engine.getUseClientMode();
+
+        if (info == null) {
+            this.resumed = false;
+            this.version = null;
+            this.cipher = null;
+            this.group = null;
+            this.scheme = null;
+            return;
+        }
+
+        boolean isResumed;
+        try {
+            isResumed = info.getResumed();
+        } catch (ObjectNotFoundException e) {
+            isResumed = false;
+        }
+
+        this.resumed = isResumed;
+        this.version = info.getProtocolVersion();
+        this.cipher = info.getCipherSuite();
+        this.group = info.getKeaGroup();
+        this.scheme = info.getSignatureScheme();
+    }
+
+    TLSHandshakeMetrics(JSSEngine engine, long nanos, SSLPreliminaryChannelInfo info) {
+        this.engine = engine;
+        this.nanos = nanos;
+        this.server = !engine.getUseClientMode();
+        this.resumed = false;
+        this.group = null;
+        this.scheme = null;
+
+        SSLVersion protocol = null;
+        SSLCipher suite = null;
+        if (info != null) {
+            try {
+                if (info.haveProtocolVersion()) {
+                    protocol = info.getProtocolVersion();
+                }
+                if (info.haveCipherSuite()) {
+                    suite = info.getCipherSuite();
+                }
+            } catch (ObjectNotFoundException e) {
+                // Leave the remaining values unknown.
+            }
+        }
+
+        this.version = protocol;
+        this.cipher = suite;
+    }
+
+    public JSSEngine getEngine() {
+        return engine;
+    }
+
+    /**
+     * Time from beginHandshake() to the end of the handshake, in
+     * nanoseconds.
+     */
+    public long getNanos() {
+        return nanos;
+    }
+
+    public boolean isServer() {
+        return server;
+    }
+
+    public boolean isResumed() {
+        return resumed;
+    }
+
+    public SSLVersion getProtocolVersion() {
+        return version;
+    }
+
+    public SSLCipher getCipherSuite() {
+        return cipher;
+    }
+
+    public SSLNamedGroup getKeaGroup() {
+        return group;
+    }
+
+    public SSLSignatureScheme getSignatureScheme() {
+        return scheme;
+    }
+
+    /**
+     * Key under which TLSMetrics groups this handshake's latency:
+     * full or resumed, protocol, cipher suite, named group and signature
+     * scheme, separated by slashes.
+     */
+    public String getKey() {
+        return (resumed ? "resumed" : "full") +
+            "/" + name(version) +
+            "/" + name(cipher) +
+            "/" + name(group) +
+            "/" + name(scheme);
+    }
+
+    private static String name(Enum<?> value) {
+        return value == null ? "-" : value.name();
+    }
+
+    @Override
+    public String toString() {
+        return "TLSHandshakeMetrics[" + getKey() + ", server=" + server + ", nanos=" + nanos + "]";
+    }
+}
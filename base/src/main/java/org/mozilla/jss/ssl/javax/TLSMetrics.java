@@ -0,0 +1,510 @@
+package org.mozilla.jss.ssl.javax;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.mozilla.jss.ssl.SSLAlertDescription;
+import org.mozilla.jss.ssl.SSLAlertEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Process-wide TLS handshake and record-layer metrics.
+ *
+ * While enabled (see setEnabled(...)), JSSEngineReferenceImpl and
+ * JSSSocketChannel report handshakes, wrap/unwrap traffic, buffer
+ * under- and overflows, delegated task time, alerts and network I/O here.
+ * The events are aggregated into the counters and latency histograms of
+ * TLSMetricsMXBean, and passed on to any TLSMetricsListener added with
+ * addListener(...).
+ *
+ * Whether an engine reports is decided when its handshake begins, so
+ * enabling metrics doesn't affect connections which are already open.
+ * Metrics are disabled by default; when disabled, the engines only pay for
+ * checking a flag.
+ */
+public final class TLSMetrics implements TLSMetricsListener, TLSMetricsMXBean {
+    public static Logger logger = LoggerFactory.getLogger(TLSMetrics.class);
+
+    /**
+     * Object name the MXBean is registered under by registerMBean().
+     */
+    public static final String OBJECT_NAME = "org.mozilla.jss:type=TLSMetrics";
+
+    /**
+     * Upper bounds of the latency histogram buckets, in microseconds:
+     * 100us doubling up to about 3.3s.
+     */
+    private static final long[] BOUNDS = new long[16];
+
+    static {
+        for (int i = 0; i < BOUNDS.length; i++) {
+            BOUNDS[i] = 100L << i;
+        }
+    }
+
+    private static final TLSMetrics instance = new TLSMetrics();
+
+    private static volatile boolean enabled;
+
+    private static final List<TLSMetricsListener> listeners = new CopyOnWriteArrayList<>();
+
+    private final LongAdder handshakes = new LongAdder();
+    private final LongAdder resumedHandshakes = new LongAdder();
+    private final LongAdder failedHandshakes = new LongAdder();
+    private final LongAdder handshakeTime = new LongAdder();
+    private final Histogram fullLatency = new Histogram();
+    private final Histogram resumedLatency = new Histogram();
+    private final Map<String, Histogram> latencyByKey = new ConcurrentHashMap<>();
+
+    private final LongAdder wraps = new LongAdder();
+    private final LongAdder unwraps = new LongAdder();
+    private final LongAdder bytesWrapped = new LongAdder();
+    private final LongAdder bytesUnwrapped = new LongAdder();
+    private final LongAdder wireBytesWrapped = new LongAdder();
+    private final LongAdder wireBytesUnwrapped = new LongAdder();
+    private final LongAdder recordsWrapped = new LongAdder();
+    private final LongAdder recordsUnwrapped = new LongAdder();
+    private final LongAdder underflows = new LongAdder();
+    private final LongAdder overflows = new LongAdder();
+
+    private final LongAdder delegatedTasks = new LongAdder();
+    private final LongAdder delegatedTaskTime = new LongAdder();
+
+    private final Map<String, LongAdder> alertsSent = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> alertsReceived = new ConcurrentHashMap<>();
+
+    private final LongAdder channelBytesRead = new LongAdder();
+    private final LongAdder channelBytesWritten = new LongAdder();
+
+    private TLSMetrics() {
+    }
+
+    public static TLSMetrics getInstance() {
+        return instance;
+    }
+
+    /**
+     * Whether new connections report metrics.
+     */
+    public static boolean isMetricsEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Enable or disable reporting for connections whose handshake begins
+     * after this call.
+     */
+    public static void setMetricsEnabled(boolean on) {
+        enabled = on;
+    }
+
+    public static void addListener(TLSMetricsListener listener) {
+        listeners.add(listener);
+    }
+
+    public static void removeListener(TLSMetricsListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Register the TLSMetricsMXBean with the platform MBean server, if it
+     * isn't registered already.
+     */
+    public static void registerMBean() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(OBJECT_NAME);
+        if (server.isRegistered(name)) {
+            return;
+        }
+
+        try {
+            server.registerMBean(instance, name);
+        } catch (InstanceAlreadyExistsException e) {
+            // Registered concurrently by another caller.
+        }
+    }
+
+    /* Dispatchers used by JSSEngineReferenceImpl and JSSSocketChannel. */
+
+    /**
+     * Pass an event to the aggregating instance, then to each listener;
+     * a failing listener is logged and doesn't affect the others.
+     */
+    private static void dispatch(Consumer<TLSMetricsListener> event) {
+        event.accept(instance);
+        for (TLSMetricsListener listener : listeners) {
+            try {
+                event.accept(listener);
+            } catch (RuntimeException e) {
+                logger.warn("TLSMetrics: listener failed: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    static void fireHandshakeCompleted(TLSHandshakeMetrics metrics) {
+        dispatch(listener -> listener.handshakeCompleted(metrics));
+    }
+
+    static void fireHandshakeFailed(TLSHandshakeMetrics metrics) {
+        dispatch(listener -> listener.handshakeFailed(metrics));
+    }
+
+    static void fireWrapped(JSSEngine engine, long appBytes, long wireBytes, int records) {
+        dispatch(listener -> listener.wrapped(engine, appBytes, wireBytes, records));
+    }
+
+    static void fireUnwrapped(JSSEngine engine, long wireBytes, long appBytes, int records) {
+        dispatch(listener -> listener.unwrapped(engine, wireBytes, appBytes, records));
+    }
+
+    static void fireBufferUnderflow(JSSEngine engine) {
+        dispatch(listener -> listener.bufferUnderflow(engine));
+    }
+
+    static void fireBufferOverflow(JSSEngine engine) {
+        dispatch(listener -> listener.bufferOverflow(engine));
+    }
+
+    static void fireDelegatedTaskCompleted(JSSEngine engine, long nanos) {
+        dispatch(listener -> listener.delegatedTaskCompleted(engine, nanos));
+    }
+
+    static void fireAlertSent(SSLAlertEvent event) {
+        dispatch(listener -> listener.alertSent(event));
+    }
+
+    static void fireAlertReceived(SSLAlertEvent event) {
+        dispatch(listener -> listener.alertReceived(event));
+    }
+
+    static void fireChannelRead(JSSSocketChannel channel, long bytes) {
+        dispatch(listener -> listener.channelRead(channel, bytes));
+    }
+
+    static void fireChannelWritten(JSSSocketChannel channel, long bytes) {
+        dispatch(listener -> listener.channelWritten(channel, bytes));
+    }
+
+    /**
+     * Wrap a delegated task so that its running time gets reported.
+     */
+    static Runnable timeTask(JSSEngine engine, Runnable task) {
+        return () -> {
+            long start = System.nanoTime();
+            try {
+                task.run();
+            } finally {
+                fireDelegatedTaskCompleted(engine, System.nanoTime() - start);
+            }
+        };
+    }
+
+    /* TLSMetricsListener: aggregation into the MXBean's counters. */
+
+    @Override
+    public void handshakeCompleted(TLSHandshakeMetrics metrics) {
+        handshakes.increment();
+        handshakeTime.add(metrics.getNanos());
+
+        if (metrics.isResumed()) {
+            resumedHandshakes.increment();
+            resumedLatency.record(metrics.getNanos());
+        } else {
+            fullLatency.record(metrics.getNanos());
+        }
+
+        latencyByKey.computeIfAbsent(metrics.getKey(), k -> new Histogram()).record(metrics.getNanos());
+    }
+
+    @Override
+    public void handshakeFailed(TLSHandshakeMetrics metrics) {
+        failedHandshakes.increment();
+    }
+
+    @Override
+    public void wrapped(JSSEngine engine, long appBytes, long wireBytes, int records) {
+        wraps.increment();
+        bytesWrapped.add(appBytes);
+        wireBytesWrapped.add(wireBytes);
+        recordsWrapped.add(records);
+    }
+
+    @Override
+    public void unwrapped(JSSEngine engine, long wireBytes, long appBytes, int records) {
+        unwraps.increment();
+        wireBytesUnwrapped.add(wireBytes);
+        bytesUnwrapped.add(appBytes);
+        recordsUnwrapped.add(records);
+    }
+
+    @Override
+    public void bufferUnderflow(JSSEngine engine) {
+        underflows.increment();
+    }
+
+    @Override
+    public void bufferOverflow(JSSEngine engine) {
+        overflows.increment();
+    }
+
+    @Override
+    public void delegatedTaskCompleted(JSSEngine engine, long nanos) {
+        delegatedTasks.increment();
+        delegatedTaskTime.add(nanos);
+    }
+
+    @Override
+    public void alertSent(SSLAlertEvent event) {
+        alertsSent.computeIfAbsent(alertName(event), k -> new LongAdder()).increment();
+    }
+
+    @Override
+    public void alertReceived(SSLAlertEvent event) {
+        alertsReceived.computeIfAbsent(alertName(event), k -> new LongAdder()).increment();
+    }
+
+    @Override
+    public void channelRead(JSSSocketChannel channel, long bytes) {
+        channelBytesRead.add(bytes);
+    }
+
+    @Override
+    public void channelWritten(JSSSocketChannel channel, long bytes) {
+        channelBytesWritten.add(bytes);
+    }
+
+    private static String alertName(SSLAlertEvent event) {
+        SSLAlertDescription description = event.getDescriptionEnum();
+        if (description == null) {
+            return "UNKNOWN_" + event.getDescription();
+        }
+
+        return description.name();
+    }
+
+    /* TLSMetricsMXBean */
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean on) {
+        enabled = on;
+    }
+
+    @Override
+    public long getHandshakeCount() {
+        return handshakes.sum();
+    }
+
+    @Override
+    public long getFullHandshakeCount() {
+        return handshakes.sum() - resumedHandshakes.sum();
+    }
+
+    @Override
+    public long getResumedHandshakeCount() {
+        return resumedHandshakes.sum();
+    }
+
+    @Override
+    public long getFailedHandshakeCount() {
+        return failedHandshakes.sum();
+    }
+
+    @Override
+    public long getHandshakeTime() {
+        return handshakeTime.sum();
+    }
+
+    @Override
+    public long[] getHandshakeLatencyBounds() {
+        return BOUNDS.clone();
+    }
+
+    @Override
+    public long[] getFullHandshakeLatency() {
+        return fullLatency.snapshot();
+    }
+
+    @Override
+    public long[] getResumedHandshakeLatency() {
+        return resumedLatency.snapshot();
+    }
+
+    @Override
+    public Map<String, long[]> getHandshakeLatencyByKey() {
+        Map<String, long[]> result = new TreeMap<>();
+        for (Map.Entry<String, Histogram> entry : latencyByKey.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().snapshot());
+        }
+        return result;
+    }
+
+    @Override
+    public long getWrapCount() {
+        return wraps.sum();
+    }
+
+    @Override
+    public long getUnwrapCount() {
+        return unwraps.sum();
+    }
+
+    @Override
+    public long getBytesWrapped() {
+        return bytesWrapped.sum();
+    }
+
+    @Override
+    public long getBytesUnwrapped() {
+        return bytesUnwrapped.sum();
+    }
+
+    @Override
+    public long getWireBytesWrapped() {
+        return wireBytesWrapped.sum();
+    }
+
+    @Override
+    public long getWireBytesUnwrapped() {
+        return wireBytesUnwrapped.sum();
+    }
+
+    @Override
+    public long getRecordsWrapped() {
+        return recordsWrapped.sum();
+    }
+
+    @Override
+    public long getRecordsUnwrapped() {
+        return recordsUnwrapped.sum();
+    }
+
+    @Override
+    public long getBufferUnderflowCount() {
+        return underflows.sum();
+    }
+
+    @Override
+    public long getBufferOverflowCount() {
+        return overflows.sum();
+    }
+
+    @Override
+    public long getDelegatedTaskCount() {
+        return delegatedTasks.sum();
+    }
+
+    @Override
+    public long getDelegatedTaskTime() {
+        return delegatedTaskTime.sum();
+    }
+
+    @Override
+    public Map<String, Long> getAlertsSent() {
+        return snapshot(alertsSent);
+    }
+
+    @Override
+    public Map<String, Long> getAlertsReceived() {
+        return snapshot(alertsReceived);
+    }
+
+    private static Map<String, Long> snapshot(Map<String, LongAdder> counters) {
+        Map<String, Long> result = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> entry : counters.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().sum());
+        }
+        return result;
+    }
+
+    @Override
+    public long getChannelBytesRead() {
+        return channelBytesRead.sum();
+    }
+
+    @Override
+    public long getChannelBytesWritten() {
+        return channelBytesWritten.sum();
+    }
+
+    /**
+     * Reset all counters and histograms. Listeners are kept.
+     */
+    @Override
+    public void reset() {
+        handshakes.reset();
+        resumedHandshakes.reset();
+        failedHandshakes.reset();
+        handshakeTime.reset();
+        fullLatency.reset();
+        resumedLatency.reset();
+        latencyByKey.clear();
+
+        wraps.reset();
+        unwraps.reset();
+        bytesWrapped.reset();
+        bytesUnwrapped.reset();
+        wireBytesWrapped.reset();
+        wireBytesUnwrapped.reset();
+        recordsWrapped.reset();
+        recordsUnwrapped.reset();
+        underflows.reset();
+        overflows.reset();
+
+        delegatedTasks.reset();
+        delegatedTaskTime.reset();
+
+        alertsSent.clear();
+        alertsReceived.clear();
+
+        channelBytesRead.reset();
+        channelBytesWritten.reset();
+    }
+
+    /**
+     * Latency histogram over BOUNDS, with a final bucket for anything
+     * slower than the last bound.
+     */
+    private static final class Histogram {
+        private final AtomicLongArray counts = new AtomicLongArray(BOUNDS.length + 1);
+
+        void record(long nanos) {
+            long micros = nanos / 1000;
+            int bucket = 0;
+            while (bucket < BOUNDS.length && micros > BOUNDS[bucket]) {
+                bucket += 1;
+            }
+            counts.incrementAndGet(bucket);
+        }
+
+        long[] snapshot() {
+            long[] result = new long[counts.length()];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = counts.get(i);
+            }
+            return result;
+        }
+
+        void reset() {
+            for (int i = 0; i < counts.length(); i++) {
+                counts.set(i, 0);
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package org.mozilla.jss.ssl.javax;
+
+import java.util.EventListener;
+
+import org.mozilla.jss.ssl.SSLAlertEvent;
+
+/**
+ * Receives performance events from JSSEngine and JSSSocketChannel instances
+ * while TLS metrics are enabled; see TLSMetrics.addListener(...).
+ *
+ * Events are delivered synchronously on the thread calling into the
+ * engine or channel, so implementations should only update counters or
+ * hand the event off. All methods default to doing nothing.
+ */
+public interface TLSMetricsListener extends EventListener {
+
+    /**
+     * A handshake (or rehandshake) completed successfully.
+     */
+    default void handshakeCompleted(TLSHandshakeMetrics metrics) {}
+
+    /**
+     * A handshake failed. Only the values negotiated before the failure
+     * are known.
+     */
+    default void handshakeFailed(TLSHandshakeMetrics metrics) {}
+
+    /**
+     * A call to wrap(...) consumed appBytes bytes of application data and
+     * produced wireBytes bytes (in records records) of TLS data.
+     */
+    default void wrapped(JSSEngine engine, long appBytes, long wireBytes, int records) {}
+
+    /**
+     * A call to unwrap(...) consumed wireBytes bytes (in records records)
+     * of TLS data and produced appBytes bytes of application data.
+     */
+    default void unwrapped(JSSEngine engine, long wireBytes, long appBytes, int records) {}
+
+    /**
+     * A call to unwrap(...) returned BUFFER_UNDERFLOW.
+     */
+    default void bufferUnderflow(JSSEngine engine) {}
+
+    /**
+     * A call to wrap(...) or unwrap(...) filled its destination buffers
+     * and left data behind for the next call.
+     */
+    default void bufferOverflow(JSSEngine engine) {}
+
+    /**
+     * A task returned by getDelegatedTask() ran for nanos nanoseconds.
+     */
+    default void delegatedTaskCompleted(JSSEngine engine, long nanos) {}
+
+    /**
+     * An alert was sent to the peer.
+     */
+    default void alertSent(SSLAlertEvent event) {}
+
+    /**
+     * An alert was received from the peer.
+     */
+    default void alertReceived(SSLAlertEvent event) {}
+
+    /**
+     * A JSSSocketChannel read bytes bytes from the underlying channel.
+     */
+    default void channelRead(JSSSocketChannel channel, long bytes) {}
+
+    /**
+     * A JSSSocketChannel wrote bytes bytes to the underlying channel.
+     */
+    default void channelWritten(JSSSocketChannel channel, long bytes) {}
+}
@@ -0,0 +1,88 @@
+package org.mozilla.jss.ssl.javax;
+
+import java.util.Map;
+
+/**
+ * Management interface of TLSMetrics, registered under the
+ * org.mozilla.jss:type=TLSMetrics object name by
+ * TLSMetrics.registerMBean().
+ *
+ * Latency histograms are arrays of counts, one per bucket of
+ * getHandshakeLatencyBounds() plus a final bucket for anything slower.
+ */
+public interface TLSMetricsMXBean {
+
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    long getHandshakeCount();
+
+    long getFullHandshakeCount();
+
+    long getResumedHandshakeCount();
+
+    long getFailedHandshakeCount();
+
+    /**
+     * Total time spent in successful handshakes, in nanoseconds.
+     */
+    long getHandshakeTime();
+
+    /**
+     * Upper bounds of the latency histogram buckets, in microseconds.
+     */
+    long[] getHandshakeLatencyBounds();
+
+    long[] getFullHandshakeLatency();
+
+    long[] getResumedHandshakeLatency();
+
+    /**
+     * Latency histograms keyed by TLSHandshakeMetrics.getKey().
+     */
+    Map<String, long[]> getHandshakeLatencyByKey();
+
+    long getWrapCount();
+
+    long getUnwrapCount();
+
+    long getBytesWrapped();
+
+    long getBytesUnwrapped();
+
+    long getWireBytesWrapped();
+
+    long getWireBytesUnwrapped();
+
+    long getRecordsWrapped();
+
+    long getRecordsUnwrapped();
+
+    long getBufferUnderflowCount();
+
+    long getBufferOverflowCount();
+
+    long getDelegatedTaskCount();
+
+    /**
+     * Total time spent running delegated tasks, in nanoseconds.
+     */
+    long getDelegatedTaskTime();
+
+    /**
+     * Alerts sent, keyed by SSLAlertDescription name.
+     */
+    Map<String, Long> getAlertsSent();
+
+    /**
+     * Alerts received, keyed by SSLAlertDescription name.
+     */
+    Map<String, Long> getAlertsReceived();
+
+    long getChannelBytesRead();
+
+    long getChannelBytesWritten();
+
+    void reset();
+}
@@ -2,15 +2,14 @@ package org.mozilla.jss.util;
 
 public class GlobalRefProxy extends NativeProxy {
     public GlobalRefProxy(byte[] pointer) {
-        super(pointer);
+        super(pointer, GlobalRefProxy::releaseNativeResources);
     }
 
     public GlobalRefProxy(Object target) {
-        super(GlobalRefProxy.refOf(target));
+        this(GlobalRefProxy.refOf(target));
     }
 
     private static native byte[] refOf(Object target);
 
-    @Override
-    protected native void releaseNativeResources();
+    private static native void releaseNativeResources(long pointer);
 }
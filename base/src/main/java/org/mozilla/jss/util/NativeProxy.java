@@ -4,23 +4,35 @@
 
 package org.mozilla.jss.util;
 
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
 
 import org.mozilla.jss.CryptoManager;
-import org.mozilla.jss.netscape.security.util.Utils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * NativeProxy, a superclass for Java classes that mirror C data structures.
  *
- * It contains some code to help make sure that native memory is getting
- * freed properly.
+ * The native pointer is held as a long. Proxies constructed with a
+ * Releaser are registered with a shared Cleaner, which frees the native
+ * data structure if the proxy becomes unreachable without being closed;
+ * unlike a finalizer, this doesn't keep the proxy alive for another GC
+ * cycle. Live, freed and leaked counts are kept per proxy type (see
+ * getStatistics()), and setLeakReport(true) logs every proxy the Cleaner
+ * had to free, with the code which created it.
  *
  * @author nicolson
  * @version $Revision$ $Date$
@@ -29,17 +41,46 @@ public abstract class NativeProxy implements AutoCloseable {
     public static Logger logger = LoggerFactory.getLogger(NativeProxy.class);
     private static final boolean saveStacktraces = assertsEnabled() && CryptoManager.JSS_DEBUG;
 
+    private static final Cleaner cleaner = Cleaner.create();
+
+    // number of frames recorded per proxy in leak report mode
+    private static final int LEAK_REPORT_FRAMES = 4;
+
+    private static volatile boolean leakReport;
+
+    /**
+     * Frees the native data structure behind a pointer. A Releaser must
+     * not reference the proxy (e.g., use a static method), otherwise the
+     * proxy never becomes unreachable.
+     */
+    @FunctionalInterface
+    public interface Releaser {
+        void release(long pointer) throws Exception;
+    }
+
     /**
      * Create a NativeProxy from a byte array representing a C pointer.
      * This is the primary way of creating a NativeProxy; it should be called
      * from the constructor of your subclass.
      *
+     * The native data structure is only freed by close() and
+     * releaseNativeResources(); see NativeProxy(byte[], Releaser).
+     *
      * @param pointer A byte array, created with JSS_ptrToByteArray, that
      *            contains a pointer pointing to a native data structure. The
      *            NativeProxy instance acts as a proxy for that native data structure.
      */
     public NativeProxy(byte[] pointer) {
-        this(pointer, true);
+        this(pointer, null, true);
+    }
+
+    /**
+     * Create a NativeProxy from a byte array representing a C pointer,
+     * with a Releaser which frees the native data structure on close()
+     * and when the proxy becomes unreachable without being closed.
+     */
+    protected NativeProxy(byte[] pointer, Releaser releaser) {
+        this(pointer, releaser, true);
     }
 
     /**
@@ -50,10 +91,26 @@ public abstract class NativeProxy implements AutoCloseable {
      * aren't freed.
      */
     protected NativeProxy(byte[] pointer, boolean track) {
-        mPointer = pointer;
-        mHashCode = registryIndex.getAndIncrement();
-        if (mPointer != null) {
-            mHashCode += Arrays.hashCode(mPointer);
+        this(pointer, null, track);
+    }
+
+    // The Cleaner only keeps a phantom reference to the proxy and the debug
+    // registry a weak one; neither calls back into it beyond hashCode(),
+    // which is fixed above, so passing this out before a subclass is
+    // initialized is safe.
+    @SuppressWarnings("this-escape")
+    private NativeProxy(byte[] pointer, Releaser releaser, boolean track) {
+        mPointer = toLong(pointer);
+        mReleaser = releaser;
+        mHashCode = registryIndex.getAndIncrement() + Long.hashCode(mPointer);
+
+        if (track && mPointer != 0) {
+            Counters counters = Counters.of(getClass());
+            counters.created.increment();
+
+            mState = new State(mPointer, releaser, counters,
+                    leakReport ? creationSite() : null);
+            mCleanable = cleaner.register(this, mState);
         }
 
         if (track && saveStacktraces) {
@@ -64,6 +121,25 @@ public abstract class NativeProxy implements AutoCloseable {
         }
     }
 
+    /**
+     * Converts a pointer from JSS_ptrToByteArray, in native byte order.
+     */
+    private static long toLong(byte[] pointer) {
+        if (pointer == null) {
+            return 0;
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(pointer).order(ByteOrder.nativeOrder());
+        if (pointer.length == Long.BYTES) {
+            return buffer.getLong();
+        }
+        if (pointer.length == Integer.BYTES) {
+            return Integer.toUnsignedLong(buffer.getInt());
+        }
+
+        throw new IllegalArgumentException("Invalid native pointer size: " + pointer.length);
+    }
+
     /**
      * Deep comparison operator.
      *
@@ -80,11 +156,11 @@ public abstract class NativeProxy implements AutoCloseable {
             return false;
         }
         NativeProxy nObj = (NativeProxy) obj;
-        if (this.mPointer == null || nObj.mPointer == null) {
+        if (this.mPointer == 0 || nObj.mPointer == 0) {
             return false;
         }
 
-        return Arrays.equals(this.mPointer, nObj.mPointer);
+        return this.mPointer == nObj.mPointer;
     }
 
     /**
@@ -103,52 +179,31 @@ public abstract class NativeProxy implements AutoCloseable {
 
     /**
      * Release the native resources used by this proxy.
-     * Subclasses of NativeProxy must define this method to clean up
-     * data structures in C code that are referenced by this proxy.
-     * releaseNativeResources() will usually be implemented as a native method.
+     * By default this calls the Releaser given to the constructor;
+     * subclasses without one, or which hold other resources, override
+     * this method to clean up data structures in C code that are
+     * referenced by this proxy.
      * <p>
-     * You don't call this method; NativeProxy.finalize() or close() calls
-     * it for you.
+     * You don't call this method; close() calls it for you. If the proxy
+     * is never closed, the Cleaner calls the Releaser, but not this method.
      * </p>
      *
      * If you free these resources explicitly, call clear(); instead.
      */
-    protected abstract void releaseNativeResources() throws Exception;
-
-    /**
-     * Finalize this NativeProxy by releasing its native resources.
-     * The finalizer calls releaseNativeResources() so you don't have to.
-     * This finalizer should be called from the finalize() method of all
-     * subclasses:
-     * class MyProxy extends NativeProxy {
-     * [...]
-     * protected void finalize() throws Throwable {
-     * // do any object-specific finalization other than
-     * // releasing native resources
-     * [...]
-     * super.finalize();
-     * }
-     * }
-     *
-     * @deprecated finalize() in Object has been deprecated. Use close(...)
-     *             from the AutoCloseable interface instead.
-     */
-    @Override
-    @Deprecated
-    protected void finalize() throws Throwable {
-        close();
+    protected void releaseNativeResources() throws Exception {
+        if (mReleaser != null) {
+            mReleaser.release(mPointer);
+        }
     }
 
     /**
      * Close this NativeProxy by releasing its native resources if they
      * haven't otherwise been freed.
-     *
-     * See comment in finalize.
      */
     @Override
     public final void close() throws Exception {
         try {
-            if (mPointer != null) {
+            if (mPointer != 0) {
                 releaseNativeResources();
             }
         } finally {
@@ -160,13 +215,20 @@ public abstract class NativeProxy implements AutoCloseable {
      * Call clear(...) to clear the value of the pointer, setting it to null.
      *
      * This should be used when the pointer has been freed by another means.
-     * Similar to finalize(...) or close(...), except that it doesn't call
+     * Similar to close(...), except that it doesn't call
      * releaseNativeResources(...).
      *
      * See also: JSS_clearPtrFromProxy(...) in jssutil.h
      */
     public final void clear() {
-        this.mPointer = null;
+        this.mPointer = 0;
+
+        Cleaner.Cleanable cleanable = mCleanable;
+        if (cleanable != null) {
+            mCleanable = null;
+            mState.closed = true;
+            cleanable.clean();
+        }
         // registry.remove(this);
     }
 
@@ -174,47 +236,213 @@ public abstract class NativeProxy implements AutoCloseable {
      * Whether or not this is a null pointer.
      */
     public boolean isNull() {
-        return this.mPointer == null;
+        return this.mPointer == 0;
     }
 
     /**
-     * Byte array containing native pointer bytes.
+     * Native pointer; read by JSS_getPtrFromProxy(...) in jssutil.c.
      */
-    private byte mPointer[];
+    private long mPointer;
     private int mHashCode;
 
+    private final Releaser mReleaser;
+
+    /**
+     * Cleaner registration of a tracked proxy; null once cleared.
+     */
+    private State mState;
+    private Cleaner.Cleanable mCleanable;
+
     /**
      * String containing backtrace of pointer generation.
      */
     private String mTrace;
 
+    /**
+     * Cleaner action of a tracked proxy. It must not reference the proxy;
+     * it only frees the pointer if the proxy wasn't closed or cleared.
+     */
+    private static final class State implements Runnable {
+
+        private final long pointer;
+        private final Releaser releaser;
+        private final Counters counters;
+        private final String site;
+
+        volatile boolean closed;
+
+        State(long pointer, Releaser releaser, Counters counters, String site) {
+            this.pointer = pointer;
+            this.releaser = releaser;
+            this.counters = counters;
+            this.site = site;
+        }
+
+        @Override
+        public void run() {
+            counters.freed.increment();
+            if (closed) {
+                return;
+            }
+
+            counters.leaked.increment();
+            if (site != null) {
+                logger.warn("NativeProxy: " + counters.type + "@" + Long.toHexString(pointer)
+                        + " was not closed; created at " + site);
+            }
+
+            if (releaser == null) {
+                return;
+            }
+
+            try {
+                releaser.release(pointer);
+            } catch (Exception e) {
+                logger.warn("NativeProxy: Unable to release " + counters.type + ": " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Per-type counters, shared by all proxies of a class.
+     */
+    private static final class Counters {
+
+        private static final ClassValue<Counters> byClass = new ClassValue<>() {
+            @Override
+            protected Counters computeValue(Class<?> type) {
+                Counters counters = new Counters(type.getName());
+                all.put(counters.type, counters);
+                return counters;
+            }
+        };
+
+        private static final Map<String, Counters> all = new ConcurrentHashMap<>();
+
+        final String type;
+        final LongAdder created = new LongAdder();
+        final LongAdder freed = new LongAdder();
+        final LongAdder leaked = new LongAdder();
+
+        Counters(String type) {
+            this.type = type;
+        }
+
+        static Counters of(Class<?> type) {
+            return byClass.get(type);
+        }
+    }
+
+    /**
+     * Counts of the tracked proxies of one type.
+     */
+    public static final class Statistics {
+
+        private final String type;
+        private final long live;
+        private final long freed;
+        private final long leaked;
+
+        Statistics(Counters counters) {
+            type = counters.type;
+            // read freed first so that live is never negative
+            freed = counters.freed.sum();
+            leaked = counters.leaked.sum();
+            live = counters.created.sum() - freed;
+        }
+
+        /**
+         * Class name of the proxies.
+         */
+        public String getType() {
+            return type;
+        }
+
+        /**
+         * Number of proxies whose native resources are still held.
+         */
+        public long getLive() {
+            return live;
+        }
+
+        /**
+         * Number of proxies whose native resources were freed, either by
+         * close() or by the Cleaner.
+         */
+        public long getFreed() {
+            return freed;
+        }
+
+        /**
+         * Number of proxies which were freed by the Cleaner because they
+         * became unreachable without being closed.
+         */
+        public long getLeaked() {
+            return leaked;
+        }
+
+        @Override
+        public String toString() {
+            return type + "[live=" + live + ", freed=" + freed + ", leaked=" + leaked + "]";
+        }
+    }
+
+    /**
+     * Returns the counts of the tracked proxies, by class name.
+     */
+    public static Map<String, Statistics> getStatistics() {
+        return Counters.all.values().stream()
+                .map(Statistics::new)
+                .collect(Collectors.toMap(Statistics::getType, stats -> stats,
+                        (a, b) -> a, TreeMap::new));
+    }
+
+    /**
+     * Enables or disables leak report mode. In this mode, every tracked
+     * proxy records the few frames which created it, and the Cleaner logs
+     * a warning with them when it frees a proxy which wasn't closed. This
+     * is much cheaper than the debug registry, so it can be enabled in
+     * production, via InitializationValues.proxyLeakReport or
+     * jss.proxy.leak_report. Only affects proxies created afterwards.
+     */
+    public static void setLeakReport(boolean enabled) {
+        leakReport = enabled;
+    }
+
+    public static boolean isLeakReport() {
+        return leakReport;
+    }
+
+    private static String creationSite() {
+        return StackWalker.getInstance().walk(frames -> frames
+                .filter(frame -> !frame.getMethodName().equals("<init>"))
+                .limit(LEAK_REPORT_FRAMES)
+                .map(StackWalker.StackFrame::toString)
+                .collect(Collectors.joining(" <- ")));
+    }
+
     /**
      * <p>
      * <b>Native Proxy Registry</b>
      * <p>
      * In debug mode, we keep track of all NativeProxy objects in a
      * static registry. Whenever a NativeProxy is constructed, it
-     * registers. Whenever it finalizes, it unregisters. At the end of
-     * the game, we should be able to garbage collect and then assert that
-     * the registry is empty. This could be done, for example, in the
-     * jssjava JVM after main() completes.
-     *
-     * This registration process verifies that people are calling
-     * NativeProxy.finalize() from their subclasses of NativeProxy, so that
-     * releaseNativeResources() gets called.
+     * registers. Once it is garbage collected, it disappears from the
+     * registry. At the end of the game, we should be able to garbage
+     * collect and then assert that the registry is empty. This could be
+     * done, for example, in the jssjava JVM after main() completes.
      */
     static Set<NativeProxy> registry = Collections.newSetFromMap(new WeakHashMap<NativeProxy, Boolean>());
     static AtomicInteger registryIndex = new AtomicInteger();
 
     @Override
     public String toString() {
-        if (mPointer == null) {
+        if (mPointer == 0) {
             return this.getClass().getName() + "[" + mHashCode + "@null]";
         }
 
-        return this.getClass().getName() + "[" + mHashCode + "@" + Utils.HexEncode(mPointer) + "]";
+        return this.getClass().getName() + "[" + mHashCode + "@" + Long.toHexString(mPointer) + "]";
     }
-
     /**
      * Internal helper to check whether or not assertions are enabled in the
      * JVM.
@@ -239,7 +467,7 @@ public abstract class NativeProxy implements AutoCloseable {
 
             if (saveStacktraces) {
                 for (NativeProxy proxy : registry) {
-                    logger.warn("\t" + Arrays.toString(proxy.mPointer) + " ::: " + proxy.mTrace);
+                    logger.warn("\t" + Long.toHexString(proxy.mPointer) + " ::: " + proxy.mTrace);
                 }
             }
         } else {
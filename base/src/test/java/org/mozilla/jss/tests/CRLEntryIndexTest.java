@@ -0,0 +1,77 @@
+package org.mozilla.jss.tests;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.Date;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mozilla.jss.netscape.security.x509.CRLEntryIndex;
+import org.mozilla.jss.netscape.security.x509.RevokedCertImpl;
+import org.mozilla.jss.netscape.security.x509.RevokedCertificate;
+import org.mozilla.jss.netscape.security.x509.X500Name;
+import org.mozilla.jss.netscape.security.x509.X509CRLImpl;
+
+public class CRLEntryIndexTest {
+
+    static final long[] SERIALS = { 300, 1, 0x80, 0xffff, 7, 0x7fffffffffffL, 42 };
+
+    static byte[] createCRL() throws Exception {
+
+        Date now = new Date();
+        RevokedCertificate[] entries = new RevokedCertificate[SERIALS.length];
+        for (int i = 0; i < SERIALS.length; i++) {
+            entries[i] = new RevokedCertImpl(BigInteger.valueOf(SERIALS[i]), now);
+        }
+
+        X509CRLImpl crl = new X509CRLImpl(new X500Name("CN=Test CA"), now, now, entries);
+
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA", "SunRsaSign");
+        generator.initialize(2048);
+        KeyPair keyPair = generator.generateKeyPair();
+        crl.sign(keyPair.getPrivate(), "SHA256withRSA", "SunRsaSign");
+
+        return crl.getEncoded();
+    }
+
+    @Test
+    public void testIndex() throws Exception {
+
+        byte[] data = createCRL();
+        X509CRLImpl crl = new X509CRLImpl(data, true, true);
+
+        CRLEntryIndex index = crl.getEntryIndex();
+        Assertions.assertNotNull(index);
+        Assertions.assertEquals(SERIALS.length, index.size());
+        Assertions.assertEquals(SERIALS.length, crl.getNumberOfRevokedCertificates());
+
+        for (long serial : SERIALS) {
+            BigInteger serialNumber = BigInteger.valueOf(serial);
+            Assertions.assertTrue(crl.isRevoked(serialNumber));
+            Assertions.assertEquals(serialNumber, crl.getRevokedCertificate(serialNumber).getSerialNumber());
+        }
+
+        Assertions.assertFalse(crl.isRevoked(BigInteger.valueOf(2)));
+        Assertions.assertFalse(crl.isRevoked(BigInteger.valueOf(-300)));
+        Assertions.assertNull(crl.getRevokedCertificate(BigInteger.valueOf(0x10000)));
+
+        // entries are in serial number order
+        for (int i = 1; i < index.size(); i++) {
+            Assertions.assertTrue(index.getEntry(i - 1).getSerialNumber()
+                    .compareTo(index.getEntry(i).getSerialNumber()) < 0);
+        }
+    }
+
+    @Test
+    public void testDecodeAll() throws Exception {
+
+        byte[] data = createCRL();
+        X509CRLImpl indexed = new X509CRLImpl(data, true, true);
+        X509CRLImpl decoded = new X509CRLImpl(data);
+
+        Assertions.assertEquals(decoded.getRevokedCertificates(), indexed.getRevokedCertificates());
+        Assertions.assertNull(indexed.getEntryIndex());
+        Assertions.assertTrue(indexed.isRevoked(BigInteger.valueOf(42)));
+    }
+}
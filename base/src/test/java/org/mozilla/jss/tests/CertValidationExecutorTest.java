@@ -0,0 +1,76 @@
+package org.mozilla.jss.tests;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mozilla.jss.nss.CertAuthHandler;
+import org.mozilla.jss.nss.SSLFDProxy;
+import org.mozilla.jss.ssl.javax.CertValidationExecutor;
+
+public class CertValidationExecutorTest {
+
+    static class FixedResultHandler extends CertAuthHandler {
+        private final int code;
+        private final CountDownLatch latch;
+        Thread thread;
+
+        FixedResultHandler(int code, CountDownLatch latch) {
+            super(null);
+            this.code = code;
+            this.latch = latch;
+        }
+
+        @Override
+        public int check(SSLFDProxy fd) {
+            thread = Thread.currentThread();
+            try {
+                latch.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return code;
+        }
+    }
+
+    @Test
+    public void testSubmit() throws Exception {
+
+        try (CertValidationExecutor executor = CertValidationExecutor.newFixedPool(1, 4, 10000)) {
+            CountDownLatch latch = new CountDownLatch(1);
+            FixedResultHandler handler = new FixedResultHandler(42, latch);
+
+            CertValidationExecutor.Validation validation = executor.submit(handler);
+            Assertions.assertNotNull(validation);
+            Assertions.assertFalse(validation.isFinished());
+
+            latch.countDown();
+            validation.run();
+
+            Assertions.assertTrue(validation.isFinished());
+            Assertions.assertEquals(42, validation.getResult());
+            Assertions.assertNotEquals(Thread.currentThread(), handler.thread);
+            Assertions.assertEquals(1, executor.getSubmittedCount());
+        }
+    }
+
+    @Test
+    public void testBackpressure() throws Exception {
+
+        try (CertValidationExecutor executor = CertValidationExecutor.newFixedPool(1, 1, 10000)) {
+            CountDownLatch latch = new CountDownLatch(1);
+            CertValidationExecutor.Validation first = executor.submit(new FixedResultHandler(0, latch));
+            Assertions.assertNotNull(first);
+
+            // The only slot is taken, so this one runs on our thread.
+            FixedResultHandler handler = new FixedResultHandler(7, new CountDownLatch(0));
+            Assertions.assertEquals(7, executor.validate(handler));
+            Assertions.assertEquals(Thread.currentThread(), handler.thread);
+            Assertions.assertEquals(1, executor.getRejectedCount());
+
+            latch.countDown();
+            first.run();
+            Assertions.assertEquals(0, first.getResult());
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package org.mozilla.jss.tests;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mozilla.jss.ssl.SSLVersion;
+import org.mozilla.jss.ssl.javax.ClientSessionCache;
+
+public class ClientSessionCacheTest {
+
+    @Test
+    public void testKey() throws Exception {
+
+        String key = ClientSessionCache.getKey("server.example.com", 443, "server.example.com",
+            SSLVersion.TLS_1_2, SSLVersion.TLS_1_3, null);
+
+        Assertions.assertEquals(key, ClientSessionCache.getKey("server.example.com", 443, "server.example.com",
+            SSLVersion.TLS_1_2, SSLVersion.TLS_1_3, null));
+
+        Assertions.assertNotEquals(key, ClientSessionCache.getKey("server.example.com", 443, "server.example.com",
+            SSLVersion.TLS_1_3, SSLVersion.TLS_1_3, null));
+
+        Assertions.assertNotEquals(key, ClientSessionCache.getKey("server.example.com", 8443, "server.example.com",
+            SSLVersion.TLS_1_2, SSLVersion.TLS_1_3, null));
+
+        Assertions.assertNotEquals(key, ClientSessionCache.getKey("server.example.com", 443, "other.example.com",
+            SSLVersion.TLS_1_2, SSLVersion.TLS_1_3, null));
+    }
+
+    @Test
+    public void testHitsAndMisses() throws Exception {
+
+        ClientSessionCache cache = new ClientSessionCache(2, 0);
+
+        String peerID = cache.getPeerID("a");
+        Assertions.assertNotNull(peerID);
+        Assertions.assertEquals(peerID, cache.getPeerID("a"));
+        Assertions.assertEquals(1, cache.getHitCount());
+        Assertions.assertEquals(1, cache.getMissCount());
+
+        cache.invalidate("a");
+        Assertions.assertEquals(1, cache.getEvictionCount());
+        Assertions.assertNotEquals(peerID, cache.getPeerID("a"));
+
+        // Invalidating an unknown key isn't an eviction.
+        cache.invalidate("b");
+        Assertions.assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+
+        ClientSessionCache cache = new ClientSessionCache(2, 0);
+
+        String a = cache.getPeerID("a");
+        cache.getPeerID("b");
+
+        // Touch "a" so that "b" is the least recently used entry.
+        cache.getPeerID("a");
+        cache.getPeerID("c");
+
+        Assertions.assertEquals(2, cache.size());
+        Assertions.assertEquals(1, cache.getEvictionCount());
+        Assertions.assertEquals(a, cache.getPeerID("a"));
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+
+        ClientSessionCache cache = new ClientSessionCache(0, 0);
+
+        Assertions.assertNull(cache.getPeerID("a"));
+        Assertions.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testResumptionRatio() throws Exception {
+
+        ClientSessionCache cache = new ClientSessionCache();
+        Assertions.assertEquals(0.0, cache.getResumptionRatio());
+
+        cache.recordHandshake(false);
+        cache.recordHandshake(true);
+        cache.recordHandshake(true);
+        cache.recordHandshake(true);
+
+        Assertions.assertEquals(0.75, cache.getResumptionRatio());
+    }
+}
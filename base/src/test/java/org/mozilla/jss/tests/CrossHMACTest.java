@@ -3,6 +3,7 @@
  * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
 package org.mozilla.jss.tests;
 
+import java.nio.ByteBuffer;
 import java.security.MessageDigest;
 import org.mozilla.jss.CryptoManager;
 import java.security.Security;
@@ -115,6 +116,66 @@ public class CrossHMACTest {
         }
     }
 
+    /**
+     * Reuses one Mozilla Mac for many messages, in one call, in pieces,
+     * from direct buffers, after a reset, and after initializing it again
+     * with the same raw key; compares every result with SunJCE.
+     */
+    public void compareReusedHMAC(String alg, SecretKeyFacade sk)
+            throws Exception {
+        if (Security.getProvider("SunJCE") == null) {
+            return;
+        }
+
+        SecretKeySpec raw = new SecretKeySpec(sk.getEncoded(), alg);
+        Mac mozillaHmac = Mac.getInstance(alg, MOZ_PROVIDER_NAME);
+        Mac sunHmac = Mac.getInstance(alg, "SunJCE");
+        mozillaHmac.init(sk);
+        sunHmac.init(raw);
+
+        int[] sizes = {0, 1, 100, 511, 512, 513, 2000, 5000};
+        for (int size : sizes) {
+            byte[] data = new byte[size];
+            for (int i = 0; i < size; i++) {
+                data[i] = (byte) (i * 31 + size);
+            }
+            byte[] expected = sunHmac.doFinal(data);
+
+            checkHMAC(alg, "one call", expected, mozillaHmac.doFinal(data));
+
+            for (int i = 0; i < size; i += 300) {
+                mozillaHmac.update(data, i, Math.min(300, size - i));
+            }
+            checkHMAC(alg, "pieces", expected, mozillaHmac.doFinal());
+
+            ByteBuffer direct = ByteBuffer.allocateDirect(size);
+            direct.put(data).flip();
+            mozillaHmac.update(direct);
+            checkHMAC(alg, "direct buffer", expected, mozillaHmac.doFinal());
+
+            mozillaHmac.update(data);
+            mozillaHmac.reset();
+            checkHMAC(alg, "reset", expected, mozillaHmac.doFinal(data));
+
+            mozillaHmac.update(data);
+            mozillaHmac.init(raw);
+            checkHMAC(alg, "raw key", expected, mozillaHmac.doFinal(data));
+            mozillaHmac.init(raw);
+            checkHMAC(alg, "same raw key", expected, mozillaHmac.doFinal(data));
+        }
+
+        System.out.println("Reused " + MOZ_PROVIDER_NAME + " " + alg +
+                " gives same results as SunJCE");
+    }
+
+    private static void checkHMAC(String alg, String mode, byte[] expected,
+            byte[] actual) throws Exception {
+        if (!MessageDigest.isEqual(expected, actual)) {
+            throw new Exception("ERROR: reused " + MOZ_PROVIDER_NAME + " " +
+                    alg + " gives a different result (" + mode + ")");
+        }
+    }
+
     public boolean fipsMode() {
         return cm.FIPSEnabled();
     }
@@ -172,6 +233,7 @@ public class CrossHMACTest {
                         // no provider to compare results with so just test JSS
                         hmacTest.doHMAC(JSS_HMAC_Algs[i], sk, clearText);
                     }
+                    hmacTest.compareReusedHMAC(JSS_HMAC_Algs[i], sk);
                 }
             }
 
@@ -4,6 +4,7 @@
 package org.mozilla.jss.tests;
 
 import java.io.FileInputStream;
+import java.nio.ByteBuffer;
 import java.security.MessageDigest;
 import java.security.Provider;
 import java.security.Security;
@@ -86,6 +87,57 @@ public class DigestTest {
         return true;
     }
 
+    /**
+     * Reuses one Mozilla-JSS digest for prefixes of the input, in one
+     * call, in pieces, and from a direct buffer, and compares every
+     * result with the SUN provider.
+     */
+    public static void testReusedDigest(String alg, byte[] toBeDigested)
+    throws Exception {
+        if (Security.getProvider("SUN") == null) {
+            return;
+        }
+
+        MessageDigest mozillaDigest =
+                MessageDigest.getInstance(alg, MOZ_PROVIDER_NAME);
+        MessageDigest sunDigest = MessageDigest.getInstance(alg, "SUN");
+
+        int[] sizes = {0, 1, 511, 512, 513, 4096, toBeDigested.length};
+        for (int size : sizes) {
+            size = Math.min(size, toBeDigested.length);
+            sunDigest.update(toBeDigested, 0, size);
+            byte[] expected = sunDigest.digest();
+
+            mozillaDigest.update(toBeDigested, 0, size);
+            checkDigest(alg, "one call", expected, mozillaDigest.digest());
+
+            for (int i = 0; i < size; i += 700) {
+                mozillaDigest.update(toBeDigested, i, Math.min(700, size - i));
+            }
+            checkDigest(alg, "pieces", expected, mozillaDigest.digest());
+
+            ByteBuffer direct = ByteBuffer.allocateDirect(size);
+            direct.put(toBeDigested, 0, size).flip();
+            mozillaDigest.update(direct);
+            checkDigest(alg, "direct buffer", expected, mozillaDigest.digest());
+
+            mozillaDigest.update(toBeDigested);
+            mozillaDigest.reset();
+            mozillaDigest.update(toBeDigested, 0, size);
+            checkDigest(alg, "reset", expected, mozillaDigest.digest());
+        }
+
+        System.out.println("Reused " + MOZ_PROVIDER_NAME + " " + alg +
+                " gives same message digests as SUN");
+    }
+
+    static void checkDigest(String alg, String mode, byte[] expected,
+            byte[] actual) throws Exception {
+        if (!MessageDigest.isEqual(expected, actual)) {
+            throw new Exception("ERROR: reused " + MOZ_PROVIDER_NAME + " " +
+                    alg + " gives a different message digest (" + mode + ")");
+        }
+    }
 
     public static void main(String []argv) {
 
@@ -121,6 +173,7 @@ public class DigestTest {
                     // no provider to compare results with
                     testJSSDigest(JSS_Digest_Algs[i], toBeDigested);
                 }
+                testReusedDigest(JSS_Digest_Algs[i], toBeDigested);
             }
 
             //HMAC examples in org.mozilla.jss.tests.HMACTest
@@ -0,0 +1,69 @@
+package org.mozilla.jss.tests;
+
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mozilla.jss.ssl.javax.DirectBufferPool;
+
+public class DirectBufferPoolTest {
+
+    @AfterEach
+    public void restoreLimit() {
+        DirectBufferPool.setLimit(0);
+        DirectBufferPool.setLimit(DirectBufferPool.DEFAULT_LIMIT);
+    }
+
+    @Test
+    public void testReuse() throws Exception {
+
+        DirectBufferPool.setLimit(DirectBufferPool.DEFAULT_LIMIT);
+
+        ByteBuffer first = DirectBufferPool.acquire(1234);
+        Assertions.assertTrue(first.isDirect());
+        Assertions.assertEquals(1234, first.capacity());
+
+        first.put((byte) 1);
+        DirectBufferPool.release(first);
+        Assertions.assertEquals(1234, DirectBufferPool.getPooledBytes());
+
+        long hits = DirectBufferPool.getHitCount();
+        ByteBuffer second = DirectBufferPool.acquire(1234);
+        Assertions.assertSame(first, second);
+        Assertions.assertEquals(0, second.position());
+        Assertions.assertEquals(1234, second.remaining());
+        Assertions.assertEquals(hits + 1, DirectBufferPool.getHitCount());
+        Assertions.assertEquals(0, DirectBufferPool.getPooledBytes());
+
+        // Other sizes don't get it.
+        DirectBufferPool.release(second);
+        long misses = DirectBufferPool.getMissCount();
+        ByteBuffer other = DirectBufferPool.acquire(4321);
+        Assertions.assertNotSame(second, other);
+        Assertions.assertEquals(misses + 1, DirectBufferPool.getMissCount());
+    }
+
+    @Test
+    public void testLimit() throws Exception {
+
+        DirectBufferPool.setLimit(0);
+        DirectBufferPool.setLimit(1000);
+
+        ByteBuffer first = DirectBufferPool.acquire(600);
+        ByteBuffer second = DirectBufferPool.acquire(600);
+
+        DirectBufferPool.release(first);
+        DirectBufferPool.release(second);
+        Assertions.assertEquals(600, DirectBufferPool.getPooledBytes());
+
+        // Lowering the limit drops what no longer fits.
+        DirectBufferPool.setLimit(0);
+        Assertions.assertEquals(0, DirectBufferPool.getPooledBytes());
+
+        // Heap buffers are never pooled.
+        DirectBufferPool.setLimit(1000);
+        DirectBufferPool.release(ByteBuffer.allocate(100));
+        Assertions.assertEquals(0, DirectBufferPool.getPooledBytes());
+    }
+}
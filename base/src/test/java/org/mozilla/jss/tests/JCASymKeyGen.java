@@ -5,7 +5,9 @@
 package org.mozilla.jss.tests;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.security.AlgorithmParameters;
+import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
@@ -13,13 +15,18 @@ import java.security.Provider;
 import java.security.SecureRandom;
 import java.security.Security;
 import java.security.spec.AlgorithmParameterSpec;
+import java.util.Arrays;
 
+import javax.crypto.AEADBadTagException;
 import javax.crypto.Cipher;
 import javax.crypto.KeyGenerator;
 import javax.crypto.SecretKey;
 import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.PBEKeySpec;
 import javax.crypto.spec.RC2ParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
 
 import org.mozilla.jss.CryptoManager;
 import org.mozilla.jss.NotInitializedException;
@@ -375,6 +382,145 @@ public class JCASymKeyGen {
         }
     }
 
+    /**
+     * Encrypt into direct ByteBuffers and decrypt in place within a heap
+     * ByteBuffer, checking the results against the byte[] API.
+     *
+     * @param sKey
+     * @param algFamily
+     * @param algType
+     * @param provider
+     */
+    public void testByteBufferCipher(javax.crypto.SecretKey sKey, String algFamily,
+            String algType, String provider) throws Exception {
+
+        if (algFamily.compareToIgnoreCase("RC2") == 0) {
+            // needs explicit parameters; covered by testCipher()
+            return;
+        }
+
+        byte[] plaintext = plainText;
+        byte[] plaintextB = plainTextB;
+        if (algType.endsWith("PKCS5Padding")) {
+            plaintext = plainTextPad;
+            plaintextB = plainTextPadB;
+        }
+
+        Cipher cipher = Cipher.getInstance(algType, provider);
+        cipher.init(Cipher.ENCRYPT_MODE, sKey);
+        AlgorithmParameters ap = cipher.getParameters();
+
+        ByteBuffer input = ByteBuffer.allocateDirect(plaintext.length + plaintextB.length);
+        input.put(plaintext).put(plaintextB).flip();
+        ByteBuffer ciphertext = ByteBuffer.allocateDirect(
+                cipher.getOutputSize(input.remaining()));
+
+        input.limit(plaintext.length);
+        cipher.update(input, ciphertext);
+        input.limit(input.capacity());
+        cipher.doFinal(input, ciphertext);
+        ciphertext.flip();
+
+        // compare with the byte[] API
+        if (ap == null) {
+            cipher.init(Cipher.DECRYPT_MODE, sKey);
+        } else {
+            cipher.init(Cipher.DECRYPT_MODE, sKey, ap);
+        }
+        byte[] encrypted = new byte[ciphertext.remaining()];
+        ciphertext.duplicate().get(encrypted);
+        byte[] expected = new byte[plaintext.length + plaintextB.length];
+        System.arraycopy(plaintext, 0, expected, 0, plaintext.length);
+        System.arraycopy(plaintextB, 0, expected, plaintext.length, plaintextB.length);
+        if (!Arrays.equals(expected, cipher.doFinal(encrypted))) {
+            throw new Exception("ERROR: " + provider +
+                    " ByteBuffer encryption failed for " + algType);
+        }
+
+        // decrypt in place
+        if (ap == null) {
+            cipher.init(Cipher.DECRYPT_MODE, sKey);
+        } else {
+            cipher.init(Cipher.DECRYPT_MODE, sKey, ap);
+        }
+        byte[] buffer = encrypted.clone();
+        int len = cipher.doFinal(buffer, 0, buffer.length, buffer, 0);
+        if (!Arrays.equals(expected, Arrays.copyOf(buffer, len))) {
+            throw new Exception("ERROR: " + provider +
+                    " in-place decryption failed for " + algType);
+        }
+    }
+
+    /**
+     * Encrypt with AAD and a multi-part update, decrypt with another
+     * provider, then make sure a modified ciphertext is rejected.
+     *
+     * @param sKey
+     * @param algType
+     * @param encryptProvider
+     * @param decryptProvider
+     */
+    public void testAEADCipher(javax.crypto.SecretKey sKey, String algType,
+            String encryptProvider, String decryptProvider) throws Exception {
+
+        byte[] aad = "additional authenticated data".getBytes("UTF-8");
+        byte[] iv = new byte[12];
+        new SecureRandom().nextBytes(iv);
+
+        AlgorithmParameterSpec params;
+        if (algType.startsWith("AES")) {
+            params = new GCMParameterSpec(128, iv);
+        } else {
+            params = new IvParameterSpec(iv);
+        }
+
+        Cipher cipher = Cipher.getInstance(algType, encryptProvider);
+        cipher.init(Cipher.ENCRYPT_MODE, sKey, params);
+        cipher.updateAAD(aad);
+        byte[] first = cipher.update(plainText);
+        byte[] last = cipher.doFinal(plainTextB);
+        byte[] ciphertext = new byte[(first == null ? 0 : first.length) + last.length];
+        if (first != null) {
+            System.arraycopy(first, 0, ciphertext, 0, first.length);
+        }
+        System.arraycopy(last, 0, ciphertext, ciphertext.length - last.length, last.length);
+
+        // the same key and IV must not be used for another encryption
+        try {
+            cipher.init(Cipher.ENCRYPT_MODE, sKey, params);
+            throw new Exception("ERROR: " + encryptProvider +
+                    " allowed IV reuse for " + algType);
+        } catch (InvalidAlgorithmParameterException | InvalidKeyException e) {
+            // expected
+        }
+
+        byte[] expected = new byte[plainText.length + plainTextB.length];
+        System.arraycopy(plainText, 0, expected, 0, plainText.length);
+        System.arraycopy(plainTextB, 0, expected, plainText.length, plainTextB.length);
+
+        cipher = Cipher.getInstance(algType, decryptProvider);
+        cipher.init(Cipher.DECRYPT_MODE, sKey, params);
+        cipher.updateAAD(aad);
+        if (!Arrays.equals(expected, cipher.doFinal(ciphertext))) {
+            throw new Exception("ERROR: " + encryptProvider + " and " +
+                    decryptProvider + " failed for " + algType);
+        }
+
+        ciphertext[0] ^= 1;
+        cipher.init(Cipher.DECRYPT_MODE, sKey, params);
+        cipher.updateAAD(aad);
+        try {
+            cipher.doFinal(ciphertext);
+            throw new Exception("ERROR: " + decryptProvider +
+                    " accepted a modified ciphertext for " + algType);
+        } catch (AEADBadTagException e) {
+            // expected
+        }
+
+        System.out.println(encryptProvider + " and " + decryptProvider +
+                " tested " + algType);
+    }
+
     public static void main(String args[]) {
 
         String certDbLoc             = ".";
@@ -462,6 +608,8 @@ public class JCASymKeyGen {
                     skg.testMultiPartCipher(mozKey, symKeyTable[i][0],
                         symKeyTable[i][a],
                         MOZ_PROVIDER_NAME, MOZ_PROVIDER_NAME);
+                    skg.testByteBufferCipher(mozKey, symKeyTable[i][0],
+                        symKeyTable[i][a], MOZ_PROVIDER_NAME);
 
                     try {
                         //check to see if the otherProvider we are testing
@@ -498,6 +646,29 @@ public class JCASymKeyGen {
                     }
                 }
             }
+
+            // AEAD ciphers
+            javax.crypto.SecretKey aesKey = skg.genSecretKey("AES", MOZ_PROVIDER_NAME);
+            byte[] chachaBits = new byte[32];
+            new SecureRandom().nextBytes(chachaBits);
+            javax.crypto.SecretKey chachaKey = new SecretKeySpec(chachaBits, "ChaCha20");
+
+            skg.testAEADCipher(aesKey, "AES/GCM/NoPadding",
+                MOZ_PROVIDER_NAME, MOZ_PROVIDER_NAME);
+            if (!bFipsMode) {
+                skg.testAEADCipher(aesKey, "AES/GCM/NoPadding",
+                    MOZ_PROVIDER_NAME, otherProvider);
+                skg.testAEADCipher(aesKey, "AES/GCM/NoPadding",
+                    otherProvider, MOZ_PROVIDER_NAME);
+
+                // raw ChaCha20 keys can't be imported in FIPS mode
+                skg.testAEADCipher(chachaKey, "ChaCha20-Poly1305",
+                    MOZ_PROVIDER_NAME, MOZ_PROVIDER_NAME);
+                skg.testAEADCipher(chachaKey, "ChaCha20-Poly1305",
+                    MOZ_PROVIDER_NAME, otherProvider);
+                skg.testAEADCipher(chachaKey, "ChaCha20-Poly1305",
+                    otherProvider, MOZ_PROVIDER_NAME);
+            }
         } catch(Exception e) {
             e.printStackTrace();
             System.exit(1);
@@ -21,7 +21,9 @@ import org.mozilla.jss.CryptoManager;
 import org.mozilla.jss.crypto.CryptoToken;
 import org.mozilla.jss.crypto.KeyGenAlgorithm;
 import org.mozilla.jss.crypto.KeyGenerator;
+import org.mozilla.jss.crypto.PrivateKey;
 import org.mozilla.jss.crypto.SecretKeyFacade;
+import org.mozilla.jss.netscape.security.util.Utils;
 
 public class KeyStoreTest {
 
@@ -35,7 +37,8 @@ public class KeyStoreTest {
             "getCertByDER <DER cert filename>\n" +
             "getKey <alias>\n" +
             "addKey <alias>\n" +
-            "isTrustedCert <alias>\n");
+            "isTrustedCert <alias>\n" +
+            "indexedKeys\n");
     }
 
     public static void main(String argv[]) throws Throwable {
@@ -99,6 +102,8 @@ public class KeyStoreTest {
                 System.exit(1);
             }
             addKey(ks, args[0]);
+        } else if( op.equalsIgnoreCase("indexedKeys") ) {
+            indexedKeys(ks);
         } else {
             printUsage();
             System.exit(1);
@@ -202,4 +207,62 @@ public class KeyStoreTest {
 
         ks.setKeyEntry(alias+"sym", key, null, null);
     }
+
+    /**
+     * Look up private keys which were generated after the keystore built
+     * its alias index, so the index misses them at first.
+     */
+    public static void indexedKeys(KeyStore ks) throws Throwable {
+
+        // build the alias index
+        ks.aliases();
+
+        KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA",
+            "Mozilla-JSS");
+        kpg.initialize(2048);
+
+        KeyPair pair = kpg.genKeyPair();
+        String alias = getKeyID(pair);
+
+        // index miss: the token is searched instead
+        if (!ks.isKeyEntry(alias)) {
+            throw new Exception("Unindexed key not found: " + alias);
+        }
+
+        if (ks.getKey(alias, null) == null) {
+            throw new Exception("Unable to get unindexed key: " + alias);
+        }
+
+        // index hit: the key found above was added to the index
+        if (!ks.containsAlias(alias)) {
+            throw new Exception("Key missing from index: " + alias);
+        }
+
+        if (ks.getKey(alias, null) == null) {
+            throw new Exception("Unable to get indexed key: " + alias);
+        }
+
+        ks.deleteEntry(alias);
+
+        if (ks.containsAlias(alias) || ks.getKey(alias, null) != null) {
+            throw new Exception("Indexed key not deleted: " + alias);
+        }
+
+        // index miss on delete
+        pair = kpg.genKeyPair();
+        alias = getKeyID(pair);
+
+        ks.deleteEntry(alias);
+
+        if (ks.isKeyEntry(alias)) {
+            throw new Exception("Unindexed key not deleted: " + alias);
+        }
+
+        System.out.println("Found unindexed and indexed keys");
+    }
+
+    static String getKeyID(KeyPair pair) throws Throwable {
+        PrivateKey privateKey = (PrivateKey) pair.getPrivate();
+        return Utils.HexEncode(privateKey.getUniqueID());
+    }
 }
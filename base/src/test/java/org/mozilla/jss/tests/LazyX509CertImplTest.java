@@ -0,0 +1,125 @@
+package org.mozilla.jss.tests;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Date;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mozilla.jss.netscape.security.util.BigInt;
+import org.mozilla.jss.netscape.security.x509.AlgorithmId;
+import org.mozilla.jss.netscape.security.x509.CertificateAlgorithmId;
+import org.mozilla.jss.netscape.security.x509.CertificateExtensions;
+import org.mozilla.jss.netscape.security.x509.CertificateIssuerName;
+import org.mozilla.jss.netscape.security.x509.CertificateSerialNumber;
+import org.mozilla.jss.netscape.security.x509.CertificateSubjectName;
+import org.mozilla.jss.netscape.security.x509.CertificateValidity;
+import org.mozilla.jss.netscape.security.x509.CertificateVersion;
+import org.mozilla.jss.netscape.security.x509.CertificateX509Key;
+import org.mozilla.jss.netscape.security.x509.X500Name;
+import org.mozilla.jss.netscape.security.x509.X509CertImpl;
+import org.mozilla.jss.netscape.security.x509.X509CertInfo;
+
+public class LazyX509CertImplTest {
+
+    static KeyPair keyPair;
+
+    static byte[] createCert() throws Exception {
+
+        if (keyPair == null) {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA", "SunRsaSign");
+            generator.initialize(2048);
+            keyPair = generator.generateKeyPair();
+        }
+
+        RSAPublicKey publicKey = (RSAPublicKey) keyPair.getPublic();
+        Date notBefore = new Date(System.currentTimeMillis() / 1000 * 1000);
+        Date notAfter = new Date(notBefore.getTime() + 86400000L);
+
+        X509CertInfo info = new X509CertInfo();
+        info.set(X509CertInfo.VERSION, new CertificateVersion(CertificateVersion.V3));
+        info.set(X509CertInfo.SERIAL_NUMBER, new CertificateSerialNumber(new BigInteger("123456789012345678901234567890")));
+        info.set(X509CertInfo.ISSUER, new CertificateIssuerName(new X500Name("CN=Test CA,O=Example")));
+        info.set(X509CertInfo.SUBJECT, new CertificateSubjectName(new X500Name("CN=server.example.com,O=Example")));
+        info.set(X509CertInfo.VALIDITY, new CertificateValidity(notBefore, notAfter));
+        info.set(X509CertInfo.ALGORITHM_ID, new CertificateAlgorithmId(AlgorithmId.get("SHA256withRSA")));
+        info.set(X509CertInfo.KEY, new CertificateX509Key(
+                new org.mozilla.jss.netscape.security.provider.RSAPublicKey(
+                        new BigInt(publicKey.getModulus()),
+                        new BigInt(publicKey.getPublicExponent()))));
+        info.set(X509CertInfo.EXTENSIONS, new CertificateExtensions());
+
+        X509CertImpl cert = new X509CertImpl(info);
+        cert.sign(keyPair.getPrivate(), "SHA256withRSA", "SunRsaSign");
+
+        return cert.getEncoded();
+    }
+
+    @Test
+    public void testFields() throws Exception {
+
+        byte[] data = createCert();
+        X509CertImpl eager = new X509CertImpl(data);
+        X509CertImpl lazy = new X509CertImpl(data, true);
+
+        Assertions.assertEquals(eager.getVersion(), lazy.getVersion());
+        Assertions.assertEquals(eager.getSerialNumber(), lazy.getSerialNumber());
+        Assertions.assertEquals(eager.getIssuerName(), lazy.getIssuerName());
+        Assertions.assertEquals(eager.getSubjectName(), lazy.getSubjectName());
+        Assertions.assertEquals(eager.getNotBefore(), lazy.getNotBefore());
+        Assertions.assertEquals(eager.getNotAfter(), lazy.getNotAfter());
+        Assertions.assertEquals(eager.getSigAlgName(), lazy.getSigAlgName());
+        Assertions.assertArrayEquals(eager.getSignature(), lazy.getSignature());
+
+        Assertions.assertArrayEquals(data, lazy.getEncoded());
+        Assertions.assertArrayEquals(eager.getTBSCertificate(), lazy.getTBSCertificate());
+
+        lazy.checkValidity();
+    }
+
+    @Test
+    public void testInfo() throws Exception {
+
+        byte[] data = createCert();
+        X509CertImpl eager = new X509CertImpl(data);
+        X509CertImpl lazy = new X509CertImpl(data, true);
+
+        Assertions.assertEquals(eager.getPublicKey(), lazy.getPublicKey());
+        Assertions.assertNotNull(lazy.getInfo());
+        Assertions.assertEquals(eager, lazy);
+
+        lazy.verify(keyPair.getPublic(), "SunRsaSign");
+    }
+
+    @Test
+    public void testEquals() throws Exception {
+
+        byte[] data = createCert();
+        X509CertImpl eager = new X509CertImpl(data);
+        X509CertImpl lazy = new X509CertImpl(data, true);
+
+        java.util.Set<X509CertImpl> certs = new java.util.HashSet<>();
+        certs.add(lazy);
+
+        Assertions.assertTrue(certs.contains(eager));
+        Assertions.assertEquals(eager.hashCode(), lazy.hashCode());
+        Assertions.assertEquals(lazy, eager);
+
+        // hashing and comparing must not decode the certificate info
+        java.lang.reflect.Field info = X509CertImpl.class.getDeclaredField("info");
+        info.setAccessible(true);
+        Assertions.assertNull(info.get(lazy));
+    }
+
+    @Test
+    public void testInvalid() throws Exception {
+
+        byte[] data = createCert();
+        byte[] truncated = java.util.Arrays.copyOf(data, data.length - 1);
+
+        Assertions.assertThrows(java.security.cert.CertificateException.class,
+                () -> new X509CertImpl(truncated, true));
+    }
+}
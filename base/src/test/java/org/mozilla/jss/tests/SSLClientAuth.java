@@ -4,8 +4,8 @@
 package org.mozilla.jss.tests;
 
 import java.io.EOFException;
-import java.io.InputStream;
 import java.net.SocketException;
+import java.nio.ByteBuffer;
 import java.security.KeyPair;
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
@@ -13,6 +13,7 @@ import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.SecureRandom;
 import java.security.cert.CertificateEncodingException;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
 
@@ -371,6 +372,20 @@ public class SSLClientAuth implements Runnable {
         sock.forceHandshake();
         String cipher = sock.getStatus().getCipher();
         System.out.println("client forced handshake. ciphersuite: " + cipher);
+
+        // gathering write of direct and heap buffers
+        byte[] data = payload();
+        ByteBuffer[] srcs = new ByteBuffer[] {
+            ByteBuffer.allocateDirect(100).put(data, 0, 100).flip(),
+            ByteBuffer.wrap(data, 100, 1000),
+            ByteBuffer.allocateDirect(0),
+            ByteBuffer.allocateDirect(data.length - 1100).put(data, 1100, data.length - 1100).flip()
+        };
+        long written = sock.write(srcs);
+        if (written != data.length) {
+            throw new Exception("Client wrote " + written + " of " + data.length + " bytes");
+        }
+        System.out.println("client wrote " + written + " bytes");
         sock.close();
 
         // wait for the server to finish
@@ -456,15 +471,23 @@ public class SSLClientAuth implements Runnable {
             sock.addHandshakeCompletedListener(
                     new HandshakeListener("server", this));
 
-            // try to read some bytes, to allow the handshake to go through
-            InputStream is = sock.getInputStream();
+            // read the client's data into a direct buffer
+            byte[] expected = payload();
+            ByteBuffer received = ByteBuffer.allocateDirect(expected.length);
             try {
                 System.out.println("Server about to read");
-                is.read();
-                System.out.println("Server read successful");
+                while (received.hasRemaining() && sock.read(received) >= 0) {
+                }
+                System.out.println("Server read " + received.position() + " bytes");
             } catch(EOFException e) {
                 System.out.println("Server got EOF");
             }
+            byte[] actual = new byte[received.flip().remaining()];
+            received.get(actual);
+            if (!Arrays.equals(expected, actual)) {
+                System.out.println("Server received unexpected data");
+                setFailure();
+            }
             sock.close();
             serverSock.close();
 
@@ -479,6 +502,14 @@ public class SSLClientAuth implements Runnable {
         System.out.println("Server exiting");
     }
 
+    static byte[] payload() {
+        byte[] data = new byte[20000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 31);
+        }
+        return data;
+    }
+
     static Extension makeBasicConstraintsExtension() throws Exception {
         SEQUENCE bc = new SEQUENCE();
         bc.addElement( new BOOLEAN(true) ); // cA
@@ -0,0 +1,107 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.jss.tests;
+
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.mozilla.jss.pkcs11.PK11SecureRandom;
+
+/**
+ * Draws from PK11SecureRandom and the pkcs11prng SecureRandom from many
+ * threads, with and without buffering, and checks that no draw repeats.
+ */
+public class SecureRandomTest {
+
+    static final int THREADS = 8;
+    static final int DRAWS = 2000;
+
+    public static void main(String[] args) throws Exception {
+
+        // loads JSS through java.security
+        SecureRandom.getInstance("pkcs11prng", "Mozilla-JSS");
+
+        int defaultBlockSize = PK11SecureRandom.getBlockSize();
+
+        try {
+            test("buffered");
+
+            PK11SecureRandom.setBlockSize(64);
+            test("small blocks");
+
+            PK11SecureRandom.setBlockSize(0);
+            test("direct");
+
+        } finally {
+            PK11SecureRandom.setBlockSize(defaultBlockSize);
+        }
+
+        // seeding discards buffered bytes but must not break the RNG
+        PK11SecureRandom random = new PK11SecureRandom();
+        random.setSeed(System.nanoTime());
+        test("after setSeed");
+
+        // larger than a quarter of a block: always a direct draw
+        byte[] large = new byte[PK11SecureRandom.getBlockSize()];
+        random.nextBytes(large);
+        checkNotZero(large);
+
+        System.out.println("SecureRandomTest passed");
+    }
+
+    static void test(String name) throws Exception {
+
+        Set<ByteBuffer> seen = ConcurrentHashMap.newKeySet();
+        SecureRandom jca = SecureRandom.getInstance("pkcs11prng", "Mozilla-JSS");
+        Throwable[] failure = new Throwable[1];
+
+        Thread[] threads = new Thread[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            final boolean useJCA = t % 2 == 0;
+            threads[t] = new Thread(() -> {
+                try {
+                    PK11SecureRandom random = new PK11SecureRandom();
+                    for (int i = 0; i < DRAWS; i++) {
+                        byte[] nonce = new byte[12];
+                        if (useJCA) {
+                            jca.nextBytes(nonce);
+                        } else {
+                            random.nextBytes(nonce);
+                        }
+                        if (!seen.add(ByteBuffer.wrap(nonce))) {
+                            throw new Exception("Repeated random bytes");
+                        }
+                    }
+                } catch (Throwable e) {
+                    synchronized (failure) {
+                        failure[0] = e;
+                    }
+                }
+            });
+            threads[t].start();
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        if (failure[0] != null) {
+            throw new Exception("SecureRandomTest failed (" + name + "): " + failure[0].getMessage(), failure[0]);
+        }
+
+        System.out.println("Drew " + seen.size() + " nonces (" + name + ")");
+    }
+
+    static void checkNotZero(byte[] bytes) throws Exception {
+        for (byte b : bytes) {
+            if (b != 0) {
+                return;
+            }
+        }
+        throw new Exception("Random bytes are all zero");
+    }
+}
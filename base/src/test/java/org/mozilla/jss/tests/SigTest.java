@@ -12,7 +12,10 @@ package org.mozilla.jss.tests;
 
 import java.security.KeyPair;
 import java.security.PublicKey;
+import java.util.Arrays;
 import java.util.Enumeration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.mozilla.jss.CryptoManager;
 import org.mozilla.jss.crypto.CryptoToken;
@@ -121,6 +124,86 @@ public class SigTest {
             throw new Exception("ERROR: PSS Signature failed to verify.");
         }
 
+        testBatch(token, SignatureAlgorithm.RSASignatureWithSHA256Digest, keyPair, true);
+        testBatch(token, SignatureAlgorithm.RSAPSSSignatureWithSHA256Digest, keyPair, false);
+
         System.out.println("SigTest passed.");
     }
+
+    /**
+     * Checks the one-shot and batch operations against update/sign on a
+     * context which is reused without another initSign.
+     */
+    static void testBatch(CryptoToken token, SignatureAlgorithm alg,
+            KeyPair keyPair, boolean deterministic) throws Exception {
+
+        byte[][] messages = new byte[9][];
+        for (int i = 0; i < messages.length; i++) {
+            messages[i] = new byte[i * 300];
+            Arrays.fill(messages[i], (byte) i);
+        }
+
+        Signature signer = token.getSignatureContext(alg);
+        signer.initSign((org.mozilla.jss.crypto.PrivateKey) keyPair.getPrivate());
+
+        byte[][] streamed = new byte[messages.length][];
+        for (int i = 0; i < messages.length; i++) {
+            for (byte b : messages[i]) {
+                signer.update(b);
+            }
+            streamed[i] = signer.sign();
+        }
+
+        byte[][] oneShot = new byte[messages.length][];
+        for (int i = 0; i < messages.length; i++) {
+            oneShot[i] = signer.sign(messages[i]);
+        }
+
+        byte[][] batch = signer.signAll(messages);
+        byte[][] parallel;
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            parallel = signer.signAll(messages, executor, 4);
+        } finally {
+            executor.shutdown();
+        }
+
+        if (deterministic) {
+            for (int i = 0; i < messages.length; i++) {
+                if (!Arrays.equals(streamed[i], oneShot[i])
+                        || !Arrays.equals(streamed[i], batch[i])
+                        || !Arrays.equals(streamed[i], parallel[i])) {
+                    throw new Exception("ERROR: " + alg + " signatures differ for message " + i);
+                }
+            }
+        }
+
+        Signature verifier = token.getSignatureContext(alg);
+        verifier.initVerify(keyPair.getPublic());
+
+        for (byte[][] signatures : new byte[][][] {streamed, oneShot, batch, parallel}) {
+            for (boolean verified : verifier.verifyAll(messages, signatures)) {
+                if (!verified) {
+                    throw new Exception("ERROR: " + alg + " batch signature failed to verify.");
+                }
+            }
+        }
+
+        for (int i = 0; i < messages.length; i++) {
+            verifier.update(messages[i]);
+            if (!verifier.verify(batch[i]) || !verifier.verify(messages[i], parallel[i])) {
+                throw new Exception("ERROR: " + alg + " signature failed to verify.");
+            }
+        }
+
+        byte[][] swapped = batch.clone();
+        swapped[0] = batch[1];
+        swapped[1] = batch[0];
+        boolean[] results = verifier.verifyAll(messages, swapped);
+        if (results[0] || results[1] || !results[2]) {
+            throw new Exception("ERROR: " + alg + " batch verification accepted a wrong signature.");
+        }
+
+        System.out.println(alg + " batch signatures verified successfully!");
+    }
 }
@@ -1,5 +1,7 @@
 package org.mozilla.jss.tests;
 
+import java.nio.ByteBuffer;
+
 import org.mozilla.jss.nss.Buffer;
 import org.mozilla.jss.nss.BufferProxy;
 
@@ -27,6 +29,43 @@ public class TestBuffer {
         Buffer.Free(buf);
     }
 
+    public static void TestByteBufferReadWrite() {
+        BufferProxy buf = Buffer.Create(10);
+        byte[] data = { 0x01, 0x00, 0x02, 0x03, 0x04, 0x05 };
+        assert(buf != null);
+
+        ByteBuffer direct_in = ByteBuffer.allocateDirect(data.length);
+        direct_in.put(data);
+        direct_in.flip();
+
+        assert(Buffer.Write(buf, direct_in) == data.length);
+        assert(direct_in.remaining() == 0);
+
+        ByteBuffer heap_out = ByteBuffer.allocate(4);
+        assert(Buffer.Read(buf, heap_out) == 4);
+        assert(heap_out.remaining() == 0);
+        for (int i = 0; i < 4; i++) {
+            assert(heap_out.get(i) == data[i]);
+        }
+
+        ByteBuffer heap_in = ByteBuffer.wrap(data, 2, 4);
+        assert(Buffer.Write(buf, heap_in) == 4);
+        assert(heap_in.remaining() == 0);
+
+        ByteBuffer direct_out = ByteBuffer.allocateDirect(10);
+        assert(Buffer.Read(buf, direct_out) == 6);
+        assert(direct_out.position() == 6);
+        assert(direct_out.get(0) == data[4]);
+        assert(direct_out.get(1) == data[5]);
+        for (int i = 0; i < 4; i++) {
+            assert(direct_out.get(2 + i) == data[2 + i]);
+        }
+
+        assert(Buffer.Read(buf, direct_out) == 0);
+
+        Buffer.Free(buf);
+    }
+
     public static void TestCapacities() {
         BufferProxy buf = Buffer.Create(6);
         byte[] data = {0x00, 0x01, 0x02};
@@ -71,6 +110,120 @@ public class TestBuffer {
         Buffer.Free(buf);
     }
 
+    public static void TestGrow() {
+        BufferProxy buf = Buffer.Create(4);
+        byte[] data = { 0x01, 0x02, 0x03, 0x04 };
+
+        // Wrap around the end of the buffer before growing it.
+        assert(Buffer.Write(buf, new byte[] { 0x00, 0x00 }) == 2);
+        assert(Buffer.Read(buf, 2).length == 2);
+        assert(Buffer.Write(buf, data) == 4);
+        assert(Buffer.WriteCapacity(buf) == 0);
+
+        assert(Buffer.Grow(buf, 8));
+        assert(Buffer.Capacity(buf) == 8);
+        assert(Buffer.ReadCapacity(buf) == 4);
+        assert(Buffer.WriteCapacity(buf) == 4);
+
+        // Never shrinks.
+        assert(Buffer.Grow(buf, 2));
+        assert(Buffer.Capacity(buf) == 8);
+
+        assert(Buffer.Write(buf, new byte[] { 0x05 }) == 1);
+        byte[] out_data = Buffer.Read(buf, 5);
+        assert(out_data.length == 5);
+        for (int i = 0; i < out_data.length; i++) {
+            assert(out_data[i] == i + 1);
+        }
+
+        Buffer.Free(buf);
+    }
+
+    public static void TestPool() {
+        long limit = Buffer.GetPoolLimit();
+
+        try {
+            Buffer.SetPoolLimit(Buffer.DEFAULT_POOL_LIMIT);
+
+            BufferProxy buf = Buffer.Create(1000);
+            assert(Buffer.Write(buf, new byte[] { 0x01, 0x02, 0x03 }) == 3);
+            Buffer.Free(buf);
+
+            Buffer.PoolStatistics before = Buffer.GetPoolStatistics();
+            assert(before.getPooledBuffers() > 0);
+
+            // A buffer of the same size comes from the pool, empty.
+            buf = Buffer.Create(1000);
+            Buffer.PoolStatistics after = Buffer.GetPoolStatistics();
+            assert(after.getHits() == before.getHits() + 1);
+            assert(Buffer.ReadCapacity(buf) == 0);
+            assert(Buffer.WriteCapacity(buf) == 1000);
+            assert(Buffer.Put(buf, (byte) 0x07) == 0x07);
+            assert(Buffer.Get(buf) == 0x07);
+            Buffer.Free(buf);
+
+            // Disabling the pool frees everything it holds.
+            Buffer.SetPoolLimit(0);
+            assert(Buffer.GetPoolStatistics().getPooledBytes() == 0);
+
+            buf = Buffer.Create(1000);
+            Buffer.Free(buf);
+            after = Buffer.GetPoolStatistics();
+            assert(after.getPooledBuffers() == 0);
+            System.out.println(after);
+        } finally {
+            Buffer.SetPoolLimit(limit);
+        }
+    }
+
+    public static void TestDetach() {
+        long limit = Buffer.GetPoolLimit();
+
+        try {
+            Buffer.SetPoolLimit(Buffer.DEFAULT_POOL_LIMIT);
+
+            BufferProxy buf = Buffer.Create(1000);
+            assert(Buffer.Write(buf, new byte[] { 0x01, 0x02, 0x03 }) == 3);
+
+            // Only empty buffers give up their contents.
+            assert(!Buffer.Detach(buf));
+            assert(Buffer.IsAttached(buf));
+            assert(Buffer.Read(buf, 3).length == 3);
+
+            Buffer.PoolStatistics before = Buffer.GetPoolStatistics();
+            assert(Buffer.Detach(buf));
+            assert(!Buffer.IsAttached(buf));
+            assert(Buffer.GetPoolStatistics().getPooledBytes() == before.getPooledBytes() + 1000);
+
+            // A detached buffer reads as empty and keeps its capacity.
+            assert(Buffer.Capacity(buf) == 1000);
+            assert(Buffer.ReadCapacity(buf) == 0);
+            assert(Buffer.WriteCapacity(buf) == 1000);
+            assert(Buffer.Read(buf, 10).length == 0);
+            assert(Buffer.Get(buf) == -1);
+
+            // Writing takes the contents back from the pool.
+            assert(Buffer.Write(buf, new byte[] { 0x04, 0x05 }) == 2);
+            assert(Buffer.IsAttached(buf));
+            assert(Buffer.GetPoolStatistics().getPooledBytes() == before.getPooledBytes());
+            byte[] out_data = Buffer.Read(buf, 2);
+            assert(out_data.length == 2 && out_data[0] == 0x04 && out_data[1] == 0x05);
+
+            // Growing a detached buffer sizes its next contents.
+            assert(Buffer.Detach(buf));
+            assert(Buffer.Grow(buf, 2000));
+            assert(Buffer.Capacity(buf) == 2000);
+            assert(Buffer.Put(buf, (byte) 0x06) == 0x06);
+            assert(Buffer.Get(buf) == 0x06);
+
+            // Detached buffers can be freed as usual.
+            assert(Buffer.Detach(buf));
+            Buffer.Free(buf);
+        } finally {
+            Buffer.SetPoolLimit(limit);
+        }
+    }
+
     public static void main(String[] args) {
         System.loadLibrary("jss");
 
@@ -80,10 +233,22 @@ public class TestBuffer {
         System.out.println("Calling TestReadWrite()...");
         TestReadWrite();
 
+        System.out.println("Calling TestByteBufferReadWrite()...");
+        TestByteBufferReadWrite();
+
         System.out.println("Calling TestCapacities()...");
         TestCapacities();
 
         System.out.println("Calling TestPutGet()...");
         TestPutGet();
+
+        System.out.println("Calling TestGrow()...");
+        TestGrow();
+
+        System.out.println("Calling TestPool()...");
+        TestPool();
+
+        System.out.println("Calling TestDetach()...");
+        TestDetach();
     }
 }
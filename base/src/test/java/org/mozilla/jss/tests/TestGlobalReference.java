@@ -19,17 +19,43 @@ public class TestGlobalReference {
             proxy.clear();
         }
 
+        NativeProxy.Statistics stats = getStatistics();
+        if (stats.getLive() != 0 || stats.getFreed() != 100 || stats.getLeaked() != 0) {
+            throw new Exception("Unexpected counts after close: " + stats);
+        }
+
+        // Leave these for the Cleaner, which must free each global
+        // reference exactly once, and count them as leaked.
+        NativeProxy.setLeakReport(true);
+        for (int i = 0; i < 10; i++) {
+            new GlobalRefProxy(arg);
+        }
+
         for (int i = 1; i <= 4; i++) {
             // This attempts to provoke the GC into running, hopefully
-            // executing GlobalRefProxy.finalize(...) on the above objects.
-            // This will be another attempt to trigger a double free, but
-            // we shouldn't crash.
+            // executing the Cleaner on the above objects. This will be
+            // another attempt to trigger a double free, but we shouldn't
+            // crash.
             System.gc();
             Thread.sleep(i * 500);
         }
 
+        stats = getStatistics();
+        System.out.println("After GC: " + stats);
+        if (stats.getLive() + stats.getFreed() != 110 || stats.getLeaked() != stats.getFreed() - 100) {
+            throw new Exception("Unexpected counts after GC: " + stats);
+        }
+
         // Since we didn't initialize JSS and we freed all our GlobalRefProxy
         // instances we created, we expect the registry to be empty.
         NativeProxy.assertRegistryEmpty();
     }
+
+    static NativeProxy.Statistics getStatistics() throws Exception {
+        NativeProxy.Statistics stats = NativeProxy.getStatistics().get(GlobalRefProxy.class.getName());
+        if (stats == null) {
+            throw new Exception("Missing GlobalRefProxy statistics");
+        }
+        return stats;
+    }
 }
@@ -2,9 +2,15 @@ package org.mozilla.jss.tests;
 
 import java.nio.ByteBuffer;
 import java.security.KeyStore;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.net.ssl.KeyManager;
 import javax.net.ssl.KeyManagerFactory;
@@ -15,15 +21,29 @@ import javax.net.ssl.SSLException;
 import javax.net.ssl.SSLSession;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509KeyManager;
+import javax.net.ssl.X509TrustManager;
 
 import org.mozilla.jss.CryptoManager;
+import org.mozilla.jss.nss.Buffer;
 import org.mozilla.jss.provider.javax.crypto.JSSNativeTrustManager;
 import org.mozilla.jss.provider.javax.crypto.JSSTrustManager;
 import org.mozilla.jss.ssl.SSLCipher;
 import org.mozilla.jss.ssl.SSLVersion;
+import org.mozilla.jss.ssl.javax.CertValidationExecutor;
+import org.mozilla.jss.ssl.javax.EngineProfile;
 import org.mozilla.jss.ssl.javax.JSSEngine;
 import org.mozilla.jss.ssl.javax.JSSEngineReferenceImpl;
 import org.mozilla.jss.ssl.javax.JSSParameters;
+import org.mozilla.jss.ssl.javax.JSSSession;
+import org.mozilla.jss.ssl.javax.JSSSessionContext;
+import org.mozilla.jss.ssl.javax.RecordSizePolicy;
+import org.mozilla.jss.ssl.javax.ServerCredentialCache;
+import org.mozilla.jss.ssl.javax.ServerCredentials;
+import org.mozilla.jss.ssl.javax.ServerTemplateCache;
+import org.mozilla.jss.ssl.javax.TLSHandshakeMetrics;
+import org.mozilla.jss.ssl.javax.TLSMetrics;
+import org.mozilla.jss.ssl.javax.TLSMetricsListener;
 
 public class TestSSLEngine {
     public static boolean debug = false;
@@ -695,9 +715,87 @@ public class TestSSLEngine {
         client_unwrap = LargeReadBuffer;
         sendTestData(server_eng, client_eng, server_msg, s2c_buffer, client_unwrap);
 
+        // Direct buffers are handed to NSS in place rather than copied.
+        ByteBuffer direct_msg = ByteBuffer.allocateDirect(LargeCMCs.capacity());
+        ByteBuffer large_msg = LargeCMCs.duplicate();
+        large_msg.position(0);
+        direct_msg.put(large_msg);
+        direct_msg.flip();
+        ByteBuffer direct_c2s = ByteBuffer.allocateDirect(LargeWriteBuffer.capacity());
+        ByteBuffer direct_unwrap = ByteBuffer.allocateDirect(LargeReadBuffer.capacity());
+        sendTestData(client_eng, server_eng, direct_msg, direct_c2s, direct_unwrap);
+
+        testGatheredTransfer(client_eng, server_eng);
+
         System.err.println("Done testing post-handshake transfer! Success!");
     }
 
+    public static void testGatheredTransfer(SSLEngine client_eng, SSLEngine server_eng) throws Exception {
+        if (!(client_eng instanceof JSSEngine)) {
+            return;
+        }
+
+        JSSEngine client = (JSSEngine) client_eng;
+        RecordSizePolicy policy = client.getRecordSizePolicy();
+        client.setRecordSizePolicy(RecordSizePolicy.FULL);
+
+        try {
+            resetBuffers();
+
+            // A response header followed by many small body chunks, some
+            // of them direct.
+            int chunks = 64;
+            ByteBuffer[] srcs = new ByteBuffer[chunks + 1];
+            srcs[0] = ByteBuffer.wrap("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n".getBytes());
+            for (int i = 1; i <= chunks; i++) {
+                byte[] chunk = new byte[100];
+                Arrays.fill(chunk, (byte) i);
+                srcs[i] = i % 2 == 0 ? ByteBuffer.allocateDirect(chunk.length) : ByteBuffer.allocate(chunk.length);
+                srcs[i].put(chunk).flip();
+            }
+
+            ByteBuffer expected = ByteBuffer.allocate(chunks * 100 + srcs[0].remaining());
+            for (ByteBuffer src : srcs) {
+                expected.put(src.duplicate());
+            }
+            expected.flip();
+
+            ByteBuffer c2s_buffer = LargeWriteBuffer;
+            SSLEngineResult r = client_eng.wrap(srcs, c2s_buffer);
+            if (r.getStatus() != SSLEngineResult.Status.OK || r.bytesConsumed() != expected.remaining()) {
+                throw new RuntimeException("Expected wrap() to consume all " + expected.remaining() + " bytes: " + r);
+            }
+            c2s_buffer.flip();
+
+            // Everything fits in a single record.
+            int records = 0;
+            for (int pos = 0; pos + 5 <= c2s_buffer.limit(); records++) {
+                pos += 5 + (c2s_buffer.getShort(pos + 3) & 0xFFFF);
+            }
+            System.err.println("Gathered " + srcs.length + " buffers into " + records + " records");
+            if (records > 2) {
+                throw new RuntimeException("Expected buffers to be gathered into one record, got " + records);
+            }
+
+            ByteBuffer server_unwrap = LargeReadBuffer;
+            while (c2s_buffer.hasRemaining()) {
+                r = server_eng.unwrap(c2s_buffer, server_unwrap);
+                if (r.getStatus() != SSLEngineResult.Status.OK) {
+                    throw new RuntimeException("Unknown result from server_eng.unwrap(): " + r.getStatus());
+                }
+            }
+            server_unwrap.flip();
+
+            if (!server_unwrap.equals(expected)) {
+                throw new RuntimeException("Expected gathered data received to equal that sent!");
+            }
+        } finally {
+            client.setRecordSizePolicy(policy);
+            LargeReadBuffer.clear();
+            LargeWriteBuffer.clear();
+        }
+    }
+
     public static void sendCloseData(SSLEngine send, SSLEngine recv) throws Exception {
         int counter = 0;
         int max_tries = 20;
@@ -1006,6 +1104,563 @@ public class TestSSLEngine {
         testJSSEToJSSHandshakes(ctx, server_alias);
     }
 
+    public static void testServerCredentials(String[] args) throws Exception {
+        SSLContext ctx = SSLContext.getInstance("TLS", "Mozilla-JSS");
+        ctx.init(getKMs(), getTMs(), null);
+
+        String client_alias = args[2];
+        String server_alias = args[3];
+
+        // Engines from the same context resolve the same aliases once.
+        JSSEngine first = (JSSEngine) ctx.createSSLEngine();
+        first.setSSLParameters(createParameters(server_alias));
+        JSSEngine second = (JSSEngine) ctx.createSSLEngine();
+        second.setSSLParameters(createParameters(server_alias));
+
+        ServerCredentials creds = first.getServerCredentials();
+        if (creds == null || creds != second.getServerCredentials()) {
+            throw new RuntimeException("Expected engines to share resolved server credentials");
+        }
+
+        ServerCredentialCache cache = first.getServerCredentialCache();
+        cache.refresh();
+        if (cache.size() != 0) {
+            throw new RuntimeException("Expected refresh() to forget resolved credentials");
+        }
+
+        // Explicitly shared credentials must handshake like resolved
+        // aliases do, and keep their model socket after the template
+        // cache evicts it.
+        X509KeyManager[] kms = new X509KeyManager[] { (X509KeyManager) getKMs()[0] };
+        try (ServerCredentials shared = ServerCredentials.resolve(kms, Arrays.asList(server_alias.split(",")))) {
+            shared.preload();
+
+            for (int i = 0; i < 2; i++) {
+                JSSEngine client_eng = (JSSEngine) ctx.createSSLEngine();
+                client_eng.setSSLParameters(createParameters(client_alias));
+                client_eng.setUseClientMode(true);
+
+                JSSEngine server_eng = (JSSEngine) ctx.createSSLEngine();
+                server_eng.setSSLParameters(createParameters());
+                server_eng.setServerCredentials(shared);
+                server_eng.setUseClientMode(false);
+
+                configureSSLEngine(client_eng, "TLSv1.3", "TLS_AES_128_GCM_SHA256");
+                configureSSLEngine(server_eng, "TLSv1.3", "TLS_AES_128_GCM_SHA256");
+
+                try {
+                    testBasicHandshake(client_eng, server_eng, false);
+                } catch (Exception e) {
+                    client_eng.cleanup();
+                    server_eng.cleanup();
+                    throw e;
+                }
+
+                JSSEngine.getServerTemplateCache().clear();
+            }
+        }
+
+        // Closed credentials, e.g., after ServerCredentialCache.refresh(),
+        // keep working through the template cache without pinning a model
+        // socket again.
+        ServerCredentials closed = ServerCredentials.resolve(kms, Arrays.asList(server_alias.split(",")));
+        closed.close();
+
+        JSSEngine client_eng = (JSSEngine) ctx.createSSLEngine();
+        client_eng.setSSLParameters(createParameters(client_alias));
+        client_eng.setUseClientMode(true);
+
+        JSSEngine server_eng = (JSSEngine) ctx.createSSLEngine();
+        server_eng.setSSLParameters(createParameters());
+        server_eng.setServerCredentials(closed);
+        server_eng.setUseClientMode(false);
+
+        configureSSLEngine(client_eng, "TLSv1.3", "TLS_AES_128_GCM_SHA256");
+        configureSSLEngine(server_eng, "TLSv1.3", "TLS_AES_128_GCM_SHA256");
+
+        try {
+            testBasicHandshake(client_eng, server_eng, false);
+        } catch (Exception e) {
+            client_eng.cleanup();
+            server_eng.cleanup();
+            throw e;
+        }
+
+        ServerTemplateCache.Template template = JSSEngine.getServerTemplateCache().acquire(closed.getCerts());
+        template.release();
+        JSSEngine.getServerTemplateCache().clear();
+        if (!template.getModel().isNull()) {
+            throw new RuntimeException("Expected closed server credentials not to pin their model socket");
+        }
+    }
+
+    private static JSSEngine[] createSessionPair(SSLContext ctx, String[] args, boolean with_peer) throws Exception {
+        JSSEngine client_eng = (JSSEngine) (with_peer ? ctx.createSSLEngine("localhost", 8443) : ctx.createSSLEngine());
+        client_eng.setSSLParameters(createParameters(args[2]));
+        client_eng.setUseClientMode(true);
+
+        JSSEngine server_eng = (JSSEngine) ctx.createSSLEngine();
+        server_eng.setSSLParameters(createParameters(args[3]));
+        server_eng.setUseClientMode(false);
+
+        configureSSLEngine(client_eng, "TLSv1.3", "TLS_AES_128_GCM_SHA256");
+        configureSSLEngine(server_eng, "TLSv1.3", "TLS_AES_128_GCM_SHA256");
+
+        try {
+            testInitialHandshake(client_eng, server_eng);
+        } catch (Exception e) {
+            client_eng.cleanup();
+            server_eng.cleanup();
+            throw e;
+        }
+
+        return new JSSEngine[] { client_eng, server_eng };
+    }
+
+    private static void closeSessionPair(JSSEngine[] pair) throws Exception {
+        try {
+            testClose(pair[0], pair[1]);
+        } finally {
+            pair[0].cleanup();
+            pair[1].cleanup();
+        }
+    }
+
+    public static void testSessionContext(String[] args) throws Exception {
+        SSLContext ctx = SSLContext.getInstance("TLS", "Mozilla-JSS");
+        ctx.init(getKMs(), getTMs(), null);
+
+        JSSSessionContext context = JSSSessionContext.getServerSessionContext();
+        if (context.getSessionCacheSize() != JSSSessionContext.DEFAULT_SESSION_CACHE_SIZE ||
+                context.getSessionTimeout() != JSSSessionContext.DEFAULT_SESSION_TIMEOUT) {
+            throw new RuntimeException("Expected default session cache size and timeout");
+        }
+
+        // Going over the size only drops the oldest session from the
+        // context; its connection keeps working.
+        context.setSessionCacheSize(1);
+        try {
+            JSSEngine[] first = createSessionPair(ctx, args, false);
+            JSSEngine[] second = createSessionPair(ctx, args, false);
+
+            byte[] first_id = first[1].getSession().getId();
+            byte[] second_id = second[1].getSession().getId();
+            if (context.size() != 1 || context.getSession(first_id) != null ||
+                    context.getSession(second_id) != second[1].getSession()) {
+                throw new RuntimeException("Expected only the newest session in the context");
+            }
+
+            testPostHandshakeTransfer(first[0], first[1]);
+
+            // Expired sessions are dropped the same way.
+            context.setSessionTimeout(1);
+            Thread.sleep(1500);
+            if (context.getIds().hasMoreElements() || context.size() != 0) {
+                throw new RuntimeException("Expected expired sessions to be dropped from the context");
+            }
+
+            testPostHandshakeTransfer(second[0], second[1]);
+
+            closeSessionPair(first);
+            closeSessionPair(second);
+        } finally {
+            context.setSessionCacheSize(JSSSessionContext.DEFAULT_SESSION_CACHE_SIZE);
+            context.setSessionTimeout(JSSSessionContext.DEFAULT_SESSION_TIMEOUT);
+        }
+
+        // With the default settings, sessions are resumed, and cleaning up
+        // an engine replaces its session with a snapshot which no longer
+        // references the engine.
+        long resumed = context.getResumedHandshakeCount();
+        for (int i = 0; i < 3; i++) {
+            JSSEngine[] pair = createSessionPair(ctx, args, true);
+            JSSSession session = pair[1].getSession();
+            byte[] id = session.getId();
+            if (context.getSession(id) != session) {
+                throw new RuntimeException("Expected session to be recorded in the context");
+            }
+
+            closeSessionPair(pair);
+            JSSSession snapshot = (JSSSession) context.getSession(id);
+            if (snapshot == null || snapshot == session || snapshot.getEngine() != null ||
+                    !Arrays.equals(snapshot.getId(), id) || snapshot.getCreationTime() != session.getCreationTime()) {
+                throw new RuntimeException("Expected a snapshot of the session in the context after cleanup");
+            }
+        }
+
+        if (context.getResumedHandshakeCount() <= resumed) {
+            throw new RuntimeException("Expected sessions to be resumed with the default session context settings");
+        }
+    }
+
+    /**
+     * X509TrustManager which blocks, ignoring interrupts, until released.
+     */
+    static class SlowTrustManager implements X509TrustManager {
+        private final X509TrustManager delegate;
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        SlowTrustManager(X509TrustManager delegate) {
+            this.delegate = delegate;
+        }
+
+        private void block() {
+            boolean interrupted = false;
+            while (release.getCount() > 0) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+            block();
+            delegate.checkClientTrusted(chain, authType);
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+            block();
+            delegate.checkServerTrusted(chain, authType);
+        }
+
+        @Override
+        public X509Certificate[] getAcceptedIssuers() {
+            return delegate.getAcceptedIssuers();
+        }
+    }
+
+    public static void testCertValidationTimeout(String[] args) throws Exception {
+        X509TrustManager trusted = null;
+        for (TrustManager tm : getTMs()) {
+            if (tm instanceof X509TrustManager) {
+                trusted = (X509TrustManager) tm;
+                break;
+            }
+        }
+
+        SlowTrustManager slow = new SlowTrustManager(trusted);
+        SSLContext client_ctx = SSLContext.getInstance("TLS", "Mozilla-JSS");
+        client_ctx.init(getKMs(), new TrustManager[] { slow }, null);
+        SSLContext server_ctx = SSLContext.getInstance("TLS", "Mozilla-JSS");
+        server_ctx.init(getKMs(), getTMs(), null);
+
+        try (CertValidationExecutor executor = CertValidationExecutor.newFixedPool(1, 4, 200)) {
+            JSSEngine client_eng = (JSSEngine) client_ctx.createSSLEngine();
+            client_eng.setSSLParameters(createParameters(args[2]));
+            client_eng.setUseClientMode(true);
+            client_eng.setCertValidationExecutor(executor);
+
+            JSSEngine server_eng = (JSSEngine) server_ctx.createSSLEngine();
+            server_eng.setSSLParameters(createParameters(args[3]));
+            server_eng.setUseClientMode(false);
+
+            configureSSLEngine(client_eng, "TLSv1.3", "TLS_AES_128_GCM_SHA256");
+            configureSSLEngine(server_eng, "TLSv1.3", "TLS_AES_128_GCM_SHA256");
+
+            boolean failed = false;
+            try {
+                testHandshake(client_eng, server_eng, false);
+            } catch (Exception e) {
+                System.err.println("Handshake failed as expected: " + e.getMessage());
+                failed = true;
+            }
+
+            // Free the engines while the timed out validation still runs;
+            // it must finish without touching the freed ssl_fd.
+            client_eng.cleanup();
+            server_eng.cleanup();
+            System.gc();
+
+            slow.release.countDown();
+            for (int i = 0; i < 100 && executor.getCompletedCount() == 0; i++) {
+                Thread.sleep(50);
+            }
+
+            if (!failed || executor.getTimeoutCount() != 1 || executor.getCompletedCount() != 1) {
+                throw new RuntimeException("Expected handshake to fail after validation timed out: failed=" + failed
+                        + ", timeouts=" + executor.getTimeoutCount() + ", completed=" + executor.getCompletedCount());
+            }
+        }
+    }
+
+    public static void testServerCertValidationCleanup(String[] args) throws Exception {
+        X509TrustManager trusted = null;
+        for (TrustManager tm : getTMs()) {
+            if (tm instanceof X509TrustManager) {
+                trusted = (X509TrustManager) tm;
+                break;
+            }
+        }
+
+        SlowTrustManager slow = new SlowTrustManager(trusted);
+        SSLContext client_ctx = SSLContext.getInstance("TLS", "Mozilla-JSS");
+        client_ctx.init(getKMs(), getTMs(), null);
+        SSLContext server_ctx = SSLContext.getInstance("TLS", "Mozilla-JSS");
+        server_ctx.init(getKMs(), new TrustManager[] { slow }, null);
+
+        try (CertValidationExecutor executor = CertValidationExecutor.newFixedPool(1, 4, 30000)) {
+            JSSEngine client_eng = (JSSEngine) client_ctx.createSSLEngine();
+            client_eng.setSSLParameters(createParameters(args[2]));
+            client_eng.setUseClientMode(true);
+
+            JSSEngine server_eng = (JSSEngine) server_ctx.createSSLEngine();
+            server_eng.setSSLParameters(createParameters(args[3]));
+            server_eng.setUseClientMode(false);
+            server_eng.setNeedClientAuth(true);
+            server_eng.setCertValidationExecutor(executor);
+
+            configureSSLEngine(client_eng, "TLSv1.3", "TLS_AES_128_GCM_SHA256");
+            configureSSLEngine(server_eng, "TLSv1.3", "TLS_AES_128_GCM_SHA256");
+
+            AtomicInteger failures = new AtomicInteger();
+            Thread handshake = new Thread(() -> {
+                try {
+                    testHandshake(client_eng, server_eng, false);
+                } catch (Exception e) {
+                    System.err.println("Handshake failed as expected: " + e.getMessage());
+                    failures.incrementAndGet();
+                }
+            });
+            handshake.start();
+
+            for (int i = 0; i < 100 && executor.getActiveCount() == 0; i++) {
+                Thread.sleep(50);
+            }
+
+            // NSS waits for the validation inside the server's unwrap, but
+            // without holding the engine's lock, so cleaning up the engine
+            // fails the validation instead of waiting out its timeout.
+            long start = System.nanoTime();
+            server_eng.cleanup();
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            handshake.join(10000);
+            client_eng.cleanup();
+            slow.release.countDown();
+
+            if (executor.getSubmittedCount() != 1 || elapsed >= 10000 || handshake.isAlive() || failures.get() != 1) {
+                throw new RuntimeException("Expected cleanup to fail the pending server-side validation: elapsed=" + elapsed
+                        + " ms, submitted=" + executor.getSubmittedCount() + ", failures=" + failures.get());
+            }
+        }
+    }
+
+    public static void testServerTemplateCache(String[] args) throws Exception {
+        X509KeyManager[] kms = new X509KeyManager[] { (X509KeyManager) getKMs()[0] };
+        ServerCredentials first = ServerCredentials.resolve(kms, Arrays.asList(args[3].split(",")));
+        ServerCredentials second = ServerCredentials.resolve(kms, Arrays.asList(args[2].split(",")));
+
+        ServerTemplateCache cache = new ServerTemplateCache(1);
+
+        // The same certificates share a single model socket.
+        ServerTemplateCache.Template a = cache.acquire(first.getCerts());
+        ServerTemplateCache.Template b = cache.acquire(first.getCerts());
+        if (a != b || cache.getMissCount() != 1 || cache.getHitCount() != 1) {
+            throw new RuntimeException("Expected server template to be reused: hits=" + cache.getHitCount() + ", misses=" + cache.getMissCount());
+        }
+        b.release();
+
+        // Going over the maximum size evicts the least recently used
+        // template, but it stays open while still referenced.
+        ServerTemplateCache.Template c = cache.acquire(second.getCerts());
+        if (cache.size() != 1 || cache.getEvictionCount() != 1) {
+            throw new RuntimeException("Expected least recently used server template to be evicted: size=" + cache.size());
+        }
+        if (a.getModel().isNull()) {
+            throw new RuntimeException("Expected evicted server template to stay open while referenced");
+        }
+
+        a.release();
+        if (!a.getModel().isNull()) {
+            throw new RuntimeException("Expected evicted server template to be closed after its last release");
+        }
+
+        // Evicted templates are recreated on the next use.
+        ServerTemplateCache.Template d = cache.acquire(first.getCerts());
+        if (d == a || cache.getMissCount() != 3 || c.getModel().isNull()) {
+            throw new RuntimeException("Expected evicted server template to be recreated");
+        }
+
+        c.release();
+        d.release();
+        cache.clear();
+        if (cache.size() != 0 || !d.getModel().isNull()) {
+            throw new RuntimeException("Expected clear() to close unreferenced server templates");
+        }
+    }
+
+    public static void testEngineProfile(String[] args) throws Exception {
+        SSLContext ctx = SSLContext.getInstance("TLS", "Mozilla-JSS");
+        ctx.init(getKMs(), getTMs(), null);
+
+        String client_alias = args[2];
+        String server_alias = args[3];
+
+        // An engine keeps its profile until its settings change.
+        JSSEngine template = (JSSEngine) ctx.createSSLEngine();
+        configureSSLEngine(template, "TLSv1.3", "TLS_AES_128_GCM_SHA256");
+        EngineProfile profile = template.getEngineProfile();
+        if (profile != template.getEngineProfile()) {
+            throw new RuntimeException("Expected unchanged engine to reuse its profile");
+        }
+
+        template.setNeedClientAuth(true);
+        EngineProfile server_profile = template.getEngineProfile();
+        if (server_profile == profile || !server_profile.getNeedClientAuth()) {
+            throw new RuntimeException("Expected new profile after changing client auth");
+        }
+
+        // Engines sharing profiles handshake like individually configured
+        // ones, including the client auth the server profile requires.
+        for (int i = 0; i < 2; i++) {
+            JSSEngine client_eng = (JSSEngine) ctx.createSSLEngine();
+            client_eng.setSSLParameters(createParameters(client_alias));
+            client_eng.setEngineProfile(profile);
+            client_eng.setUseClientMode(true);
+
+            JSSEngine server_eng = (JSSEngine) ctx.createSSLEngine();
+            server_eng.setSSLParameters(createParameters(server_alias));
+            server_eng.setEngineProfile(server_profile);
+            server_eng.setUseClientMode(false);
+
+            if (!server_eng.getNeedClientAuth() || server_eng.getEngineProfile() != server_profile) {
+                throw new RuntimeException("Expected engine to use the given profile");
+            }
+
+            try {
+                testBasicHandshake(client_eng, server_eng, false);
+            } catch (Exception e) {
+                client_eng.cleanup();
+                server_eng.cleanup();
+                throw e;
+            }
+        }
+    }
+
+    public static void testReleaseIdleBuffers(String[] args) throws Exception {
+        SSLContext ctx = SSLContext.getInstance("TLS", "Mozilla-JSS");
+        ctx.init(getKMs(), getTMs(), null);
+
+        JSSEngine client_eng = (JSSEngine) ctx.createSSLEngine();
+        client_eng.setSSLParameters(createParameters(args[2]));
+        client_eng.setUseClientMode(true);
+        client_eng.setReleaseIdleBuffers(true);
+
+        JSSEngine server_eng = (JSSEngine) ctx.createSSLEngine();
+        server_eng.setSSLParameters(createParameters(args[3]));
+        server_eng.setUseClientMode(false);
+        server_eng.setReleaseIdleBuffers(true);
+
+        try {
+            testHandshake(client_eng, server_eng, false);
+
+            // Every transfer drains the buffers on both sides, so they're
+            // released to the pool and taken back by the next transfer
+            // without losing any data.
+            Buffer.PoolStatistics before = Buffer.GetPoolStatistics();
+            testPostHandshakeTransfer(client_eng, server_eng);
+            Buffer.PoolStatistics after = Buffer.GetPoolStatistics();
+
+            if (after.getReturns() + after.getDiscards() <= before.getReturns() + before.getDiscards()) {
+                throw new RuntimeException("Expected idle buffers to be released: " + before + " -> " + after);
+            }
+
+            testClose(client_eng, server_eng);
+        } catch (Exception e) {
+            client_eng.cleanup();
+            server_eng.cleanup();
+            throw e;
+        }
+    }
+
+    public static void testMetrics(String[] args) throws Exception {
+        SSLContext ctx = SSLContext.getInstance("TLS", "Mozilla-JSS");
+        ctx.init(getKMs(), getTMs(), null);
+
+        String client_alias = args[2];
+        String server_alias = args[3];
+        String protocol = "TLSv1.3";
+        String cipher_suite = "TLS_AES_128_GCM_SHA256";
+
+        TLSMetrics metrics = TLSMetrics.getInstance();
+        AtomicInteger completed = new AtomicInteger();
+        TLSMetricsListener listener = new TLSMetricsListener() {
+            @Override
+            public void handshakeCompleted(TLSHandshakeMetrics hm) {
+                completed.incrementAndGet();
+            }
+        };
+
+        metrics.reset();
+        TLSMetrics.addListener(listener);
+        TLSMetrics.setMetricsEnabled(true);
+        TLSMetrics.registerMBean();
+
+        try {
+            JSSEngine client_eng = (JSSEngine) ctx.createSSLEngine();
+            client_eng.setSSLParameters(createParameters(client_alias));
+            client_eng.setUseClientMode(true);
+
+            JSSEngine server_eng = (JSSEngine) ctx.createSSLEngine();
+            server_eng.setSSLParameters(createParameters(server_alias));
+            server_eng.setUseClientMode(false);
+
+            configureSSLEngine(client_eng, protocol, cipher_suite);
+            configureSSLEngine(server_eng, protocol, cipher_suite);
+
+            try {
+                testBasicHandshake(client_eng, server_eng, false);
+            } catch (Exception e) {
+                client_eng.cleanup();
+                server_eng.cleanup();
+                throw e;
+            }
+        } finally {
+            TLSMetrics.setMetricsEnabled(false);
+            TLSMetrics.removeListener(listener);
+        }
+
+        // One handshake each for the client and the server.
+        if (metrics.getHandshakeCount() != 2 || completed.get() != 2) {
+            throw new RuntimeException("Expected 2 handshakes, got " + metrics.getHandshakeCount() + " (listener: " + completed.get() + ")");
+        }
+
+        Map<String, long[]> latency = metrics.getHandshakeLatencyByKey();
+        String key = "full/TLS_1_3/" + cipher_suite;
+        boolean found = false;
+        for (String k : latency.keySet()) {
+            found |= k.startsWith(key);
+        }
+        if (!found) {
+            throw new RuntimeException("Expected a latency histogram for " + key + ", got " + latency.keySet());
+        }
+
+        if (metrics.getBytesWrapped() == 0 || metrics.getBytesWrapped() != metrics.getBytesUnwrapped()) {
+            throw new RuntimeException("Expected application bytes wrapped (" + metrics.getBytesWrapped() + ") to equal bytes unwrapped (" + metrics.getBytesUnwrapped() + ")");
+        }
+
+        long records = metrics.getRecordsWrapped();
+        if (records == 0 || records > metrics.getWireBytesWrapped() / 5 || metrics.getRecordsUnwrapped() == 0) {
+            throw new RuntimeException("Unexpected record counts: " + records + " wrapped in " + metrics.getWireBytesWrapped() + " bytes, " + metrics.getRecordsUnwrapped() + " unwrapped");
+        }
+
+        if (!metrics.getAlertsSent().containsKey("CLOSE_NOTIFY") && !metrics.getAlertsReceived().containsKey("CLOSE_NOTIFY")) {
+            throw new RuntimeException("Expected CLOSE_NOTIFY alerts to be counted, got " + metrics.getAlertsSent() + " and " + metrics.getAlertsReceived());
+        }
+
+        System.err.println("TLS metrics: " + metrics.getHandshakeCount() + " handshakes, " +
+            records + " records wrapped, " + metrics.getRecordsUnwrapped() + " unwrapped, " +
+            metrics.getDelegatedTaskCount() + " delegated tasks");
+    }
+
     public static void testCleanerAbandoned(SSLContext ctx, String client_alias, String server_alias) throws Exception {
         JSSEngine client_eng = (JSSEngine) ctx.createSSLEngine();
         client_eng.setSSLParameters(createParameters(client_alias));
@@ -1077,5 +1732,29 @@ public class TestSSLEngine {
 
         System.out.println("Testing basic handshake with native TM...");
         testNativeClientServer(args);
+
+        System.out.println("Testing shared server credentials...");
+        testServerCredentials(args);
+
+        System.out.println("Testing session context...");
+        testSessionContext(args);
+
+        System.out.println("Testing certificate validation timeout...");
+        testCertValidationTimeout(args);
+
+        System.out.println("Testing server-side certificate validation cleanup...");
+        testServerCertValidationCleanup(args);
+
+        System.out.println("Testing server template cache...");
+        testServerTemplateCache(args);
+
+        System.out.println("Testing shared engine profiles...");
+        testEngineProfile(args);
+
+        System.out.println("Testing idle buffer release...");
+        testReleaseIdleBuffers(args);
+
+        System.out.println("Testing TLS metrics...");
+        testMetrics(args);
     }
 }
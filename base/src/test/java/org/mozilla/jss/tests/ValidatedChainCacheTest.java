@@ -0,0 +1,84 @@
+package org.mozilla.jss.tests;
+
+import java.security.cert.X509Certificate;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mozilla.jss.CryptoManager;
+import org.mozilla.jss.provider.javax.crypto.JSSTrustManager;
+import org.mozilla.jss.provider.javax.crypto.ValidatedChainCache;
+
+public class ValidatedChainCacheTest {
+
+    static final X509Certificate[] EMPTY_CHAIN = new X509Certificate[0];
+
+    static String getKey(String hostname) throws Exception {
+        return ValidatedChainCache.getKey(EMPTY_CHAIN, "RSA", JSSTrustManager.SERVER_AUTH_OID,
+            hostname, false, false);
+    }
+
+    @Test
+    public void testKey() throws Exception {
+
+        String key = getKey("server.example.com");
+        Assertions.assertEquals(key, getKey("server.example.com"));
+        Assertions.assertNotEquals(key, getKey("other.example.com"));
+        Assertions.assertNotEquals(key, getKey(null));
+
+        Assertions.assertNotEquals(key, ValidatedChainCache.getKey(EMPTY_CHAIN, "RSA",
+            JSSTrustManager.SERVER_AUTH_OID, "server.example.com", false, true));
+
+        // A change to the trust database changes every key.
+        CryptoManager.trustChanged();
+        Assertions.assertNotEquals(key, getKey("server.example.com"));
+    }
+
+    @Test
+    public void testHitsAndMisses() throws Exception {
+
+        ValidatedChainCache cache = new ValidatedChainCache();
+        String key = getKey("server.example.com");
+
+        Assertions.assertFalse(cache.isValidated(key));
+        cache.put(key, EMPTY_CHAIN, false);
+        Assertions.assertTrue(cache.isValidated(key));
+
+        Assertions.assertEquals(1, cache.getHitCount());
+        Assertions.assertEquals(1, cache.getMissCount());
+        Assertions.assertEquals(0.5, cache.getHitRatio());
+    }
+
+    @Test
+    public void testTrustChanged() throws Exception {
+
+        ValidatedChainCache cache = new ValidatedChainCache();
+        String key = getKey("server.example.com");
+        cache.put(key, EMPTY_CHAIN, false);
+
+        CryptoManager.trustChanged();
+
+        Assertions.assertFalse(cache.isValidated(key));
+        Assertions.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+
+        ValidatedChainCache cache = new ValidatedChainCache(2, 300, 60);
+        String a = getKey("a.example.com");
+        String b = getKey("b.example.com");
+        String c = getKey("c.example.com");
+
+        cache.put(a, EMPTY_CHAIN, false);
+        cache.put(b, EMPTY_CHAIN, false);
+
+        // Touch "a" so that "b" is the least recently used entry.
+        Assertions.assertTrue(cache.isValidated(a));
+        cache.put(c, EMPTY_CHAIN, false);
+
+        Assertions.assertEquals(2, cache.size());
+        Assertions.assertEquals(1, cache.getEvictionCount());
+        Assertions.assertTrue(cache.isValidated(a));
+        Assertions.assertFalse(cache.isValidated(b));
+    }
+}
@@ -0,0 +1,117 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.jss.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * AES-GCM and ChaCha20-Poly1305 through JSSAEADCipherSpi. Every
+ * encryption uses a new IV (a counter), as the cipher requires.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class AEADBenchmark {
+
+    @Param({"AES/GCM/NoPadding", "ChaCha20-Poly1305"})
+    public String algorithm;
+
+    @Param({"64", "1024", "16384"})
+    public int size;
+
+    private SecretKey key;
+    private Cipher encryptor;
+    private Cipher decryptor;
+
+    private byte[] aad;
+    private byte[] input;
+    private byte[] output;
+    private byte[] ciphertext;
+    private byte[] decrypted;
+
+    private byte[] iv = new byte[12];
+    private AlgorithmParameterSpec decryptParams;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        NSSDatabase.getInstance();
+
+        if (algorithm.startsWith("AES")) {
+            KeyGenerator kg = KeyGenerator.getInstance("AES", "Mozilla-JSS");
+            kg.init(128);
+            key = kg.generateKey();
+        } else {
+            byte[] bits = new byte[32];
+            ThreadLocalRandom.current().nextBytes(bits);
+            key = new SecretKeySpec(bits, "ChaCha20");
+        }
+
+        encryptor = Cipher.getInstance(algorithm, "Mozilla-JSS");
+        decryptor = Cipher.getInstance(algorithm, "Mozilla-JSS");
+
+        aad = new byte[16];
+        input = new byte[size];
+        ThreadLocalRandom.current().nextBytes(input);
+        output = new byte[size + 16];
+
+        encryptor.init(Cipher.ENCRYPT_MODE, key, nextParams());
+        decryptParams = params(iv.clone());
+        encryptor.updateAAD(aad);
+        ciphertext = encryptor.doFinal(input);
+        decrypted = new byte[size];
+    }
+
+    private AlgorithmParameterSpec params(byte[] iv) {
+        if (algorithm.startsWith("AES")) {
+            return new GCMParameterSpec(128, iv);
+        }
+        return new IvParameterSpec(iv);
+    }
+
+    private AlgorithmParameterSpec nextParams() {
+        ByteBuffer.wrap(iv).putLong(4, ByteBuffer.wrap(iv).getLong(4) + 1);
+        return params(iv);
+    }
+
+    @Benchmark
+    public int encrypt() throws Exception {
+        encryptor.init(Cipher.ENCRYPT_MODE, key, nextParams());
+        encryptor.updateAAD(aad);
+        return encryptor.doFinal(input, 0, input.length, output, 0);
+    }
+
+    @Benchmark
+    public int decrypt() throws Exception {
+        decryptor.init(Cipher.DECRYPT_MODE, key, decryptParams);
+        decryptor.updateAAD(aad);
+        return decryptor.doFinal(ciphertext, 0, ciphertext.length, decrypted, 0);
+    }
+}
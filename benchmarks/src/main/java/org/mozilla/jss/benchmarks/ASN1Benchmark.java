@@ -0,0 +1,69 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.jss.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.mozilla.jss.asn1.ASN1Util;
+import org.mozilla.jss.netscape.security.util.DerInputStream;
+import org.mozilla.jss.netscape.security.util.DerValue;
+import org.mozilla.jss.netscape.security.x509.X509CertImpl;
+import org.mozilla.jss.pkix.cert.Certificate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Decoding of the benchmark server certificate with the ASN.1 templates
+ * (SEQUENCE.Template), X509CertImpl and DerInputStream.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ASN1Benchmark {
+
+    private byte[] encoded;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        encoded = NSSDatabase.getInstance().getServerCert().getEncoded();
+    }
+
+    @Benchmark
+    public Object decodeTemplate() throws Exception {
+        return ASN1Util.decode(new Certificate.Template(), encoded);
+    }
+
+    @Benchmark
+    public Object parseX509CertImpl() throws Exception {
+        return new X509CertImpl(encoded).getSubjectName();
+    }
+
+    @Benchmark
+    public Object parseX509CertImplLazily() throws Exception {
+        return new X509CertImpl(encoded, true).getSubjectName();
+    }
+
+    @Benchmark
+    public int walkDerInputStream() throws Exception {
+        DerInputStream in = new DerInputStream(encoded);
+        int count = 0;
+        for (DerValue value : in.getSequence(3)) {
+            count += value.length();
+        }
+        return count;
+    }
+}
@@ -0,0 +1,112 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.jss.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.IvParameterSpec;
+
+import org.mozilla.jss.CryptoManager;
+import org.mozilla.jss.crypto.Cipher;
+import org.mozilla.jss.crypto.CryptoToken;
+import org.mozilla.jss.crypto.EncryptionAlgorithm;
+import org.mozilla.jss.crypto.IVParameterSpec;
+import org.mozilla.jss.crypto.KeyGenAlgorithm;
+import org.mozilla.jss.crypto.SymmetricKey;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * AES-128-CBC encryption through PK11Cipher directly and through the
+ * JCA Cipher (JSSCipherSpi). The contexts are never finalized, so each
+ * operation is a single update().
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class CipherBenchmark {
+
+    @Param({"64", "1024", "16384"})
+    public int size;
+
+    private Cipher pk11Cipher;
+    private javax.crypto.Cipher jcaCipher;
+
+    private byte[] input;
+    private byte[] output;
+
+    private ByteBuffer directInput;
+    private ByteBuffer directOutput;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        NSSDatabase.getInstance();
+
+        byte[] iv = new byte[16];
+        ThreadLocalRandom.current().nextBytes(iv);
+
+        CryptoToken token = CryptoManager.getInstance().getInternalCryptoToken();
+        org.mozilla.jss.crypto.KeyGenerator kg = token.getKeyGenerator(KeyGenAlgorithm.AES);
+        kg.initialize(128);
+        SymmetricKey key = kg.generate();
+
+        pk11Cipher = token.getCipherContext(EncryptionAlgorithm.AES_128_CBC);
+        pk11Cipher.initEncrypt(key, new IVParameterSpec(iv));
+
+        KeyGenerator jcaKG = KeyGenerator.getInstance("AES", "Mozilla-JSS");
+        jcaKG.init(128);
+        SecretKey jcaKey = jcaKG.generateKey();
+
+        jcaCipher = javax.crypto.Cipher.getInstance("AES/CBC/NoPadding", "Mozilla-JSS");
+        jcaCipher.init(javax.crypto.Cipher.ENCRYPT_MODE, jcaKey, new IvParameterSpec(iv));
+
+        input = new byte[size];
+        ThreadLocalRandom.current().nextBytes(input);
+        output = new byte[size];
+
+        directInput = ByteBuffer.allocateDirect(size);
+        directInput.put(input).flip();
+        directOutput = ByteBuffer.allocateDirect(size);
+    }
+
+    @Benchmark
+    public byte[] pk11CipherUpdate() throws Exception {
+        return pk11Cipher.update(input);
+    }
+
+    @Benchmark
+    public byte[] jcaCipherUpdate() throws Exception {
+        return jcaCipher.update(input);
+    }
+
+    @Benchmark
+    public int jcaCipherUpdateIntoArray() throws Exception {
+        return jcaCipher.update(input, 0, input.length, output, 0);
+    }
+
+    @Benchmark
+    public int jcaCipherUpdateDirect() throws Exception {
+        directInput.rewind();
+        directOutput.clear();
+        return jcaCipher.update(directInput, directOutput);
+    }
+}
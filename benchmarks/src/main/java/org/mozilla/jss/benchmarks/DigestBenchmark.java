@@ -0,0 +1,96 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.jss.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * SHA-256 digests (JSSMessageDigestSpi) and HMAC-SHA256 MACs (JSSMacSpi)
+ * over a single buffer, from an array or a direct ByteBuffer, and with
+ * the Mac initialized again with the same raw key for every message.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class DigestBenchmark {
+
+    @Param({"64", "1024", "16384"})
+    public int size;
+
+    private MessageDigest digest;
+    private Mac mac;
+
+    private SecretKeySpec rawKey;
+
+    private byte[] input;
+    private ByteBuffer directInput;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        NSSDatabase.getInstance();
+
+        digest = MessageDigest.getInstance("SHA-256", "Mozilla-JSS");
+
+        KeyGenerator kg = KeyGenerator.getInstance("HmacSHA256", "Mozilla-JSS");
+        mac = Mac.getInstance("HmacSHA256", "Mozilla-JSS");
+        mac.init(kg.generateKey());
+
+        byte[] keyBits = new byte[32];
+        ThreadLocalRandom.current().nextBytes(keyBits);
+        rawKey = new SecretKeySpec(keyBits, "HmacSHA256");
+
+        input = new byte[size];
+        ThreadLocalRandom.current().nextBytes(input);
+        directInput = ByteBuffer.allocateDirect(size);
+        directInput.put(input).flip();
+    }
+
+    @Benchmark
+    public byte[] messageDigest() {
+        digest.update(input);
+        return digest.digest();
+    }
+
+    @Benchmark
+    public byte[] hmac() {
+        mac.update(input);
+        return mac.doFinal();
+    }
+
+    @Benchmark
+    public byte[] hmacDirect() {
+        mac.update(directInput.duplicate());
+        return mac.doFinal();
+    }
+
+    @Benchmark
+    public byte[] hmacRawKey() throws Exception {
+        mac.init(rawKey);
+        return mac.doFinal(input);
+    }
+}
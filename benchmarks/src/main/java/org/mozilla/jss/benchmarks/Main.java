@@ -0,0 +1,33 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.jss.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Entry point of the benchmarks jar. Runs JMH with the gc profiler (for
+ * allocation rates) and JSON results unless other profilers or result
+ * formats are given; all other arguments are passed to JMH as is.
+ */
+public class Main {
+
+    public static void main(String[] args) throws Exception {
+        List<String> list = new ArrayList<>(Arrays.asList(args));
+
+        if (!list.contains("-prof")) {
+            list.add("-prof");
+            list.add("gc");
+        }
+
+        if (!list.contains("-rf")) {
+            list.add("-rf");
+            list.add("json");
+        }
+
+        org.openjdk.jmh.Main.main(list.toArray(new String[0]));
+    }
+}
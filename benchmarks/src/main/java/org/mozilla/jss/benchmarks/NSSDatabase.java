@@ -0,0 +1,183 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.jss.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.Calendar;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.stream.Stream;
+
+import org.mozilla.jss.CryptoManager;
+import org.mozilla.jss.InitializationValues;
+import org.mozilla.jss.asn1.ASN1Util;
+import org.mozilla.jss.asn1.BOOLEAN;
+import org.mozilla.jss.asn1.INTEGER;
+import org.mozilla.jss.asn1.OBJECT_IDENTIFIER;
+import org.mozilla.jss.asn1.OCTET_STRING;
+import org.mozilla.jss.asn1.SEQUENCE;
+import org.mozilla.jss.crypto.AlreadyInitializedException;
+import org.mozilla.jss.crypto.CryptoToken;
+import org.mozilla.jss.crypto.SignatureAlgorithm;
+import org.mozilla.jss.crypto.X509Certificate;
+import org.mozilla.jss.pkcs11.PK11Cert;
+import org.mozilla.jss.pkix.cert.Certificate;
+import org.mozilla.jss.pkix.cert.CertificateInfo;
+import org.mozilla.jss.pkix.cert.Extension;
+import org.mozilla.jss.pkix.primitive.AlgorithmIdentifier;
+import org.mozilla.jss.pkix.primitive.Name;
+import org.mozilla.jss.pkix.primitive.SubjectPublicKeyInfo;
+import org.mozilla.jss.util.NullPasswordCallback;
+import org.mozilla.jss.util.Password;
+
+/**
+ * Throwaway NSS database shared by the benchmarks in a JMH fork.
+ *
+ * The database is created in a temporary directory on first use, with a
+ * self-signed CA and a "localhost" server certificate issued by it, and
+ * deleted when the JVM exits. JSS must therefore not be configured through
+ * java.security when running the benchmarks.
+ */
+public class NSSDatabase {
+
+    public static final String PASSWORD = "m1oZilla";
+
+    public static final String CA_NICKNAME = "BenchmarkCA";
+    public static final String SERVER_NICKNAME = "BenchmarkServer";
+
+    private static final SignatureAlgorithm SIGNATURE_ALGORITHM =
+        SignatureAlgorithm.RSASignatureWithSHA256Digest;
+
+    private static NSSDatabase instance;
+
+    private final Path dir;
+    private X509Certificate caCert;
+    private X509Certificate serverCert;
+
+    private NSSDatabase(Path dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * Get the database for this JVM, creating it if needed.
+     */
+    public static synchronized NSSDatabase getInstance() throws Exception {
+        if (instance == null) {
+            NSSDatabase db = new NSSDatabase(Files.createTempDirectory("jss-benchmarks-"));
+            Runtime.getRuntime().addShutdownHook(new Thread(db::delete));
+            db.create();
+            instance = db;
+        }
+        return instance;
+    }
+
+    private void create() throws Exception {
+
+        InitializationValues ivs = new InitializationValues(dir.toString());
+        try {
+            CryptoManager.initialize(ivs);
+        } catch (AlreadyInitializedException e) {
+            throw new IllegalStateException("JSS is already initialized; remove it from java.security before running the benchmarks", e);
+        }
+
+        CryptoManager cm = CryptoManager.getInstance();
+        cm.setPasswordCallback(new Password(PASSWORD.toCharArray()));
+
+        CryptoToken token = cm.getInternalKeyStorageToken();
+        token.initPassword(new NullPasswordCallback(), new Password(PASSWORD.toCharArray()));
+        token.login(new Password(PASSWORD.toCharArray()));
+
+        KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA", "Mozilla-JSS");
+        kpg.initialize(2048);
+
+        KeyPair caPair = kpg.genKeyPair();
+        SEQUENCE extensions = new SEQUENCE();
+        extensions.addElement(makeBasicConstraintsExtension());
+
+        Certificate ca = makeCert("Benchmark CA", "Benchmark CA", 1,
+            caPair.getPrivate(), caPair.getPublic(), extensions);
+        caCert = cm.importUserCACertPackage(ASN1Util.encode(ca), CA_NICKNAME);
+        ((PK11Cert) caCert).setSSLTrust(
+            PK11Cert.TRUSTED_CA |
+            PK11Cert.TRUSTED_CLIENT_CA |
+            PK11Cert.VALID_CA);
+
+        KeyPair serverPair = kpg.genKeyPair();
+        Certificate server = makeCert("Benchmark CA", "localhost", 2,
+            caPair.getPrivate(), serverPair.getPublic(), null);
+        serverCert = cm.importCertPackage(ASN1Util.encode(server), SERVER_NICKNAME);
+    }
+
+    private static Extension makeBasicConstraintsExtension() throws Exception {
+        SEQUENCE bc = new SEQUENCE();
+        bc.addElement(new BOOLEAN(true)); // cA
+        OBJECT_IDENTIFIER bcOID = new OBJECT_IDENTIFIER(
+            new long[] {2, 5, 29, 19}); // from RFC 2459
+        OCTET_STRING enc = new OCTET_STRING(ASN1Util.encode(bc));
+        return new Extension(bcOID, true, enc);
+    }
+
+    private static Certificate makeCert(
+            String issuerName,
+            String subjectName,
+            int serialNumber,
+            PrivateKey privKey,
+            PublicKey pubKey,
+            SEQUENCE extensions) throws Exception {
+
+        AlgorithmIdentifier sigAlgID = new AlgorithmIdentifier(SIGNATURE_ALGORITHM.toOID(), null);
+
+        Name issuer = new Name();
+        issuer.addOrganizationName("JSS Benchmarks");
+        issuer.addCommonName(issuerName);
+
+        Name subject = new Name();
+        subject.addOrganizationName("JSS Benchmarks");
+        subject.addCommonName(subjectName);
+
+        Calendar cal = Calendar.getInstance();
+        Date notBefore = cal.getTime();
+        cal.add(Calendar.YEAR, 1);
+        Date notAfter = cal.getTime();
+
+        SubjectPublicKeyInfo spki = (SubjectPublicKeyInfo) ASN1Util.decode(
+            new SubjectPublicKeyInfo.Template(), pubKey.getEncoded());
+
+        CertificateInfo info = new CertificateInfo(
+            CertificateInfo.v3, new INTEGER(serialNumber), sigAlgID,
+            issuer, notBefore, notAfter, subject, spki);
+        if (extensions != null) {
+            info.setExtensions(extensions);
+        }
+
+        return new Certificate(info, privKey, SIGNATURE_ALGORITHM);
+    }
+
+    private void delete() {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            System.err.println("Unable to delete " + dir + ": " + e.getMessage());
+        }
+    }
+
+    public Path getDirectory() {
+        return dir;
+    }
+
+    public X509Certificate getCACert() {
+        return caCert;
+    }
+
+    public X509Certificate getServerCert() {
+        return serverCert;
+    }
+}
@@ -0,0 +1,118 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.jss.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLContext;
+
+import org.mozilla.jss.ssl.javax.JSSEngine;
+import org.mozilla.jss.ssl.javax.RecordSizePolicy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JSSEngine (JSSEngineReferenceImpl) record protection: the client wraps
+ * application data and the server unwraps it, over an established
+ * connection. wrapUnwrapGathered splits the data over 16 buffers, which
+ * are written one by one (policy=none) or gathered into records
+ * (policy=full).
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SSLEngineBenchmark {
+
+    @Param({"64", "1024", "16384"})
+    public int size;
+
+    @Param({"none", "full"})
+    public String policy;
+
+    private JSSEngine client;
+    private JSSEngine server;
+
+    private ByteBuffer payload;
+    private ByteBuffer[] chunks;
+    private ByteBuffer net;
+    private ByteBuffer app;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        SSLContext context = SSLEngines.createContext();
+
+        client = SSLEngines.createClient(context);
+        server = SSLEngines.createServer(context);
+        SSLEngines.handshake(client, server);
+
+        if (policy.equals("full")) {
+            client.setRecordSizePolicy(RecordSizePolicy.FULL);
+        }
+
+        byte[] data = new byte[size];
+        ThreadLocalRandom.current().nextBytes(data);
+
+        payload = ByteBuffer.wrap(data);
+
+        chunks = new ByteBuffer[16];
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i] = ByteBuffer.wrap(data, i * size / chunks.length, size / chunks.length).slice();
+        }
+        net = SSLEngines.allocatePacketBuffer(client);
+        app = SSLEngines.allocateApplicationBuffer(server);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        SSLEngines.close(client);
+        SSLEngines.close(server);
+    }
+
+    @Benchmark
+    public int wrapUnwrap() throws Exception {
+        payload.clear();
+        net.clear();
+        client.wrap(payload, net);
+
+        net.flip();
+        app.clear();
+        server.unwrap(net, app);
+
+        return app.position();
+    }
+
+    @Benchmark
+    public int wrapUnwrapGathered() throws Exception {
+        for (ByteBuffer chunk : chunks) {
+            chunk.clear();
+        }
+        net.clear();
+        client.wrap(chunks, net);
+
+        net.flip();
+        app.clear();
+        while (net.hasRemaining()) {
+            server.unwrap(net, app);
+        }
+
+        return app.position();
+    }
+}
@@ -0,0 +1,143 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.jss.benchmarks;
+
+import java.nio.ByteBuffer;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+
+import org.mozilla.jss.provider.javax.crypto.JSSTrustManager;
+import org.mozilla.jss.ssl.javax.JSSEngine;
+import org.mozilla.jss.ssl.javax.JSSParameters;
+
+/**
+ * Helpers for running in-memory handshakes between two JSSEngines.
+ */
+public class SSLEngines {
+
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    /**
+     * Maximum number of wrap/unwrap rounds before a handshake is
+     * considered stuck.
+     */
+    private static final int MAX_ROUNDS = 100;
+
+    public static SSLContext createContext() throws Exception {
+        NSSDatabase.getInstance();
+
+        KeyManagerFactory kmf = KeyManagerFactory.getInstance("NssX509", "Mozilla-JSS");
+
+        TrustManagerFactory tmf = TrustManagerFactory.getInstance("NssX509");
+        TrustManager[] tms = tmf.getTrustManagers();
+        for (TrustManager tm : tms) {
+            if (tm instanceof JSSTrustManager) {
+                // the benchmark certificates don't have extended key usages
+                ((JSSTrustManager) tm).configureAllowMissingExtendedKeyUsage(true);
+            }
+        }
+
+        SSLContext context = SSLContext.getInstance("TLS", "Mozilla-JSS");
+        context.init(kmf.getKeyManagers(), tms, null);
+        return context;
+    }
+
+    public static JSSEngine createClient(SSLContext context) {
+        JSSEngine engine = (JSSEngine) context.createSSLEngine();
+        engine.setUseClientMode(true);
+
+        JSSParameters params = new JSSParameters();
+        params.setHostname("localhost");
+        engine.setSSLParameters(params);
+
+        return engine;
+    }
+
+    public static JSSEngine createServer(SSLContext context) {
+        JSSEngine engine = (JSSEngine) context.createSSLEngine();
+        engine.setUseClientMode(false);
+        engine.setCertFromAlias(NSSDatabase.SERVER_NICKNAME);
+        return engine;
+    }
+
+    /**
+     * Allocate a buffer large enough for the records the engine produces.
+     */
+    public static ByteBuffer allocatePacketBuffer(SSLEngine engine) {
+        return ByteBuffer.allocate(2 * engine.getSession().getPacketBufferSize());
+    }
+
+    public static ByteBuffer allocateApplicationBuffer(SSLEngine engine) {
+        return ByteBuffer.allocate(engine.getSession().getApplicationBufferSize());
+    }
+
+    /**
+     * Run a handshake between the two engines until neither has anything
+     * left to do.
+     */
+    public static void handshake(SSLEngine client, SSLEngine server) throws SSLException {
+
+        ByteBuffer clientToServer = allocatePacketBuffer(client);
+        ByteBuffer serverToClient = allocatePacketBuffer(server);
+        ByteBuffer clientApp = allocateApplicationBuffer(client);
+        ByteBuffer serverApp = allocateApplicationBuffer(server);
+
+        client.beginHandshake();
+        server.beginHandshake();
+
+        for (int round = 0; round < MAX_ROUNDS; round++) {
+            step(client, serverToClient, clientToServer, clientApp);
+            step(server, clientToServer, serverToClient, serverApp);
+
+            if (isDone(client) && isDone(server)
+                    && clientToServer.position() == 0
+                    && serverToClient.position() == 0) {
+                return;
+            }
+        }
+
+        throw new SSLException("Handshake did not complete after " + MAX_ROUNDS + " rounds");
+    }
+
+    /**
+     * Let the engine consume its peer's records and produce its own; both
+     * buffers are kept ready for writing.
+     */
+    private static void step(SSLEngine engine, ByteBuffer in, ByteBuffer out, ByteBuffer app) throws SSLException {
+
+        in.flip();
+        engine.unwrap(in, app);
+        in.compact();
+        app.clear();
+        runTasks(engine);
+
+        engine.wrap(EMPTY, out);
+        runTasks(engine);
+    }
+
+    private static void runTasks(SSLEngine engine) {
+        Runnable task;
+        while ((task = engine.getDelegatedTask()) != null) {
+            task.run();
+        }
+    }
+
+    private static boolean isDone(SSLEngine engine) {
+        HandshakeStatus status = engine.getHandshakeStatus();
+        return status == HandshakeStatus.NOT_HANDSHAKING || status == HandshakeStatus.FINISHED;
+    }
+
+    public static void close(JSSEngine engine) {
+        if (engine != null) {
+            engine.cleanup();
+        }
+    }
+}
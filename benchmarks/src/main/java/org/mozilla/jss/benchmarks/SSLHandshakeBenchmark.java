@@ -0,0 +1,53 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.jss.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLContext;
+
+import org.mozilla.jss.ssl.javax.JSSEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Full JSSEngine handshakes between a fresh client and server.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SSLHandshakeBenchmark {
+
+    private SSLContext context;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        context = SSLEngines.createContext();
+    }
+
+    @Benchmark
+    public void handshake() throws Exception {
+        JSSEngine client = SSLEngines.createClient(context);
+        JSSEngine server = SSLEngines.createServer(context);
+        try {
+            SSLEngines.handshake(client, server);
+        } finally {
+            SSLEngines.close(client);
+            SSLEngines.close(server);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.jss.benchmarks;
+
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.mozilla.jss.pkcs11.PK11SecureRandom;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 12-byte nonces from the pkcs11prng SecureRandom, shared by several
+ * threads, with buffering in PK11SecureRandom (blockSize > 0) and with
+ * direct token draws (blockSize = 0).
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class SecureRandomBenchmark {
+
+    @Param({"0", "4096"})
+    public int blockSize;
+
+    private SecureRandom random;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        NSSDatabase.getInstance();
+        PK11SecureRandom.setBlockSize(blockSize);
+        random = SecureRandom.getInstance("pkcs11prng", "Mozilla-JSS");
+    }
+
+    @Benchmark
+    public byte[] nonce() {
+        byte[] nonce = new byte[12];
+        random.nextBytes(nonce);
+        return nonce;
+    }
+}
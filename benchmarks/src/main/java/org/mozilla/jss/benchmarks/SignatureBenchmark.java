@@ -0,0 +1,130 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.jss.benchmarks;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.mozilla.jss.crypto.PrivateKey;
+import org.mozilla.jss.crypto.SignatureAlgorithm;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * SHA-256 signing and verification through JSSSignatureSpi and
+ * PK11Signature, and one-shot and batch signing (BATCH messages per
+ * invocation, sequentially and in 4 parts using a pool of 3 threads)
+ * through the JSS Signature.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SignatureBenchmark {
+
+    static final int BATCH = 64;
+
+    @Param({"RSA", "EC"})
+    public String keyType;
+
+    private Signature signer;
+    private Signature verifier;
+    private org.mozilla.jss.crypto.Signature jssSigner;
+    private ExecutorService executor;
+
+    private byte[] data;
+    private byte[][] messages;
+    private byte[] signature;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        NSSDatabase.getInstance();
+
+        KeyPairGenerator kpg = KeyPairGenerator.getInstance(keyType, "Mozilla-JSS");
+        kpg.initialize(keyType.equals("RSA") ? 2048 : 256);
+        KeyPair pair = kpg.genKeyPair();
+
+        String algorithm = keyType.equals("RSA") ? "SHA256withRSA" : "SHA256withEC";
+
+        signer = Signature.getInstance(algorithm, "Mozilla-JSS");
+        signer.initSign(pair.getPrivate());
+
+        verifier = Signature.getInstance(algorithm, "Mozilla-JSS");
+        verifier.initVerify(pair.getPublic());
+
+        PrivateKey privateKey = (PrivateKey) pair.getPrivate();
+        jssSigner = privateKey.getOwningToken().getSignatureContext(
+                keyType.equals("RSA")
+                        ? SignatureAlgorithm.RSASignatureWithSHA256Digest
+                        : SignatureAlgorithm.ECSignatureWithSHA256Digest);
+        jssSigner.initSign(privateKey);
+
+        data = new byte[1024];
+        ThreadLocalRandom.current().nextBytes(data);
+
+        messages = new byte[BATCH][];
+        for (int i = 0; i < BATCH; i++) {
+            messages[i] = data.clone();
+            messages[i][0] = (byte) i;
+        }
+
+        signature = sign();
+
+        executor = Executors.newFixedThreadPool(3);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Benchmark
+    public byte[] sign() throws Exception {
+        signer.update(data);
+        return signer.sign();
+    }
+
+    @Benchmark
+    public byte[] signOneShot() throws Exception {
+        return jssSigner.sign(data);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public byte[][] signBatch() throws Exception {
+        return jssSigner.signAll(messages);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public byte[][] signBatchParallel() throws Exception {
+        return jssSigner.signAll(messages, executor, 4);
+    }
+
+    @Benchmark
+    public boolean verify() throws Exception {
+        verifier.update(data);
+        return verifier.verify(signature);
+    }
+}
@@ -161,6 +161,26 @@ macro(jss_tests)
         NAME "JUnit_ChainSortingTest"
         COMMAND "org.mozilla.jss.tests.TestRunner" "org.mozilla.jss.tests.ChainSortingTest"
     )
+    jss_test_java(
+        NAME "JUnit_ClientSessionCacheTest"
+        COMMAND "org.mozilla.jss.tests.TestRunner" "org.mozilla.jss.tests.ClientSessionCacheTest"
+    )
+    jss_test_java(
+        NAME "JUnit_CertValidationExecutorTest"
+        COMMAND "org.mozilla.jss.tests.TestRunner" "org.mozilla.jss.tests.CertValidationExecutorTest"
+    )
+    jss_test_java(
+        NAME "JUnit_ValidatedChainCacheTest"
+        COMMAND "org.mozilla.jss.tests.TestRunner" "org.mozilla.jss.tests.ValidatedChainCacheTest"
+    )
+    jss_test_java(
+        NAME "JUnit_CRLEntryIndexTest"
+        COMMAND "org.mozilla.jss.tests.TestRunner" "org.mozilla.jss.tests.CRLEntryIndexTest"
+    )
+    jss_test_java(
+        NAME "JUnit_LazyX509CertImplTest"
+        COMMAND "org.mozilla.jss.tests.TestRunner" "org.mozilla.jss.tests.LazyX509CertImplTest"
+    )
     jss_test_java(
         NAME "Generate_known_RSA_cert_pair"
         COMMAND "org.mozilla.jss.tests.GenerateTestCert" "${RESULTS_NSSDB_OUTPUT_DIR}" "${PASSWORD_FILE}" "20" "localhost" "SHA-256/RSA" "CA_RSA" "Server_RSA" "Client_RSA"
@@ -278,6 +298,11 @@ macro(jss_tests)
         COMMAND "org.mozilla.jss.tests.SymKeyGen" "${RESULTS_NSSDB_OUTPUT_DIR}"
         DEPENDS "Setup_DBs"
     )
+    jss_test_java(
+        NAME "Secure_Random"
+        COMMAND "org.mozilla.jss.tests.SecureRandomTest"
+        DEPENDS "Setup_DBs"
+    )
     jss_test_java(
         NAME "Symmetric_Key_Deriving"
         COMMAND "org.mozilla.jss.tests.SymKeyDeriving" "${RESULTS_NSSDB_OUTPUT_DIR}" "${PASSWORD_FILE}"
@@ -293,6 +318,11 @@ macro(jss_tests)
         COMMAND "org.mozilla.jss.tests.KeyStoreTest" "${RESULTS_NSSDB_OUTPUT_DIR}" "${PASSWORD_FILE}" getAliases
         DEPENDS "List_CA_certs" "X509CertTest" "Secret_Key_Generation" "Symmetric_Key_Deriving" "SSLClientAuth"
     )
+    jss_test_java(
+        NAME "KeyStoreTest_IndexedKeys"
+        COMMAND "org.mozilla.jss.tests.KeyStoreTest" "${RESULTS_NSSDB_OUTPUT_DIR}" "${PASSWORD_FILE}" indexedKeys
+        DEPENDS "KeyStoreTest"
+    )
     jss_test_java(
         NAME "JSSProvider"
         COMMAND "org.mozilla.jss.tests.JSSProvider" "${RESULTS_NSSDB_OUTPUT_DIR}" "${PASSWORD_FILE}"
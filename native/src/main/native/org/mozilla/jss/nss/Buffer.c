@@ -16,7 +16,7 @@ Java_org_mozilla_jss_nss_Buffer_Create(JNIEnv *env, jclass clazz, jlong length)
 
     PR_ASSERT(env != NULL && length > 0);
 
-    buf = jb_alloc((size_t) length);
+    buf = jb_pool_alloc((size_t) length);
     PR_ASSERT(buf != NULL);
 
     return JSS_PR_wrapJBuffer(env, &buf);
@@ -179,6 +179,213 @@ Java_org_mozilla_jss_nss_Buffer_Free(JNIEnv *env, jclass clazz, jobject buf)
         return;
     }
 
-    jb_free(real_buf);
+    jb_pool_release(real_buf);
     JSS_clearPtrFromProxy(env, buf);
 }
+
+JNIEXPORT void JNICALL
+Java_org_mozilla_jss_nss_BufferProxy_releaseNativeResources(JNIEnv *env,
+    jclass clazz, jlong pointer)
+{
+    j_buffer *real_buf = JSS_ptrFromLong(pointer);
+
+    PR_ASSERT(env != NULL);
+
+    if (real_buf != NULL) {
+        jb_pool_release(real_buf);
+    }
+}
+
+JNIEXPORT jlong JNICALL
+Java_org_mozilla_jss_nss_Buffer_ReadDirect(JNIEnv *env, jclass clazz,
+    jobject buf, jobject output, jint offset, jint length)
+{
+    j_buffer *real_buf = NULL;
+    uint8_t *address = NULL;
+
+    PR_ASSERT(env != NULL && buf != NULL && output != NULL);
+    PR_ASSERT(offset >= 0 && length >= 0);
+
+    if (JSS_PR_unwrapJBuffer(env, buf, &real_buf) != PR_SUCCESS) {
+        return -1;
+    }
+
+    address = (*env)->GetDirectBufferAddress(env, output);
+    if (address == NULL) {
+        return -1;
+    }
+
+    /* Data moves straight from the ring buffer into the caller's direct
+     * ByteBuffer; no intermediate allocation or copy is needed. */
+    return jb_read(real_buf, address + offset, (size_t) length);
+}
+
+JNIEXPORT jlong JNICALL
+Java_org_mozilla_jss_nss_Buffer_ReadArray(JNIEnv *env, jclass clazz,
+    jobject buf, jbyteArray output, jint offset, jint length)
+{
+    j_buffer *real_buf = NULL;
+    uint8_t *array = NULL;
+    size_t read_amount = 0;
+
+    PR_ASSERT(env != NULL && buf != NULL && output != NULL);
+    PR_ASSERT(offset >= 0 && length >= 0);
+
+    if (JSS_PR_unwrapJBuffer(env, buf, &real_buf) != PR_SUCCESS) {
+        return -1;
+    }
+
+    /* jb_read(...) is a plain memcpy and never calls back into the JVM, so
+     * it is safe to hold the critical region for its duration. */
+    array = (*env)->GetPrimitiveArrayCritical(env, output, NULL);
+    if (array == NULL) {
+        ASSERT_OUTOFMEM(env);
+        return -1;
+    }
+
+    read_amount = jb_read(real_buf, array + offset, (size_t) length);
+    (*env)->ReleasePrimitiveArrayCritical(env, output, array, 0);
+
+    return read_amount;
+}
+
+JNIEXPORT jlong JNICALL
+Java_org_mozilla_jss_nss_Buffer_WriteDirect(JNIEnv *env, jclass clazz,
+    jobject buf, jobject input, jint offset, jint length)
+{
+    j_buffer *real_buf = NULL;
+    uint8_t *address = NULL;
+
+    PR_ASSERT(env != NULL && buf != NULL && input != NULL);
+    PR_ASSERT(offset >= 0 && length >= 0);
+
+    if (JSS_PR_unwrapJBuffer(env, buf, &real_buf) != PR_SUCCESS) {
+        return -1;
+    }
+
+    address = (*env)->GetDirectBufferAddress(env, input);
+    if (address == NULL) {
+        return -1;
+    }
+
+    return jb_write(real_buf, address + offset, (size_t) length);
+}
+
+JNIEXPORT jlong JNICALL
+Java_org_mozilla_jss_nss_Buffer_WriteArray(JNIEnv *env, jclass clazz,
+    jobject buf, jbyteArray input, jint offset, jint length)
+{
+    j_buffer *real_buf = NULL;
+    uint8_t *array = NULL;
+    size_t write_amount = 0;
+
+    PR_ASSERT(env != NULL && buf != NULL && input != NULL);
+    PR_ASSERT(offset >= 0 && length >= 0);
+
+    if (JSS_PR_unwrapJBuffer(env, buf, &real_buf) != PR_SUCCESS) {
+        return -1;
+    }
+
+    /* See note in ReadArray about the critical region. */
+    array = (*env)->GetPrimitiveArrayCritical(env, input, NULL);
+    if (array == NULL) {
+        ASSERT_OUTOFMEM(env);
+        return -1;
+    }
+
+    write_amount = jb_write(real_buf, array + offset, (size_t) length);
+    (*env)->ReleasePrimitiveArrayCritical(env, input, array, JNI_ABORT);
+
+    return write_amount;
+}
+
+JNIEXPORT jboolean JNICALL
+Java_org_mozilla_jss_nss_Buffer_Grow(JNIEnv *env, jclass clazz, jobject buf,
+    jlong length)
+{
+    j_buffer *real_buf = NULL;
+
+    PR_ASSERT(env != NULL && buf != NULL && length > 0);
+
+    if (JSS_PR_unwrapJBuffer(env, buf, &real_buf) != PR_SUCCESS) {
+        return JNI_FALSE;
+    }
+
+    return jb_grow(real_buf, (size_t) length) ? JNI_TRUE : JNI_FALSE;
+}
+
+JNIEXPORT jboolean JNICALL
+Java_org_mozilla_jss_nss_Buffer_Detach(JNIEnv *env, jclass clazz, jobject buf)
+{
+    j_buffer *real_buf = NULL;
+
+    PR_ASSERT(env != NULL && buf != NULL);
+
+    if (JSS_PR_unwrapJBuffer(env, buf, &real_buf) != PR_SUCCESS) {
+        return JNI_FALSE;
+    }
+
+    return jb_detach(real_buf) ? JNI_TRUE : JNI_FALSE;
+}
+
+JNIEXPORT jboolean JNICALL
+Java_org_mozilla_jss_nss_Buffer_IsAttached(JNIEnv *env, jclass clazz,
+    jobject buf)
+{
+    j_buffer *real_buf = NULL;
+
+    PR_ASSERT(env != NULL && buf != NULL);
+
+    if (JSS_PR_unwrapJBuffer(env, buf, &real_buf) != PR_SUCCESS) {
+        return JNI_FALSE;
+    }
+
+    return jb_is_attached(real_buf) ? JNI_TRUE : JNI_FALSE;
+}
+
+JNIEXPORT void JNICALL
+Java_org_mozilla_jss_nss_Buffer_SetPoolLimit(JNIEnv *env, jclass clazz,
+    jlong limit)
+{
+    PR_ASSERT(env != NULL && limit >= 0);
+
+    jb_pool_set_limit((size_t) limit);
+}
+
+JNIEXPORT jlong JNICALL
+Java_org_mozilla_jss_nss_Buffer_GetPoolLimit(JNIEnv *env, jclass clazz)
+{
+    PR_ASSERT(env != NULL);
+
+    return (jlong) jb_pool_get_limit();
+}
+
+JNIEXPORT jlongArray JNICALL
+Java_org_mozilla_jss_nss_Buffer_getPoolCounters(JNIEnv *env, jclass clazz)
+{
+    jb_pool_counters stats;
+    jlong values[7];
+    jlongArray result = NULL;
+
+    PR_ASSERT(env != NULL);
+
+    jb_pool_stats(&stats);
+
+    /* Keep in sync with Buffer.PoolStatistics. */
+    values[0] = (jlong) stats.hits;
+    values[1] = (jlong) stats.misses;
+    values[2] = (jlong) stats.returns;
+    values[3] = (jlong) stats.discards;
+    values[4] = (jlong) stats.grows;
+    values[5] = (jlong) stats.pooled_buffers;
+    values[6] = (jlong) stats.pooled_bytes;
+
+    result = (*env)->NewLongArray(env, 7);
+    if (result == NULL) {
+        ASSERT_OUTOFMEM(env);
+        return NULL;
+    }
+
+    (*env)->SetLongArrayRegion(env, result, 0, 7, values);
+    return result;
+}
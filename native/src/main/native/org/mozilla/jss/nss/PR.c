@@ -1,6 +1,7 @@
 #include <nspr.h>
 #include <limits.h>
 #include <stdint.h>
+#include <string.h>
 #include <jni.h>
 
 #include "jssutil.h"
@@ -114,6 +115,19 @@ Java_org_mozilla_jss_nss_PR_Close(JNIEnv *env, jclass clazz, jobject fd, jboolea
     return ret;
 }
 
+JNIEXPORT void JNICALL
+Java_org_mozilla_jss_nss_PRFDProxy_releaseNativeResources(JNIEnv *env,
+    jclass clazz, jlong pointer)
+{
+    PRFileDesc *real_fd = JSS_ptrFromLong(pointer);
+
+    PR_ASSERT(env != NULL);
+
+    if (real_fd != NULL) {
+        PR_Close(real_fd);
+    }
+}
+
 JNIEXPORT int JNICALL
 Java_org_mozilla_jss_nss_PR_Shutdown(JNIEnv *env, jclass clazz, jobject fd,
     jint how)
@@ -134,24 +148,18 @@ Java_org_mozilla_jss_nss_PR_Shutdown(JNIEnv *env, jclass clazz, jobject fd,
     return PR_Shutdown(real_fd, how);
 }
 
-JNIEXPORT jobject JNICALL
-Java_org_mozilla_jss_nss_PR_Read(JNIEnv *env, jclass clazz, jobject fd,
-    jint amount)
+/* Read up to amount bytes from real_fd into buffer. Returns the number of
+ * bytes read (possibly zero, on end of data), or -1 on error, in which case
+ * the NSPR error is left set for the caller to inspect. */
+static int
+JSS_PR_ReadFully(PRFileDesc *real_fd, uint8_t *buffer, int amount)
 {
-    PRFileDesc *real_fd = NULL;
-    jobject result = NULL;
     int read_amount = 0;
     int this_read = 0;
-    uint8_t *buffer = NULL;
     PRSocketOptionData opt = { 0 };
     PRDescType fd_type;
 
-    PR_ASSERT(env != NULL && fd != NULL && amount >= 0);
-    PR_SetError(0, 0);
-
-    if (JSS_PR_getPRFileDesc(env, fd, &real_fd) != PR_SUCCESS) {
-        return NULL;
-    }
+    PR_ASSERT(real_fd != NULL);
 
     fd_type = PR_GetDescType(real_fd);
     opt.value.non_blocking = PR_FALSE;
@@ -167,10 +175,6 @@ Java_org_mozilla_jss_nss_PR_Read(JNIEnv *env, jclass clazz, jobject fd,
         }
     }
 
-    PR_ASSERT(real_fd != NULL);
-
-    buffer = calloc(amount, sizeof(uint8_t));
-
     /* Work around a bug in NSS/NSPR: sometimes PR_Read returns a much smaller
      * read than expected, when it could read much more. */
     while (read_amount < amount) {
@@ -188,7 +192,7 @@ Java_org_mozilla_jss_nss_PR_Read(JNIEnv *env, jclass clazz, jobject fd,
                 break;
             }
 
-            goto done;
+            return -1;
         } else {
             read_amount += this_read;
 
@@ -201,6 +205,34 @@ Java_org_mozilla_jss_nss_PR_Read(JNIEnv *env, jclass clazz, jobject fd,
         }
     }
 
+    return read_amount;
+}
+
+JNIEXPORT jobject JNICALL
+Java_org_mozilla_jss_nss_PR_Read(JNIEnv *env, jclass clazz, jobject fd,
+    jint amount)
+{
+    PRFileDesc *real_fd = NULL;
+    jobject result = NULL;
+    int read_amount = 0;
+    uint8_t *buffer = NULL;
+
+    PR_ASSERT(env != NULL && fd != NULL && amount >= 0);
+    PR_SetError(0, 0);
+
+    if (JSS_PR_getPRFileDesc(env, fd, &real_fd) != PR_SUCCESS) {
+        return NULL;
+    }
+
+    PR_ASSERT(real_fd != NULL);
+
+    buffer = calloc(amount, sizeof(uint8_t));
+
+    read_amount = JSS_PR_ReadFully(real_fd, buffer, amount);
+    if (read_amount < 0) {
+        goto done;
+    }
+
     result = JSS_ToByteArray(env, buffer, read_amount);
 
 done:
@@ -208,6 +240,86 @@ done:
     return result;
 }
 
+/* Size of the stack buffer ReadArray and WriteArray stage data through: the
+ * plaintext of one full TLS record, so the common case takes a single pass
+ * without allocating. */
+#define JSS_PR_SCRATCH_SIZE 16384
+
+JNIEXPORT int JNICALL
+Java_org_mozilla_jss_nss_PR_ReadDirect(JNIEnv *env, jclass clazz, jobject fd,
+    jobject dst, jint offset, jint amount)
+{
+    PRFileDesc *real_fd = NULL;
+    uint8_t *address = NULL;
+
+    PR_ASSERT(env != NULL && fd != NULL && dst != NULL);
+    PR_ASSERT(offset >= 0 && amount >= 0);
+    PR_SetError(0, 0);
+
+    if (JSS_PR_getPRFileDesc(env, fd, &real_fd) != PR_SUCCESS) {
+        PR_SetError(PR_BAD_DESCRIPTOR_ERROR, 0);
+        return -1;
+    }
+
+    address = (*env)->GetDirectBufferAddress(env, dst);
+    if (address == NULL) {
+        PR_SetError(PR_INVALID_ARGUMENT_ERROR, 0);
+        return -1;
+    }
+
+    /* NSS decrypts straight into the caller's direct ByteBuffer. */
+    return JSS_PR_ReadFully(real_fd, address + offset, amount);
+}
+
+JNIEXPORT int JNICALL
+Java_org_mozilla_jss_nss_PR_ReadArray(JNIEnv *env, jclass clazz, jobject fd,
+    jbyteArray dst, jint offset, jint amount)
+{
+    PRFileDesc *real_fd = NULL;
+    uint8_t buffer[JSS_PR_SCRATCH_SIZE];
+    int read_amount = 0;
+    int this_read = 0;
+    int chunk = 0;
+
+    PR_ASSERT(env != NULL && fd != NULL && dst != NULL);
+    PR_ASSERT(offset >= 0 && amount >= 0);
+    PR_SetError(0, 0);
+
+    if (JSS_PR_getPRFileDesc(env, fd, &real_fd) != PR_SUCCESS) {
+        PR_SetError(PR_BAD_DESCRIPTOR_ERROR, 0);
+        return -1;
+    }
+
+    /* PR_Read on a SSL PRFileDesc can call back into Java (certificate
+     * and alert callbacks), so we can't hold a critical region on dst.
+     * Instead, read through a stack buffer and copy each chunk into the
+     * caller's array region; neither side allocates. */
+    do {
+        chunk = PR_MIN(amount - read_amount, JSS_PR_SCRATCH_SIZE);
+
+        this_read = JSS_PR_ReadFully(real_fd, buffer, chunk);
+        if (this_read < 0) {
+            if (read_amount == 0) {
+                return -1;
+            }
+
+            /* Hand back what we've already read; the error (if it wasn't
+             * just the end of the available data) resurfaces on the next
+             * read. */
+            PR_SetError(0, 0);
+            break;
+        }
+
+        if (this_read > 0) {
+            (*env)->SetByteArrayRegion(env, dst, offset + read_amount,
+                                       this_read, (jbyte *) buffer);
+            read_amount += this_read;
+        }
+    } while (this_read == chunk && read_amount < amount);
+
+    return read_amount;
+}
+
 JNIEXPORT int JNICALL
 Java_org_mozilla_jss_nss_PR_Write(JNIEnv *env, jclass clazz, jobject fd,
     jbyteArray buf)
@@ -249,6 +361,188 @@ Java_org_mozilla_jss_nss_PR_Write(JNIEnv *env, jclass clazz, jobject fd,
     return result;
 }
 
+JNIEXPORT int JNICALL
+Java_org_mozilla_jss_nss_PR_WriteDirect(JNIEnv *env, jclass clazz, jobject fd,
+    jobject src, jint offset, jint amount)
+{
+    PRFileDesc *real_fd = NULL;
+    uint8_t *address = NULL;
+
+    PR_ASSERT(env != NULL && fd != NULL && src != NULL);
+    PR_ASSERT(offset >= 0 && amount >= 0);
+    PR_SetError(0, 0);
+
+    if (JSS_PR_getPRFileDesc(env, fd, &real_fd) != PR_SUCCESS) {
+        PR_SetError(PR_BAD_DESCRIPTOR_ERROR, 0);
+        return -1;
+    }
+
+    address = (*env)->GetDirectBufferAddress(env, src);
+    if (address == NULL) {
+        PR_SetError(PR_INVALID_ARGUMENT_ERROR, 0);
+        return -1;
+    }
+
+    return PR_Write(real_fd, address + offset, amount);
+}
+
+JNIEXPORT int JNICALL
+Java_org_mozilla_jss_nss_PR_WriteArray(JNIEnv *env, jclass clazz, jobject fd,
+    jbyteArray src, jint offset, jint amount)
+{
+    PRFileDesc *real_fd = NULL;
+    uint8_t buffer[JSS_PR_SCRATCH_SIZE];
+    int written = 0;
+    int this_write = 0;
+    int chunk = 0;
+
+    PR_ASSERT(env != NULL && fd != NULL && src != NULL);
+    PR_ASSERT(offset >= 0 && amount >= 0);
+    PR_SetError(0, 0);
+
+    if (JSS_PR_getPRFileDesc(env, fd, &real_fd) != PR_SUCCESS) {
+        PR_SetError(PR_BAD_DESCRIPTOR_ERROR, 0);
+        return -1;
+    }
+
+    /* See note in ReadArray: copy only the requested region, a chunk at a
+     * time, through a stack buffer rather than pinning (or copying) the
+     * whole array. */
+    do {
+        chunk = PR_MIN(amount - written, JSS_PR_SCRATCH_SIZE);
+
+        (*env)->GetByteArrayRegion(env, src, offset + written, chunk,
+                                   (jbyte *) buffer);
+        if ((*env)->ExceptionCheck(env)) {
+            PR_SetError(PR_INVALID_ARGUMENT_ERROR, 0);
+            return -1;
+        }
+
+        this_write = PR_Write(real_fd, buffer, chunk);
+        if (this_write < 0) {
+            if (written == 0) {
+                return -1;
+            }
+
+            /* Report the bytes NSS already took; see ReadArray. */
+            PR_SetError(0, 0);
+            break;
+        }
+
+        written += this_write;
+    } while (this_write == chunk && written < amount);
+
+    return written;
+}
+
+JNIEXPORT int JNICALL
+Java_org_mozilla_jss_nss_PR_WritevNative(JNIEnv *env, jclass clazz,
+    jobject fd, jobjectArray data, jintArray offsets, jintArray lengths,
+    jint count)
+{
+    PRFileDesc *real_fd = NULL;
+    uint8_t buffer[JSS_PR_SCRATCH_SIZE];
+    jobject element = NULL;
+    uint8_t *address = NULL;
+    jint offset = 0;
+    jint length = 0;
+    jint used = 0;
+    int index = 0;
+    int chunk = 0;
+    int amount = 0;
+    int written = 0;
+    int this_write = 0;
+
+    PR_ASSERT(env != NULL && fd != NULL && data != NULL);
+    PR_ASSERT(offsets != NULL && lengths != NULL && count >= 0);
+    PR_SetError(0, 0);
+
+    if (JSS_PR_getPRFileDesc(env, fd, &real_fd) != PR_SUCCESS) {
+        PR_SetError(PR_BAD_DESCRIPTOR_ERROR, 0);
+        return -1;
+    }
+
+    /* A single direct buffer needs no gathering; write from it in place. */
+    if (count == 1) {
+        element = (*env)->GetObjectArrayElement(env, data, 0);
+        address = (*env)->GetDirectBufferAddress(env, element);
+        (*env)->DeleteLocalRef(env, element);
+
+        if (address != NULL) {
+            (*env)->GetIntArrayRegion(env, offsets, 0, 1, &offset);
+            (*env)->GetIntArrayRegion(env, lengths, 0, 1, &length);
+            if ((*env)->ExceptionCheck(env)) {
+                PR_SetError(PR_INVALID_ARGUMENT_ERROR, 0);
+                return -1;
+            }
+
+            return PR_Write(real_fd, address + offset, length);
+        }
+    }
+
+    /* We can't use PR_Writev: NSS's ssl_WriteV only coalesces small
+     * vectors and otherwise sends (at least) one record per vector.
+     * Instead, gather up to one full record's plaintext at a time into a
+     * stack buffer and hand each to a single PR_Write, so NSS emits
+     * records as large as the gathered data. As in WriteArray, heap
+     * arrays are copied by region since PR_Write on a SSL PRFileDesc can
+     * call back into Java. */
+    do {
+        chunk = 0;
+
+        while (chunk < JSS_PR_SCRATCH_SIZE && index < count) {
+            if (used == 0) {
+                (*env)->GetIntArrayRegion(env, offsets, index, 1, &offset);
+                (*env)->GetIntArrayRegion(env, lengths, index, 1, &length);
+                if ((*env)->ExceptionCheck(env)) {
+                    PR_SetError(PR_INVALID_ARGUMENT_ERROR, 0);
+                    return -1;
+                }
+                PR_ASSERT(offset >= 0 && length >= 0);
+            }
+
+            amount = PR_MIN(length - used, JSS_PR_SCRATCH_SIZE - chunk);
+
+            element = (*env)->GetObjectArrayElement(env, data, index);
+            address = (*env)->GetDirectBufferAddress(env, element);
+            if (address != NULL) {
+                memcpy(buffer + chunk, address + offset + used, amount);
+            } else {
+                (*env)->GetByteArrayRegion(env, element, offset + used,
+                                           amount, (jbyte *) (buffer + chunk));
+            }
+            (*env)->DeleteLocalRef(env, element);
+
+            if ((*env)->ExceptionCheck(env)) {
+                PR_SetError(PR_INVALID_ARGUMENT_ERROR, 0);
+                return -1;
+            }
+
+            chunk += amount;
+            used += amount;
+            if (used == length) {
+                index += 1;
+                used = 0;
+            }
+        }
+
+        this_write = PR_Write(real_fd, buffer, chunk);
+        if (this_write < 0) {
+            if (written == 0) {
+                return -1;
+            }
+
+            /* Report the bytes NSS already took; see ReadArray. */
+            PR_SetError(0, 0);
+            break;
+        }
+
+        written += this_write;
+    } while (this_write == chunk && index < count);
+
+    return written;
+}
+
 JNIEXPORT jobject JNICALL
 Java_org_mozilla_jss_nss_PR_Recv(JNIEnv *env, jclass clazz, jobject fd,
     jint amount, jint flags, jlong timeout)
@@ -21,3 +21,9 @@ Java_org_mozilla_jss_nss_PRErrors_getSocketShutdownError(JNIEnv *env, jclass cla
 {
     return PR_SOCKET_SHUTDOWN_ERROR;
 }
+
+JNIEXPORT int JNICALL
+Java_org_mozilla_jss_nss_PRErrors_getIOTimeoutError(JNIEnv *env, jclass clazz)
+{
+    return PR_IO_TIMEOUT_ERROR;
+}
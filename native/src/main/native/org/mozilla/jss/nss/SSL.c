@@ -16,6 +16,8 @@
 #include "PRFDProxy.h"
 #include "SSLFDProxy.h"
 #include "SSLVersionRange.h"
+#include "BufferProxy.h"
+#include "j_buffer.h"
 
 #include "_jni/org_mozilla_jss_nss_SSL.h"
 
@@ -242,6 +244,31 @@ Java_org_mozilla_jss_nss_SSL_SetURL(JNIEnv *env, jclass clazz, jobject fd,
     return ret;
 }
 
+JNIEXPORT int JNICALL
+Java_org_mozilla_jss_nss_SSL_SetSockPeerID(JNIEnv *env, jclass clazz,
+    jobject fd, jstring peer_id)
+{
+    PRFileDesc *real_fd = NULL;
+    SECStatus ret = SECFailure;
+    const char *real_peer_id = NULL;
+
+    PR_ASSERT(env != NULL && fd != NULL);
+    PR_SetError(0, 0);
+
+    if (JSS_PR_getPRFileDesc(env, fd, &real_fd) != PR_SUCCESS) {
+        return ret;
+    }
+
+    real_peer_id = JSS_RefJString(env, peer_id);
+    if (real_peer_id == NULL) {
+        return ret;
+    }
+
+    ret = SSL_SetSockPeerID(real_fd, real_peer_id);
+    JSS_DerefJString(env, peer_id, real_peer_id);
+    return ret;
+}
+
 JNIEXPORT int JNICALL
 Java_org_mozilla_jss_nss_SSL_CipherPrefSet(JNIEnv *env, jclass clazz,
     jobject fd, jint cipher, jboolean enabled)
@@ -346,6 +373,96 @@ Java_org_mozilla_jss_nss_SSL_VersionRangeSetNative(JNIEnv *env, jclass clazz,
     return SSL_VersionRangeSet(real_fd, &vrange);
 }
 
+JNIEXPORT int JNICALL
+Java_org_mozilla_jss_nss_SSL_ApplyProfileNative(JNIEnv *env, jclass clazz,
+    jobject fd, jint min_ssl, jint max_ssl, jintArray ciphers,
+    jintArray options)
+{
+    PRFileDesc *real_fd = NULL;
+    SSLVersionRange vrange;
+    jint *values = NULL;
+    jsize length = 0;
+    jsize i = 0;
+    int ret = SECFailure;
+
+    PR_ASSERT(env != NULL && fd != NULL);
+    PR_SetError(0, 0);
+
+    if (JSS_PR_getPRFileDesc(env, fd, &real_fd) != PR_SUCCESS) {
+        JSS_throwMsg(env, INVALID_PARAMETER_EXCEPTION,
+            "Unable to dereference fd object");
+        return SECFailure;
+    }
+
+    /* A negative version leaves the default version range in place. */
+    if (min_ssl >= 0 && max_ssl >= 0) {
+        if (min_ssl >= JSSL_enums_size || max_ssl >= JSSL_enums_size) {
+            char buf[128];
+            snprintf(buf, 128,
+                     "SSL.ApplyProfileNative(): for min=%d max=%d failed - out of range for array JSSL_enums size: %d",
+                     min_ssl, max_ssl, JSSL_enums_size);
+            JSSL_throwSSLSocketException(env, buf);
+            return SECFailure;
+        }
+
+        vrange.min = JSSL_enums[min_ssl];
+        vrange.max = JSSL_enums[max_ssl];
+
+        if (SSL_VersionRangeSet(real_fd, &vrange) != SECSuccess) {
+            return SECFailure;
+        }
+    }
+
+    /* A null list of cipher suites leaves the default preferences in
+     * place. Otherwise, disable every suite NSS implements and enable
+     * only the given ones. As with the individual CipherPrefSet calls,
+     * suites refused by local policy are skipped rather than failing. */
+    if (ciphers != NULL) {
+        for (i = 0; i < SSL_NumImplementedCiphers; i++) {
+            SSL_CipherPrefSet(real_fd, SSL_ImplementedCiphers[i], PR_FALSE);
+        }
+
+        length = (*env)->GetArrayLength(env, ciphers);
+        values = (*env)->GetIntArrayElements(env, ciphers, NULL);
+        if (values == NULL) {
+            ASSERT_OUTOFMEM(env);
+            return SECFailure;
+        }
+
+        for (i = 0; i < length; i++) {
+            SSL_CipherPrefSet(real_fd, values[i], PR_TRUE);
+        }
+
+        (*env)->ReleaseIntArrayElements(env, ciphers, values, JNI_ABORT);
+        values = NULL;
+    }
+
+    /* Options are (option, value) pairs; stop at the first failure. */
+    if (options != NULL) {
+        length = (*env)->GetArrayLength(env, options);
+        values = (*env)->GetIntArrayElements(env, options, NULL);
+        if (values == NULL) {
+            ASSERT_OUTOFMEM(env);
+            return SECFailure;
+        }
+
+        for (i = 0; i + 1 < length; i += 2) {
+            if (SSL_OptionSet(real_fd, values[i], values[i + 1]) != SECSuccess) {
+                goto finish;
+            }
+        }
+    }
+
+    ret = SECSuccess;
+
+finish:
+    if (values != NULL) {
+        (*env)->ReleaseIntArrayElements(env, options, values, JNI_ABORT);
+    }
+
+    return ret;
+}
+
 JNIEXPORT jobject JNICALL
 Java_org_mozilla_jss_nss_SSL_VersionRangeGet(JNIEnv *env, jclass clazz,
     jobject fd)
@@ -649,6 +766,257 @@ Java_org_mozilla_jss_nss_SSL_ForceHandshake(JNIEnv *env, jclass clazz,
     return SSL_ForceHandshake(real_fd);
 }
 
+/* Indices into the result array of UnwrapStepNative and WrapStepNative;
+ * keep in sync with the STEP_* constants in SSL.java. */
+#define JSS_STEP_CONSUMED 0
+#define JSS_STEP_PRODUCED 1
+#define JSS_STEP_ERROR 2
+#define JSS_STEP_READ_PENDING 3
+#define JSS_STEP_WRITE_PENDING 4
+#define JSS_STEP_RESULT_SIZE 5
+
+/* Size of the stack buffer UnwrapStepNative and WrapStepNative stage
+ * array data through, as in PR.ReadArray and PR.WriteArray. */
+#define JSS_STEP_SCRATCH_SIZE 16384
+
+static void
+JSS_SSL_storeStepResult(JNIEnv *env, jintArray result, jint consumed,
+    jint produced, jint error, j_buffer *read_buf, j_buffer *write_buf)
+{
+    jint values[JSS_STEP_RESULT_SIZE];
+
+    values[JSS_STEP_CONSUMED] = consumed;
+    values[JSS_STEP_PRODUCED] = produced;
+    values[JSS_STEP_ERROR] = error;
+    values[JSS_STEP_READ_PENDING] = (jint) jb_read_capacity(read_buf);
+    values[JSS_STEP_WRITE_PENDING] = (jint) jb_read_capacity(write_buf);
+
+    (*env)->SetIntArrayRegion(env, result, 0, JSS_STEP_RESULT_SIZE, values);
+}
+
+JNIEXPORT int JNICALL
+Java_org_mozilla_jss_nss_SSL_UnwrapStepNative(JNIEnv *env, jclass clazz,
+    jobject fd, jobject read_buf, jobject write_buf, jobject src,
+    jint src_offset, jint src_length, jobject dst, jint dst_offset,
+    jint dst_length, jintArray result)
+{
+    PRFileDesc *real_fd = NULL;
+    j_buffer *real_read_buf = NULL;
+    j_buffer *real_write_buf = NULL;
+    uint8_t *src_address = NULL;
+    uint8_t *dst_address = NULL;
+    uint8_t *array = NULL;
+    uint8_t scratch[JSS_STEP_SCRATCH_SIZE];
+    uint8_t *output = NULL;
+    jint consumed = 0;
+    jint produced = 0;
+    jint error = 0;
+    jint amount = 0;
+    size_t this_write = 0;
+    int this_read = 0;
+    int ret = SECFailure;
+
+    PR_ASSERT(env != NULL && fd != NULL && read_buf != NULL && write_buf != NULL);
+    PR_ASSERT(src != NULL && dst != NULL && result != NULL);
+    PR_ASSERT(src_offset >= 0 && src_length >= 0);
+    PR_ASSERT(dst_offset >= 0 && dst_length >= 0);
+    PR_SetError(0, 0);
+
+    if (JSS_PR_getPRFileDesc(env, fd, &real_fd) != PR_SUCCESS ||
+            JSS_PR_unwrapJBuffer(env, read_buf, &real_read_buf) != PR_SUCCESS ||
+            JSS_PR_unwrapJBuffer(env, write_buf, &real_write_buf) != PR_SUCCESS) {
+        return SECFailure;
+    }
+
+    /* src and dst are either direct ByteBuffers or byte arrays. */
+    src_address = (*env)->GetDirectBufferAddress(env, src);
+    dst_address = (*env)->GetDirectBufferAddress(env, dst);
+
+    /* Same steps as JSSEngineReferenceImpl.unwrap(...): feed ciphertext
+     * from src into read_buf and decrypt whatever NSS can into dst, until
+     * neither makes progress. */
+    do {
+        this_write = 0;
+        this_read = 0;
+
+        if (consumed < src_length) {
+            if (src_address != NULL) {
+                this_write = jb_write(real_read_buf, src_address + src_offset + consumed,
+                                      (size_t) (src_length - consumed));
+            } else {
+                /* jb_write is a plain memcpy; see Buffer.WriteArray. */
+                array = (*env)->GetPrimitiveArrayCritical(env, src, NULL);
+                if (array == NULL) {
+                    ASSERT_OUTOFMEM(env);
+                    goto finish;
+                }
+
+                this_write = jb_write(real_read_buf, array + src_offset + consumed,
+                                      (size_t) (src_length - consumed));
+                (*env)->ReleasePrimitiveArrayCritical(env, src, array, JNI_ABORT);
+                array = NULL;
+            }
+
+            consumed += (jint) this_write;
+        }
+
+        if (produced < dst_length) {
+            /* NSS decrypts straight into a direct dst. Otherwise, decrypt
+             * into the stack buffer and copy each chunk into the array:
+             * PR_Read can call back into Java, so we can't hold a critical
+             * region on dst (see PR.ReadArray). */
+            if (dst_address != NULL) {
+                output = dst_address + dst_offset + produced;
+                amount = dst_length - produced;
+            } else {
+                output = scratch;
+                amount = PR_MIN(dst_length - produced, JSS_STEP_SCRATCH_SIZE);
+            }
+
+            this_read = PR_Read(real_fd, output, amount);
+            if (this_read > 0) {
+                if (dst_address == NULL) {
+                    (*env)->SetByteArrayRegion(env, dst, dst_offset + produced,
+                                               this_read, (jbyte *) scratch);
+                    if ((*env)->ExceptionCheck(env)) {
+                        goto finish;
+                    }
+                }
+
+                produced += this_read;
+            } else if (this_read == 0) {
+                /* End of data; the caller checks for close_notify. */
+                break;
+            } else {
+                error = PR_GetError();
+                if (error != PR_WOULD_BLOCK_ERROR) {
+                    break;
+                }
+
+                /* Nothing to decrypt until more ciphertext arrives. */
+                error = 0;
+                this_read = 0;
+            }
+        }
+    } while (this_write > 0 || this_read > 0);
+
+    JSS_SSL_storeStepResult(env, result, consumed, produced, error,
+                            real_read_buf, real_write_buf);
+    ret = SECSuccess;
+
+finish:
+    return ret;
+}
+
+JNIEXPORT int JNICALL
+Java_org_mozilla_jss_nss_SSL_WrapStepNative(JNIEnv *env, jclass clazz,
+    jobject fd, jobject read_buf, jobject write_buf, jobject src,
+    jint src_offset, jint src_length, jobject dst, jint dst_offset,
+    jint dst_length, jint max_write, jintArray result)
+{
+    PRFileDesc *real_fd = NULL;
+    j_buffer *real_read_buf = NULL;
+    j_buffer *real_write_buf = NULL;
+    uint8_t *src_address = NULL;
+    uint8_t *dst_address = NULL;
+    uint8_t *array = NULL;
+    uint8_t scratch[JSS_STEP_SCRATCH_SIZE];
+    uint8_t *input = NULL;
+    uint8_t dummy_buffer = 0;
+    jint consumed = 0;
+    jint produced = 0;
+    jint error = 0;
+    jint amount = 0;
+    size_t drained = 0;
+    int this_write = 0;
+    int ret = SECFailure;
+
+    PR_ASSERT(env != NULL && fd != NULL && read_buf != NULL && write_buf != NULL);
+    PR_ASSERT(src != NULL && dst != NULL && result != NULL);
+    PR_ASSERT(src_offset >= 0 && src_length >= 0);
+    PR_ASSERT(dst_offset >= 0 && dst_length >= 0 && max_write > 0);
+    PR_SetError(0, 0);
+
+    if (JSS_PR_getPRFileDesc(env, fd, &real_fd) != PR_SUCCESS ||
+            JSS_PR_unwrapJBuffer(env, read_buf, &real_read_buf) != PR_SUCCESS ||
+            JSS_PR_unwrapJBuffer(env, write_buf, &real_write_buf) != PR_SUCCESS) {
+        return SECFailure;
+    }
+
+    /* src and dst are either direct ByteBuffers or byte arrays. */
+    src_address = (*env)->GetDirectBufferAddress(env, src);
+    dst_address = (*env)->GetDirectBufferAddress(env, dst);
+
+    /* Same steps as JSSEngineReferenceImpl.wrap(...): encrypt src (at most
+     * max_write bytes at a time) into write_buf and move the records to
+     * dst, until neither makes progress. Once src is exhausted (or the
+     * write failed), an empty write still flushes NSS's buffers. */
+    do {
+        this_write = 0;
+        drained = 0;
+
+        if (consumed < src_length && error == 0) {
+            amount = PR_MIN(src_length - consumed, max_write);
+            if (src_address != NULL) {
+                input = src_address + src_offset + consumed;
+            } else {
+                /* As in PR.WriteArray, copy each chunk of an array src
+                 * into the stack buffer, since PR_Write can call back
+                 * into Java. */
+                amount = PR_MIN(amount, JSS_STEP_SCRATCH_SIZE);
+                (*env)->GetByteArrayRegion(env, src, src_offset + consumed,
+                                           amount, (jbyte *) scratch);
+                if ((*env)->ExceptionCheck(env)) {
+                    goto finish;
+                }
+                input = scratch;
+            }
+
+            this_write = PR_Write(real_fd, input, amount);
+            if (this_write > 0) {
+                consumed += this_write;
+            } else {
+                error = PR_GetError();
+                if (error == PR_WOULD_BLOCK_ERROR) {
+                    error = 0;
+                }
+                this_write = 0;
+            }
+        } else {
+            PR_Write(real_fd, &dummy_buffer, 0);
+        }
+
+        amount = PR_MIN((jint) jb_read_capacity(real_write_buf), dst_length - produced);
+        if (amount > 0) {
+            if (dst_address != NULL) {
+                drained = jb_read(real_write_buf, dst_address + dst_offset + produced,
+                                  (size_t) amount);
+            } else {
+                /* jb_read is a plain memcpy; see Buffer.ReadArray. */
+                array = (*env)->GetPrimitiveArrayCritical(env, dst, NULL);
+                if (array == NULL) {
+                    ASSERT_OUTOFMEM(env);
+                    goto finish;
+                }
+
+                drained = jb_read(real_write_buf, array + dst_offset + produced,
+                                  (size_t) amount);
+                (*env)->ReleasePrimitiveArrayCritical(env, dst, array, 0);
+                array = NULL;
+            }
+
+            produced += (jint) drained;
+        }
+    } while (this_write > 0 || drained > 0);
+
+    JSS_SSL_storeStepResult(env, result, consumed, produced, error,
+                            real_read_buf, real_write_buf);
+    ret = SECSuccess;
+
+finish:
+    return ret;
+}
+
 JNIEXPORT int JNICALL
 Java_org_mozilla_jss_nss_SSL_ConfigSecureServer(JNIEnv *env, jclass clazz,
     jobject fd, jobject cert, jobject key, jint kea)
@@ -1131,3 +1499,9 @@ Java_org_mozilla_jss_nss_SSL_getSSLRequireNoError(JNIEnv *env, jclass clazz)
 {
     return SSL_REQUIRE_NO_ERROR;
 }
+
+JNIEXPORT jint JNICALL
+Java_org_mozilla_jss_nss_SSL_getSSLNoCache(JNIEnv *env, jclass clazz)
+{
+    return SSL_NO_CACHE;
+}
@@ -0,0 +1,247 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+#include "_jni/org_mozilla_jss_pkcs11_PK11AEADCipher.h"
+
+#include <string.h>
+#include <nspr.h>
+#include <seccomon.h>
+#include <pk11func.h>
+#include <secitem.h>
+#include <secerr.h>
+
+/* JSS includes */
+#include <java_ids.h>
+#include <jss_exceptions.h>
+#include <jssutil.h>
+#include <pk11util.h>
+
+/***********************************************************************
+ *
+ * PK11AEADCipher.initContext
+ *
+ * Creates an NSS message context for the given AEAD mechanism. The IV,
+ * AAD and tag are supplied per message, so the context takes no
+ * parameters.
+ */
+JNIEXPORT jobject JNICALL
+Java_org_mozilla_jss_pkcs11_PK11AEADCipher_initContext
+    (JNIEnv *env, jclass clazz, jboolean encrypt, jobject keyObj,
+        jlong mechanism)
+{
+    PK11SymKey *key = NULL;
+    PK11Context *context = NULL;
+    SECItem param = { siBuffer, NULL, 0 };
+    CK_ATTRIBUTE_TYPE op;
+    jobject contextObj = NULL;
+
+    PR_ASSERT(env != NULL && keyObj != NULL);
+
+    op = CKA_NSS_MESSAGE | (encrypt ? CKA_ENCRYPT : CKA_DECRYPT);
+
+    if (JSS_PK11_getSymKeyPtr(env, keyObj, &key) != PR_SUCCESS) {
+        goto finish;
+    }
+
+    context = PK11_CreateContextBySymKey((CK_MECHANISM_TYPE) mechanism, op,
+        key, &param);
+    if (context == NULL) {
+        JSS_throwMsgPrErrArg(
+            env, TOKEN_EXCEPTION, "Failed to generate AEAD context",
+            PR_GetError());
+        goto finish;
+    }
+
+    /* wrap crypto context. This sets context to NULL. */
+    contextObj = JSS_PK11_wrapCipherContextProxy(env, &context);
+
+finish:
+    if (context != NULL) {
+        PK11_DestroyContext(context, PR_TRUE /*freeit*/);
+    }
+    PR_ASSERT(contextObj || (*env)->ExceptionOccurred(env));
+    return contextObj;
+}
+
+/* Messages up to this size (e.g., TLS records or network packets) are
+ * staged through stack buffers; larger ones through a native copy. */
+#define JSS_AEAD_STACK_SIZE 16384
+
+/***********************************************************************
+ *
+ * PK11AEADCipher.aeadOp
+ *
+ * Encrypts (appending the tag) or decrypts (checking the tag at the end
+ * of the input) one message into the output array; the caller makes sure
+ * the output has room for the result.
+ */
+JNIEXPORT jint JNICALL
+Java_org_mozilla_jss_pkcs11_PK11AEADCipher_aeadOp
+    (JNIEnv *env, jclass clazz, jobject contextObj, jboolean encrypt,
+    jbyteArray ivBA, jbyteArray aadBA, jint aadLen, jbyteArray inputBA,
+    jint inputOffset, jint inputLen, jbyteArray outputBA, jint outputOffset,
+    jint tagLen)
+{
+    PK11Context *context = NULL;
+    jbyte *iv = NULL;
+    jbyte *aad = NULL;
+    jsize ivLen;
+    unsigned char stack_in[JSS_AEAD_STACK_SIZE];
+    unsigned char stack_out[JSS_AEAD_STACK_SIZE];
+    unsigned char *heap = NULL;
+    unsigned char *in = stack_in;
+    unsigned char *out = stack_out;
+    unsigned char *tag;
+    int dataLen;
+    int outLen;
+    int written = 0;
+    PRBool staged = PR_FALSE;
+
+    PR_ASSERT(env != NULL && contextObj != NULL && ivBA != NULL);
+    PR_ASSERT(aadBA != NULL && inputBA != NULL && outputBA != NULL);
+    PR_ASSERT(inputOffset >= 0 && inputLen >= 0 && outputOffset >= 0);
+    PR_ASSERT(tagLen > 0 && (encrypt || inputLen >= tagLen));
+
+    if (JSS_PK11_getCipherContext(env, contextObj, &context) != PR_SUCCESS) {
+        return -1;
+    }
+
+    ivLen = (*env)->GetArrayLength(env, ivBA);
+    iv = (*env)->GetByteArrayElements(env, ivBA, NULL);
+    if (iv == NULL) {
+        ASSERT_OUTOFMEM(env);
+        goto finish;
+    }
+
+    aad = (*env)->GetByteArrayElements(env, aadBA, NULL);
+    if (aad == NULL) {
+        ASSERT_OUTOFMEM(env);
+        goto finish;
+    }
+
+    if (encrypt) {
+        dataLen = inputLen;
+        outLen = inputLen + tagLen;
+    } else {
+        dataLen = inputLen - tagLen;
+        outLen = dataLen;
+    }
+
+    /* PK11_AEADOp(...) processes a whole message at once, so it can't be
+     * fed in chunks. Rather than pinning the arrays for the whole
+     * operation (stalling the GC on large messages), copy the input out
+     * and the output back by region. This also keeps in-place operations
+     * safe, since the input is copied before any output is stored. */
+    if (inputLen > JSS_AEAD_STACK_SIZE || outLen > JSS_AEAD_STACK_SIZE) {
+        heap = PR_Malloc(inputLen + outLen);
+        if (heap == NULL) {
+            JSS_throw(env, OUT_OF_MEMORY_ERROR);
+            goto finish;
+        }
+        in = heap;
+        out = heap + inputLen;
+    }
+    staged = PR_TRUE;
+
+    (*env)->GetByteArrayRegion(env, inputBA, inputOffset, inputLen,
+        (jbyte *) in);
+    if ((*env)->ExceptionCheck(env)) {
+        goto finish;
+    }
+
+    tag = encrypt ? out + dataLen : in + dataLen;
+
+    if (PK11_AEADOp(context, CKG_NO_GENERATE, 0,
+            (unsigned char *) iv, ivLen,
+            (unsigned char *) aad, aadLen,
+            out, &written, dataLen,
+            tag, tagLen,
+            in, dataLen) != SECSuccess) {
+        PRErrorCode error = PR_GetError();
+        if (!encrypt && error == SEC_ERROR_BAD_DATA) {
+            JSS_throwMsg(env, AEAD_BAD_TAG_EXCEPTION, "Tag mismatch");
+        } else {
+            JSS_throwMsgPrErrArg(
+                env, TOKEN_EXCEPTION, "AEAD operation failed", error);
+        }
+        goto finish;
+    }
+
+    if (encrypt) {
+        written += tagLen;
+    }
+
+    (*env)->SetByteArrayRegion(env, outputBA, outputOffset, written,
+        (jbyte *) out);
+
+finish:
+    /* Don't leave plaintext behind in native memory. */
+    if (staged) {
+        memset(in, 0, inputLen);
+        memset(out, 0, outLen);
+    }
+    if (heap != NULL) {
+        PR_Free(heap);
+    }
+    if (aad != NULL) {
+        (*env)->ReleaseByteArrayElements(env, aadBA, aad, JNI_ABORT);
+    }
+    if (iv != NULL) {
+        (*env)->ReleaseByteArrayElements(env, ivBA, iv, JNI_ABORT);
+    }
+    return (*env)->ExceptionOccurred(env) ? -1 : written;
+}
+
+/***********************************************************************
+ *
+ * PK11AEADCipher.importKeyBits
+ *
+ * Imports raw key bits for the given mechanism, usable for both
+ * encryption and decryption.
+ */
+JNIEXPORT jobject JNICALL
+Java_org_mozilla_jss_pkcs11_PK11AEADCipher_importKeyBits
+    (JNIEnv *env, jclass clazz, jobject tokenObj, jbyteArray keyBitsBA,
+        jlong mechanism)
+{
+    PK11SlotInfo *slot = NULL;
+    PK11SymKey *key = NULL;
+    SECItem *keyBits = NULL;
+    jobject keyObj = NULL;
+
+    PR_ASSERT(env != NULL && tokenObj != NULL && keyBitsBA != NULL);
+
+    if (JSS_PK11_getTokenSlotPtr(env, tokenObj, &slot) != PR_SUCCESS) {
+        /* exception was thrown */
+        goto finish;
+    }
+
+    keyBits = JSS_ByteArrayToSECItem(env, keyBitsBA);
+    if (keyBits == NULL) {
+        /* exception was thrown */
+        goto finish;
+    }
+
+    key = PK11_ImportSymKeyWithFlags(slot, (CK_MECHANISM_TYPE) mechanism,
+        PK11_OriginUnwrap, CKA_ENCRYPT, keyBits,
+        CKF_ENCRYPT | CKF_DECRYPT, PR_FALSE /*isPerm*/, NULL /*wincx*/);
+    if (key == NULL) {
+        JSS_throwMsgPrErrArg(
+            env, TOKEN_EXCEPTION, "Failed to import symmetric key",
+            PR_GetError());
+        goto finish;
+    }
+
+    /* wrap the key. This sets key to NULL. */
+    keyObj = JSS_PK11_wrapSymKey(env, &key);
+
+finish:
+    if (key != NULL) {
+        PK11_FreeSymKey(key);
+    }
+    if (keyBits != NULL) {
+        SECITEM_ZfreeItem(keyBits, PR_TRUE /*freeit*/);
+    }
+    return keyObj;
+}
@@ -167,27 +167,20 @@ finish:
  */
 JNIEXPORT void JNICALL
 Java_org_mozilla_jss_pkcs11_CertProxy_releaseNativeResources
-  (JNIEnv *env, jobject this)
+  (JNIEnv *env, jclass clazz, jlong pointer)
 {
-	CERTCertificate *cert = NULL;
+	CERTCertificate *cert = JSS_ptrFromLong(pointer);
 	PRThread * VARIABLE_MAY_NOT_BE_USED pThread;
 
-	PR_ASSERT(env!=NULL && this!=NULL);
+	PR_ASSERT(env!=NULL);
 
 	pThread = PR_AttachThread(PR_SYSTEM_THREAD, 0, NULL);
 	PR_ASSERT(pThread != NULL);
 
-	/* Get the CERTCertificate structure */
-	if(JSS_getPtrFromProxy(env, this, (void**)&cert) != PR_SUCCESS) {
-		PR_ASSERT( PR_FALSE );
-		goto finish;
-	}
-
 	if (cert != NULL) {
 		CERT_DestroyCertificate(cert);
 	}
 
-finish:
 	PR_DetachThread();
 }
 	
@@ -638,10 +631,10 @@ Java_org_mozilla_jss_pkcs11_PK11Cert_getNickname
 }
 
 /**********************************************************************
- * PK11Cert.setTrust
+ * PK11Cert.setTrustNative
  */
 JNIEXPORT void JNICALL
-Java_org_mozilla_jss_pkcs11_PK11Cert_setTrust
+Java_org_mozilla_jss_pkcs11_PK11Cert_setTrustNative
     (JNIEnv *env, jobject this, jint type, jint newTrust)
 {
     CERTCertificate *cert;
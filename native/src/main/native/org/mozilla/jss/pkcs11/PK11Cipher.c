@@ -4,11 +4,13 @@
 
 #include "_jni/org_mozilla_jss_pkcs11_PK11Cipher.h"
 
+#include <string.h>
 #include <nspr.h>
 #include <plarena.h>
 #include <seccomon.h>
 #include <pk11func.h>
 #include <secitem.h>
+#include <secerr.h>
 
 /* JSS includes */
 #include <java_ids.h>
@@ -177,6 +179,190 @@ finish:
     return outArray;
 }
 
+/*
+ * Runs PK11_CipherOp, working from a copy of the input if it overlaps the
+ * output: callers may encrypt in place, but NSS doesn't promise that
+ * overlapping buffers are safe.
+ */
+static SECStatus
+cipherOp(PK11Context *context, unsigned char *out, int *outLen, int maxOut,
+    unsigned char *in, int inLen)
+{
+    unsigned char *copy = NULL;
+    SECStatus status;
+
+    if (in < out + maxOut && out < in + inLen) {
+        copy = PR_Malloc(inLen);
+        if (copy == NULL) {
+            PORT_SetError(SEC_ERROR_NO_MEMORY);
+            return SECFailure;
+        }
+        memcpy(copy, in, inLen);
+        in = copy;
+    }
+
+    status = PK11_CipherOp(context, out, outLen, maxOut, in, inLen);
+
+    if (copy != NULL) {
+        PR_Free(copy);
+    }
+    return status;
+}
+
+/* Size of the stack buffers updateContextArray stages input through. The
+ * output buffer also has room for the partial block NSS may be holding back
+ * from an earlier update; JSS_CIPHER_MAX_BLOCK bounds the block size of any
+ * cipher PK11Cipher supports. */
+#define JSS_CIPHER_CHUNK_SIZE 8192
+#define JSS_CIPHER_MAX_BLOCK 64
+
+/***********************************************************************
+ *
+ * PK11Cipher.updateContextArray
+ *
+ * Processes input from one array straight into another; the caller makes
+ * sure the output has room for the result.
+ */
+JNIEXPORT jint JNICALL
+Java_org_mozilla_jss_pkcs11_PK11Cipher_updateContextArray
+    (JNIEnv *env, jclass clazz, jobject contextObj, jbyteArray inputBA,
+    jint inputOffset, jint inputLen, jbyteArray outputBA, jint outputOffset,
+    jint outputLen)
+{
+    PK11Context *context = NULL;
+    unsigned char in[JSS_CIPHER_CHUNK_SIZE];
+    unsigned char out[JSS_CIPHER_CHUNK_SIZE + JSS_CIPHER_MAX_BLOCK];
+    unsigned char *copy = NULL;
+    unsigned char *input = NULL;
+    jint processed = 0;
+    jint written = 0;
+    jint result = -1;
+    int chunk = 0;
+    int this_write = 0;
+
+    PR_ASSERT(env != NULL && contextObj != NULL);
+    PR_ASSERT(inputBA != NULL && outputBA != NULL);
+    PR_ASSERT(inputOffset >= 0 && inputLen >= 0);
+    PR_ASSERT(outputOffset >= 0 && outputLen >= 0);
+
+    if (JSS_PK11_getCipherContext(env, contextObj, &context) != PR_SUCCESS) {
+        return -1;
+    }
+
+    /* Callers may encrypt in place. Since each chunk's output is stored
+     * before the next chunk is read, and NSS may emit a held-back block
+     * ahead of the input, work from a copy of overlapping input. */
+    if ((*env)->IsSameObject(env, inputBA, outputBA) &&
+            inputOffset < outputOffset + outputLen &&
+            outputOffset < inputOffset + inputLen) {
+        copy = PR_Malloc(inputLen);
+        if (copy == NULL) {
+            JSS_throw(env, OUT_OF_MEMORY_ERROR);
+            return -1;
+        }
+
+        (*env)->GetByteArrayRegion(env, inputBA, inputOffset, inputLen,
+            (jbyte *) copy);
+        if ((*env)->ExceptionCheck(env)) {
+            goto finish;
+        }
+    }
+
+    /* Inputs can be arbitrarily large (e.g., streaming an archive through
+     * a CipherOutputStream), so rather than pinning the arrays for the
+     * whole operation and stalling the GC, stage bounded chunks through
+     * the stack. */
+    while (processed < inputLen) {
+        chunk = PR_MIN(inputLen - processed, JSS_CIPHER_CHUNK_SIZE);
+
+        if (copy != NULL) {
+            input = copy + processed;
+        } else {
+            (*env)->GetByteArrayRegion(env, inputBA, inputOffset + processed,
+                chunk, (jbyte *) in);
+            if ((*env)->ExceptionCheck(env)) {
+                goto finish;
+            }
+            input = in;
+        }
+
+        if (PK11_CipherOp(context, out, &this_write, sizeof(out), input,
+                chunk) != SECSuccess) {
+            JSS_throwMsgPrErrArg(
+                env, TOKEN_EXCEPTION, "Cipher context update failed",
+                PR_GetError());
+            goto finish;
+        }
+
+        if (this_write > outputLen - written) {
+            JSS_throwMsg(env, TOKEN_EXCEPTION,
+                "Cipher output exceeds the output buffer");
+            goto finish;
+        }
+
+        (*env)->SetByteArrayRegion(env, outputBA, outputOffset + written,
+            this_write, (jbyte *) out);
+        if ((*env)->ExceptionCheck(env)) {
+            goto finish;
+        }
+
+        written += this_write;
+        processed += chunk;
+    }
+
+    result = written;
+
+finish:
+    if (copy != NULL) {
+        PR_Free(copy);
+    }
+    return result;
+}
+
+/***********************************************************************
+ *
+ * PK11Cipher.updateContextDirect
+ *
+ * Same as updateContextArray, between direct ByteBuffers.
+ */
+JNIEXPORT jint JNICALL
+Java_org_mozilla_jss_pkcs11_PK11Cipher_updateContextDirect
+    (JNIEnv *env, jclass clazz, jobject contextObj, jobject inputBuf,
+    jint inputOffset, jint inputLen, jobject outputBuf, jint outputOffset,
+    jint outputLen)
+{
+    PK11Context *context = NULL;
+    unsigned char *input = NULL;
+    unsigned char *output = NULL;
+    int written = 0;
+
+    PR_ASSERT(env != NULL && contextObj != NULL);
+    PR_ASSERT(inputBuf != NULL && outputBuf != NULL);
+    PR_ASSERT(inputOffset >= 0 && inputLen >= 0);
+    PR_ASSERT(outputOffset >= 0 && outputLen >= 0);
+
+    if (JSS_PK11_getCipherContext(env, contextObj, &context) != PR_SUCCESS) {
+        return -1;
+    }
+
+    input = (*env)->GetDirectBufferAddress(env, inputBuf);
+    output = (*env)->GetDirectBufferAddress(env, outputBuf);
+    if (input == NULL || output == NULL) {
+        JSS_throwMsg(env, TOKEN_EXCEPTION, "Unable to access direct buffer");
+        return -1;
+    }
+
+    if (cipherOp(context, output + outputOffset, &written, outputLen,
+            input + inputOffset, inputLen) != SECSuccess) {
+        JSS_throwMsgPrErrArg(
+            env, TOKEN_EXCEPTION, "Cipher context update failed",
+            PR_GetError());
+        return -1;
+    }
+
+    return written;
+}
+
 /***********************************************************************
  *
  * PK11Cipher.finalizeContext
@@ -234,6 +420,88 @@ finish:
     
 
 
+/***********************************************************************
+ *
+ * PK11Cipher.finalizeContextArray
+ *
+ * Finalizes the context straight into an array; the caller makes sure the
+ * output has room for the result.
+ */
+JNIEXPORT jint JNICALL
+Java_org_mozilla_jss_pkcs11_PK11Cipher_finalizeContextArray
+    (JNIEnv *env, jclass clazz, jobject contextObj, jbyteArray outputBA,
+    jint outputOffset, jint outputLen)
+{
+    PK11Context *context = NULL;
+    unsigned char output[JSS_CIPHER_MAX_BLOCK];
+    unsigned int written = 0;
+
+    PR_ASSERT(env != NULL && contextObj != NULL && outputBA != NULL);
+    PR_ASSERT(outputOffset >= 0 && outputLen >= 0);
+
+    if (JSS_PK11_getCipherContext(env, contextObj, &context) != PR_SUCCESS) {
+        return -1;
+    }
+
+    /* At most a block is left to finalize; stage it through the stack as
+     * in updateContextArray. */
+    if (PK11_DigestFinal(context, output, &written,
+            PR_MIN((unsigned int) outputLen, sizeof(output))) != SECSuccess) {
+        JSS_throwMsgPrErrArg(
+            env, TOKEN_EXCEPTION, "Cipher context finalization failed",
+            PR_GetError());
+        return -1;
+    }
+
+    (*env)->SetByteArrayRegion(env, outputBA, outputOffset, written,
+        (jbyte *) output);
+    if ((*env)->ExceptionCheck(env)) {
+        return -1;
+    }
+
+    return written;
+}
+
+/***********************************************************************
+ *
+ * PK11Cipher.finalizeContextDirect
+ *
+ * Same as finalizeContextArray, into a direct ByteBuffer.
+ */
+JNIEXPORT jint JNICALL
+Java_org_mozilla_jss_pkcs11_PK11Cipher_finalizeContextDirect
+    (JNIEnv *env, jclass clazz, jobject contextObj, jobject outputBuf,
+    jint outputOffset, jint outputLen)
+{
+    PK11Context *context = NULL;
+    unsigned char *output = NULL;
+    unsigned int written = 0;
+
+    PR_ASSERT(env != NULL && contextObj != NULL && outputBuf != NULL);
+    PR_ASSERT(outputOffset >= 0 && outputLen >= 0);
+
+    if (JSS_PK11_getCipherContext(env, contextObj, &context) != PR_SUCCESS) {
+        return -1;
+    }
+
+    output = (*env)->GetDirectBufferAddress(env, outputBuf);
+    if (output == NULL) {
+        JSS_throwMsg(env, TOKEN_EXCEPTION, "Unable to access direct buffer");
+        return -1;
+    }
+
+    if (PK11_DigestFinal(context, output + outputOffset, &written,
+            outputLen) != SECSuccess) {
+        JSS_throwMsgPrErrArg(
+            env, TOKEN_EXCEPTION, "Cipher context finalization failed",
+            PR_GetError());
+        return -1;
+    }
+
+    return written;
+}
+
+
 /***********************************************************************
  *
  * J S S _ P K 1 1 _ g e t C i p h e r C o n t e x t
@@ -334,12 +602,11 @@ finish:
  */
 JNIEXPORT void JNICALL
 Java_org_mozilla_jss_pkcs11_CipherContextProxy_releaseNativeResources
-    (JNIEnv *env, jobject this)
+    (JNIEnv *env, jclass clazz, jlong pointer)
 {
-    PK11Context *context;
+    PK11Context *context = JSS_ptrFromLong(pointer);
 
-    if (JSS_PK11_getCipherContext(env, this, &context) == PR_SUCCESS &&
-            context != NULL) {
+    if (context != NULL) {
         PK11_DestroyContext(context, PR_TRUE /*freeit*/);
     }
 }
@@ -9,6 +9,7 @@
 #include <seccomon.h>
 #include <pk11func.h>
 #include <secitem.h>
+#include <hasht.h>
 
 /* JSS includes */
 #include <java_ids.h>
@@ -100,6 +101,104 @@ finish:
 }
 
 
+/*
+ * Restarts the digest on a context which was finished (or reset by the
+ * caller), instead of creating a new context; for HMAC, this keeps the
+ * key on the context.
+ */
+static PRStatus
+beginDigest(JNIEnv *env, PK11Context *context, jboolean begin)
+{
+    if (begin && PK11_DigestBegin(context) != SECSuccess) {
+        JSS_throwMsgPrErr(env, DIGEST_EXCEPTION,
+            "Unable to restart digest context");
+        return PR_FAILURE;
+    }
+
+    return PR_SUCCESS;
+}
+
+/* Size of the stack buffer array input is digested through. */
+#define JSS_DIGEST_CHUNK_SIZE 8192
+
+/*
+ * Digests input from native memory.
+ */
+static PRStatus
+digestOp(JNIEnv *env, PK11Context *context, jboolean begin,
+    unsigned char *input, jint inputLen)
+{
+    if (beginDigest(env, context, begin) != PR_SUCCESS) {
+        return PR_FAILURE;
+    }
+
+    if (inputLen > 0 &&
+            PK11_DigestOp(context, input, inputLen) != SECSuccess) {
+        JSS_throwMsgPrErr(env, DIGEST_EXCEPTION, "Digest operation failed");
+        return PR_FAILURE;
+    }
+
+    return PR_SUCCESS;
+}
+
+/*
+ * Digests input from an array. Rather than pinning the array for the
+ * whole (arbitrarily large) input, which would stall the GC, bounded
+ * chunks are copied through a stack buffer.
+ */
+static PRStatus
+digestRegion(JNIEnv *env, PK11Context *context, jboolean begin,
+    jbyteArray inbuf, jint offset, jint len)
+{
+    unsigned char buffer[JSS_DIGEST_CHUNK_SIZE];
+    jint digested = 0;
+    int chunk = 0;
+
+    if (beginDigest(env, context, begin) != PR_SUCCESS) {
+        return PR_FAILURE;
+    }
+
+    while (digested < len) {
+        chunk = PR_MIN(len - digested, JSS_DIGEST_CHUNK_SIZE);
+
+        (*env)->GetByteArrayRegion(env, inbuf, offset + digested, chunk,
+            (jbyte *) buffer);
+        if ((*env)->ExceptionCheck(env)) {
+            return PR_FAILURE;
+        }
+
+        if (PK11_DigestOp(context, buffer, chunk) != SECSuccess) {
+            JSS_throwMsgPrErr(env, DIGEST_EXCEPTION, "Digest operation failed");
+            return PR_FAILURE;
+        }
+
+        digested += chunk;
+    }
+
+    return PR_SUCCESS;
+}
+
+/*
+ * Finishes the digest into an array, staging the result on the stack.
+ */
+static jint
+finishDigest(JNIEnv *env, PK11Context *context, jbyteArray outbuf,
+    jint offset, jint len)
+{
+    unsigned char output[HASH_LENGTH_MAX];
+    unsigned int outLen = 0;
+
+    if (PK11_DigestFinal(context, output, &outLen,
+            PR_MIN((unsigned int) len, sizeof(output))) != SECSuccess) {
+        JSS_throwMsgPrErr(env, DIGEST_EXCEPTION, "Error occurred while "
+            "performing digest operation");
+        return 0;
+    }
+
+    (*env)->SetByteArrayRegion(env, outbuf, offset, outLen, (jbyte *) output);
+    return outLen;
+}
+
 /***********************************************************************
  *
  * PK11MessageDigest.update
@@ -107,36 +206,52 @@ finish:
  */
 JNIEXPORT void JNICALL
 Java_org_mozilla_jss_pkcs11_PK11MessageDigest_update
-    (JNIEnv *env, jclass clazz, jobject proxyObj, jbyteArray inbufBA,
-        jint offset, jint len)
+    (JNIEnv *env, jclass clazz, jobject proxyObj, jboolean begin,
+        jbyteArray inbufBA, jint offset, jint len)
 {
-
     PK11Context *context = NULL;
-    jbyte* bytes = NULL;
-    jsize length = 0;
+
+    PR_ASSERT(env != NULL && proxyObj != NULL && inbufBA != NULL);
+    PR_ASSERT(offset >= 0 && len >= 0);
 
     if( JSS_PK11_getCipherContext(env, proxyObj, &context) != PR_SUCCESS ) {
         /* exception was thrown */
-        goto finish;
+        return;
     }
 
-    if (!JSS_RefByteArray(env, inbufBA, &bytes, &length) ||
-            length < offset+len) {
-        goto finish;
+    digestRegion(env, context, begin, inbufBA, offset, len);
+}
+
+/***********************************************************************
+ *
+ * PK11MessageDigest.updateDirect
+ *
+ * Same as update, from a direct ByteBuffer.
+ */
+JNIEXPORT void JNICALL
+Java_org_mozilla_jss_pkcs11_PK11MessageDigest_updateDirect
+    (JNIEnv *env, jclass clazz, jobject proxyObj, jboolean begin,
+        jobject inbuf, jint offset, jint len)
+{
+    PK11Context *context = NULL;
+    unsigned char *bytes = NULL;
+
+    PR_ASSERT(env != NULL && proxyObj != NULL && inbuf != NULL);
+    PR_ASSERT(offset >= 0 && len >= 0);
+
+    if( JSS_PK11_getCipherContext(env, proxyObj, &context) != PR_SUCCESS ) {
+        return;
     }
 
-    if( PK11_DigestOp(context, (unsigned char*)(bytes+offset), len)
-            != SECSuccess )
-    {
-        JSS_throwMsg(env, DIGEST_EXCEPTION, "Digest operation failed");
-        goto finish;
+    bytes = (*env)->GetDirectBufferAddress(env, inbuf);
+    if (bytes == NULL) {
+        JSS_throwMsg(env, DIGEST_EXCEPTION, "Unable to access direct buffer");
+        return;
     }
 
-finish:
-    JSS_DerefByteArray(env, inbufBA, bytes, JNI_ABORT);
+    digestOp(env, context, begin, bytes + offset, len);
 }
 
-
 /***********************************************************************
  *
  * PK11MessageDigest.digest
@@ -144,35 +259,81 @@ finish:
  */
 JNIEXPORT jint JNICALL
 Java_org_mozilla_jss_pkcs11_PK11MessageDigest_digest
-    (JNIEnv *env, jclass clazz, jobject proxyObj, jbyteArray outbuf,
-        jint offset, jint len)
+    (JNIEnv *env, jclass clazz, jobject proxyObj, jboolean begin,
+        jbyteArray outbuf, jint offset, jint len)
 {
-    PK11Context *context=NULL;
-    jbyte *bytes=NULL;
-    jsize length = 0;
-    SECStatus status;
-    unsigned int outLen = 0;
+    return Java_org_mozilla_jss_pkcs11_PK11MessageDigest_digestArray(env,
+        clazz, proxyObj, begin, NULL, 0, 0, outbuf, offset, len);
+}
+
+/***********************************************************************
+ *
+ * PK11MessageDigest.digestArray
+ *
+ * Digests the final input and finishes the digest in a single call;
+ * inbuf may be NULL when there is no more input.
+ */
+JNIEXPORT jint JNICALL
+Java_org_mozilla_jss_pkcs11_PK11MessageDigest_digestArray
+    (JNIEnv *env, jclass clazz, jobject proxyObj, jboolean begin,
+        jbyteArray inbuf, jint inOffset, jint inLen,
+        jbyteArray outbuf, jint outOffset, jint outLen)
+{
+    PK11Context *context = NULL;
+
+    PR_ASSERT(env != NULL && proxyObj != NULL && outbuf != NULL);
+    PR_ASSERT(inOffset >= 0 && inLen >= 0);
+    PR_ASSERT(outOffset >= 0 && outLen >= 0);
 
     if( JSS_PK11_getCipherContext(env, proxyObj, &context) != PR_SUCCESS) {
         /* exception was thrown */
-        goto finish;
+        return 0;
     }
 
-    if (!JSS_RefByteArray(env, outbuf, &bytes, &length) ||
-            length < offset+len) {
-        ASSERT_OUTOFMEM(env);
-        goto finish;
+    if (inbuf != NULL) {
+        if (digestRegion(env, context, begin, inbuf, inOffset, inLen) != PR_SUCCESS) {
+            return 0;
+        }
+    } else if (beginDigest(env, context, begin) != PR_SUCCESS) {
+        return 0;
     }
 
-    status = PK11_DigestFinal(context, (unsigned char*)(bytes+offset),
-                    &outLen, len);
-    if( status != SECSuccess ) {
-        JSS_throwMsg(env, DIGEST_EXCEPTION, "Error occurred while performing"
-            " digest operation");
-        goto finish;
+    return finishDigest(env, context, outbuf, outOffset, outLen);
+}
+
+/***********************************************************************
+ *
+ * PK11MessageDigest.digestDirect
+ *
+ * Same as digestArray, with the final input in a direct ByteBuffer.
+ */
+JNIEXPORT jint JNICALL
+Java_org_mozilla_jss_pkcs11_PK11MessageDigest_digestDirect
+    (JNIEnv *env, jclass clazz, jobject proxyObj, jboolean begin,
+        jobject inbuf, jint inOffset, jint inLen,
+        jbyteArray outbuf, jint outOffset, jint outLen)
+{
+    PK11Context *context = NULL;
+    unsigned char *input = NULL;
+
+    PR_ASSERT(env != NULL && proxyObj != NULL);
+    PR_ASSERT(inbuf != NULL && outbuf != NULL);
+    PR_ASSERT(inOffset >= 0 && inLen >= 0);
+    PR_ASSERT(outOffset >= 0 && outLen >= 0);
+
+    if( JSS_PK11_getCipherContext(env, proxyObj, &context) != PR_SUCCESS) {
+        return 0;
     }
 
-finish:
-    JSS_DerefByteArray(env, outbuf, bytes, 0);
-    return outLen;
+    input = (*env)->GetDirectBufferAddress(env, inbuf);
+    if (input == NULL) {
+        JSS_throwMsg(env, DIGEST_EXCEPTION, "Unable to access direct buffer");
+        return 0;
+    }
+
+    if (digestOp(env, context, begin, input + inOffset, inLen) != PR_SUCCESS) {
+        return 0;
+    }
+
+    return finishDigest(env, context, outbuf, outOffset, outLen);
 }
@@ -218,14 +218,9 @@ JSS_PK11_getModulePtr(JNIEnv *env, jobject module, SECMODModule **ptr)
  */
 JNIEXPORT void JNICALL
 Java_org_mozilla_jss_pkcs11_ModuleProxy_releaseNativeResources
-    (JNIEnv *env, jobject this)
+    (JNIEnv *env, jclass clazz, jlong pointer)
 {
-    SECMODModule *module = NULL;
-
-    if (JSS_getPtrFromProxy(env, this, (void **)&module) != PR_SUCCESS) {
-        ASSERT_OUTOFMEM(env);
-        return;
-    }
+    SECMODModule *module = JSS_ptrFromLong(pointer);
 
     if (module != NULL) {
         SECMOD_DestroyModule(module);
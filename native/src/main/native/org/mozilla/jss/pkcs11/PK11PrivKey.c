@@ -282,27 +282,20 @@ finish:
  */
 JNIEXPORT void JNICALL
 Java_org_mozilla_jss_pkcs11_PrivateKeyProxy_releaseNativeResources
-  (JNIEnv *env, jobject this)
+  (JNIEnv *env, jclass clazz, jlong pointer)
 {
-    SECKEYPrivateKey *privk = NULL;
+    SECKEYPrivateKey *privk = JSS_ptrFromLong(pointer);
     PRThread * VARIABLE_MAY_NOT_BE_USED pThread;
 
-    PR_ASSERT(env!=NULL && this!=NULL);
+    PR_ASSERT(env!=NULL);
 
     pThread = PR_AttachThread(PR_SYSTEM_THREAD, 0, NULL);
     PR_ASSERT(pThread != NULL);
 
-    /* Get the SECKEYPrivateKey structure */
-    if(JSS_getPtrFromProxy(env, this, (void**) &privk) != PR_SUCCESS) {
-        PR_ASSERT( PR_FALSE );
-        goto finish;
-    }
-
     if (privk != NULL) {
         SECKEY_DestroyPrivateKey(privk);
     }
 
-finish:
     PR_DetachThread();
     return;
 }
@@ -27,27 +27,20 @@
  * PublicKeyProxy.releaseNativeResources
  */
 JNIEXPORT void JNICALL Java_org_mozilla_jss_pkcs11_PublicKeyProxy_releaseNativeResources
-  (JNIEnv *env, jobject this)
+  (JNIEnv *env, jclass clazz, jlong pointer)
 {
-    SECKEYPublicKey *pubk;
+    SECKEYPublicKey *pubk = JSS_ptrFromLong(pointer);
     PRThread * VARIABLE_MAY_NOT_BE_USED pThread;
 
-    PR_ASSERT(env!=NULL && this!=NULL);
+    PR_ASSERT(env!=NULL);
 
     pThread = PR_AttachThread(PR_SYSTEM_THREAD, 0, NULL);
     PR_ASSERT(pThread != NULL);
 
-    /* Get the SECKEYPublicKey structure */
-    if(JSS_getPtrFromProxy(env, this, (void**) &pubk) != PR_SUCCESS) {
-        PR_ASSERT( PR_FALSE );
-        goto finish;
-    }
-
     if (pubk != NULL) {
         SECKEY_DestroyPublicKey(pubk);
     }
 
-finish:
     PR_DetachThread();
     return;
 }
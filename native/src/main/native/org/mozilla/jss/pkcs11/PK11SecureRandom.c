@@ -20,37 +20,36 @@
  */
 
 #include <jssutil.h>
+#include <jss_exceptions.h>
+
+#include <string.h>
+
+/*
+ * Size of the stack buffer generateRandom produces random bytes into
+ * before copying them into the caller's array.
+ */
+
+#define JSS_RANDOM_CHUNK_SIZE 4096
 
 /*
- * JNI FUNCTION:  PK11SecureRandom.setSeed
+ * JNI FUNCTION:  PK11SecureRandom.seedRandom
  *
- * JNI FUNCTION TYPE:  protected
+ * JNI FUNCTION TYPE:  private static
  *
  * JNI INPUTS:
  *
  *    env
  *        The JNI object through which all JNI functions are referenced
  *
- *    this
+ *    clazz
  *        A JNI reference to the class which defines this native method
  *
- * INPUTS:
- *
- *    N/A
- *
- * OUTPUTS:
- *
  *    jseed
- *        A JNI array for storage of the random byte seed sequence
+ *        A JNI array containing the seed
  *
  * ERRORS:
  *
- *    N/A
- *
- * RETURN:
- *
- *    Upon success, this method returns a byte array
- *    containing a random byte sequence
+ *    Throws a TokenException if the RNG could not be seeded.
  *
  * NOTES:
  *
@@ -59,45 +58,20 @@
  * JNI NOTES:
  *
  *    Class:     org_mozilla_jss_pkcs11_PK11SecureRandom
- *    Method:    setSeed
+ *    Method:    seedRandom
  *    Signature: ([B)V
  */
 
 JNIEXPORT void JNICALL
-Java_org_mozilla_jss_pkcs11_PK11SecureRandom_setSeed
-    ( JNIEnv* env, jobject this, jbyteArray jseed )
+Java_org_mozilla_jss_pkcs11_PK11SecureRandom_seedRandom
+    ( JNIEnv* env, jclass clazz, jbyteArray jseed )
 {
-    /*
-     * "JNI" data members
-     */
-
-    jbyte*    jdata   = NULL;
-    jsize     jlen    = 0;
-
-
-    /*
-     * "C" data members
-     */
-
-    PRThread*     VARIABLE_MAY_NOT_BE_USED pThread = NULL;
-    SECStatus     status  = PR_FALSE;
-    PK11SlotInfo* slot    = NULL;
-
-
-    /*
-     * Perform initial assertions
-     */
-
-    PR_ASSERT( env != NULL && this != NULL );
-
-
-    /*
-     * Attach to the external java thread
-     */
-
-    pThread = PR_AttachThread( PR_SYSTEM_THREAD, 0, NULL );
-    PR_ASSERT( pThread != NULL );
+    jbyte*        jdata  = NULL;
+    jsize         jlen   = 0;
+    SECStatus     status = SECFailure;
+    PK11SlotInfo* slot   = NULL;
 
+    PR_ASSERT( env != NULL && jseed != NULL );
 
     /*
      * Obtain the appropriate "slot"
@@ -105,174 +79,99 @@ Java_org_mozilla_jss_pkcs11_PK11SecureRandom_setSeed
 
     slot = PK11_GetBestSlot( CKM_FAKE_RANDOM, NULL );
     if( slot == NULL ) {
-        PR_ASSERT( PR_FALSE );
+        JSS_throwMsgPrErrArg( env, TOKEN_EXCEPTION,
+            "Unable to find a slot for the RNG", PR_GetError() );
         goto finish;
     }
 
-
-    /*
-     * Convert "JNI jbyteArray" into "JNI jbyte*" so
-     * that it can be cast into a "C unsigned char*";
-     * also get its length.
-     */
-
-    JSS_RefByteArray(env, jseed, &jdata, &jlen);
-
-
-    /*
-     * Seed the pseudo-random number generator;
-     * currently, failures from this routine are ignored
-     */
+    if( !JSS_RefByteArray( env, jseed, &jdata, &jlen ) ) {
+        /* empty seed, or an exception was thrown */
+        goto finish;
+    }
 
     status = PK11_SeedRandom( slot, ( unsigned char* ) jdata, ( int ) jlen );
     if( status != SECSuccess ) {
-        PR_ASSERT( PR_FALSE );
+        JSS_throwMsgPrErrArg( env, TOKEN_EXCEPTION,
+            "Unable to seed the RNG", PR_GetError() );
         goto finish;
     }
 
-
 finish:
 
-    /*
-     * Copy back the contents of the "JNI jbyte*" and
-     * free any resources associated with it
-     */
-
-    JSS_DerefByteArray(env, jseed, jdata, 0);
-
-
-    /*
-     * Free any "C" resources
-     */
+    JSS_DerefByteArray( env, jseed, jdata, JNI_ABORT );
 
     if( slot != NULL ) {
         PK11_FreeSlot( slot );
     }
-    slot = NULL;
-
-
-    /*
-     * Detach from the external java thread and return
-     */
-
-    PR_DetachThread();
-
-    return;
 }
 
 
 /*
- * JNI FUNCTION:  PK11SecureRandom.nextBytes
+ * JNI FUNCTION:  PK11SecureRandom.generateRandom
  *
- * JNI FUNCTION TYPE:  protected
+ * JNI FUNCTION TYPE:  private static
  *
  * JNI INPUTS:
  *
  *    env
  *        The JNI object through which all JNI functions are referenced
  *
- *    this
+ *    clazz
  *        A JNI reference to the class which defines this native method
  *
- * INPUTS:
- *
- *    N/A
- *
- * OUTPUTS:
- *
- *    jbytes
- *        A JNI array for storage of the random byte sequence
+ *    jbytes, offset, length
+ *        The region of a JNI array to fill with random bytes
  *
  * ERRORS:
  *
- *    N/A
- *
- * RETURN:
- *
- *    Upon success, this method returns a byte array
- *    containing a random byte sequence
+ *    Throws a TokenException if the RNG failed; the region must not be
+ *    used then.
  *
  * NOTES:
  *
- *    This routine is called to generate a pseudo-random number.
+ *    PK11SecureRandom calls this both for large requests and to refill
+ *    the blocks it serves small requests from.
  *
  * JNI NOTES:
  *
  *    Class:     org_mozilla_jss_pkcs11_PK11SecureRandom
- *    Method:    nextBytes
- *    Signature: ([B)V
+ *    Method:    generateRandom
+ *    Signature: ([BII)V
  */
 
 JNIEXPORT void JNICALL
-Java_org_mozilla_jss_pkcs11_PK11SecureRandom_nextBytes
-    ( JNIEnv* env, jobject this, jbyteArray jbytes )
+Java_org_mozilla_jss_pkcs11_PK11SecureRandom_generateRandom
+    ( JNIEnv* env, jclass clazz, jbyteArray jbytes, jint offset, jint length )
 {
-    /*
-     * "JNI" data members
-     */
-
-    jbyte*    jdata   = NULL;
-    jsize     jlen    = 0;
-
-
-    /*
-     * "C" data members
-     */
-
-    PRThread*     VARIABLE_MAY_NOT_BE_USED pThread = NULL;
-    SECStatus     status  = PR_FALSE;
-
-
-    /*
-     * Perform initial assertions
-     */
-
-    PR_ASSERT( env != NULL && this != NULL );
+    unsigned char  data[JSS_RANDOM_CHUNK_SIZE];
+    jint           generated = 0;
+    int            chunk     = 0;
 
+    PR_ASSERT( env != NULL && jbytes != NULL );
+    PR_ASSERT( offset >= 0 && length >= 0 );
 
     /*
-     * Attach to the external java thread
+     * Generate bounded chunks on the stack and copy each into the array,
+     * rather than pinning the array for arbitrarily large requests.
      */
 
-    pThread = PR_AttachThread( PR_SYSTEM_THREAD, 0, NULL );
-    PR_ASSERT( pThread != NULL );
-
-
-    /*
-     * Convert "JNI jbyteArray" into "JNI jbyte*" so
-     * that it can be cast into a "C unsigned char*";
-     * also get its length.
-     */
-    JSS_RefByteArray(env, jbytes, &jdata, &jlen);
+    while( generated < length ) {
+        chunk = PR_MIN( length - generated, JSS_RANDOM_CHUNK_SIZE );
 
+        if( PK11_GenerateRandom( data, chunk ) != SECSuccess ) {
+            JSS_throwMsgPrErrArg( env, TOKEN_EXCEPTION,
+                "Unable to generate random bytes", PR_GetError() );
+            break;
+        }
 
-    /*
-     * Generate a pseudo-random number; currently,
-     * failures from this routine are ignored
-     */
+        ( *env )->SetByteArrayRegion( env, jbytes, offset + generated,
+            chunk, ( jbyte* ) data );
+        if( ( *env )->ExceptionCheck( env ) ) {
+            break;
+        }
 
-    status = PK11_GenerateRandom( ( unsigned char* ) jdata, ( int ) jlen );
-    if( status != SECSuccess ) {
-        goto finish;
+        generated += chunk;
     }
 
-
-finish:
-
-    /*
-     * Copy back the contents of the "JNI jbyte*" and
-     * free any resources associated with it
-     */
-
-    JSS_DerefByteArray(env, jbytes, jdata, 0);
-
-
-    /*
-     * Detach from the external java thread and return
-     */
-
-    PR_DetachThread();
-
-    return;
+    memset( data, 0, sizeof( data ) );
 }
-
@@ -45,6 +45,22 @@ static SECStatus
 getRSAPSSParamsAndSigningAlg(JNIEnv *env, jobject this, PRArenaPool *arena,
     SECAlgorithmID **alg, SECKEYPrivateKey *privk);
 
+static SECStatus
+getVfyAlgorithm(JNIEnv *env, jobject this, SECKEYPublicKey *pubk,
+    PRArenaPool **arena, SECOidTag *signingAlg, SECAlgorithmID **signAlg,
+    SECOidTag *digestAlg);
+
+static VFYContext *
+createVfyContext(JNIEnv *env, SECKEYPublicKey *pubk, SECOidTag signingAlg,
+    SECAlgorithmID *signAlg, SECOidTag digestAlg);
+
+static SECStatus
+updateSigContext(JNIEnv *env, void *ctxt, SigContextType type,
+    jboolean begin, jbyteArray bArray, jint offset, jint length);
+
+static void
+throwSigError(JNIEnv *env, const char *message);
+
 /***********************************************************************
  *
  * PK11Signature.initSigContext
@@ -129,59 +145,25 @@ Java_org_mozilla_jss_pkcs11_PK11Signature_initVfyContext
     VFYContext *ctxt = NULL;
     jobject contextProxy = NULL;
     SECKEYPublicKey *pubk = NULL;
-    SECKEYPrivateKey *privk = NULL;
-    SECKEYPublicKey *tempPubKey = NULL;
 
     PRArenaPool *arena = NULL;
     SECAlgorithmID *signAlg = NULL;
-    SECStatus rv = SECFailure;
     SECOidTag signingAlg = SEC_OID_UNKNOWN;
+    SECOidTag digestAlg = SEC_OID_UNKNOWN;
 
     if (getPublicKey(env, this, &pubk) != PR_SUCCESS) {
         PR_ASSERT((*env)->ExceptionOccurred(env) != NULL);
         goto finish;
     }
 
-    signingAlg = getAlgorithm(env,this);
-    if (signingAlg == SEC_OID_PKCS1_RSA_PSS_SIGNATURE) {
-        /* Create place holder private key, just to create the PSS Params. */
-        unsigned key_bits = SECKEY_PublicKeyStrengthInBits(pubk);
-        privk = SECKEY_CreateRSAPrivateKey(key_bits, &tempPubKey, NULL);
-        if (privk == NULL) {
-            JSS_throwMsgPrErr(env, TOKEN_EXCEPTION,
-                         "Unable to create temporary RSA key");
-            goto finish;
-        }
-
-        arena = PORT_NewArena(DER_DEFAULT_CHUNKSIZE);
-        if (arena == NULL) {
-            JSS_throw(env, OUT_OF_MEMORY_ERROR);
-            goto finish;
-        }
-
-        rv = getRSAPSSParamsAndSigningAlg(env, this, arena, &signAlg, privk);
-        if (rv == SECFailure) {
-            PR_ASSERT((*env)->ExceptionOccurred(env) != NULL);
-            goto finish;
-        }
-
-        SECOidTag digestAlg = SEC_OID_UNKNOWN;
-        digestAlg = getDigestAlgorithm(env, this);
-        ctxt = VFY_CreateContextWithAlgorithmID(pubk, NULL, signAlg,
-                                                &digestAlg, NULL);
-    } else {
-        ctxt = VFY_CreateContext(pubk, NULL /*sig*/, signingAlg,
-                                 NULL /*wincx*/);
-    }
-
-    if (ctxt == NULL) {
-        JSS_throwMsgPrErr(env, TOKEN_EXCEPTION, "Unable to create vfy context");
+    if (getVfyAlgorithm(env, this, pubk, &arena, &signingAlg, &signAlg,
+                        &digestAlg) != SECSuccess) {
+        PR_ASSERT((*env)->ExceptionOccurred(env) != NULL);
         goto finish;
     }
 
-    if (VFY_Begin(ctxt) != SECSuccess) {
-        JSS_throwMsgPrErr(env, TOKEN_EXCEPTION,
-                          "Unable to begin verification context");
+    ctxt = createVfyContext(env, pubk, signingAlg, signAlg, digestAlg);
+    if (ctxt == NULL) {
         goto finish;
     }
 
@@ -202,15 +184,168 @@ finish:
         VFY_DestroyContext(ctxt, PR_TRUE /*freeit*/);
     }
 
-    SECKEY_DestroyPublicKey(tempPubKey);
-    SECKEY_DestroyPrivateKey(privk);
-
     /* When contentProxy is created, arena will be NULLed and contentProxy
      * takes ownership of it. Otherwise, when arena still exists, we must
      * free it now. */
     PORT_FreeArena(arena, PR_TRUE /* zero */);
 }
 
+/*
+ * Looks up the verification algorithm of a PK11Signature. For RSA-PSS,
+ * the algorithm ID is allocated in a new arena stored in *arena, which
+ * must outlive the contexts created with it.
+ */
+static SECStatus
+getVfyAlgorithm(JNIEnv *env, jobject this, SECKEYPublicKey *pubk,
+    PRArenaPool **arena, SECOidTag *signingAlg, SECAlgorithmID **signAlg,
+    SECOidTag *digestAlg)
+{
+    SECKEYPrivateKey *privk = NULL;
+    SECKEYPublicKey *tempPubKey = NULL;
+    SECStatus rv = SECSuccess;
+
+    *signingAlg = getAlgorithm(env, this);
+    *signAlg = NULL;
+    *digestAlg = SEC_OID_UNKNOWN;
+
+    if (*signingAlg != SEC_OID_PKCS1_RSA_PSS_SIGNATURE) {
+        return SECSuccess;
+    }
+
+    /* Create place holder private key, just to create the PSS Params. */
+    unsigned key_bits = SECKEY_PublicKeyStrengthInBits(pubk);
+    privk = SECKEY_CreateRSAPrivateKey(key_bits, &tempPubKey, NULL);
+    if (privk == NULL) {
+        JSS_throwMsgPrErr(env, TOKEN_EXCEPTION,
+                     "Unable to create temporary RSA key");
+        rv = SECFailure;
+        goto finish;
+    }
+
+    *arena = PORT_NewArena(DER_DEFAULT_CHUNKSIZE);
+    if (*arena == NULL) {
+        JSS_throw(env, OUT_OF_MEMORY_ERROR);
+        rv = SECFailure;
+        goto finish;
+    }
+
+    rv = getRSAPSSParamsAndSigningAlg(env, this, *arena, signAlg, privk);
+    if (rv == SECFailure) {
+        PR_ASSERT((*env)->ExceptionOccurred(env) != NULL);
+        goto finish;
+    }
+
+    *digestAlg = getDigestAlgorithm(env, this);
+
+finish:
+    SECKEY_DestroyPublicKey(tempPubKey);
+    SECKEY_DestroyPrivateKey(privk);
+    return rv;
+}
+
+/*
+ * Creates and begins a verification context for the given key and the
+ * algorithm from getVfyAlgorithm. Returns NULL if an exception was thrown.
+ */
+static VFYContext *
+createVfyContext(JNIEnv *env, SECKEYPublicKey *pubk, SECOidTag signingAlg,
+    SECAlgorithmID *signAlg, SECOidTag digestAlg)
+{
+    VFYContext *ctxt = NULL;
+
+    if (signAlg != NULL) {
+        ctxt = VFY_CreateContextWithAlgorithmID(pubk, NULL, signAlg,
+                                                &digestAlg, NULL);
+    } else {
+        ctxt = VFY_CreateContext(pubk, NULL /*sig*/, signingAlg,
+                                 NULL /*wincx*/);
+    }
+
+    if (ctxt == NULL) {
+        JSS_throwMsgPrErr(env, TOKEN_EXCEPTION, "Unable to create vfy context");
+        return NULL;
+    }
+
+    if (VFY_Begin(ctxt) != SECSuccess) {
+        JSS_throwMsgPrErr(env, TOKEN_EXCEPTION,
+                          "Unable to begin verification context");
+        VFY_DestroyContext(ctxt, PR_TRUE /*freeit*/);
+        return NULL;
+    }
+
+    return ctxt;
+}
+
+/*
+ * Restarts the context if begin is true, and adds a region of a byte
+ * array to it. bArray may be NULL if length is 0. Returns SECFailure,
+ * possibly with an exception pending, if the update failed.
+ */
+static SECStatus
+updateSigContext(JNIEnv *env, void *ctxt, SigContextType type,
+    jboolean begin, jbyteArray bArray, jint offset, jint length)
+{
+    jbyte *bytes = NULL;
+    SECStatus rv = SECSuccess;
+
+    if (begin) {
+        if (type == SGN_CONTEXT) {
+            rv = SGN_Begin((SGNContext*)ctxt);
+        } else {
+            PR_ASSERT(type == VFY_CONTEXT);
+            rv = VFY_Begin((VFYContext*)ctxt);
+        }
+        if (rv != SECSuccess) {
+            return rv;
+        }
+    }
+
+    if (length == 0) {
+        return SECSuccess;
+    }
+
+    if (offset < 0 || length < 0 ||
+            offset > (*env)->GetArrayLength(env, bArray) - length)
+    {
+        JSS_throw(env, ARRAY_INDEX_OUT_OF_BOUNDS_EXCEPTION);
+        return SECFailure;
+    }
+
+    /*
+     * SGN_Update(...) and VFY_Update(...) only hash the data and never
+     * call back into the JVM, so it is safe to hold the critical region
+     * for their duration.
+     */
+    bytes = (*env)->GetPrimitiveArrayCritical(env, bArray, NULL);
+    if (bytes == NULL) {
+        ASSERT_OUTOFMEM(env);
+        return SECFailure;
+    }
+
+    if (type == SGN_CONTEXT) {
+        rv = SGN_Update((SGNContext*)ctxt, (unsigned char*)bytes + offset,
+                        (unsigned)length);
+    } else {
+        rv = VFY_Update((VFYContext*)ctxt, (unsigned char*)bytes + offset,
+                        (unsigned)length);
+    }
+
+    (*env)->ReleasePrimitiveArrayCritical(env, bArray, bytes, JNI_ABORT);
+    return rv;
+}
+
+/*
+ * Throws a SignatureException for the current NSS error, unless an
+ * exception is already pending.
+ */
+static void
+throwSigError(JNIEnv *env, const char *message)
+{
+    if (!(*env)->ExceptionCheck(env)) {
+        JSS_throwMsgPrErr(env, SIGNATURE_EXCEPTION, message);
+    }
+}
+
 /**********************************************************************
  *
  * PK11Signature.engineUpdateNative
@@ -218,55 +353,25 @@ finish:
  */
 JNIEXPORT void JNICALL
 Java_org_mozilla_jss_pkcs11_PK11Signature_engineUpdateNative
-    (JNIEnv *env, jobject this, jbyteArray bArray, jint offset, jint length)
+    (JNIEnv *env, jobject this, jboolean begin, jbyteArray bArray,
+     jint offset, jint length)
 {
     SigContextType type;
     void *ctxt;
-    jbyte *bytes=NULL;
-    jint numBytes;
 
     /* Extract the signature context */
     if( getSigContext(env, this, &ctxt, &type) != PR_SUCCESS) {
         PR_ASSERT( (*env)->ExceptionOccurred(env) != NULL);
-        goto finish;
+        return;
     }
     PR_ASSERT(ctxt != NULL);
 
-    /* Get the bytes to be updated */
-    if (!JSS_RefByteArray(env, bArray, &bytes, &numBytes)) {
-        ASSERT_OUTOFMEM(env);
-        goto finish;
-    }
-
-    if( offset < 0 || offset >= numBytes || length < 0 ||
-            (offset+length) > numBytes || (offset+length) < 0 )
-    {
-        JSS_throw(env, ARRAY_INDEX_OUT_OF_BOUNDS_EXCEPTION);
-        goto finish;
-    }
-
     /* Update the context */
-    if(type == SGN_CONTEXT) {
-        if( SGN_Update( (SGNContext*)ctxt,
-                        (unsigned char*)bytes + offset,
-                        (unsigned)length ) != SECSuccess)
-        {
-            JSS_throwMsgPrErr(env, SIGNATURE_EXCEPTION, "update failed");
-            goto finish;
-        }
-    } else {
-        PR_ASSERT( type == VFY_CONTEXT );
-        if( VFY_Update( (VFYContext*)ctxt,
-                        (unsigned char*)bytes + offset,
-                        (unsigned) length ) != SECSuccess)
-        {
-            JSS_throwMsgPrErr(env, SIGNATURE_EXCEPTION, "update failed");
-            goto finish;
-        }
+    if (updateSigContext(env, ctxt, type, begin, bArray, offset, length)
+            != SECSuccess)
+    {
+        throwSigError(env, "update failed");
     }
-
-finish:
-    JSS_DerefByteArray(env, bArray, bytes, JNI_ABORT);
 }
 
 
@@ -274,20 +379,21 @@ finish:
  *
  * PK11Signature.engineSignNative
  *
+ * Adds the given data to the signing context, restarting it first if
+ * begin is true, and finishes the signature in the same call.
  */
 JNIEXPORT jbyteArray JNICALL
 Java_org_mozilla_jss_pkcs11_PK11Signature_engineSignNative
-    (JNIEnv *env, jobject this)
+    (JNIEnv *env, jobject this, jboolean begin, jbyteArray data,
+     jint offset, jint length)
 {
     SGNContext *ctxt;
     SigContextType type;
-    SECItem signature;
+    SECItem signature = {siBuffer, NULL, 0};
     jbyteArray sigArray=NULL;
 
     PR_ASSERT(env!=NULL && this!=NULL);
 
-    signature.data = NULL;
-
     /*
      * Extract the signature context from the Java wrapper
      */
@@ -300,9 +406,11 @@ Java_org_mozilla_jss_pkcs11_PK11Signature_engineSignNative
     /*
      * Finish the signing operation.
      */
-    if( SGN_End(ctxt, &signature) != SECSuccess) {
-        JSS_throwMsgPrErr(env, SIGNATURE_EXCEPTION,
-            "Signing operation failed");
+    if( updateSigContext(env, ctxt, type, begin, data, offset, length)
+            != SECSuccess ||
+        SGN_End(ctxt, &signature) != SECSuccess)
+    {
+        throwSigError(env, "Signing operation failed");
         goto finish;
     }
 
@@ -316,38 +424,91 @@ Java_org_mozilla_jss_pkcs11_PK11Signature_engineSignNative
     }
 
 finish:
-    if( signature.data != NULL ) {
-        PR_Free(signature.data);
-    }
+    SECITEM_FreeItem(&signature, PR_FALSE /*freeit*/);
     return sigArray;
 }
 
-JNIEXPORT jboolean JNICALL
-Java_org_mozilla_jss_pkcs11_PK11Signature_engineVerifyNative
-	(JNIEnv *env, jobject this, jbyteArray sigArray)
+/**********************************************************************
+ *
+ * PK11Signature.engineSignBatchNative
+ *
+ * Signs each message with the signing context, restarting it for every
+ * message, and returns the signatures in the same order.
+ */
+JNIEXPORT jobjectArray JNICALL
+Java_org_mozilla_jss_pkcs11_PK11Signature_engineSignBatchNative
+    (JNIEnv *env, jobject this, jobjectArray messages)
 {
-	jboolean verified = JNI_FALSE;
-	VFYContext *ctxt;
-	SigContextType type;
-	SECItem sigItem = {siBuffer, NULL, 0};
+    SGNContext *ctxt;
+    SigContextType type;
+    jclass byteArrayClass;
+    jobjectArray sigArrays = NULL;
+    jsize count, i;
 
-	PR_ASSERT( env!=NULL && this!=NULL && sigArray!=NULL);
+    PR_ASSERT(env!=NULL && this!=NULL && messages!=NULL);
 
-	/*
-	 * Lookup the context
-	 */
-	if( getSigContext(env, this, (void**)&ctxt, &type) != PR_SUCCESS) {
-		PR_ASSERT(PR_FALSE);
-		JSS_throwMsgPrErr(env, SIGNATURE_EXCEPTION,
-			"Unable to retrieve verification context");
-		goto finish;
-	}
-	if(type != VFY_CONTEXT) {
-		PR_ASSERT(PR_FALSE);
-		JSS_throwMsgPrErr(env, SIGNATURE_EXCEPTION,
-			"Verification engine has signature context");
-		goto finish;
-	}
+    if( getSigContext(env, this, (void**)&ctxt, &type) != PR_SUCCESS) {
+        PR_ASSERT( (*env)->ExceptionOccurred(env) != NULL);
+        return NULL;
+    }
+    PR_ASSERT(ctxt!=NULL && type==SGN_CONTEXT);
+
+    byteArrayClass = (*env)->FindClass(env, "[B");
+    if (byteArrayClass == NULL) {
+        ASSERT_OUTOFMEM(env);
+        return NULL;
+    }
+
+    count = (*env)->GetArrayLength(env, messages);
+    sigArrays = (*env)->NewObjectArray(env, count, byteArrayClass, NULL);
+    if (sigArrays == NULL) {
+        ASSERT_OUTOFMEM(env);
+        return NULL;
+    }
+
+    for (i = 0; i < count; i++) {
+        SECItem signature = {siBuffer, NULL, 0};
+        jbyteArray message;
+        jbyteArray sigArray;
+        SECStatus rv;
+
+        message = (*env)->GetObjectArrayElement(env, messages, i);
+        rv = updateSigContext(env, ctxt, type, JNI_TRUE, message, 0,
+                              (*env)->GetArrayLength(env, message));
+        if (rv == SECSuccess) {
+            rv = SGN_End(ctxt, &signature);
+        }
+        (*env)->DeleteLocalRef(env, message);
+
+        if (rv != SECSuccess) {
+            throwSigError(env, "Signing operation failed");
+            SECITEM_FreeItem(&signature, PR_FALSE /*freeit*/);
+            return NULL;
+        }
+
+        sigArray = JSS_ToByteArray(env, signature.data, signature.len);
+        SECITEM_FreeItem(&signature, PR_FALSE /*freeit*/);
+        if (sigArray == NULL) {
+            ASSERT_OUTOFMEM(env);
+            return NULL;
+        }
+
+        (*env)->SetObjectArrayElement(env, sigArrays, i, sigArray);
+        (*env)->DeleteLocalRef(env, sigArray);
+    }
+
+    return sigArrays;
+}
+
+/*
+ * Finishes a verification. Returns JNI_FALSE if the signature is bad, or
+ * if an exception was thrown.
+ */
+static jboolean
+endVerify(JNIEnv *env, VFYContext *ctxt, jbyteArray sigArray)
+{
+	jboolean verified = JNI_FALSE;
+	SECItem sigItem = {siBuffer, NULL, 0};
 
 	/*
 	 * Convert signature to SECItem
@@ -363,7 +524,6 @@ Java_org_mozilla_jss_pkcs11_PK11Signature_engineVerifyNative
 	if( VFY_EndWithSignature(ctxt, &sigItem) == SECSuccess) {
 		verified = JNI_TRUE;
 	} else if( PR_GetError() != SEC_ERROR_BAD_SIGNATURE) {
-		PR_ASSERT(PR_FALSE);
 		JSS_throwMsgPrErr(env, SIGNATURE_EXCEPTION,
 			"Failed to complete verification operation");
 		goto finish;
@@ -374,6 +534,123 @@ finish:
 	return verified;
 }
 
+JNIEXPORT jboolean JNICALL
+Java_org_mozilla_jss_pkcs11_PK11Signature_engineVerifyNative
+	(JNIEnv *env, jobject this, jboolean begin, jbyteArray data,
+	 jint offset, jint length, jbyteArray sigArray)
+{
+	VFYContext *ctxt;
+	SigContextType type;
+
+	PR_ASSERT( env!=NULL && this!=NULL && sigArray!=NULL);
+
+	/*
+	 * Lookup the context
+	 */
+	if( getSigContext(env, this, (void**)&ctxt, &type) != PR_SUCCESS) {
+		PR_ASSERT(PR_FALSE);
+		JSS_throwMsgPrErr(env, SIGNATURE_EXCEPTION,
+			"Unable to retrieve verification context");
+		return JNI_FALSE;
+	}
+	if(type != VFY_CONTEXT) {
+		PR_ASSERT(PR_FALSE);
+		JSS_throwMsgPrErr(env, SIGNATURE_EXCEPTION,
+			"Verification engine has signature context");
+		return JNI_FALSE;
+	}
+
+	if( updateSigContext(env, ctxt, type, begin, data, offset, length)
+			!= SECSuccess)
+	{
+		throwSigError(env, "update failed");
+		return JNI_FALSE;
+	}
+
+	return endVerify(env, ctxt, sigArray);
+}
+
+/**********************************************************************
+ *
+ * PK11Signature.engineVerifyBatchNative
+ *
+ * Verifies each signature against the message at the same index. The
+ * key and algorithm are looked up once, but every message gets a new
+ * verification context, since NSS keeps state from the signature in it.
+ */
+JNIEXPORT jbooleanArray JNICALL
+Java_org_mozilla_jss_pkcs11_PK11Signature_engineVerifyBatchNative
+    (JNIEnv *env, jobject this, jobjectArray messages, jobjectArray signatures)
+{
+    SECKEYPublicKey *pubk = NULL;
+    PRArenaPool *arena = NULL;
+    SECAlgorithmID *signAlg = NULL;
+    SECOidTag signingAlg = SEC_OID_UNKNOWN;
+    SECOidTag digestAlg = SEC_OID_UNKNOWN;
+    jbooleanArray results = NULL;
+    jsize count, i;
+
+    PR_ASSERT(env!=NULL && this!=NULL && messages!=NULL && signatures!=NULL);
+
+    if (getPublicKey(env, this, &pubk) != PR_SUCCESS) {
+        PR_ASSERT((*env)->ExceptionOccurred(env) != NULL);
+        goto finish;
+    }
+
+    if (getVfyAlgorithm(env, this, pubk, &arena, &signingAlg, &signAlg,
+                        &digestAlg) != SECSuccess) {
+        PR_ASSERT((*env)->ExceptionOccurred(env) != NULL);
+        goto finish;
+    }
+
+    count = (*env)->GetArrayLength(env, messages);
+    results = (*env)->NewBooleanArray(env, count);
+    if (results == NULL) {
+        ASSERT_OUTOFMEM(env);
+        goto finish;
+    }
+
+    for (i = 0; i < count; i++) {
+        VFYContext *ctxt;
+        jbyteArray message;
+        jbyteArray sigArray;
+        jboolean verified = JNI_FALSE;
+
+        ctxt = createVfyContext(env, pubk, signingAlg, signAlg, digestAlg);
+        if (ctxt == NULL) {
+            results = NULL;
+            goto finish;
+        }
+
+        message = (*env)->GetObjectArrayElement(env, messages, i);
+        sigArray = (*env)->GetObjectArrayElement(env, signatures, i);
+
+        if (updateSigContext(env, ctxt, VFY_CONTEXT, JNI_FALSE, message, 0,
+                             (*env)->GetArrayLength(env, message))
+                != SECSuccess)
+        {
+            throwSigError(env, "update failed");
+        } else {
+            verified = endVerify(env, ctxt, sigArray);
+        }
+
+        VFY_DestroyContext(ctxt, PR_TRUE /*freeit*/);
+        (*env)->DeleteLocalRef(env, message);
+        (*env)->DeleteLocalRef(env, sigArray);
+
+        if ((*env)->ExceptionCheck(env)) {
+            results = NULL;
+            goto finish;
+        }
+
+        (*env)->SetBooleanArrayRegion(env, results, i, 1, &verified);
+    }
+
+finish:
+    PORT_FreeArena(arena, PR_TRUE /* zero */);
+    return results;
+}
+
 /*
  * Extract the algorithm from a PK11Signature.
  *
@@ -774,14 +1051,9 @@ finish:
  */
 JNIEXPORT void JNICALL
 Java_org_mozilla_jss_pkcs11_SigContextProxy_releaseNativeResources
-  (JNIEnv *env, jobject this)
+  (JNIEnv *env, jclass clazz, jlong pointer)
 {
-    SigContextProxy *proxy = NULL;
-
-    /* Retrieve the proxy pointer */
-    if (JSS_getPtrFromProxy(env, this, (void**)&proxy) != PR_SUCCESS) {
-        return;
-    }
+    SigContextProxy *proxy = JSS_ptrFromLong(pointer);
 
     if (proxy == NULL) {
         return;
@@ -432,10 +432,10 @@ finish:
 }
 
 /**********************************************************************
- * PK11Store.importCert
+ * PK11Store.importCertNative
  */
 JNIEXPORT jobject JNICALL
-Java_org_mozilla_jss_pkcs11_PK11Store_importCert(
+Java_org_mozilla_jss_pkcs11_PK11Store_importCertNative(
     JNIEnv *env,
     jobject this,
     jbyteArray certBytes,
@@ -587,13 +587,13 @@ finish:
 }
 
 /**********************************************************************
- * PK11Store.deleteCert
+ * PK11Store.deleteCertNative
  *
  * This function deletes the specified certificate and its associated 
  * private key.
  */
 JNIEXPORT void JNICALL
-Java_org_mozilla_jss_pkcs11_PK11Store_deleteCert
+Java_org_mozilla_jss_pkcs11_PK11Store_deleteCertNative
     (JNIEnv *env, jobject this, jobject certObject)
 {
     CERTCertificate *cert;
@@ -618,12 +618,12 @@ finish:
 }
 
 /**********************************************************************
- * PK11Store.deleteCertOnly
+ * PK11Store.deleteCertOnlyNative
  *
  * This function deletes the specified certificate only.
  */
 JNIEXPORT void JNICALL
-Java_org_mozilla_jss_pkcs11_PK11Store_deleteCertOnly
+Java_org_mozilla_jss_pkcs11_PK11Store_deleteCertOnlyNative
     (JNIEnv *env, jobject this, jobject certObject)
 {
     CERTCertificate *cert;
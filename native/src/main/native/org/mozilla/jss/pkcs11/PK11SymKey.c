@@ -363,14 +363,13 @@ JSS_PK11_getSymKeyPtr(JNIEnv *env, jobject symKeyObject, PK11SymKey **ptr)
  */
 JNIEXPORT void JNICALL
 Java_org_mozilla_jss_pkcs11_SymKeyProxy_releaseNativeResources
-    (JNIEnv *env, jobject this)
+    (JNIEnv *env, jclass clazz, jlong pointer)
 {
-    PK11SymKey *key=NULL;
+    PK11SymKey *key = JSS_ptrFromLong(pointer);
 
-    PR_ASSERT(env!=NULL && this!=NULL);
+    PR_ASSERT(env!=NULL);
 
-    if (JSS_getPtrFromProxy(env, this, (void**)&key) == PR_SUCCESS &&
-        key != NULL) {
+    if (key != NULL) {
         PK11_FreeSymKey(key);
     }
 }
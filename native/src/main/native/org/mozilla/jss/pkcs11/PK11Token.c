@@ -800,16 +800,11 @@ finish:
  */
 JNIEXPORT void JNICALL
 Java_org_mozilla_jss_pkcs11_TokenProxy_releaseNativeResources
-  (JNIEnv *env, jobject this)
+  (JNIEnv *env, jclass clazz, jlong pointer)
 {
-    PK11SlotInfo *slot = NULL;
-
-    PR_ASSERT(env!=NULL && this!=NULL);
+    PK11SlotInfo *slot = JSS_ptrFromLong(pointer);
 
-    if(JSS_getPtrFromProxy(env, this, (void**)&slot) != PR_SUCCESS) {
-        PR_ASSERT( PR_FALSE );
-        goto finish;
-    }
+    PR_ASSERT(env!=NULL);
 
     /*
      * PK11Token never stores a null pointer in its TokenProxy member,
@@ -821,9 +816,6 @@ Java_org_mozilla_jss_pkcs11_TokenProxy_releaseNativeResources
          * reference to it */
         PK11_FreeSlot(slot);
     }
-
-finish:
-    return;
 }
 
 /************************************************************************
@@ -888,47 +888,35 @@ finish:
     return enabled;
 }
 
-JNIEXPORT jint JNICALL 
-Java_org_mozilla_jss_ssl_SSLSocket_socketRead(JNIEnv *env, jobject self, 
-    jbyteArray bufBA, jint off, jint len, jint timeout)
+/*
+ * Receives up to len bytes into buf, registering the calling thread as
+ * the reader so that abortReadWrite can interrupt it. Returns the number
+ * of bytes read, or -1 at EOF or with an exception pending.
+ */
+static jint
+recvSocket(JNIEnv *env, JSSL_SocketData *sock, void *buf, jint len,
+    jint timeout)
 {
-    JSSL_SocketData *sock = NULL;
-    jbyte *buf = NULL;
-    jint size;
     PRIntervalTime ivtimeout;
     PRThread *me;
-    jint nread = -1;
-
-    if (!JSS_RefByteArray(env, bufBA, &buf, &size)) {
-        goto finish;
-    }
-
-    if (off < 0 || len < 0 || (off+len) > size) {
-        JSS_throw(env, INDEX_OUT_OF_BOUNDS_EXCEPTION);
-        goto finish;
-    }
+    jint nread;
 
     ivtimeout = (timeout > 0) ? PR_MillisecondsToInterval(timeout)
                               : PR_INTERVAL_NO_TIMEOUT;
 
-    /* get the socket */
-    if (JSSL_getSockData(env, self, &sock) != PR_SUCCESS || sock == NULL) {
-        goto finish;
-    }
-
     /* set the current thread doing the read */
     me = PR_GetCurrentThread();
     PR_Lock(sock->lock);
     if ( sock->closePending ) {
        PR_Unlock(sock->lock);
        JSSL_throwSSLSocketException(env, "Read operation interrupted");
-       goto finish;
+       return -1;
     }
     PR_ASSERT(sock->reader == NULL);
     sock->reader = me;
     PR_Unlock(sock->lock);
 
-    nread = PR_Recv(sock->fd, buf+off, len, 0 /*flags*/, ivtimeout);
+    nread = PR_Recv(sock->fd, buf, len, 0 /*flags*/, ivtimeout);
 
     PR_Lock(sock->lock);
     PR_ASSERT(sock->reader == me);
@@ -958,7 +946,7 @@ Java_org_mozilla_jss_ssl_SSLSocket_socketRead(JNIEnv *env, jobject self,
         } else {
             JSSL_throwSSLSocketException(env, "Error reading from socket");
         }
-        goto finish;
+        return -1;
     }
 
     if( nread == 0 ) {
@@ -966,6 +954,104 @@ Java_org_mozilla_jss_ssl_SSLSocket_socketRead(JNIEnv *env, jobject self,
         nread = -1;
     }
 
+    return nread;
+}
+
+/*
+ * Sends the given vectors, registering the calling thread as the writer
+ * so that abortReadWrite can interrupt it. NSPR blocks until everything
+ * is sent, and NSS coalesces small vectors into as few records as
+ * possible. Returns the number of bytes written, or -1 with an exception
+ * pending.
+ */
+static PRInt32
+sendSocket(JNIEnv *env, JSSL_SocketData *sock, const PRIOVec *iov,
+    PRInt32 count, jint timeout)
+{
+    PRIntervalTime ivtimeout;
+    PRThread *me;
+    PRInt32 numwrit;
+
+    ivtimeout = (timeout > 0) ? PR_MillisecondsToInterval(timeout)
+                              : PR_INTERVAL_NO_TIMEOUT;
+
+    /* set the current thread doing the write */
+    me = PR_GetCurrentThread();
+    PR_Lock(sock->lock);
+    if ( sock->closePending ) {
+       PR_Unlock(sock->lock);
+       JSSL_throwSSLSocketException(env, "Write operation interrupted");
+       return -1;
+    }
+    PR_ASSERT(sock->writer == NULL);
+    sock->writer = me;
+    PR_Unlock(sock->lock);
+
+    if (count == 1) {
+        numwrit = PR_Send(sock->fd, iov[0].iov_base, iov[0].iov_len,
+                          0 /*flags*/, ivtimeout);
+    } else {
+        numwrit = PR_Writev(sock->fd, iov, count, ivtimeout);
+    }
+
+    PR_Lock(sock->lock);
+    PR_ASSERT(sock->writer == me);
+    sock->writer = NULL;
+    PR_Unlock(sock->lock);
+
+    if( numwrit < 0 ) {
+        PRErrorCode err = PR_GetError();
+        if( err == PR_PENDING_INTERRUPT_ERROR ) {
+#ifdef WINNT
+            /* clean up after PR_Interrupt called by abortReadWrite. */
+            PR_NT_CancelIo(sock->fd);
+#endif 
+            JSSL_throwSSLSocketException(env, "Write operation interrupted");
+        } else if( err == PR_IO_TIMEOUT_ERROR ) {
+#ifdef WINNT
+            /*
+             * if timeout was set, and the PR_Send() timed out,
+             * then cancel the I/O on the socket, otherwise PR_Send()
+             * will always return PR_IO_PENDING_ERROR on subsequent
+             * calls
+             */
+            PR_NT_CancelIo(sock->fd);
+#endif 
+            JSSL_throwSSLSocketException(env, "Operation timed out");
+        } else {
+            JSSL_throwSSLSocketException(env, "Failed to write to socket");
+        }
+        return -1;
+    }
+
+    return numwrit;
+}
+
+JNIEXPORT jint JNICALL 
+Java_org_mozilla_jss_ssl_SSLSocket_socketRead(JNIEnv *env, jobject self, 
+    jbyteArray bufBA, jint off, jint len, jint timeout)
+{
+    JSSL_SocketData *sock = NULL;
+    jbyte *buf = NULL;
+    jint size;
+    jint nread = -1;
+
+    if (!JSS_RefByteArray(env, bufBA, &buf, &size)) {
+        goto finish;
+    }
+
+    if (off < 0 || len < 0 || (off+len) > size) {
+        JSS_throw(env, INDEX_OUT_OF_BOUNDS_EXCEPTION);
+        goto finish;
+    }
+
+    /* get the socket */
+    if (JSSL_getSockData(env, self, &sock) != PR_SUCCESS || sock == NULL) {
+        goto finish;
+    }
+
+    nread = recvSocket(env, sock, buf+off, len, timeout);
+
 finish:
     EXCEPTION_CHECK(env, sock)
     JSS_DerefByteArray(env, bufBA, buf,
@@ -973,6 +1059,35 @@ finish:
     return nread;
 }
 
+/*
+ * Reads into the region of a direct buffer, without copying.
+ */
+JNIEXPORT jint JNICALL
+Java_org_mozilla_jss_ssl_SSLSocket_socketReadDirect(JNIEnv *env, jobject self,
+    jobject buffer, jint off, jint len, jint timeout)
+{
+    JSSL_SocketData *sock = NULL;
+    jbyte *buf = NULL;
+    jint nread = -1;
+
+    buf = (*env)->GetDirectBufferAddress(env, buffer);
+    if (buf == NULL) {
+        JSSL_throwSSLSocketException(env, "Unable to access direct buffer");
+        goto finish;
+    }
+
+    /* get the socket */
+    if (JSSL_getSockData(env, self, &sock) != PR_SUCCESS || sock == NULL) {
+        goto finish;
+    }
+
+    nread = recvSocket(env, sock, buf+off, len, timeout);
+
+finish:
+    EXCEPTION_CHECK(env, sock)
+    return nread;
+}
+
 JNIEXPORT jint JNICALL
 Java_org_mozilla_jss_ssl_SSLSocket_socketAvailable(
     JNIEnv *env, jobject self)
@@ -999,8 +1114,7 @@ Java_org_mozilla_jss_ssl_SSLSocket_socketWrite(JNIEnv *env, jobject self,
     JSSL_SocketData *sock = NULL;
     jbyte *buf = NULL;
     jint size;
-    PRIntervalTime ivtimeout;
-    PRThread *me;
+    PRIOVec iov;
     PRInt32 numwrit;
 
     if (!JSS_RefByteArray(env, bufBA, &buf, &size)) {
@@ -1012,62 +1126,73 @@ Java_org_mozilla_jss_ssl_SSLSocket_socketWrite(JNIEnv *env, jobject self,
         goto finish;
     }
 
-    ivtimeout = (timeout > 0) ? PR_MillisecondsToInterval(timeout)
-                              : PR_INTERVAL_NO_TIMEOUT;
-
     /* get the socket */
     if (JSSL_getSockData(env, self, &sock) != PR_SUCCESS || sock == NULL) {
         goto finish;
     }
-    /* set the current thread doing the write */
-    me = PR_GetCurrentThread();
-    PR_Lock(sock->lock);
-    if ( sock->closePending ) {
-       PR_Unlock(sock->lock);
-       JSSL_throwSSLSocketException(env, "Write operation interrupted");
-       goto finish;
+
+    iov.iov_base = (char *)buf + off;
+    iov.iov_len = len;
+
+    numwrit = sendSocket(env, sock, &iov, 1, timeout);
+
+    /* PR_Send is supposed to block until it sends everything */
+    PR_ASSERT(numwrit < 0 || numwrit == len);
+
+finish:
+    JSS_DerefByteArray(env, bufBA, buf, JNI_ABORT);
+    EXCEPTION_CHECK(env, sock)
+}
+
+/*
+ * Gathering write of the given regions of direct buffers; Java passes at
+ * most PR_MAX_IOVECTOR_SIZE buffers per call.
+ */
+JNIEXPORT jint JNICALL
+Java_org_mozilla_jss_ssl_SSLSocket_socketWriteDirect(JNIEnv *env, jobject self,
+    jobjectArray buffers, jintArray offsets, jintArray lengths, jint count,
+    jint timeout)
+{
+    JSSL_SocketData *sock = NULL;
+    PRIOVec iov[PR_MAX_IOVECTOR_SIZE];
+    jint offs[PR_MAX_IOVECTOR_SIZE];
+    jint lens[PR_MAX_IOVECTOR_SIZE];
+    PRInt32 numwrit = -1;
+    jint i;
+
+    PR_ASSERT(count > 0 && count <= PR_MAX_IOVECTOR_SIZE);
+
+    (*env)->GetIntArrayRegion(env, offsets, 0, count, offs);
+    (*env)->GetIntArrayRegion(env, lengths, 0, count, lens);
+    if ((*env)->ExceptionCheck(env)) {
+        goto finish;
     }
-    PR_ASSERT(sock->writer == NULL);
-    sock->writer = me;
-    PR_Unlock(sock->lock);
 
-    numwrit = PR_Send(sock->fd, buf+off, len, 0 /*flags*/, ivtimeout);
+    for (i = 0; i < count; i++) {
+        jobject buffer = (*env)->GetObjectArrayElement(env, buffers, i);
+        char *address = (*env)->GetDirectBufferAddress(env, buffer);
 
-    PR_Lock(sock->lock);
-    PR_ASSERT(sock->writer == me);
-    sock->writer = NULL;
-    PR_Unlock(sock->lock);
+        /* direct buffers are kept alive by the array */
+        (*env)->DeleteLocalRef(env, buffer);
 
-    if( numwrit < 0 ) {
-        PRErrorCode err = PR_GetError();
-        if( err == PR_PENDING_INTERRUPT_ERROR ) {
-#ifdef WINNT
-            /* clean up after PR_Interrupt called by abortReadWrite. */
-            PR_NT_CancelIo(sock->fd);
-#endif 
-            JSSL_throwSSLSocketException(env, "Write operation interrupted");
-        } else if( err == PR_IO_TIMEOUT_ERROR ) {
-#ifdef WINNT
-            /*
-             * if timeout was set, and the PR_Send() timed out,
-             * then cancel the I/O on the socket, otherwise PR_Send()
-             * will always return PR_IO_PENDING_ERROR on subsequent
-             * calls
-             */
-            PR_NT_CancelIo(sock->fd);
-#endif 
-            JSSL_throwSSLSocketException(env, "Operation timed out");
-        } else {
-            JSSL_throwSSLSocketException(env, "Failed to write to socket");
+        if (address == NULL) {
+            JSSL_throwSSLSocketException(env, "Unable to access direct buffer");
+            goto finish;
         }
+        iov[i].iov_base = address + offs[i];
+        iov[i].iov_len = lens[i];
+    }
+
+    /* get the socket */
+    if (JSSL_getSockData(env, self, &sock) != PR_SUCCESS || sock == NULL) {
         goto finish;
     }
-    /* PR_Send is supposed to block until it sends everything */
-    PR_ASSERT(numwrit == len);
+
+    numwrit = sendSocket(env, sock, iov, count, timeout);
 
 finish:
-    JSS_DerefByteArray(env, bufBA, buf, JNI_ABORT);
     EXCEPTION_CHECK(env, sock)
+    return numwrit;
 }
 
 JNIEXPORT void JNICALL
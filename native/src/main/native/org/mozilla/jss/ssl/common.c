@@ -331,15 +331,11 @@ finish:
 
 JNIEXPORT void JNICALL
 Java_org_mozilla_jss_ssl_SocketProxy_releaseNativeResources
-    (JNIEnv *env, jobject this)
+    (JNIEnv *env, jclass clazz, jlong pointer)
 {
-    JSSL_SocketData *sockdata;
+    JSSL_SocketData *sockdata = JSS_ptrFromLong(pointer);
 
-    PR_ASSERT(env != NULL && this != NULL);
-
-    if (JSS_getPtrFromProxy(env, this, (void**)&sockdata) != PR_SUCCESS) {
-        return;
-    }
+    PR_ASSERT(env != NULL);
 
     JSSL_DestroySocketData(env, sockdata);
 }
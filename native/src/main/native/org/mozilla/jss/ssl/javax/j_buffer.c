@@ -1,5 +1,6 @@
 #include "j_buffer.h"
 
+#include <nspr.h>
 #include <stdlib.h>
 #include <stdio.h>
 #include <string.h>
@@ -87,10 +88,13 @@ size_t jb_write_capacity(j_buffer *buf) {
     return (buf->capacity - buf->write_pos) + buf->read_pos;
 }
 
+/* Reattach the contents of a detached buffer before writing to it. */
+static bool jb_attach(j_buffer *buf);
+
 int jb_put(j_buffer *buf, uint8_t byte) {
     /* ret == EOF <=> can't write to the buffer */
     /* ret = char written <=> can write to the buffer */
-    if (!jb_can_write(buf)) {
+    if (!jb_can_write(buf) || !jb_attach(buf)) {
         return EOF;
     }
 
@@ -125,7 +129,7 @@ int jb_put(j_buffer *buf, uint8_t byte) {
 size_t jb_write(j_buffer *buf, const uint8_t *input, size_t input_size) {
     /* ret == 0 <=> can't write to the buffer or input_size == 0 */
     /* ret == amount written <=> can write to the buffer */
-    if (!jb_can_write(buf) || input_size == 0) {
+    if (!jb_can_write(buf) || input_size == 0 || !jb_attach(buf)) {
         return 0;
     }
 
@@ -292,14 +296,13 @@ void jb_free(j_buffer *buf) {
     if (buf == NULL) {
         return;
     }
-    if (buf->contents == NULL || buf->capacity == 0) {
-        return;
-    }
 
     // We clear the contents of the buffer before freeing it in case any
-    // sensitive information was stored.
-    memset(buf->contents, 0, buf->capacity);
-    free(buf->contents);
+    // sensitive information was stored. Detached buffers don't have any.
+    if (buf->contents != NULL && buf->capacity > 0) {
+        memset(buf->contents, 0, buf->capacity);
+        free(buf->contents);
+    }
 
     // Safe guards to ensure we don't try and free buf again.
     buf->contents = NULL;
@@ -307,3 +310,289 @@ void jb_free(j_buffer *buf) {
 
     free(buf);
 }
+
+/*
+ * The buffer pool keeps released buffers in a handful of size classes,
+ * each a stack of buffers of one capacity. In practice a process only
+ * uses a few distinct capacities (the default JSSEngine buffer size and
+ * the PQC size), so a size class is claimed by the first capacity released
+ * into it while it is empty. Pooled buffers are always zeroed.
+ */
+
+#define JB_POOL_CLASSES 8
+
+typedef struct {
+    size_t capacity;
+    size_t count;
+    j_buffer *head;
+} jb_pool_class;
+
+static jb_pool_class pool_classes[JB_POOL_CLASSES];
+static jb_pool_counters pool_counters;
+static size_t pool_limit = JB_POOL_DEFAULT_LIMIT;
+
+static PRLock *pool_lock = NULL;
+static PRCallOnceType pool_once;
+
+static PRStatus jb_pool_init(void) {
+    pool_lock = PR_NewLock();
+    return pool_lock != NULL ? PR_SUCCESS : PR_FAILURE;
+}
+
+static bool jb_pool_lock(void) {
+    if (PR_CallOnce(&pool_once, jb_pool_init) != PR_SUCCESS) {
+        return false;
+    }
+
+    PR_Lock(pool_lock);
+    return true;
+}
+
+/* Find the size class holding buffers of the given capacity. With claim, fall
+ * back to an empty size class, claiming it for that capacity. */
+static jb_pool_class *jb_pool_class_of(size_t capacity, bool claim) {
+    jb_pool_class *empty = NULL;
+
+    for (size_t i = 0; i < JB_POOL_CLASSES; i++) {
+        if (pool_classes[i].count > 0 && pool_classes[i].capacity == capacity) {
+            return &pool_classes[i];
+        }
+        if (pool_classes[i].count == 0 && empty == NULL) {
+            empty = &pool_classes[i];
+        }
+    }
+
+    if (claim && empty != NULL) {
+        empty->capacity = capacity;
+        return empty;
+    }
+
+    return NULL;
+}
+
+j_buffer *jb_pool_alloc(size_t length) {
+    j_buffer *buf = NULL;
+
+    if (jb_pool_lock()) {
+        jb_pool_class *bucket = jb_pool_class_of(length, false);
+        if (bucket != NULL) {
+            buf = bucket->head;
+            bucket->head = buf->pool_next;
+            bucket->count -= 1;
+
+            pool_counters.hits += 1;
+            pool_counters.pooled_buffers -= 1;
+            pool_counters.pooled_bytes -= length;
+        } else {
+            pool_counters.misses += 1;
+        }
+        PR_Unlock(pool_lock);
+    }
+
+    if (buf == NULL) {
+        return jb_alloc(length);
+    }
+
+    // The contents were zeroed on release; only reset the positions.
+    buf->pool_next = NULL;
+    buf->write_pos = 0;
+    buf->read_pos = buf->capacity;
+    return buf;
+}
+
+void jb_pool_release(j_buffer *buf) {
+    if (buf == NULL) {
+        return;
+    }
+    if (buf->contents == NULL || buf->capacity == 0) {
+        // Nothing worth pooling; see jb_detach.
+        jb_free(buf);
+        return;
+    }
+
+    memset(buf->contents, 0, buf->capacity);
+
+    if (jb_pool_lock()) {
+        jb_pool_class *bucket = NULL;
+        if (pool_counters.pooled_bytes + buf->capacity <= pool_limit) {
+            bucket = jb_pool_class_of(buf->capacity, true);
+        }
+
+        if (bucket != NULL) {
+            buf->pool_next = bucket->head;
+            bucket->head = buf;
+            bucket->count += 1;
+
+            pool_counters.returns += 1;
+            pool_counters.pooled_buffers += 1;
+            pool_counters.pooled_bytes += buf->capacity;
+            buf = NULL;
+        } else {
+            pool_counters.discards += 1;
+        }
+        PR_Unlock(pool_lock);
+    }
+
+    if (buf != NULL) {
+        jb_free(buf);
+    }
+}
+
+void jb_pool_set_limit(size_t limit) {
+    j_buffer *freed = NULL;
+
+    if (!jb_pool_lock()) {
+        return;
+    }
+
+    pool_limit = limit;
+
+    // Unlink pooled buffers until we're back under the limit; free them
+    // once we've dropped the lock.
+    for (size_t i = 0; i < JB_POOL_CLASSES; i++) {
+        jb_pool_class *bucket = &pool_classes[i];
+        while (bucket->head != NULL && pool_counters.pooled_bytes > pool_limit) {
+            j_buffer *buf = bucket->head;
+            bucket->head = buf->pool_next;
+            bucket->count -= 1;
+
+            pool_counters.pooled_buffers -= 1;
+            pool_counters.pooled_bytes -= buf->capacity;
+
+            buf->pool_next = freed;
+            freed = buf;
+        }
+    }
+
+    PR_Unlock(pool_lock);
+
+    while (freed != NULL) {
+        j_buffer *next = freed->pool_next;
+        jb_free(freed);
+        freed = next;
+    }
+}
+
+size_t jb_pool_get_limit(void) {
+    size_t limit = 0;
+
+    if (jb_pool_lock()) {
+        limit = pool_limit;
+        PR_Unlock(pool_lock);
+    }
+
+    return limit;
+}
+
+void jb_pool_stats(jb_pool_counters *stats) {
+    if (stats == NULL) {
+        return;
+    }
+
+    memset(stats, 0, sizeof(*stats));
+    if (jb_pool_lock()) {
+        *stats = pool_counters;
+        PR_Unlock(pool_lock);
+    }
+}
+
+/*
+ * Detached buffers hand their contents to the pool inside a bare j_buffer,
+ * so the pool keeps dealing only in whole buffers; the buffer itself stays
+ * with its owner (and under any BufferPRFD using it).
+ */
+
+bool jb_detach(j_buffer *buf) {
+    if (buf == NULL) {
+        return false;
+    }
+    if (buf->contents == NULL) {
+        return true;
+    }
+    if (jb_can_read(buf) || buf->capacity == 0) {
+        return false;
+    }
+
+    j_buffer *shell = calloc(1, sizeof(j_buffer));
+    if (shell == NULL) {
+        return false;
+    }
+
+    shell->contents = buf->contents;
+    shell->capacity = buf->capacity;
+    jb_pool_release(shell);
+
+    buf->contents = NULL;
+    buf->write_pos = 0;
+    buf->read_pos = buf->capacity;
+    return true;
+}
+
+bool jb_is_attached(j_buffer *buf) {
+    return buf != NULL && buf->contents != NULL;
+}
+
+static bool jb_attach(j_buffer *buf) {
+    if (buf->contents != NULL) {
+        return true;
+    }
+
+    j_buffer *shell = jb_pool_alloc(buf->capacity);
+    if (shell == NULL || shell->contents == NULL) {
+        free(shell);
+        return false;
+    }
+
+    // Pooled contents are already zeroed and the buffer is empty, so its
+    // positions are still valid.
+    buf->contents = shell->contents;
+    free(shell);
+    return true;
+}
+
+bool jb_grow(j_buffer *buf, size_t length) {
+    if (buf == NULL) {
+        return false;
+    }
+    if (length <= buf->capacity) {
+        return true;
+    }
+    if (buf->contents == NULL) {
+        // A detached buffer is empty; reattaching picks up the new size.
+        buf->capacity = length;
+        buf->write_pos = 0;
+        buf->read_pos = length;
+
+        if (jb_pool_lock()) {
+            pool_counters.grows += 1;
+            PR_Unlock(pool_lock);
+        }
+
+        return true;
+    }
+
+    uint8_t *contents = calloc(length, sizeof(uint8_t));
+    if (contents == NULL) {
+        return false;
+    }
+
+    // Move the unread bytes to the start of the new contents, so the
+    // buffer is linear again. As length > capacity >= used, the grown
+    // buffer always has room to write.
+    size_t used = jb_read(buf, contents, buf->capacity);
+
+    memset(buf->contents, 0, buf->capacity);
+    free(buf->contents);
+
+    buf->contents = contents;
+    buf->capacity = length;
+    buf->write_pos = used;
+    buf->read_pos = used > 0 ? 0 : length;
+
+    if (jb_pool_lock()) {
+        pool_counters.grows += 1;
+        PR_Unlock(pool_lock);
+    }
+
+    return true;
+}
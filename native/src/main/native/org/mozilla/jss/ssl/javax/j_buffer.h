@@ -9,8 +9,8 @@
  *
  * A j_buffer is a circular ring buffer creating a FIFO queue of bytes.
  */
-typedef struct {
-    /* Contents of the buffer. */
+typedef struct j_buffer_s {
+    /* Contents of the buffer; NULL while detached (see jb_detach). */
     uint8_t *contents;
 
     /* Capacity is used as a sentinel value; when write_pos == capacity, can't
@@ -22,8 +22,36 @@ typedef struct {
 
     /* Next position to read from, else capacity if unable to read. */
     size_t read_pos;
+
+    /* Next free buffer of the same capacity while held by the pool. */
+    struct j_buffer_s *pool_next;
 } j_buffer;
 
+/* Default maximum number of bytes of buffer contents the pool holds. */
+#define JB_POOL_DEFAULT_LIMIT (16 * 1024 * 1024)
+
+/* Counters of the buffer pool; see jb_pool_stats. */
+typedef struct {
+    /* Allocations served from the pool. */
+    uint64_t hits;
+
+    /* Allocations which had to allocate a new buffer. */
+    uint64_t misses;
+
+    /* Buffers released back into the pool. */
+    uint64_t returns;
+
+    /* Released buffers freed because the pool was full. */
+    uint64_t discards;
+
+    /* Buffers grown with jb_grow. */
+    uint64_t grows;
+
+    /* Buffers and bytes currently held by the pool. */
+    uint64_t pooled_buffers;
+    uint64_t pooled_bytes;
+} jb_pool_counters;
+
 /*
  * Create a new buffer; must be freed with jb_free. The length parameter is
  * the number of uint8_t elements the new buffer can store.
@@ -77,3 +105,47 @@ size_t jb_read(j_buffer *buf, uint8_t *output, size_t output_size);
  * of the buffer in case any sensitive material was stored.
  */
 void jb_free(j_buffer *buf);
+
+/*
+ * Detach the contents of an empty buffer, returning them to the buffer pool
+ * while keeping the buffer itself (and its capacity) valid. A detached
+ * buffer behaves like an empty one; its contents are reattached from the
+ * pool by the next write. Returns true when the buffer is detached
+ * afterwards, false when it still holds unread bytes.
+ */
+bool jb_detach(j_buffer *buf);
+
+/* Whether or not the buffer currently holds its contents. */
+bool jb_is_attached(j_buffer *buf);
+
+/*
+ * Grow a buffer to hold length bytes, keeping its unread contents. Buffers
+ * never shrink; returns true when the buffer holds at least length bytes,
+ * false if the new contents couldn't be allocated.
+ */
+bool jb_grow(j_buffer *buf, size_t length);
+
+/*
+ * Create a new buffer like jb_alloc, reusing a buffer of the same capacity
+ * from the buffer pool when there is one. Must be freed with
+ * jb_pool_release.
+ */
+j_buffer *jb_pool_alloc(size_t length);
+
+/*
+ * Zero a buffer and return it to the buffer pool, or free it when that
+ * would take the pool over its limit.
+ */
+void jb_pool_release(j_buffer *buf);
+
+/*
+ * Set the maximum number of bytes of buffer contents the pool may hold;
+ * 0 disables pooling. Pooled buffers above the new limit are freed.
+ */
+void jb_pool_set_limit(size_t limit);
+
+/* Get the maximum number of bytes the pool may hold. */
+size_t jb_pool_get_limit(void);
+
+/* Copy the pool's counters into stats. */
+void jb_pool_stats(jb_pool_counters *stats);
@@ -55,15 +55,11 @@ JSS_PR_getGlobalRef(JNIEnv *env, jobject ref_proxy, jobject *ref)
 
 JNIEXPORT void JNICALL
 Java_org_mozilla_jss_util_GlobalRefProxy_releaseNativeResources
-    (JNIEnv *env, jobject this)
+    (JNIEnv *env, jclass clazz, jlong pointer)
 {
-    jobject ref = NULL;
+    jobject ref = JSS_ptrFromLong(pointer);
 
-    PR_ASSERT(env != NULL && this != NULL);
-
-    if (JSS_PR_getGlobalRef(env, this, &ref) != PR_SUCCESS) {
-        return;
-    }
+    PR_ASSERT(env != NULL);
 
     if (ref != NULL) {
         (*env)->DeleteGlobalRef(env, ref);
@@ -96,7 +96,7 @@ PR_BEGIN_EXTERN_C
  */
 #define NATIVE_PROXY_CLASS_NAME  "org/mozilla/jss/util/NativeProxy"
 #define NATIVE_PROXY_POINTER_FIELD "mPointer"
-#define NATIVE_PROXY_POINTER_SIG "[B"
+#define NATIVE_PROXY_POINTER_SIG "J"
 
 /*
  * NSSInit
@@ -201,9 +201,7 @@ JSS_getPtrFromProxy(JNIEnv *env, jobject nativeProxy, void **ptr)
     jclass nativeProxyClass;
 #endif
 	jclass proxyClass;
-    jfieldID byteArrayField;
-    jbyteArray byteArray;
-    int size;
+    jfieldID pointerField;
 
     PR_ASSERT(env!=NULL && nativeProxy != NULL && ptr != NULL);
     if( nativeProxy == NULL ) {
@@ -227,25 +225,19 @@ JSS_getPtrFromProxy(JNIEnv *env, jobject nativeProxy, void **ptr)
     PR_ASSERT( (*env)->IsInstanceOf(env, nativeProxy, nativeProxyClass) );
 #endif
 
-    byteArrayField = (*env)->GetFieldID(
+    pointerField = (*env)->GetFieldID(
 								env,
 								proxyClass,
 								NATIVE_PROXY_POINTER_FIELD,
 						        NATIVE_PROXY_POINTER_SIG);
-    if(byteArrayField==NULL) {
+    if(pointerField==NULL) {
         ASSERT_OUTOFMEM(env);
         return PR_FAILURE;
     }
 
-    byteArray = (jbyteArray) (*env)->GetObjectField(env, nativeProxy,
-                        byteArrayField);
-    if (byteArray == NULL) {
-        *ptr = NULL;
-    } else {
-        size = sizeof(*ptr);
-        PR_ASSERT((*env)->GetArrayLength(env, byteArray) == size);
-        (*env)->GetByteArrayRegion(env, byteArray, 0, size, (void*)ptr);
-    }
+    /* a cleared proxy holds 0, which becomes NULL */
+    *ptr = JSS_ptrFromLong(
+        (*env)->GetLongField(env, nativeProxy, pointerField));
 
     if( (*env)->ExceptionOccurred(env) ) {
         PR_ASSERT(PR_FALSE);
@@ -136,6 +136,17 @@ JSS_getPtrFromProxy(JNIEnv *env, jobject nativeProxy, void **ptr);
 PRStatus
 JSS_clearPtrFromProxy(JNIEnv *env, jobject nativeProxy);
 
+/***********************************************************************
+**
+** J S S _ p t r F r o m L o n g
+**
+** Turn the long handle of a NativeProxy back into a C pointer. The
+** static releaseNativeResources(long) methods of the proxy classes are
+** passed their pointer this way, since the Cleaner frees them after the
+** proxy itself is gone.
+*/
+#define JSS_ptrFromLong(handle) ((void *)(PRUptrdiff)(handle))
+
 /***********************************************************************
 **
 ** J S S _ g e t P t r F r o m P r o x y O w n e r
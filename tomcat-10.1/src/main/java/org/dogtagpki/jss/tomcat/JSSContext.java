@@ -9,11 +9,13 @@ import javax.net.ssl.KeyManager;
 import javax.net.ssl.KeyManagerFactory;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509KeyManager;
 
 import org.mozilla.jss.JSSProvider;
 import org.mozilla.jss.provider.javax.crypto.JSSKeyManager;
 import org.mozilla.jss.provider.javax.crypto.JSSTrustManager;
 import org.mozilla.jss.ssl.javax.JSSEngine;
+import org.mozilla.jss.ssl.javax.ServerCredentials;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -36,6 +38,11 @@ public class JSSContext implements org.apache.tomcat.util.net.SSLContext {
     private JSSKeyManager jkm;
     private JSSTrustManager jtm;
 
+    /* KeyManagers passed to init(...) and the server certificates and keys
+     * resolved through them, handed to every engine by reference. */
+    private X509KeyManager[] keyManagers;
+    private volatile ServerCredentials credentials;
+
     /**
      * Create the cContext for SSL connections.
      */
@@ -91,6 +98,48 @@ public class JSSContext implements org.apache.tomcat.util.net.SSLContext {
         } catch (Exception e) {
             throw new KeyManagementException(e.getMessage(), e);
         }
+
+        List<X509KeyManager> xkms = new ArrayList<>();
+        if (kms != null) {
+            for (KeyManager km : kms) {
+                if (km instanceof X509KeyManager) {
+                    xkms.add((X509KeyManager) km);
+                }
+            }
+        }
+        keyManagers = xkms.toArray(new X509KeyManager[0]);
+
+        refreshCredentials();
+    }
+
+    /**
+     * Resolve the server certificates and keys of the aliases again, e.g.
+     * after they were renewed in the NSS database. Connections accepted
+     * from now on use the new certificates.
+     *
+     * When the aliases can't be resolved, engines fall back to resolving
+     * them on each connection (and report the error there).
+     */
+    public void refreshCredentials() {
+        logger.debug("JSSContext.refreshCredentials()");
+
+        ServerCredentials resolved = null;
+        if (JSSProvider.ENABLE_JSSENGINE && aliases != null && !aliases.isEmpty()) {
+            try {
+                resolved = ServerCredentials.resolve(keyManagers, aliases);
+                resolved.preload();
+            } catch (Exception e) {
+                logger.warn("JSSContext: Unable to resolve certificates for " + String.join(", ", aliases) + ": " + e.getMessage(), e);
+                resolved = null;
+            }
+        }
+
+        ServerCredentials old = credentials;
+        credentials = resolved;
+
+        if (old != null) {
+            old.close();
+        }
     }
 
     @Override
@@ -102,7 +151,12 @@ public class JSSContext implements org.apache.tomcat.util.net.SSLContext {
 
         if (eng instanceof JSSEngine) {
             JSSEngine j_eng = (JSSEngine) eng;
-            j_eng.setCertFromAliases(aliases);
+            ServerCredentials creds = credentials;
+            if (creds != null) {
+                j_eng.setServerCredentials(creds);
+            } else {
+                j_eng.setCertFromAliases(aliases);
+            }
             if(instance != null) {
                 j_eng.setListeners(instance.getSocketListeners());
             }
@@ -133,6 +187,14 @@ public class JSSContext implements org.apache.tomcat.util.net.SSLContext {
     public java.security.cert.X509Certificate[] getCertificateChain(java.lang.String alias) {
         logger.debug("JSSContext.getCertificateChain(" + alias + ")");
 
+        ServerCredentials creds = credentials;
+        if (creds != null) {
+            java.security.cert.X509Certificate[] chain = creds.getCertificateChain(alias);
+            if (chain != null) {
+                return chain;
+            }
+        }
+
         try {
             return jkm.getCertificateChain(alias);
         } catch (Exception e) {
@@ -154,5 +216,12 @@ public class JSSContext implements org.apache.tomcat.util.net.SSLContext {
     @Override
     public void destroy() {
         logger.debug("JSSContext.destroy()");
+
+        ServerCredentials old = credentials;
+        credentials = null;
+
+        if (old != null) {
+            old.close();
+        }
     }
 }